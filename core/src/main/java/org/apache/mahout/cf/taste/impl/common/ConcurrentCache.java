@@ -0,0 +1,426 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * <p>
+ * A thread-safe counterpart to {@link Cache} meant for caches that are hit by many request threads at once.
+ * Like {@link Cache}, values are never "put" into it; they are loaded on demand by a {@link Retriever}.
+ * </p>
+ *
+ * <p>
+ * Keys are spread over a number of independently locked segments, so threads only contend when they touch
+ * the same segment. Each segment evicts its least-recently-used entries once its share of the maximum weight
+ * is exceeded. By default every entry weighs 1, so the maximum weight is simply a maximum number of entries;
+ * supply a {@link Weigher} to bound the cache by an estimate of the bytes it holds instead.
+ * </p>
+ *
+ * <p>
+ * When several threads ask for the same missing key at the same time, only one of them calls the
+ * {@link Retriever}; the others wait for and share its result.
+ * </p>
+ *
+ * <p>
+ * The cache does not support {@code null} keys. {@code null} values returned by the {@link Retriever} are
+ * cached like any other value.
+ * </p>
+ */
+public final class ConcurrentCache<K,V> implements Retriever<K,V> {
+
+  private static final int MAX_SEGMENTS = 1 << 16;
+
+  private final Retriever<? super K,? extends V> retriever;
+  private final Weigher<? super K,? super V> weigher;
+  private final Segment<K,V>[] segments;
+  private final int segmentMask;
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private final AtomicLong evictionCount;
+
+  /**
+   * Creates a new cache based on the given {@link Retriever}, holding at most {@code maxEntries} entries.
+   *
+   * @param retriever object which can retrieve values for keys
+   * @param maxEntries maximum number of entries the cache will store before evicting some
+   */
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever, int maxEntries) {
+    this(retriever, maxEntries, null, defaultConcurrencyLevel());
+  }
+
+  /**
+   * Creates a new cache based on the given {@link Retriever}, bounded by the total weight of its entries.
+   *
+   * @param retriever object which can retrieve values for keys
+   * @param maxWeight maximum total weight of entries the cache will store before evicting some
+   * @param weigher estimates the weight, typically in bytes, of an entry. If {@code null}, every entry weighs 1
+   * @param concurrencyLevel number of threads expected to use the cache concurrently; determines the
+   *  number of segments
+   */
+  public ConcurrentCache(Retriever<? super K,? extends V> retriever,
+                         long maxWeight,
+                         Weigher<? super K,? super V> weigher,
+                         int concurrencyLevel) {
+    Preconditions.checkArgument(retriever != null, "retriever is null");
+    Preconditions.checkArgument(maxWeight >= 1, "maxWeight must be at least 1");
+    Preconditions.checkArgument(concurrencyLevel >= 1, "concurrencyLevel must be at least 1");
+    this.retriever = retriever;
+    this.weigher = weigher;
+    int numSegments = 1;
+    while (numSegments < concurrencyLevel && numSegments < MAX_SEGMENTS && numSegments < maxWeight) {
+      numSegments <<= 1;
+    }
+    long maxSegmentWeight = (maxWeight + numSegments - 1) / numSegments;
+    @SuppressWarnings("unchecked")
+    Segment<K,V>[] newSegments = (Segment<K,V>[]) new Segment[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      newSegments[i] = new Segment<K,V>(maxSegmentWeight);
+    }
+    this.segments = newSegments;
+    this.segmentMask = numSegments - 1;
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+    this.evictionCount = new AtomicLong();
+  }
+
+  private static int defaultConcurrencyLevel() {
+    return 4 * Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * <p>
+   * Returns cached value for a key. If it does not exist, it is loaded using a {@link Retriever}. Concurrent
+   * requests for the same missing key trigger only one load.
+   * </p>
+   *
+   * @param key cache key
+   * @return value for that key
+   * @throws TasteException if an exception occurs while retrieving a new cached value
+   */
+  @Override
+  public V get(K key) throws TasteException {
+    Segment<K,V> segment = segmentFor(key);
+    Entry<V> entry;
+    boolean loader = false;
+    synchronized (segment) {
+      entry = segment.map.get(key);
+      if (entry == null) {
+        entry = new Entry<V>();
+        segment.map.put(key, entry);
+        loader = true;
+      }
+    }
+    if (!loader) {
+      hitCount.incrementAndGet();
+      return entry.await();
+    }
+    missCount.incrementAndGet();
+    return load(key, segment, entry);
+  }
+
+  private V load(K key, Segment<K,V> segment, Entry<V> entry) throws TasteException {
+    V value;
+    int weight;
+    // Every failure, Errors included, must release the waiters and drop the placeholder, or later
+    // requests for this key would block on it forever
+    try {
+      value = retriever.get(key);
+      weight = weigher == null ? 1 : weigher.weigh(key, value);
+      Preconditions.checkState(weight >= 0, "negative weight: %s", weight);
+    } catch (TasteException te) {
+      abandon(key, segment, entry, te);
+      throw te;
+    } catch (RuntimeException re) {
+      abandon(key, segment, entry, re);
+      throw re;
+    } catch (Error e) {
+      abandon(key, segment, entry, e);
+      throw e;
+    }
+    int evicted = 0;
+    synchronized (segment) {
+      entry.complete(value, weight);
+      // The entry may have been removed while loading; then it is handed to waiters but not cached
+      if (segment.map.get(key) == entry) {
+        segment.weight += weight;
+        evicted = segment.evict();
+      }
+    }
+    if (evicted > 0) {
+      evictionCount.addAndGet(evicted);
+    }
+    return value;
+  }
+
+  private void abandon(K key, Segment<K,V> segment, Entry<V> entry, Throwable cause) {
+    synchronized (segment) {
+      if (segment.map.get(key) == entry) {
+        segment.map.remove(key);
+      }
+      entry.fail(cause);
+    }
+  }
+
+  /**
+   * <p>
+   * Uncaches any existing value for a given key.
+   * </p>
+   *
+   * @param key cache key
+   */
+  public void remove(K key) {
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      Entry<V> entry = segment.map.remove(key);
+      if (entry != null) {
+        segment.weight -= entry.weight;
+      }
+    }
+  }
+
+  /**
+   * Clears all cache entries whose key matches the given predicate.
+   */
+  public void removeKeysMatching(Cache.MatchPredicate<K> predicate) {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        Iterator<Map.Entry<K,Entry<V>>> it = segment.map.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<K,Entry<V>> mapEntry = it.next();
+          if (predicate.matches(mapEntry.getKey())) {
+            segment.weight -= mapEntry.getValue().weight;
+            it.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Clears all loaded cache entries whose value matches the given predicate.
+   */
+  public void removeValueMatching(Cache.MatchPredicate<V> predicate) {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        Iterator<Entry<V>> it = segment.map.values().iterator();
+        while (it.hasNext()) {
+          Entry<V> entry = it.next();
+          if (entry.isLoaded() && predicate.matches(entry.value)) {
+            segment.weight -= entry.weight;
+            it.remove();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Clears the cache.
+   * </p>
+   */
+  public void clear() {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        segment.map.clear();
+        segment.weight = 0L;
+      }
+    }
+  }
+
+  /**
+   * @return number of entries currently cached, including those still being loaded
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        size += segment.map.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return total weight of the entries currently cached
+   */
+  public long weightedSize() {
+    long weight = 0L;
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        weight += segment.weight;
+      }
+    }
+    return weight;
+  }
+
+  /**
+   * @return number of calls to {@link #get(Object)} answered from the cache, including those that waited
+   *  for another thread's load of the same key
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return number of calls to {@link #get(Object)} which had to call the {@link Retriever}
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return number of entries evicted to keep the cache within its maximum weight
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return fraction of calls to {@link #get(Object)} that were answered from the cache, or {@link Double#NaN}
+   *  if there have been none
+   */
+  public double getHitRate() {
+    long hits = hitCount.get();
+    long requests = hits + missCount.get();
+    return requests == 0L ? Double.NaN : (double) hits / requests;
+  }
+
+  private Segment<K,V> segmentFor(K key) {
+    // Spread the hash so that keys with similar low bits do not pile into one segment
+    int h = key.hashCode();
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return segments[h & segmentMask];
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentCache[retriever:" + retriever + ", segments:" + segments.length + ']';
+  }
+
+  /**
+   * Estimates the weight of a cache entry, for example its approximate size in bytes.
+   */
+  public interface Weigher<K,V> {
+    /**
+     * @return weight of the entry; must not be negative
+     */
+    int weigh(K key, V value);
+  }
+
+  /**
+   * One lock stripe: an access-ordered map whose iteration order is least- to most-recently used.
+   */
+  private static final class Segment<K,V> {
+
+    private final LinkedHashMap<K,Entry<V>> map;
+    private final long maxWeight;
+    private long weight;
+
+    private Segment(long maxWeight) {
+      this.map = new LinkedHashMap<K,Entry<V>>(16, 0.75f, true);
+      this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Must be called while holding the lock on this segment.
+     *
+     * @return number of entries evicted
+     */
+    private int evict() {
+      int evicted = 0;
+      Iterator<Entry<V>> it = map.values().iterator();
+      while (weight > maxWeight && it.hasNext()) {
+        Entry<V> entry = it.next();
+        // entries still being loaded carry no weight yet, and their loader expects to find them
+        if (entry.isLoaded()) {
+          weight -= entry.weight;
+          it.remove();
+          evicted++;
+        }
+      }
+      return evicted;
+    }
+  }
+
+  /**
+   * A cached value, or a placeholder for one being loaded by another thread.
+   */
+  private static final class Entry<V> {
+
+    private final CountDownLatch loaded;
+    private volatile V value;
+    private volatile Throwable failure;
+    private int weight;
+
+    private Entry() {
+      loaded = new CountDownLatch(1);
+    }
+
+    boolean isLoaded() {
+      return loaded.getCount() == 0L && failure == null;
+    }
+
+    void complete(V value, int weight) {
+      this.value = value;
+      this.weight = weight;
+      loaded.countDown();
+    }
+
+    void fail(Throwable cause) {
+      this.failure = cause;
+      loaded.countDown();
+    }
+
+    V await() throws TasteException {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            loaded.await();
+            break;
+          } catch (InterruptedException ie) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      Throwable cause = failure;
+      if (cause != null) {
+        if (cause instanceof TasteException) {
+          throw new TasteException("Concurrent load failed", cause);
+        }
+        throw new IllegalStateException("Concurrent load failed", cause);
+      }
+      return value;
+    }
+  }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * Runs tasks of the recommenders and factorizers on an {@link ExecutorService}.
+ */
+public final class ExecutorUtils {
+
+  private ExecutorUtils() {
+  }
+
+  /**
+   * Runs the given tasks on the executor and waits for all of them to finish.
+   *
+   * @return the results of the tasks, in order
+   * @throws TasteException
+   *           if any task failed; a {@link TasteException} or {@link RuntimeException} thrown by the task is
+   *           rethrown as is
+   */
+  public static <T> List<T> runAll(List<? extends Callable<T>> tasks, ExecutorService executor)
+    throws TasteException {
+    List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+    try {
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new TasteException(cause);
+    }
+    return results;
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, memory-mapped array of {@code long}s, {@code double}s, {@code int}s or {@code float}s stored in a
+ * region of a file. Since a single mapping cannot exceed 2GB, the region is mapped as a series of 1GB chunks; the
+ * element size always divides the chunk size so no element straddles two chunks.
+ */
+public final class MappedSection {
+
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final ByteBuffer[] chunks;
+  private final long numElements;
+
+  private MappedSection(ByteBuffer[] chunks, long numElements) {
+    this.chunks = chunks;
+    this.numElements = numElements;
+  }
+
+  /**
+   * @param position byte offset of the region in the file
+   * @param numElements number of elements in the region
+   * @param elementSize size of each element in bytes; 4 or 8
+   */
+  public static MappedSection map(FileChannel channel, long position, long numElements, int elementSize)
+    throws IOException {
+    long numBytes = numElements * elementSize;
+    int numChunks = (int) ((numBytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+    ByteBuffer[] chunks = new ByteBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long chunkStart = (long) i << CHUNK_SHIFT;
+      long chunkSize = Math.min(numBytes - chunkStart, 1L << CHUNK_SHIFT);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + chunkStart, chunkSize)
+          .order(ByteOrder.BIG_ENDIAN);
+    }
+    return new MappedSection(chunks, numElements);
+  }
+
+  public long size() {
+    return numElements;
+  }
+
+  public long getLong(long index) {
+    long pos = index << 3;
+    return chunks[(int) (pos >>> CHUNK_SHIFT)].getLong((int) (pos & CHUNK_MASK));
+  }
+
+  public double getDouble(long index) {
+    long pos = index << 3;
+    return chunks[(int) (pos >>> CHUNK_SHIFT)].getDouble((int) (pos & CHUNK_MASK));
+  }
+
+  public int getInt(long index) {
+    long pos = index << 2;
+    return chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK));
+  }
+
+  public float getFloat(long index) {
+    long pos = index << 2;
+    return chunks[(int) (pos >>> CHUNK_SHIFT)].getFloat((int) (pos & CHUNK_MASK));
+  }
+
+  /**
+   * Binary search over a sorted range of {@code long}s.
+   *
+   * @return index of {@code key} within {@code [from,to)}, or -1 if it is not present
+   */
+  public long binarySearch(long from, long to, long key) {
+    long low = from;
+    long high = to - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      long midValue = getLong(mid);
+      if (midValue < key) {
+        low = mid + 1;
+      } else if (midValue > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1L;
+  }
+
+}
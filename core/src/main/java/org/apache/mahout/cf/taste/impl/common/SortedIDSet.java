@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * An immutable set of {@code long} IDs held in a sorted array. It takes 8 bytes per ID, against about 12 for a
+ * {@link FastIDSet} at its usual load factor, and its {@link #intersectionSize(SortedIDSet)} walks both arrays in
+ * order instead of probing a hash table for every ID, which makes it the better choice for sets which are built
+ * once and mostly intersected, like the users who expressed a preference for each item in a boolean data model.
+ * </p>
+ */
+public final class SortedIDSet implements Serializable {
+
+  private static final long[] NO_IDS = new long[0];
+
+  /**
+   * When one set is at least this many times larger than the other, intersections search the larger set for
+   * each ID of the smaller one rather than merging the two.
+   */
+  private static final int GALLOP_RATIO = 16;
+
+  private final long[] ids;
+
+  private SortedIDSet(long[] ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * @param ids distinct IDs, in ascending order; the array is not copied and must not be modified afterwards
+   */
+  public static SortedIDSet wrap(long[] ids) {
+    Preconditions.checkNotNull(ids);
+    for (int i = 1; i < ids.length; i++) {
+      Preconditions.checkArgument(ids[i - 1] < ids[i], "IDs are not distinct and sorted at index %s", i);
+    }
+    return new SortedIDSet(ids);
+  }
+
+  public static SortedIDSet copyOf(FastIDSet set) {
+    long[] ids = set.toArray();
+    Arrays.sort(ids);
+    return new SortedIDSet(ids);
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public boolean isEmpty() {
+    return ids.length == 0;
+  }
+
+  /**
+   * @return the {@code index}-th smallest ID
+   */
+  public long get(int index) {
+    return ids[index];
+  }
+
+  public boolean contains(long id) {
+    return Arrays.binarySearch(ids, id) >= 0;
+  }
+
+  /**
+   * @return the IDs in ascending order
+   */
+  public LongPrimitiveIterator iterator() {
+    return new LongPrimitiveArrayIterator(ids);
+  }
+
+  public long[] toArray() {
+    return ids.length == 0 ? NO_IDS : ids.clone();
+  }
+
+  public FastIDSet toFastIDSet() {
+    FastIDSet set = new FastIDSet(ids.length);
+    for (long id : ids) {
+      set.add(id);
+    }
+    return set;
+  }
+
+  /**
+   * <p>
+   * Counts the IDs in both sets. Sets of similar size are merged, in time linear in their total size. When one is
+   * much smaller, each of its IDs is instead found in the other by galloping (doubling the step from the previous
+   * match, then binary searching), in time proportional to the smaller size times the log of the ratio of sizes.
+   * </p>
+   */
+  public int intersectionSize(SortedIDSet other) {
+    return intersectionSize(ids, 0, ids.length, other.ids, 0, other.ids.length);
+  }
+
+  /**
+   * Counts the values in both of two ranges of distinct values in ascending order, as
+   * {@link #intersectionSize(SortedIDSet)} does.
+   */
+  public static int intersectionSize(long[] a, int fromA, int toA, long[] b, int fromB, int toB) {
+    if (toA - fromA > toB - fromB) {
+      return intersectionSize(b, fromB, toB, a, fromA, toA);
+    }
+    if (fromA == toA || a[toA - 1] < b[fromB] || b[toB - 1] < a[fromA]) {
+      return 0;
+    }
+    return (toB - fromB) / (toA - fromA) >= GALLOP_RATIO
+        ? gallopCount(a, fromA, toA, b, fromB, toB)
+        : mergeCount(a, fromA, toA, b, fromB, toB);
+  }
+
+  /**
+   * Like {@link #intersectionSize(long[], int, int, long[], int, int)}, for {@code int}s such as indices of IDs.
+   */
+  public static int intersectionSize(int[] a, int fromA, int toA, int[] b, int fromB, int toB) {
+    if (toA - fromA > toB - fromB) {
+      return intersectionSize(b, fromB, toB, a, fromA, toA);
+    }
+    if (fromA == toA || a[toA - 1] < b[fromB] || b[toB - 1] < a[fromA]) {
+      return 0;
+    }
+    return (toB - fromB) / (toA - fromA) >= GALLOP_RATIO
+        ? gallopCount(a, fromA, toA, b, fromB, toB)
+        : mergeCount(a, fromA, toA, b, fromB, toB);
+  }
+
+  private static int mergeCount(long[] a, int i, int toA, long[] b, int j, int toB) {
+    int count = 0;
+    while (i < toA && j < toB) {
+      long x = a[i];
+      long y = b[j];
+      if (x == y) {
+        count++;
+        i++;
+        j++;
+      } else if (x < y) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return count;
+  }
+
+  private static int mergeCount(int[] a, int i, int toA, int[] b, int j, int toB) {
+    int count = 0;
+    while (i < toA && j < toB) {
+      int x = a[i];
+      int y = b[j];
+      if (x == y) {
+        count++;
+        i++;
+        j++;
+      } else if (x < y) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return count;
+  }
+
+  private static int gallopCount(long[] small, int fromSmall, int toSmall, long[] large, int low, int toLarge) {
+    int count = 0;
+    for (int i = fromSmall; i < toSmall; i++) {
+      long id = small[i];
+      // Find a bound past the ID by doubling steps from the last position, then search within it
+      int step = 1;
+      int high = low;
+      while (high < toLarge && large[high] < id) {
+        low = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      if (low >= toLarge) {
+        break;
+      }
+      int index = Arrays.binarySearch(large, low, Math.min(high + 1, toLarge), id);
+      if (index >= 0) {
+        count++;
+        low = index + 1;
+      } else {
+        low = -index - 1;
+      }
+    }
+    return count;
+  }
+
+  private static int gallopCount(int[] small, int fromSmall, int toSmall, int[] large, int low, int toLarge) {
+    int count = 0;
+    for (int i = fromSmall; i < toSmall; i++) {
+      int id = small[i];
+      int step = 1;
+      int high = low;
+      while (high < toLarge && large[high] < id) {
+        low = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      if (low >= toLarge) {
+        break;
+      }
+      int index = Arrays.binarySearch(large, low, Math.min(high + 1, toLarge), id);
+      if (index >= 0) {
+        count++;
+        low = index + 1;
+      } else {
+        low = -index - 1;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SortedIDSet && Arrays.equals(ids, ((SortedIDSet) o).ids);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(ids);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(ids);
+  }
+
+}
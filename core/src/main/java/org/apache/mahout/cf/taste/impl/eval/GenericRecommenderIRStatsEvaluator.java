@@ -174,25 +174,9 @@ public final class GenericRecommenderIRStatsEvaluator implements RecommenderIRSt
       }
 
       // nDCG
-      // In computing, assume relevant IDs have relevance 1 and others 0
-      double cumulativeGain = 0.0;
-      double idealizedGain = 0.0;
-      for (int i = 0; i < numRecommendedItems; i++) {
-        RecommendedItem item = recommendedItems.get(i);
-        double discount = 1.0 / log2(i + 2.0); // Classical formulation says log(i+1), but i is 0-based here
-        if (relevantItemIDs.contains(item.getItemID())) {
-          cumulativeGain += discount;
-        }
-        // otherwise we're multiplying discount by relevance 0 so it doesn't do anything
-
-        // Ideally results would be ordered with all relevant ones first, so this theoretical
-        // ideal list starts with number of relevant items equal to the total number of relevant items
-        if (i < numRelevantItems) {
-          idealizedGain += discount;
-        }
-      }
-      if (idealizedGain > 0.0) {
-        nDCG.addDatum(cumulativeGain / idealizedGain);
+      double normalizedDiscountedCumulativeGain = normalizedDiscountedCumulativeGain(recommendedItems, relevantItemIDs);
+      if (!Double.isNaN(normalizedDiscountedCumulativeGain)) {
+        nDCG.addDatum(normalizedDiscountedCumulativeGain);
       }
 
       // Reach
@@ -217,7 +201,32 @@ public final class GenericRecommenderIRStatsEvaluator implements RecommenderIRSt
         (double) numUsersWithRecommendations / (double) numUsersRecommendedFor);
   }
 
-  private static double computeThreshold(PreferenceArray prefs) {
+  /**
+   * @return the nDCG of the recommendations, or {@link Double#NaN} if there are none
+   */
+  static double normalizedDiscountedCumulativeGain(List<RecommendedItem> recommendedItems,
+                                                   FastIDSet relevantItemIDs) {
+    // In computing, assume relevant IDs have relevance 1 and others 0
+    double cumulativeGain = 0.0;
+    double idealizedGain = 0.0;
+    for (int i = 0; i < recommendedItems.size(); i++) {
+      RecommendedItem item = recommendedItems.get(i);
+      double discount = 1.0 / log2(i + 2.0); // Classical formulation says log(i+1), but i is 0-based here
+      if (relevantItemIDs.contains(item.getItemID())) {
+        cumulativeGain += discount;
+      }
+      // otherwise we're multiplying discount by relevance 0 so it doesn't do anything
+
+      // Ideally results would be ordered with all relevant ones first, so this theoretical
+      // ideal list starts with number of relevant items equal to the total number of relevant items
+      if (i < relevantItemIDs.size()) {
+        idealizedGain += discount;
+      }
+    }
+    return idealizedGain > 0.0 ? cumulativeGain / idealizedGain : Double.NaN;
+  }
+
+  static double computeThreshold(PreferenceArray prefs) {
     if (prefs.length() < 2) {
       // Not enough data points -- return a threshold that allows everything
       return Double.NEGATIVE_INFINITY;
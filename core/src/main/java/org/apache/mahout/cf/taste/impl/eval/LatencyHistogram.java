@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A histogram of non-negative {@code long} values, like latencies in nanoseconds, which takes constant time and no
+ * allocation to record a value and reports percentiles within about 1.6% of the true value, whatever their
+ * magnitude. As in HdrHistogram, values below 128 are counted exactly, and larger values in buckets of width
+ * {@code 2^k}, 64 of them for each {@code k}, so that each bucket is at most 1/64th of its lowest value wide.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe; have each thread record into its own histogram and {@link #add(LatencyHistogram)}
+ * them together.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int EXACT = 2 * SUB_BUCKETS;
+  private static final int NUM_BUCKETS = EXACT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final long[] counts = new long[NUM_BUCKETS];
+  private long totalCount;
+  private double sum;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  public void recordValue(long value) {
+    Preconditions.checkArgument(value >= 0, "Negative value: %s", value);
+    counts[index(value)]++;
+    totalCount++;
+    sum += value;
+    if (value < min) {
+      min = value;
+    }
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  /**
+   * Adds all values recorded in another histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return mean of the recorded values, or {@link Double#NaN} if there are none
+   */
+  public double getMean() {
+    return totalCount == 0 ? Double.NaN : sum / totalCount;
+  }
+
+  /**
+   * @return smallest recorded value, or 0 if there are none
+   */
+  public long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  /**
+   * @return largest recorded value, or 0 if there are none
+   */
+  public long getMax() {
+    return totalCount == 0 ? 0 : max;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the largest value which may be counted in the same bucket as the value below which the given
+   *  percentage of the recorded values lie, capped at the largest recorded value; 0 if there are none
+   */
+  public long getValueAtPercentile(double percentile) {
+    Preconditions.checkArgument(percentile >= 0.0 && percentile <= 100.0, "Invalid percentile: %s", percentile);
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  static int index(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    // Shift so that the value keeps its SUB_BUCKET_BITS + 1 most significant bits, of which the top one is set
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < EXACT) {
+      return index;
+    }
+    int shift = (index - EXACT) / SUB_BUCKETS + 1;
+    long lowest = (long) ((index - EXACT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.common.RandomUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A load test for any {@link Recommender}, which unlike {@link LoadEvaluator} reports the distribution of
+ * latencies rather than just their mean, and can drive the recommender at a fixed rate.
+ * </p>
+ *
+ * <p>
+ * Requests are made for the users of the recommender's {@link DataModel}, in random order, by a fixed number of
+ * threads. With a positive {@code requestsPerSecond} the test is open-loop: request {@code k} is due at
+ * {@code k / requestsPerSecond} seconds after the start, whether or not earlier requests have completed, and its
+ * latency is measured from when it was due. A recommender which can't keep up is thus charged for the time requests
+ * wait for a thread, as its users would be, rather than being sent fewer requests. Otherwise the test is
+ * closed-loop: each thread sends its next request as soon as the previous one completes, which measures maximum
+ * throughput but understates latency under load.
+ * </p>
+ *
+ * <p>
+ * Requests due during the warmup period are made but not recorded, so that the statistics exclude class loading,
+ * JIT compilation and cache filling. Where the JVM can count the bytes allocated by each thread, the statistics also
+ * include the mean allocation per request.
+ * </p>
+ */
+public final class LatencyLoadEvaluator {
+
+  private static final Logger log = LoggerFactory.getLogger(LatencyLoadEvaluator.class);
+
+  private final int numThreads;
+  private final double requestsPerSecond;
+  private final long warmupMS;
+  private final long durationMS;
+
+  /**
+   * Runs a closed-loop test with as many threads as there are processors, warming up for 5 seconds then measuring
+   * for 30.
+   */
+  public LatencyLoadEvaluator() {
+    this(Runtime.getRuntime().availableProcessors(), 0.0, 5000L, 30000L);
+  }
+
+  /**
+   * @param numThreads number of requests which may be in progress at the same time
+   * @param requestsPerSecond rate at which requests are due, or 0 to send them as fast as they complete
+   * @param warmupMS time during which requests are made but not recorded
+   * @param durationMS time during which requests are recorded, after the warmup
+   */
+  public LatencyLoadEvaluator(int numThreads, double requestsPerSecond, long warmupMS, long durationMS) {
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(requestsPerSecond >= 0.0, "requestsPerSecond must not be negative");
+    Preconditions.checkArgument(warmupMS >= 0L, "warmupMS must not be negative");
+    Preconditions.checkArgument(durationMS > 0L, "durationMS must be positive");
+    this.numThreads = numThreads;
+    this.requestsPerSecond = requestsPerSecond;
+    this.warmupMS = warmupMS;
+    this.durationMS = durationMS;
+  }
+
+  public LatencyStatistics runLoad(Recommender recommender) throws TasteException {
+    return runLoad(recommender, 10);
+  }
+
+  public LatencyStatistics runLoad(Recommender recommender, int howMany) throws TasteException {
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    DataModel dataModel = recommender.getDataModel();
+    long[] userIDs = new long[dataModel.getNumUsers()];
+    Preconditions.checkArgument(userIDs.length > 0, "No users");
+    LongPrimitiveIterator it = dataModel.getUserIDs();
+    for (int i = 0; i < userIDs.length; i++) {
+      userIDs[i] = it.nextLong();
+    }
+    shuffle(userIDs, RandomUtils.getRandom());
+
+    log.info("Running load on {} with {} threads at {} requests/s", recommender, numThreads,
+        requestsPerSecond > 0.0 ? requestsPerSecond : "maximum");
+    long start = System.nanoTime();
+    long warmupEnd = start + TimeUnit.MILLISECONDS.toNanos(warmupMS);
+    long end = warmupEnd + TimeUnit.MILLISECONDS.toNanos(durationMS);
+    double nanosPerRequest = requestsPerSecond > 0.0 ? 1.0e9 / requestsPerSecond : 0.0;
+    AtomicLong nextRequest = new AtomicLong();
+    List<Worker> workers = Lists.newArrayListWithCapacity(numThreads);
+    for (int n = 0; n < numThreads; n++) {
+      workers.add(new Worker(recommender, howMany, userIDs, nextRequest, start, nanosPerRequest, warmupEnd, end));
+    }
+    execute(workers);
+
+    LatencyHistogram latencies = new LatencyHistogram();
+    long numErrors = 0;
+    long lastCompletion = warmupEnd;
+    long allocatedBytes = 0;
+    boolean allocationCounted = AllocationCounter.isSupported();
+    for (Worker worker : workers) {
+      latencies.add(worker.latencies);
+      numErrors += worker.numErrors;
+      lastCompletion = Math.max(lastCompletion, worker.lastCompletion);
+      allocatedBytes += worker.allocatedBytes;
+    }
+    long numRequests = latencies.getTotalCount() + numErrors;
+    double measuredSeconds = (lastCompletion - warmupEnd) / 1.0e9;
+    LatencyStatistics statistics = new LatencyStatistics(latencies,
+                                                         numErrors,
+                                                         numRequests / measuredSeconds,
+                                                         allocationCounted && numRequests > 0
+                                                             ? (double) allocatedBytes / numRequests
+                                                             : Double.NaN);
+    log.info("{}", statistics);
+    return statistics;
+  }
+
+  private static void shuffle(long[] values, Random random) {
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      long swap = values[i];
+      values[i] = values[j];
+      values[j] = swap;
+    }
+  }
+
+  private void execute(List<Worker> workers) throws TasteException {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (Future<Void> future : executor.invokeAll(workers)) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      throw new TasteException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static final class Worker implements Callable<Void> {
+
+    private final Recommender recommender;
+    private final int howMany;
+    private final long[] userIDs;
+    private final AtomicLong nextRequest;
+    private final long start;
+    private final double nanosPerRequest;
+    private final long warmupEnd;
+    private final long end;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private long numErrors;
+    private long lastCompletion;
+    private long allocatedBytes;
+
+    private Worker(Recommender recommender, int howMany, long[] userIDs, AtomicLong nextRequest, long start,
+        double nanosPerRequest, long warmupEnd, long end) {
+      this.recommender = recommender;
+      this.howMany = howMany;
+      this.userIDs = userIDs;
+      this.nextRequest = nextRequest;
+      this.start = start;
+      this.nanosPerRequest = nanosPerRequest;
+      this.warmupEnd = warmupEnd;
+      this.end = end;
+    }
+
+    @Override
+    public Void call() {
+      boolean openLoop = nanosPerRequest > 0.0;
+      long allocatedAtWarmupEnd = -1L;
+      while (true) {
+        long request = nextRequest.getAndIncrement();
+        long due = openLoop ? start + (long) (request * nanosPerRequest) : System.nanoTime();
+        if (due - end >= 0) {
+          break;
+        }
+        long now;
+        while ((now = System.nanoTime()) - due < 0) {
+          LockSupport.parkNanos(due - now);
+        }
+        boolean measured = due - warmupEnd >= 0;
+        if (measured && allocatedAtWarmupEnd < 0) {
+          allocatedAtWarmupEnd = AllocationCounter.allocatedBytes();
+        }
+        long userID = userIDs[(int) (request % userIDs.length)];
+        boolean failed = false;
+        try {
+          recommender.recommend(userID, howMany);
+        } catch (TasteException te) {
+          failed = true;
+        }
+        long completion = System.nanoTime();
+        if (measured) {
+          if (failed) {
+            numErrors++;
+          } else {
+            latencies.recordValue(completion - due);
+          }
+          lastCompletion = completion;
+        }
+      }
+      if (allocatedAtWarmupEnd >= 0) {
+        allocatedBytes = AllocationCounter.allocatedBytes() - allocatedAtWarmupEnd;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Reads the bytes allocated by the current thread through {@code com.sun.management.ThreadMXBean}, by
+   * reflection since it is not available on all JVMs.
+   */
+  private static final class AllocationCounter {
+
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method GET_THREAD_ALLOCATED_BYTES = findMethod();
+
+    private AllocationCounter() {
+    }
+
+    private static Method findMethod() {
+      try {
+        Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+        if (!beanClass.isInstance(BEAN)
+            || !(Boolean) beanClass.getMethod("isThreadAllocatedMemorySupported").invoke(BEAN)) {
+          return null;
+        }
+        if (!(Boolean) beanClass.getMethod("isThreadAllocatedMemoryEnabled").invoke(BEAN)) {
+          beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(BEAN, true);
+        }
+        return beanClass.getMethod("getThreadAllocatedBytes", long.class);
+      } catch (ClassNotFoundException cnfe) {
+        return null;
+      } catch (NoSuchMethodException nsme) {
+        return null;
+      } catch (IllegalAccessException iae) {
+        return null;
+      } catch (InvocationTargetException ite) {
+        // Not permitted to enable counting
+        return null;
+      }
+    }
+
+    static boolean isSupported() {
+      return GET_THREAD_ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or 0 if this can't be determined
+     */
+    static long allocatedBytes() {
+      if (GET_THREAD_ALLOCATED_BYTES == null) {
+        return 0L;
+      }
+      try {
+        return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(BEAN, Thread.currentThread().getId());
+      } catch (IllegalAccessException iae) {
+        throw new IllegalStateException(iae);
+      } catch (InvocationTargetException ite) {
+        throw new IllegalStateException(ite.getCause());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Map;
+
+/**
+ * <p>
+ * Results of a {@link LatencyLoadEvaluator} run. Latencies are in nanoseconds; {@link #toString()} and
+ * {@link #formatReport(Map)} show them in milliseconds.
+ * </p>
+ */
+public final class LatencyStatistics {
+
+  private static final String REPORT_FORMAT = "%-30s %10s %8s %10s %10s %10s %10s %10s %10s %12s%n";
+
+  private final LatencyHistogram latencies;
+  private final long numErrors;
+  private final double throughput;
+  private final double allocatedBytesPerRequest;
+
+  LatencyStatistics(LatencyHistogram latencies, long numErrors, double throughput,
+                    double allocatedBytesPerRequest) {
+    this.latencies = latencies;
+    this.numErrors = numErrors;
+    this.throughput = throughput;
+    this.allocatedBytesPerRequest = allocatedBytesPerRequest;
+  }
+
+  /**
+   * @return latencies of the requests which completed without error
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * @return number of requests which threw a {@link org.apache.mahout.cf.taste.common.TasteException}
+   */
+  public long getNumErrors() {
+    return numErrors;
+  }
+
+  /**
+   * @return requests completed per second, including those which failed
+   */
+  public double getThroughput() {
+    return throughput;
+  }
+
+  /**
+   * @return mean number of bytes allocated per request, or {@link Double#NaN} if the JVM can't tell
+   */
+  public double getAllocatedBytesPerRequest() {
+    return allocatedBytesPerRequest;
+  }
+
+  /**
+   * Formats the statistics of several runs, for instance of different recommenders on the same data, as a table
+   * with one row per run.
+   *
+   * @param statisticsByName statistics of each run, by the name under which to show them
+   */
+  public static String formatReport(Map<String,LatencyStatistics> statisticsByName) {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format(REPORT_FORMAT,
+        "", "requests", "errors", "req/s", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "bytes/req"));
+    for (Map.Entry<String,LatencyStatistics> entry : statisticsByName.entrySet()) {
+      LatencyStatistics statistics = entry.getValue();
+      LatencyHistogram latencies = statistics.latencies;
+      report.append(String.format(REPORT_FORMAT,
+          entry.getKey(),
+          latencies.getTotalCount(),
+          statistics.numErrors,
+          String.format("%.1f", statistics.throughput),
+          millis(latencies.getMean()),
+          millis(latencies.getValueAtPercentile(50.0)),
+          millis(latencies.getValueAtPercentile(99.0)),
+          millis(latencies.getValueAtPercentile(99.9)),
+          millis(latencies.getMax()),
+          Double.isNaN(statistics.allocatedBytesPerRequest)
+              ? "n/a" : String.format("%.0f", statistics.allocatedBytesPerRequest)));
+    }
+    return report.toString();
+  }
+
+  /**
+   * @return the time in milliseconds, or "n/a" for the mean of no requests
+   */
+  private static String millis(double nanos) {
+    return Double.isNaN(nanos) ? "n/a" : String.format("%.3f", nanos / 1.0e6);
+  }
+
+  /**
+   * Leaves out the bytes allocated per request if they were not counted, or there were no requests.
+   */
+  @Override
+  public String toString() {
+    return "LatencyStatistics[requests:" + latencies.getTotalCount()
+        + ", errors:" + numErrors
+        + ", requests/s:" + String.format("%.1f", throughput)
+        + ", mean:" + millis(latencies.getMean())
+        + "ms, p50:" + millis(latencies.getValueAtPercentile(50.0))
+        + "ms, p99:" + millis(latencies.getValueAtPercentile(99.0))
+        + "ms, p99.9:" + millis(latencies.getValueAtPercentile(99.9))
+        + "ms, max:" + millis(latencies.getMax()) + "ms"
+        + (Double.isNaN(allocatedBytesPerRequest)
+            ? "" : ", bytes/request:" + String.format("%.0f", allocatedBytesPerRequest))
+        + ']';
+  }
+
+}
@@ -25,15 +25,17 @@ final class LoadCallable implements Callable<Void> {
 
   private final Recommender recommender;
   private final long userID;
+  private final int howMany;
 
-  LoadCallable(Recommender recommender, long userID) {
+  LoadCallable(Recommender recommender, long userID, int howMany) {
     this.recommender = recommender;
     this.userID = userID;
+    this.howMany = howMany;
   }
 
   @Override
   public Void call() throws Exception {
-    recommender.recommend(userID, 10);
+    recommender.recommend(userID, howMany);
     return null;
   }
 
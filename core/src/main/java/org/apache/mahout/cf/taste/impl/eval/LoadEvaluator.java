@@ -50,7 +50,7 @@ public final class LoadEvaluator {
     recommender.recommend(userSampler.next(), howMany); // Warm up
     Collection<Callable<Void>> callables = Lists.newArrayList();
     while (userSampler.hasNext()) {
-      callables.add(new LoadCallable(recommender, userSampler.next()));
+      callables.add(new LoadCallable(recommender, userSampler.next(), howMany));
     }
     AtomicInteger noEstimateCounter = new AtomicInteger();
     RunningAverageAndStdDev timing = new FullRunningAverageAndStdDev();
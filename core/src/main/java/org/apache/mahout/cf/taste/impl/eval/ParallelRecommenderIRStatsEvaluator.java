@@ -0,0 +1,348 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.eval.DataModelBuilder;
+import org.apache.mahout.cf.taste.eval.IRStatistics;
+import org.apache.mahout.cf.taste.eval.RecommenderBuilder;
+import org.apache.mahout.cf.taste.eval.RecommenderIRStatsEvaluator;
+import org.apache.mahout.cf.taste.eval.RelevantItemsDataSplitter;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.common.RunningAverageAndStdDev;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.MurmurHash3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Evaluates the same IR statistics as {@link GenericRecommenderIRStatsEvaluator}, but holds out the relevant items
+ * of all evaluated users at once: the training {@link DataModel} and the {@link Recommender} are built once, instead
+ * of once per user, and users are then evaluated in parallel. This is much faster, but each user's recommendations
+ * come from a model that also lacks the other evaluated users' relevant items, so results are somewhat lower than
+ * those of {@link GenericRecommenderIRStatsEvaluator}, and more so when {@code evaluationPercentage} is large.
+ * </p>
+ *
+ * <p>
+ * Whether a user is evaluated depends only on the seed and the user's ID, and statistics are accumulated in order
+ * of user ID once all users are evaluated, so that results are the same for a given seed whatever the number of
+ * threads, provided the recommender is deterministic.
+ * </p>
+ *
+ * <p>
+ * The time taken by each stage of the last evaluation is available from {@link #getSplitTiming()},
+ * {@link #getBuildTiming()} and {@link #getRecommendTiming()}.
+ * </p>
+ */
+public final class ParallelRecommenderIRStatsEvaluator implements RecommenderIRStatsEvaluator {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelRecommenderIRStatsEvaluator.class);
+
+  private static final int LOG_EVERY = 1000;
+
+  private final RelevantItemsDataSplitter dataSplitter;
+  private final long seed;
+  private final int numThreads;
+  private RunningAverage splitTiming;
+  private RunningAverage buildTiming;
+  private RunningAverageAndStdDev recommendTiming;
+
+  /**
+   * Uses a random seed and as many threads as there are processors.
+   */
+  public ParallelRecommenderIRStatsEvaluator() {
+    this(new GenericRelevantItemsDataSplitter(), RandomUtils.getRandom().nextLong(),
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param seed determines which users are evaluated
+   * @param numThreads number of users evaluated at the same time
+   */
+  public ParallelRecommenderIRStatsEvaluator(long seed, int numThreads) {
+    this(new GenericRelevantItemsDataSplitter(), seed, numThreads);
+  }
+
+  public ParallelRecommenderIRStatsEvaluator(RelevantItemsDataSplitter dataSplitter, long seed, int numThreads) {
+    Preconditions.checkNotNull(dataSplitter);
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    this.dataSplitter = dataSplitter;
+    this.seed = seed;
+    this.numThreads = numThreads;
+  }
+
+  @Override
+  public IRStatistics evaluate(RecommenderBuilder recommenderBuilder,
+                               DataModelBuilder dataModelBuilder,
+                               DataModel dataModel,
+                               IDRescorer rescorer,
+                               int at,
+                               double relevanceThreshold,
+                               double evaluationPercentage) throws TasteException {
+
+    Preconditions.checkArgument(recommenderBuilder != null, "recommenderBuilder is null");
+    Preconditions.checkArgument(dataModel != null, "dataModel is null");
+    Preconditions.checkArgument(at >= 1, "at must be at least 1");
+    Preconditions.checkArgument(evaluationPercentage > 0.0 && evaluationPercentage <= 1.0,
+        "Invalid evaluationPercentage: " + evaluationPercentage + ". Must be: 0.0 < evaluationPercentage <= 1.0");
+
+    splitTiming = new FullRunningAverage();
+    buildTiming = new FullRunningAverage();
+    recommendTiming = new FullRunningAverageAndStdDev();
+
+    // Split: hold out the relevant items of the users to evaluate
+    long start = System.currentTimeMillis();
+    long[] userIDs = new long[dataModel.getNumUsers()];
+    LongPrimitiveIterator it = dataModel.getUserIDs();
+    for (int i = 0; i < userIDs.length; i++) {
+      userIDs[i] = it.nextLong();
+    }
+    Arrays.sort(userIDs);
+    List<TestUser> testUsers = Lists.newArrayList();
+    FastByIDMap<PreferenceArray> trainingUsers = new FastByIDMap<PreferenceArray>(userIDs.length);
+    for (long userID : userIDs) {
+      FastIDSet relevantItemIDs = null;
+      if (isEvaluated(userID, evaluationPercentage)) {
+        PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+        double theRelevanceThreshold = Double.isNaN(relevanceThreshold)
+            ? GenericRecommenderIRStatsEvaluator.computeThreshold(prefs)
+            : relevanceThreshold;
+        relevantItemIDs = dataSplitter.getRelevantItemsIDs(userID, at, theRelevanceThreshold, dataModel);
+      }
+      if (relevantItemIDs != null && !relevantItemIDs.isEmpty()) {
+        testUsers.add(new TestUser(userID, relevantItemIDs));
+        dataSplitter.processOtherUser(userID, relevantItemIDs, trainingUsers, userID, dataModel);
+      } else {
+        trainingUsers.put(userID, dataModel.getPreferencesFromUser(userID));
+      }
+    }
+    splitTiming.addDatum(System.currentTimeMillis() - start);
+    log.info("Holding out relevant items of {} of {} users took {}ms", testUsers.size(), userIDs.length,
+        (long) splitTiming.getAverage());
+
+    // Build the training model and recommender once
+    start = System.currentTimeMillis();
+    DataModel trainingModel = dataModelBuilder == null ? new GenericDataModel(trainingUsers)
+        : dataModelBuilder.buildDataModel(trainingUsers);
+    Recommender recommender = recommenderBuilder.buildRecommender(trainingModel);
+    buildTiming.addDatum(System.currentTimeMillis() - start);
+    log.info("Building recommender took {}ms", (long) buildTiming.getAverage());
+
+    // Recommend to all test users in parallel
+    AtomicInteger nextUser = new AtomicInteger();
+    AtomicInteger numEvaluated = new AtomicInteger();
+    List<Callable<Void>> workers = Lists.newArrayListWithCapacity(numThreads);
+    for (int n = 0; n < numThreads; n++) {
+      workers.add(new Worker(testUsers, nextUser, numEvaluated, recommender, trainingModel, rescorer, at));
+    }
+    execute(workers);
+
+    // Accumulate in order, so that results don't depend on the order in which users were evaluated
+    int numItems = dataModel.getNumItems();
+    RunningAverage precision = new FullRunningAverage();
+    RunningAverage recall = new FullRunningAverage();
+    RunningAverage fallOut = new FullRunningAverage();
+    RunningAverage nDCG = new FullRunningAverage();
+    int numUsersRecommendedFor = 0;
+    int numUsersWithRecommendations = 0;
+    for (TestUser testUser : testUsers) {
+      if (testUser.recommendedItems == null) {
+        continue;
+      }
+      recommendTiming.addDatum(testUser.timeMS);
+      int numRelevantItems = testUser.relevantItemIDs.size();
+      int numRecommendedItems = testUser.recommendedItems.size();
+      int intersectionSize = 0;
+      for (RecommendedItem recommendedItem : testUser.recommendedItems) {
+        if (testUser.relevantItemIDs.contains(recommendedItem.getItemID())) {
+          intersectionSize++;
+        }
+      }
+      if (numRecommendedItems > 0) {
+        precision.addDatum((double) intersectionSize / (double) numRecommendedItems);
+      }
+      recall.addDatum((double) intersectionSize / (double) numRelevantItems);
+      if (numRelevantItems < testUser.size) {
+        fallOut.addDatum((double) (numRecommendedItems - intersectionSize)
+                         / (double) (numItems - numRelevantItems));
+      }
+      double normalizedDiscountedCumulativeGain = GenericRecommenderIRStatsEvaluator
+          .normalizedDiscountedCumulativeGain(testUser.recommendedItems, testUser.relevantItemIDs);
+      if (!Double.isNaN(normalizedDiscountedCumulativeGain)) {
+        nDCG.addDatum(normalizedDiscountedCumulativeGain);
+      }
+      numUsersRecommendedFor++;
+      if (numRecommendedItems > 0) {
+        numUsersWithRecommendations++;
+      }
+    }
+    log.info("Evaluated {} users in {}ms per user on average", numUsersRecommendedFor,
+        recommendTiming.getAverage());
+    log.info("Precision/recall/fall-out/nDCG/reach: {} / {} / {} / {} / {}",
+             precision.getAverage(), recall.getAverage(), fallOut.getAverage(), nDCG.getAverage(),
+             (double) numUsersWithRecommendations / (double) numUsersRecommendedFor);
+
+    return new IRStatisticsImpl(
+        precision.getAverage(),
+        recall.getAverage(),
+        fallOut.getAverage(),
+        nDCG.getAverage(),
+        (double) numUsersWithRecommendations / (double) numUsersRecommendedFor);
+  }
+
+  /**
+   * @return time in milliseconds taken to hold out relevant items in the last evaluation
+   */
+  public RunningAverage getSplitTiming() {
+    return splitTiming;
+  }
+
+  /**
+   * @return time in milliseconds taken to build the training model and recommender in the last evaluation
+   */
+  public RunningAverage getBuildTiming() {
+    return buildTiming;
+  }
+
+  /**
+   * @return time in milliseconds taken to recommend to each evaluated user in the last evaluation
+   */
+  public RunningAverageAndStdDev getRecommendTiming() {
+    return recommendTiming;
+  }
+
+  /**
+   * Picks a user with probability {@code evaluationPercentage}, using a hash of the seed and the user ID rather
+   * than a shared random number generator so that the choice doesn't depend on the order of users.
+   */
+  private boolean isEvaluated(long userID, double evaluationPercentage) {
+    long hash = MurmurHash3.fmix64(seed + 0x9e3779b97f4a7c15L * userID);
+    return (hash >>> 11) * 0x1.0p-53 < evaluationPercentage;
+  }
+
+  private void execute(List<Callable<Void>> workers) throws TasteException {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (Future<Void> future : executor.invokeAll(workers)) {
+        future.get();
+      }
+    } catch (InterruptedException ie) {
+      throw new TasteException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof TasteException) {
+        throw (TasteException) cause;
+      }
+      throw new TasteException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * A user to evaluate, its held out items and, once evaluated, its recommendations.
+   */
+  private static final class TestUser {
+
+    private final long userID;
+    private final FastIDSet relevantItemIDs;
+    /** Number of relevant and training items; set when evaluated */
+    private int size;
+    /** Null if the user could not be evaluated */
+    private List<RecommendedItem> recommendedItems;
+    private long timeMS;
+
+    private TestUser(long userID, FastIDSet relevantItemIDs) {
+      this.userID = userID;
+      this.relevantItemIDs = relevantItemIDs;
+    }
+  }
+
+  private static final class Worker implements Callable<Void> {
+
+    private final List<TestUser> testUsers;
+    private final AtomicInteger nextUser;
+    private final AtomicInteger numEvaluated;
+    private final Recommender recommender;
+    private final DataModel trainingModel;
+    private final IDRescorer rescorer;
+    private final int at;
+
+    private Worker(List<TestUser> testUsers, AtomicInteger nextUser, AtomicInteger numEvaluated,
+        Recommender recommender, DataModel trainingModel, IDRescorer rescorer, int at) {
+      this.testUsers = testUsers;
+      this.nextUser = nextUser;
+      this.numEvaluated = numEvaluated;
+      this.recommender = recommender;
+      this.trainingModel = trainingModel;
+      this.rescorer = rescorer;
+      this.at = at;
+    }
+
+    @Override
+    public Void call() throws TasteException {
+      int index;
+      while ((index = nextUser.getAndIncrement()) < testUsers.size()) {
+        TestUser testUser = testUsers.get(index);
+        long start = System.currentTimeMillis();
+        int numTrainingItems;
+        try {
+          numTrainingItems = trainingModel.getItemIDsFromUser(testUser.userID).size();
+        } catch (NoSuchUserException nsue) {
+          continue; // Oops we excluded all prefs for the user -- just move on
+        }
+        testUser.size = testUser.relevantItemIDs.size() + numTrainingItems;
+        if (testUser.size < 2 * at) {
+          // Really not enough prefs to meaningfully evaluate this user
+          continue;
+        }
+        testUser.recommendedItems = recommender.recommend(testUser.userID, at, rescorer);
+        testUser.timeMS = System.currentTimeMillis() - start;
+        if (numEvaluated.incrementAndGet() % LOG_EVERY == 0) {
+          log.info("Evaluated {} of {} users", numEvaluated.get(), testUsers.size());
+        }
+      }
+      return null;
+    }
+  }
+
+}
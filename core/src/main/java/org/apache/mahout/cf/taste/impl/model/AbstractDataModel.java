@@ -17,15 +17,21 @@
 
 package org.apache.mahout.cf.taste.impl.model;
 
+import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.apache.mahout.cf.taste.model.PreferenceChangeNotifier;
 
 /**
- * Contains some features common to all implementations.
+ * Contains some features common to all implementations. Subclasses which support
+ * {@link #setPreference(long, long, float)} or {@link #removePreference(long, long)} should call
+ * {@link #firePreferencesChanged(long)} after each change.
  */
-public abstract class AbstractDataModel implements DataModel {
+public abstract class AbstractDataModel implements DataModel, PreferenceChangeNotifier {
 
   private float maxPreference;
   private float minPreference;
+  private final PreferenceChangeSupport preferenceChangeSupport = new PreferenceChangeSupport();
 
   protected AbstractDataModel() {
     maxPreference = Float.NaN;
@@ -50,4 +56,21 @@ public abstract class AbstractDataModel implements DataModel {
     this.minPreference = minPreference;
   }
 
+  @Override
+  public void addPreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.addListener(listener);
+  }
+
+  @Override
+  public void removePreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.removeListener(listener);
+  }
+
+  /**
+   * Notifies the {@link PreferenceChangeListener}s that the preferences of the user changed.
+   */
+  protected void firePreferencesChanged(long userID) throws TasteException {
+    preferenceChangeSupport.firePreferencesChanged(userID);
+  }
+
 }
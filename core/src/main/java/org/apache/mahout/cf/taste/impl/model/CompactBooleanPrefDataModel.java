@@ -0,0 +1,1078 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.SortedIDSet;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.iterator.CountingIterator;
+import org.apache.mahout.common.iterator.FileLineIterator;
+
+/**
+ * <p>
+ * A {@link DataModel} without preference values, like {@link GenericBooleanPrefDataModel}, for large data sets.
+ * Users and items are numbered in order of ID, and the items of each user and the users of each item are held as
+ * sorted arrays of these numbers, concatenated into one {@code int[]} for all users and one for all items
+ * (compressed sparse rows). This takes about 8 bytes per preference, against several times that for the hash sets
+ * of {@link GenericBooleanPrefDataModel}, and {@link #getNumUsersWithPreferenceFor(long, long)} merges two sorted
+ * arrays.
+ * </p>
+ *
+ * <p>
+ * Optionally, the rows are stored compressed, as differences between consecutive numbers in a variable-length
+ * encoding; this typically takes 2 to 4 bytes per preference in all, at the cost of decoding rows when they are
+ * read. Uncompressed, the total number of preferences must be less than 2<sup>31</sup>; compressed, only the
+ * number of users and of items are so limited.
+ * </p>
+ *
+ * <p>
+ * {@link #getPreferencesFromUser(long)} and {@link #getPreferencesForItem(long)} return read-only views of the
+ * rows, which copy nothing; their setters throw {@link UnsupportedOperationException}, and {@link
+ * PreferenceArray#clone()} returns a modifiable copy. Their preferences are sorted by ID.
+ * </p>
+ */
+public final class CompactBooleanPrefDataModel extends AbstractDataModel {
+
+  private static final int MAX_PREFERENCES = Integer.MAX_VALUE - 8;
+  /** Least number of preferences read into memory at once while building. */
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 24;
+  private static final char COMMENT_CHAR = '#';
+
+  private final long[] userIDs;
+  private final long[] itemIDs;
+  private final Rows itemsOfUsers;
+  private final Rows usersOfItems;
+
+  /**
+   * @param userData item IDs of each user
+   */
+  public CompactBooleanPrefDataModel(FastByIDMap<FastIDSet> userData) {
+    this(userData, false);
+  }
+
+  /**
+   * @param userData item IDs of each user
+   * @param compressed store rows compressed
+   */
+  public CompactBooleanPrefDataModel(FastByIDMap<FastIDSet> userData, boolean compressed) {
+    this(build(userData, compressed));
+  }
+
+  /**
+   * Copies the users and item IDs of another {@link DataModel}, ignoring any preference values.
+   *
+   * @param compressed store rows compressed
+   */
+  public CompactBooleanPrefDataModel(final DataModel dataModel, boolean compressed) throws TasteException {
+    this(new Builder(new Source() {
+      @Override
+      public void read(PairHandler handler) throws TasteException {
+        LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+        while (userIDs.hasNext()) {
+          long userID = userIDs.nextLong();
+          handler.addUser(userID);
+          LongPrimitiveIterator itemIDs = dataModel.getItemIDsFromUser(userID).iterator();
+          while (itemIDs.hasNext()) {
+            handler.add(userID, itemIDs.nextLong());
+          }
+        }
+      }
+    }, compressed, DEFAULT_BUFFER_SIZE));
+  }
+
+  /**
+   * Reads the user and item IDs of preferences, ignoring their values, without holding them all in memory; the
+   * iterable is read more than once, and may be in any order and repeat preferences.
+   *
+   * @param compressed store rows compressed
+   */
+  public CompactBooleanPrefDataModel(Iterable<? extends Preference> preferences, boolean compressed) {
+    this(preferences, compressed, DEFAULT_BUFFER_SIZE);
+  }
+
+  CompactBooleanPrefDataModel(Iterable<? extends Preference> preferences, boolean compressed, int bufferSize) {
+    this(build(preferences, compressed, bufferSize));
+  }
+
+  /**
+   * Reads a file of "userID,itemID" lines, like those of {@link FileDataModel} and separated by commas or tabs,
+   * ignoring any further fields, without holding all of its preferences in memory. Empty lines and lines starting
+   * with '#' are skipped. The file is read more than once.
+   *
+   * @param compressed store rows compressed
+   * @throws IllegalArgumentException if a line has no delimiter
+   */
+  public CompactBooleanPrefDataModel(File dataFile, boolean compressed) throws IOException {
+    this(build(dataFile, compressed));
+  }
+
+  private CompactBooleanPrefDataModel(Builder builder) {
+    userIDs = builder.userIDs;
+    itemIDs = builder.itemIDs;
+    itemsOfUsers = builder.itemsOfUsers;
+    usersOfItems = builder.usersOfItems;
+  }
+
+  private static Builder build(final FastByIDMap<FastIDSet> userData, boolean compressed) {
+    try {
+      return new Builder(new Source() {
+        @Override
+        public void read(PairHandler handler) {
+          for (Map.Entry<Long,FastIDSet> entry : userData.entrySet()) {
+            long userID = entry.getKey();
+            handler.addUser(userID);
+            LongPrimitiveIterator itemIDs = entry.getValue().iterator();
+            while (itemIDs.hasNext()) {
+              handler.add(userID, itemIDs.nextLong());
+            }
+          }
+        }
+      }, compressed, DEFAULT_BUFFER_SIZE);
+    } catch (TasteException te) {
+      // Can't happen; the source reads only the map
+      throw new IllegalStateException(te);
+    }
+  }
+
+  private static Builder build(final Iterable<? extends Preference> preferences,
+                               boolean compressed,
+                               int bufferSize) {
+    try {
+      return new Builder(new Source() {
+        @Override
+        public void read(PairHandler handler) {
+          for (Preference preference : preferences) {
+            handler.add(preference.getUserID(), preference.getItemID());
+          }
+        }
+      }, compressed, bufferSize);
+    } catch (TasteException te) {
+      // Can't happen; the source reads only the iterable
+      throw new IllegalStateException(te);
+    }
+  }
+
+  private static Builder build(final File dataFile, boolean compressed) throws IOException {
+    try {
+      return new Builder(new Source() {
+        @Override
+        public void read(PairHandler handler) throws TasteException {
+          try {
+            readFile(dataFile, handler);
+          } catch (IOException ioe) {
+            throw new TasteException(ioe);
+          }
+        }
+      }, compressed, DEFAULT_BUFFER_SIZE);
+    } catch (TasteException te) {
+      Throwables.propagateIfPossible(te.getCause(), IOException.class);
+      throw new IOException(te);
+    }
+  }
+
+  private static void readFile(File dataFile, PairHandler handler) throws IOException {
+    FileLineIterator lines = new FileLineIterator(dataFile);
+    try {
+      char delimiter = 0;
+      while (lines.hasNext()) {
+        String line = lines.next();
+        if (line.isEmpty() || line.charAt(0) == COMMENT_CHAR) {
+          continue;
+        }
+        if (delimiter == 0) {
+          delimiter = FileDataModel.determineDelimiter(line);
+        }
+        int userEnd = line.indexOf(delimiter);
+        if (userEnd < 0) {
+          throw new IllegalArgumentException("Did not find a delimiter in line of " + dataFile + ": " + line);
+        }
+        int itemEnd = line.indexOf(delimiter, userEnd + 1);
+        if (itemEnd < 0) {
+          itemEnd = line.length();
+        }
+        handler.add(Long.parseLong(line.substring(0, userEnd).trim()),
+                    Long.parseLong(line.substring(userEnd + 1, itemEnd).trim()));
+      }
+    } finally {
+      Closeables.close(lines, true);
+    }
+  }
+
+  /**
+   * @return approximate number of bytes taken by the rows of users and items
+   */
+  long rowBytes() {
+    return itemsOfUsers.sizeInBytes() + usersOfItems.sizeInBytes();
+  }
+
+  private int userIndex(long userID) {
+    return Arrays.binarySearch(userIDs, userID);
+  }
+
+  private int itemIndex(long itemID) {
+    return Arrays.binarySearch(itemIDs, itemID);
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() {
+    return new LongPrimitiveArrayIterator(userIDs);
+  }
+
+  /**
+   * @return a read-only view of the user's preferences, sorted by item ID
+   * @throws NoSuchUserException if there is no such user
+   */
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws NoSuchUserException {
+    int userIndex = userIndex(userID);
+    if (userIndex < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return new RowPreferenceArray(true, userID, userIndex);
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws NoSuchUserException {
+    int userIndex = userIndex(userID);
+    if (userIndex < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    int size = itemsOfUsers.size(userIndex);
+    int[] row = new int[size];
+    itemsOfUsers.copy(userIndex, row);
+    FastIDSet result = new FastIDSet(size);
+    for (int itemIndex : row) {
+      result.add(itemIDs[itemIndex]);
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() {
+    return new LongPrimitiveArrayIterator(itemIDs);
+  }
+
+  /**
+   * @return a read-only view of the item's preferences, sorted by user ID
+   * @throws NoSuchItemException if there is no such item
+   */
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws NoSuchItemException {
+    int itemIndex = itemIndex(itemID);
+    if (itemIndex < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return new RowPreferenceArray(false, itemID, itemIndex);
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws NoSuchUserException {
+    int userIndex = userIndex(userID);
+    if (userIndex < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    int itemIndex = itemIndex(itemID);
+    return itemIndex >= 0 && itemsOfUsers.contains(userIndex, itemIndex) ? 1.0f : null;
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) {
+    return null;
+  }
+
+  @Override
+  public int getNumItems() {
+    return itemIDs.length;
+  }
+
+  @Override
+  public int getNumUsers() {
+    return userIDs.length;
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID) {
+    int itemIndex = itemIndex(itemID);
+    return itemIndex < 0 ? 0 : usersOfItems.size(itemIndex);
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) {
+    int itemIndex1 = itemIndex(itemID1);
+    if (itemIndex1 < 0) {
+      return 0;
+    }
+    int itemIndex2 = itemIndex(itemID2);
+    if (itemIndex2 < 0) {
+      return 0;
+    }
+    return usersOfItems.intersectionSize(itemIndex1, itemIndex2);
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Does nothing
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "CompactBooleanPrefDataModel[users:" + userIDs.length + ",items:" + itemIDs.length
+        + ",preferences:" + itemsOfUsers.numColumns() + ']';
+  }
+
+  /**
+   * Reads users and item IDs into rows, apart from the constructor so that a constructor reading a map need not
+   * declare {@link TasteException}. The source is read once for all IDs, then once for each range of users whose
+   * pairs fit in a buffer of a quarter of all pairs, or more, which are sorted and appended to the users' rows.
+   * Item rows are then built by transposing the users' rows a range of items at a time, so that neither side
+   * needs all preferences as {@code int}s at once, unless stored uncompressed.
+   */
+  private static final class Builder {
+
+    private final long[] userIDs;
+    private final long[] itemIDs;
+    private final Rows itemsOfUsers;
+    private final Rows usersOfItems;
+
+    private Builder(Source source, boolean compressed, int bufferSize) throws TasteException {
+      // IDs of all users and items, and the number of pairs of each user
+      final FastByIDMap<int[]> pairCounts = new FastByIDMap<int[]>();
+      final FastIDSet allItemIDs = new FastIDSet();
+      source.read(new PairHandler() {
+        @Override
+        public void addUser(long userID) {
+          count(userID);
+        }
+        @Override
+        public void add(long userID, long itemID) {
+          count(userID)[0]++;
+          allItemIDs.add(itemID);
+        }
+        private int[] count(long userID) {
+          int[] count = pairCounts.get(userID);
+          if (count == null) {
+            count = new int[1];
+            pairCounts.put(userID, count);
+          }
+          return count;
+        }
+      });
+      userIDs = new long[pairCounts.size()];
+      LongPrimitiveIterator userIt = pairCounts.keySetIterator();
+      for (int i = 0; i < userIDs.length; i++) {
+        userIDs[i] = userIt.nextLong();
+      }
+      Arrays.sort(userIDs);
+      int[] pairsOfUsers = new int[userIDs.length];
+      long numPairs = 0;
+      for (int i = 0; i < userIDs.length; i++) {
+        pairsOfUsers[i] = pairCounts.get(userIDs[i])[0];
+        numPairs += pairsOfUsers[i];
+      }
+      pairCounts.clear();
+      Preconditions.checkArgument(compressed || numPairs <= MAX_PREFERENCES, "Too many preferences: %s", numPairs);
+      itemIDs = allItemIDs.toArray();
+      allItemIDs.clear();
+      Arrays.sort(itemIDs);
+
+      // Rows of users, a range of users at a time, counting the users of each item on the way
+      long bufferPairs = Math.min(numPairs, Math.max(bufferSize, numPairs / 4));
+      int[] buffer = new int[(int) Math.min(bufferPairs, MAX_PREFERENCES)];
+      RowsBuilder userRows = compressed
+          ? new VarIntRowsBuilder(userIDs.length)
+          : new IntRowsBuilder(userIDs.length, (int) numPairs);
+      int[] itemCounts = new int[itemIDs.length];
+      int firstUser = 0;
+      while (firstUser < userIDs.length) {
+        long size = pairsOfUsers[firstUser];
+        int lastUser = firstUser + 1;
+        while (lastUser < userIDs.length && size + pairsOfUsers[lastUser] <= buffer.length) {
+          size += pairsOfUsers[lastUser++];
+        }
+        if (size > buffer.length) {
+          buffer = new int[(int) size];
+        }
+        readUsers(source, firstUser, lastUser, pairsOfUsers, buffer);
+        int from = 0;
+        for (int userIndex = firstUser; userIndex < lastUser; userIndex++) {
+          int to = from + pairsOfUsers[userIndex];
+          Arrays.sort(buffer, from, to);
+          int end = from;
+          for (int i = from; i < to; i++) {
+            if (i == from || buffer[i] != buffer[i - 1]) {
+              buffer[end++] = buffer[i];
+              itemCounts[buffer[i]]++;
+            }
+          }
+          userRows.add(buffer, from, end);
+          from = to;
+        }
+        firstUser = lastUser;
+      }
+      itemsOfUsers = userRows.build();
+
+      // Rows of items, a range of items at a time; visiting users in order leaves each row sorted
+      long numPreferences = itemsOfUsers.numColumns();
+      RowsBuilder itemRows = compressed
+          ? new VarIntRowsBuilder(itemIDs.length)
+          : new IntRowsBuilder(itemIDs.length, (int) numPreferences);
+      int[] row = new int[16];
+      int[] next = new int[itemIDs.length + 1];
+      int firstItem = 0;
+      while (firstItem < itemIDs.length) {
+        long size = itemCounts[firstItem];
+        int lastItem = firstItem + 1;
+        while (lastItem < itemIDs.length && size + itemCounts[lastItem] <= buffer.length) {
+          size += itemCounts[lastItem++];
+        }
+        if (size > buffer.length) {
+          buffer = new int[(int) size];
+        }
+        next[firstItem] = 0;
+        for (int itemIndex = firstItem; itemIndex < lastItem; itemIndex++) {
+          next[itemIndex + 1] = next[itemIndex] + itemCounts[itemIndex];
+        }
+        for (int userIndex = 0; userIndex < userIDs.length; userIndex++) {
+          int rowSize = itemsOfUsers.size(userIndex);
+          if (rowSize > row.length) {
+            row = new int[rowSize];
+          }
+          itemsOfUsers.copy(userIndex, row);
+          for (int i = 0; i < rowSize && row[i] < lastItem; i++) {
+            if (row[i] >= firstItem) {
+              buffer[next[row[i]]++] = userIndex;
+            }
+          }
+        }
+        int from = 0;
+        for (int itemIndex = firstItem; itemIndex < lastItem; itemIndex++) {
+          itemRows.add(buffer, from, from + itemCounts[itemIndex]);
+          from += itemCounts[itemIndex];
+        }
+        firstItem = lastItem;
+      }
+      usersOfItems = itemRows.build();
+    }
+
+    /**
+     * Reads the item indices of a range of users into consecutive sections of the buffer, one per user.
+     */
+    private void readUsers(Source source,
+                           final int firstUser,
+                           final int lastUser,
+                           int[] pairsOfUsers,
+                           final int[] buffer) throws TasteException {
+      final int[] next = new int[lastUser - firstUser];
+      final int[] ends = new int[next.length];
+      int end = 0;
+      for (int i = 0; i < next.length; i++) {
+        next[i] = end;
+        end += pairsOfUsers[firstUser + i];
+        ends[i] = end;
+      }
+      final long firstUserID = userIDs[firstUser];
+      final long lastUserID = userIDs[lastUser - 1];
+      source.read(new PairHandler() {
+        @Override
+        public void addUser(long userID) {
+          // Users without pairs have empty rows anyway
+        }
+        @Override
+        public void add(long userID, long itemID) {
+          if (userID < firstUserID || userID > lastUserID) {
+            return;
+          }
+          int i = Arrays.binarySearch(userIDs, firstUser, lastUser, userID) - firstUser;
+          int itemIndex = Arrays.binarySearch(itemIDs, itemID);
+          if (i < 0 || itemIndex < 0 || next[i] == ends[i]) {
+            throw new IllegalStateException("Preferences changed while reading: " + userID + ',' + itemID);
+          }
+          buffer[next[i]++] = itemIndex;
+        }
+      });
+      for (int i = 0; i < next.length; i++) {
+        if (next[i] != ends[i]) {
+          throw new IllegalStateException("Preferences changed while reading: " + userIDs[firstUser + i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * (User ID, item ID) pairs, which the builder reads more than once.
+   */
+  private interface Source {
+
+    /**
+     * Passes every pair to the handler, in any order and possibly more than once.
+     */
+    void read(PairHandler handler) throws TasteException;
+  }
+
+  private interface PairHandler {
+
+    /**
+     * Declares a user, which need have no pairs.
+     */
+    void addUser(long userID);
+
+    void add(long userID, long itemID);
+  }
+
+  /**
+   * Rows of distinct, ascending column numbers.
+   */
+  private interface Rows {
+
+    int size(int row);
+
+    /**
+     * @return the {@code i}-th column of the row; this may take time linear in {@code i}
+     */
+    int get(int row, int i);
+
+    /**
+     * @return true if {@link #get(int, int)} takes constant time
+     */
+    boolean isRandomAccess();
+
+    boolean contains(int row, int column);
+
+    /**
+     * Copies the row into the start of the given array, which must be at least as long as the row.
+     */
+    void copy(int row, int[] into);
+
+    int intersectionSize(int row1, int row2);
+
+    long numColumns();
+
+    long sizeInBytes();
+  }
+
+  private interface RowsBuilder {
+
+    /**
+     * Appends a row holding the given range of columns.
+     */
+    void add(int[] columns, int from, int to);
+
+    Rows build();
+  }
+
+  private static final class IntRowsBuilder implements RowsBuilder {
+
+    private final int[] starts;
+    private int[] columns;
+    private int numRows;
+
+    /**
+     * @param capacity number of columns of all rows, or more
+     */
+    private IntRowsBuilder(int numRows, int capacity) {
+      starts = new int[numRows + 1];
+      columns = new int[capacity];
+    }
+
+    @Override
+    public void add(int[] columns, int from, int to) {
+      int start = starts[numRows];
+      System.arraycopy(columns, from, this.columns, start, to - from);
+      starts[++numRows] = start + to - from;
+    }
+
+    @Override
+    public Rows build() {
+      int numColumns = starts[numRows];
+      if (numColumns < columns.length) {
+        columns = Arrays.copyOf(columns, numColumns);
+      }
+      return new IntRows(starts, columns);
+    }
+  }
+
+  private static final class IntRows implements Rows {
+
+    private final int[] starts;
+    private final int[] columns;
+
+    private IntRows(int[] starts, int[] columns) {
+      this.starts = starts;
+      this.columns = columns;
+    }
+
+    @Override
+    public int size(int row) {
+      return starts[row + 1] - starts[row];
+    }
+
+    @Override
+    public int get(int row, int i) {
+      return columns[starts[row] + i];
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+      return true;
+    }
+
+    @Override
+    public boolean contains(int row, int column) {
+      return Arrays.binarySearch(columns, starts[row], starts[row + 1], column) >= 0;
+    }
+
+    @Override
+    public void copy(int row, int[] into) {
+      System.arraycopy(columns, starts[row], into, 0, size(row));
+    }
+
+    @Override
+    public int intersectionSize(int row1, int row2) {
+      return SortedIDSet.intersectionSize(columns, starts[row1], starts[row1 + 1],
+                                          columns, starts[row2], starts[row2 + 1]);
+    }
+
+    @Override
+    public long numColumns() {
+      return columns.length;
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return 4L * starts.length + 4L * columns.length;
+    }
+  }
+
+  /**
+   * Builds {@link VarIntRows}, appending encoded rows to pages of at least {@link #PAGE_SIZE} bytes which no row
+   * straddles.
+   */
+  private static final class VarIntRowsBuilder implements RowsBuilder {
+
+    private static final int PAGE_SIZE = 1 << 24;
+
+    private final long[] starts;
+    private final int[] sizes;
+    private final List<byte[]> pages;
+    private byte[] page;
+    private int position;
+    private byte[] encoded;
+    private int numRows;
+
+    private VarIntRowsBuilder(int numRows) {
+      starts = new long[numRows];
+      sizes = new int[numRows];
+      pages = Lists.newArrayList();
+      encoded = new byte[64];
+    }
+
+    @Override
+    public void add(int[] columns, int from, int to) {
+      int size = to - from;
+      if (encoded.length < 5 * size) {
+        encoded = new byte[5 * size];
+      }
+      int length = 0;
+      int previous = 0;
+      for (int i = from; i < to; i++) {
+        // The first column as is, then differences, which are positive
+        int value = columns[i] - previous;
+        previous = columns[i];
+        while ((value & ~0x7F) != 0) {
+          encoded[length++] = (byte) ((value & 0x7F) | 0x80);
+          value >>>= 7;
+        }
+        encoded[length++] = (byte) value;
+      }
+      if (page == null || position + length > page.length) {
+        finishPage();
+        page = new byte[Math.max(PAGE_SIZE, length)];
+        position = 0;
+      }
+      System.arraycopy(encoded, 0, page, position, length);
+      starts[numRows] = ((long) pages.size() << 32) | position;
+      sizes[numRows] = size;
+      numRows++;
+      position += length;
+    }
+
+    private void finishPage() {
+      if (page != null) {
+        pages.add(position == page.length ? page : Arrays.copyOf(page, position));
+      }
+    }
+
+    @Override
+    public Rows build() {
+      finishPage();
+      page = null;
+      return new VarIntRows(starts, sizes, pages.toArray(new byte[pages.size()][]));
+    }
+  }
+
+  private static final class VarIntRows implements Rows {
+
+    private final long[] starts;
+    private final int[] sizes;
+    private final byte[][] pages;
+
+    private VarIntRows(long[] starts, int[] sizes, byte[][] pages) {
+      this.starts = starts;
+      this.sizes = sizes;
+      this.pages = pages;
+    }
+
+    /**
+     * Reads a variable-length value which starts at the given position of a page.
+     *
+     * @return the value in the upper 32 bits, and the position after it in the lower 32
+     */
+    private static long read(byte[] page, int position) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = page[position++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return ((long) value << 32) | position;
+    }
+
+    @Override
+    public int size(int row) {
+      return sizes[row];
+    }
+
+    @Override
+    public int get(int row, int i) {
+      byte[] page = pages[(int) (starts[row] >>> 32)];
+      int position = (int) starts[row];
+      int column = 0;
+      for (int k = 0; k <= i; k++) {
+        long read = read(page, position);
+        column += (int) (read >>> 32);
+        position = (int) read;
+      }
+      return column;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+      return false;
+    }
+
+    @Override
+    public boolean contains(int row, int column) {
+      byte[] page = pages[(int) (starts[row] >>> 32)];
+      int position = (int) starts[row];
+      int current = 0;
+      for (int k = 0; k < sizes[row]; k++) {
+        long read = read(page, position);
+        current += (int) (read >>> 32);
+        if (current >= column) {
+          return current == column;
+        }
+        position = (int) read;
+      }
+      return false;
+    }
+
+    @Override
+    public void copy(int row, int[] into) {
+      byte[] page = pages[(int) (starts[row] >>> 32)];
+      int position = (int) starts[row];
+      int column = 0;
+      for (int k = 0; k < sizes[row]; k++) {
+        long read = read(page, position);
+        column += (int) (read >>> 32);
+        into[k] = column;
+        position = (int) read;
+      }
+    }
+
+    @Override
+    public int intersectionSize(int row1, int row2) {
+      int remaining1 = sizes[row1];
+      int remaining2 = sizes[row2];
+      if (remaining1 == 0 || remaining2 == 0) {
+        return 0;
+      }
+      byte[] page1 = pages[(int) (starts[row1] >>> 32)];
+      byte[] page2 = pages[(int) (starts[row2] >>> 32)];
+      long read1 = read(page1, (int) starts[row1]);
+      long read2 = read(page2, (int) starts[row2]);
+      int x = (int) (read1 >>> 32);
+      int y = (int) (read2 >>> 32);
+      int count = 0;
+      while (true) {
+        boolean advance1 = x <= y;
+        boolean advance2 = y <= x;
+        if (x == y) {
+          count++;
+        }
+        if (advance1) {
+          if (--remaining1 == 0) {
+            return count;
+          }
+          read1 = read(page1, (int) read1);
+          x += (int) (read1 >>> 32);
+        }
+        if (advance2) {
+          if (--remaining2 == 0) {
+            return count;
+          }
+          read2 = read(page2, (int) read2);
+          y += (int) (read2 >>> 32);
+        }
+      }
+    }
+
+    @Override
+    public long numColumns() {
+      long numColumns = 0;
+      for (int size : sizes) {
+        numColumns += size;
+      }
+      return numColumns;
+    }
+
+    @Override
+    public long sizeInBytes() {
+      long bytes = 8L * starts.length + 4L * sizes.length;
+      for (byte[] page : pages) {
+        bytes += page.length;
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * A read-only view of the preferences of one user or item.
+   */
+  private final class RowPreferenceArray implements PreferenceArray {
+
+    private final boolean ofUser;
+    private final long id;
+    private final int row;
+    private final int length;
+    private int[] columns;
+
+    private RowPreferenceArray(boolean ofUser, long id, int row) {
+      this.ofUser = ofUser;
+      this.id = id;
+      this.row = row;
+      length = rows().size(row);
+    }
+
+    private Rows rows() {
+      return ofUser ? itemsOfUsers : usersOfItems;
+    }
+
+    /**
+     * @return IDs of the other side, users for an item or items for a user
+     */
+    private long[] others() {
+      return ofUser ? itemIDs : userIDs;
+    }
+
+    private int column(int i) {
+      Rows rows = rows();
+      if (rows.isRandomAccess()) {
+        return rows.get(row, i);
+      }
+      if (columns == null) {
+        int[] decoded = new int[length];
+        rows.copy(row, decoded);
+        columns = decoded;
+      }
+      return columns[i];
+    }
+
+    private long otherID(int i) {
+      if (i < 0 || i >= length) {
+        throw new ArrayIndexOutOfBoundsException(i);
+      }
+      return others()[column(i)];
+    }
+
+    private boolean hasOther(long otherID) {
+      int index = Arrays.binarySearch(others(), otherID);
+      return index >= 0 && rows().contains(row, index);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public Preference get(int i) {
+      return new BooleanPreference(getUserID(i), getItemID(i));
+    }
+
+    @Override
+    public void set(int i, Preference pref) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getUserID(int i) {
+      return ofUser ? id : otherID(i);
+    }
+
+    @Override
+    public void setUserID(int i, long userID) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getItemID(int i) {
+      return ofUser ? otherID(i) : id;
+    }
+
+    @Override
+    public void setItemID(int i, long itemID) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return item IDs of a user's preferences, or user IDs of an item's, in a new array
+     */
+    @Override
+    public long[] getIDs() {
+      long[] ids = new long[length];
+      for (int i = 0; i < length; i++) {
+        ids[i] = otherID(i);
+      }
+      return ids;
+    }
+
+    @Override
+    public float getValue(int i) {
+      return 1.0f;
+    }
+
+    @Override
+    public void setValue(int i, float value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sortByUser() { }
+
+    @Override
+    public void sortByItem() { }
+
+    @Override
+    public void sortByValue() { }
+
+    @Override
+    public void sortByValueReversed() { }
+
+    @Override
+    public boolean hasPrefWithUserID(long userID) {
+      return ofUser ? id == userID : hasOther(userID);
+    }
+
+    @Override
+    public boolean hasPrefWithItemID(long itemID) {
+      return ofUser ? hasOther(itemID) : id == itemID;
+    }
+
+    /**
+     * @return a modifiable {@link BooleanUserPreferenceArray} or {@link BooleanItemPreferenceArray}
+     */
+    @Override
+    public PreferenceArray clone() {
+      PreferenceArray copy = ofUser ? new BooleanUserPreferenceArray(length) : new BooleanItemPreferenceArray(length);
+      for (int i = 0; i < length; i++) {
+        copy.setUserID(i, getUserID(i));
+        copy.setItemID(i, getItemID(i));
+      }
+      return copy;
+    }
+
+    @Override
+    public Iterator<Preference> iterator() {
+      return Iterators.transform(new CountingIterator(length),
+        new Function<Integer, Preference>() {
+          @Override
+          public Preference apply(Integer from) {
+            return get(from);
+          }
+        });
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder(10 * length);
+      result.append(ofUser ? "CompactUserPreferenceArray[userID:" : "CompactItemPreferenceArray[itemID:");
+      result.append(id);
+      result.append(",{");
+      for (int i = 0; i < length; i++) {
+        if (i > 0) {
+          result.append(',');
+        }
+        result.append(otherID(i));
+      }
+      result.append("}]");
+      return result.toString();
+    }
+  }
+
+}
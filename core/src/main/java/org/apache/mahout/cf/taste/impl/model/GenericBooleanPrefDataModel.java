@@ -29,6 +29,7 @@ import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.SortedIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 
@@ -39,13 +40,19 @@ import com.google.common.base.Preconditions;
  * A simple {@link DataModel} which uses given user data as its data source. This implementation
  * is mostly useful for small experiments and is not recommended for contexts where performance is important.
  * </p>
+ *
+ * <p>
+ * The users of each item are kept in a {@link SortedIDSet}, so that {@link #getNumUsersWithPreferenceFor(long, long)},
+ * on which item similarities like {@link org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity} spend
+ * most of their time, intersects sorted arrays instead of probing hash sets.
+ * </p>
  */
 public final class GenericBooleanPrefDataModel extends AbstractDataModel {
   
   private final long[] userIDs;
   private final FastByIDMap<FastIDSet> preferenceFromUsers;
   private final long[] itemIDs;
-  private final FastByIDMap<FastIDSet> preferenceForItems;
+  private final FastByIDMap<SortedIDSet> preferenceForItems;
   private final FastByIDMap<FastByIDMap<Long>> timestamps;
   
   /**
@@ -74,27 +81,6 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
     Preconditions.checkArgument(userData != null, "userData is null");
 
     this.preferenceFromUsers = userData;
-    this.preferenceForItems = new FastByIDMap<FastIDSet>();
-    FastIDSet itemIDSet = new FastIDSet();
-    for (Map.Entry<Long, FastIDSet> entry : preferenceFromUsers.entrySet()) {
-      long userID = entry.getKey();
-      FastIDSet itemIDs = entry.getValue();
-      itemIDSet.addAll(itemIDs);
-      LongPrimitiveIterator it = itemIDs.iterator();
-      while (it.hasNext()) {
-        long itemID = it.nextLong();
-        FastIDSet userIDs = preferenceForItems.get(itemID);
-        if (userIDs == null) {
-          userIDs = new FastIDSet(2);
-          preferenceForItems.put(itemID, userIDs);
-        }
-        userIDs.add(userID);
-      }
-    }
-
-    this.itemIDs = itemIDSet.toArray();
-    itemIDSet = null; // Might help GC -- this is big
-    Arrays.sort(itemIDs);
 
     this.userIDs = new long[userData.size()];
     int i = 0;
@@ -104,6 +90,44 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
     }
     Arrays.sort(userIDs);
 
+    // Count each item's users, then fill arrays of them; visiting users in order leaves each array sorted
+    FastByIDMap<int[]> counts = new FastByIDMap<int[]>();
+    for (FastIDSet itemIDs : preferenceFromUsers.values()) {
+      LongPrimitiveIterator itemIt = itemIDs.iterator();
+      while (itemIt.hasNext()) {
+        long itemID = itemIt.nextLong();
+        int[] count = counts.get(itemID);
+        if (count == null) {
+          count = new int[1];
+          counts.put(itemID, count);
+        }
+        count[0]++;
+      }
+    }
+    FastByIDMap<long[]> usersForItems = new FastByIDMap<long[]>(counts.size());
+    for (Map.Entry<Long,int[]> entry : counts.entrySet()) {
+      int[] count = entry.getValue();
+      usersForItems.put(entry.getKey(), new long[count[0]]);
+      count[0] = 0;
+    }
+    for (long userID : userIDs) {
+      LongPrimitiveIterator itemIt = preferenceFromUsers.get(userID).iterator();
+      while (itemIt.hasNext()) {
+        long itemID = itemIt.nextLong();
+        usersForItems.get(itemID)[counts.get(itemID)[0]++] = userID;
+      }
+    }
+    counts = null; // Might help GC -- this is big
+
+    this.preferenceForItems = new FastByIDMap<SortedIDSet>(usersForItems.size());
+    this.itemIDs = new long[usersForItems.size()];
+    i = 0;
+    for (Map.Entry<Long,long[]> entry : usersForItems.entrySet()) {
+      itemIDs[i++] = entry.getKey();
+      preferenceForItems.put(entry.getKey(), SortedIDSet.wrap(entry.getValue()));
+    }
+    Arrays.sort(itemIDs);
+
     this.timestamps = timestamps;
   }
   
@@ -162,10 +186,15 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
   }
 
   /**
-   * This is used mostly internally to the framework, and shouldn't be relied upon otherwise.
+   * This is used mostly internally to the framework, and shouldn't be relied upon otherwise. Item data is held
+   * as {@link SortedIDSet}s, so this builds a new map of copies on every call.
    */
   public FastByIDMap<FastIDSet> getRawItemData() {
-    return this.preferenceForItems;
+    FastByIDMap<FastIDSet> itemData = new FastByIDMap<FastIDSet>(preferenceForItems.size());
+    for (Map.Entry<Long,SortedIDSet> entry : preferenceForItems.entrySet()) {
+      itemData.put(entry.getKey(), entry.getValue().toFastIDSet());
+    }
+    return itemData;
   }
   
   @Override
@@ -210,7 +239,7 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
   
   @Override
   public PreferenceArray getPreferencesForItem(long itemID) throws NoSuchItemException {
-    FastIDSet userIDs = preferenceForItems.get(itemID);
+    SortedIDSet userIDs = preferenceForItems.get(itemID);
     if (userIDs == null) {
       throw new NoSuchItemException(itemID);
     }
@@ -261,23 +290,21 @@ public final class GenericBooleanPrefDataModel extends AbstractDataModel {
   
   @Override
   public int getNumUsersWithPreferenceFor(long itemID) {
-    FastIDSet userIDs1 = preferenceForItems.get(itemID);
+    SortedIDSet userIDs1 = preferenceForItems.get(itemID);
     return userIDs1 == null ? 0 : userIDs1.size();
   }
 
   @Override
   public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) {
-    FastIDSet userIDs1 = preferenceForItems.get(itemID1);
+    SortedIDSet userIDs1 = preferenceForItems.get(itemID1);
     if (userIDs1 == null) {
       return 0;
     }
-    FastIDSet userIDs2 = preferenceForItems.get(itemID2);
+    SortedIDSet userIDs2 = preferenceForItems.get(itemID2);
     if (userIDs2 == null) {
       return 0;
     }
-    return userIDs1.size() < userIDs2.size()
-        ? userIDs2.intersectionSize(userIDs1)
-        : userIDs1.intersectionSize(userIDs2);
+    return userIDs1.intersectionSize(userIDs2);
   }
   
   @Override
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+
+/**
+ * Keeps the {@link PreferenceChangeListener}s of a {@link org.apache.mahout.cf.taste.model.PreferenceChangeNotifier}
+ * and notifies them. Listeners may be added and removed while they are being notified.
+ */
+public final class PreferenceChangeSupport {
+
+  private final List<PreferenceChangeListener> listeners = new CopyOnWriteArrayList<PreferenceChangeListener>();
+
+  public void addListener(PreferenceChangeListener listener) {
+    Preconditions.checkArgument(listener != null, "listener is null");
+    listeners.add(listener);
+  }
+
+  public void removeListener(PreferenceChangeListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Notifies every listener that the user's preferences changed, even if one fails.
+   *
+   * @throws TasteException the first failure of a listener, after all were notified
+   */
+  public void firePreferencesChanged(long userID) throws TasteException {
+    TasteException failure = null;
+    for (PreferenceChangeListener listener : listeners) {
+      try {
+        listener.preferencesChanged(userID);
+      } catch (TasteException te) {
+        if (failure == null) {
+          failure = te;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+}
@@ -0,0 +1,678 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.AbstractLongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.impl.model.BooleanItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.BooleanUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericBooleanPrefDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+/**
+ * <p>
+ * An immutable snapshot of preference data made of a base {@link DataModel} plus an overlay holding the
+ * complete, current preferences of every user and item that changed since the base was built. Used by
+ * {@link FileDataModel} to apply update files incrementally.
+ * </p>
+ *
+ * <p>
+ * {@link #applyDelta(FastByIDMap, FastByIDMap)} never modifies this snapshot. The overlay is a stack of immutable
+ * layers which snapshots share; a delta rebuilds only the preference arrays of the users and items it touches into
+ * a new layer on top. That layer is merged with those below it while they are less than twice as large, so that
+ * there are only logarithmically many layers to search, and each array is copied only logarithmically often: the
+ * cost of a delta is proportional to its size, not to that of the overlay or the base. Readers of the old snapshot
+ * are unaffected and never block. Once the overlay grows large relative to the base, {@link #compact()} folds it
+ * into a new base.
+ * </p>
+ *
+ * <p>
+ * A removed preference leaves {@link #REMOVED_TIMESTAMP} in the overlay's timestamps, so that any timestamp the base
+ * holds for it is not found again if it is added back.
+ * </p>
+ */
+final class DeltaDataModel extends AbstractDataModel {
+
+  /** Marks the timestamp of a removed preference; never a timestamp of a current one. */
+  static final long REMOVED_TIMESTAMP = Long.MIN_VALUE;
+
+  private final DataModel base;
+  // Timestamps held by the base, if known; otherwise the base is asked
+  private final FastByIDMap<FastByIDMap<Long>> baseTimestamps;
+  private final Layer overlay;
+  private final int numUsers;
+  private final int numItems;
+  private final int numOverlayUsers;
+  private final int numOverlayItems;
+  // Derived from the overlay when first needed
+  private volatile IDChanges userIDChanges;
+  private volatile IDChanges itemIDChanges;
+
+  DeltaDataModel(DataModel base) throws TasteException {
+    this(base, null);
+  }
+
+  /**
+   * @param baseTimestamps the timestamps the base was built with, or {@code null} if not known
+   */
+  DeltaDataModel(DataModel base, FastByIDMap<FastByIDMap<Long>> baseTimestamps) throws TasteException {
+    this(base, baseTimestamps, null, base.getNumUsers(), base.getNumItems(), 0, 0, base.getMinPreference(),
+        base.getMaxPreference());
+  }
+
+  private DeltaDataModel(DataModel base,
+                         FastByIDMap<FastByIDMap<Long>> baseTimestamps,
+                         Layer overlay,
+                         int numUsers,
+                         int numItems,
+                         int numOverlayUsers,
+                         int numOverlayItems,
+                         float minPreference,
+                         float maxPreference) {
+    this.base = base;
+    this.baseTimestamps = baseTimestamps;
+    this.overlay = overlay;
+    this.numUsers = numUsers;
+    this.numItems = numItems;
+    this.numOverlayUsers = numOverlayUsers;
+    this.numOverlayItems = numOverlayItems;
+    setMinPreference(minPreference);
+    setMaxPreference(maxPreference);
+  }
+
+  /**
+   * @param userChanges maps user IDs to item IDs to new preference values; {@link Float#NaN} means the
+   *  preference is removed
+   * @param newTimestamps timestamps of the changed preferences, by user ID and item ID; removed preferences need
+   *  none, as they are marked with {@link #REMOVED_TIMESTAMP} anyway
+   * @return a new snapshot reflecting the changes
+   */
+  DeltaDataModel applyDelta(FastByIDMap<FastByIDMap<Float>> userChanges,
+                            FastByIDMap<FastByIDMap<Long>> newTimestamps) throws TasteException {
+    if (userChanges.isEmpty()) {
+      return this;
+    }
+    FastByIDMap<PreferenceArray> newUserPrefs = new FastByIDMap<PreferenceArray>(userChanges.size());
+    FastByIDMap<PreferenceArray> newItemPrefs = new FastByIDMap<PreferenceArray>();
+    FastByIDMap<FastByIDMap<Long>> layerTimestamps = new FastByIDMap<FastByIDMap<Long>>();
+    int newNumUsers = numUsers;
+    int newNumItems = numItems;
+    int newNumOverlayUsers = numOverlayUsers;
+    int newNumOverlayItems = numOverlayItems;
+    float minPreference = getMinPreference();
+    float maxPreference = getMaxPreference();
+    boolean hasPrefValues = hasPreferenceValues();
+
+    FastByIDMap<FastByIDMap<Float>> itemChanges = new FastByIDMap<FastByIDMap<Float>>();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : userChanges.entrySet()) {
+      long userID = entry.getKey();
+      FastByIDMap<Float> changes = entry.getValue();
+
+      PreferenceArray overlayPrefs = overlayUserPrefs(userID);
+      PreferenceArray oldPrefs = overlayPrefs == null ? basePrefsFromUser(userID) : overlayPrefs;
+      FastByIDMap<Float> prefs = toMap(oldPrefs, true);
+      FastByIDMap<Long> timestampsForUser = null;
+      for (Map.Entry<Long,Float> change : changes.entrySet()) {
+        long itemID = change.getKey();
+        float value = change.getValue();
+        if (Float.isNaN(value)) {
+          prefs.remove(itemID);
+          if (timestampsForUser == null) {
+            timestampsForUser = new FastByIDMap<Long>();
+          }
+          timestampsForUser.put(itemID, REMOVED_TIMESTAMP);
+        } else {
+          prefs.put(itemID, value);
+          if (hasPrefValues) {
+            minPreference = Math.min(minPreference, value);
+            maxPreference = Math.max(maxPreference, value);
+          }
+        }
+        FastByIDMap<Float> changesForItem = itemChanges.get(itemID);
+        if (changesForItem == null) {
+          changesForItem = new FastByIDMap<Float>();
+          itemChanges.put(itemID, changesForItem);
+        }
+        changesForItem.put(userID, value);
+      }
+      newUserPrefs.put(userID, toArray(userID, prefs, true, hasPrefValues));
+      newNumUsers += (prefs.isEmpty() ? 0 : 1) - (oldPrefs == null || oldPrefs.length() == 0 ? 0 : 1);
+      if (overlayPrefs == null) {
+        newNumOverlayUsers++;
+      }
+
+      FastByIDMap<Long> newTimestampsForUser = newTimestamps.get(userID);
+      if (newTimestampsForUser != null) {
+        if (timestampsForUser == null) {
+          timestampsForUser = newTimestampsForUser;
+        } else {
+          for (Map.Entry<Long,Long> timestamp : newTimestampsForUser.entrySet()) {
+            timestampsForUser.put(timestamp.getKey(), timestamp.getValue());
+          }
+        }
+      }
+      if (timestampsForUser != null) {
+        layerTimestamps.put(userID, timestampsForUser);
+      }
+    }
+
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : itemChanges.entrySet()) {
+      long itemID = entry.getKey();
+      PreferenceArray overlayPrefs = overlayItemPrefs(itemID);
+      PreferenceArray oldPrefs = overlayPrefs == null ? basePrefsForItem(itemID) : overlayPrefs;
+      FastByIDMap<Float> prefs = toMap(oldPrefs, false);
+      for (Map.Entry<Long,Float> change : entry.getValue().entrySet()) {
+        if (Float.isNaN(change.getValue())) {
+          prefs.remove(change.getKey());
+        } else {
+          prefs.put(change.getKey(), change.getValue());
+        }
+      }
+      newItemPrefs.put(itemID, toArray(itemID, prefs, false, hasPrefValues));
+      newNumItems += (prefs.isEmpty() ? 0 : 1) - (oldPrefs == null || oldPrefs.length() == 0 ? 0 : 1);
+      if (overlayPrefs == null) {
+        newNumOverlayItems++;
+      }
+    }
+
+    Layer layer = new Layer(newUserPrefs, newItemPrefs, layerTimestamps, overlay);
+    while (layer.below != null && layer.below.size() < 2 * layer.size()) {
+      layer = layer.mergeDown();
+    }
+    return new DeltaDataModel(base, baseTimestamps, layer, newNumUsers, newNumItems,
+        newNumOverlayUsers, newNumOverlayItems, minPreference, maxPreference);
+  }
+
+  /**
+   * @return true once the overlay is large enough, relative to the base, that lookups and further deltas
+   *  would be cheaper against a freshly built base
+   */
+  boolean needsCompaction(double maxOverlayFraction) throws TasteException {
+    return numOverlayUsers > maxOverlayFraction * base.getNumUsers()
+        || numOverlayItems > maxOverlayFraction * base.getNumItems();
+  }
+
+  /**
+   * @param allTimestamps receives the timestamps of the new base, as it is built with
+   * @return a new base {@link DataModel} holding the same data as this snapshot
+   */
+  DataModel compact(FastByIDMap<FastByIDMap<Long>> allTimestamps) throws TasteException {
+    FastByIDMap<PreferenceArray> data = GenericDataModel.toDataMap(this);
+    for (Map.Entry<Long,PreferenceArray> entry : data.entrySet()) {
+      long userID = entry.getKey();
+      PreferenceArray prefs = entry.getValue();
+      FastByIDMap<Long> baseTimestampsForUser = baseTimestamps == null ? null : baseTimestamps.get(userID);
+      // Without the base's timestamps, ask it until it turns out to have none for this user
+      boolean askBase = baseTimestamps == null;
+      FastByIDMap<Long> timestampsForUser = null;
+      for (int i = 0; i < prefs.length(); i++) {
+        long itemID = prefs.getItemID(i);
+        Long timestamp = overlayTimestamp(userID, itemID);
+        if (timestamp == null) {
+          if (baseTimestampsForUser != null) {
+            timestamp = baseTimestampsForUser.get(itemID);
+          } else if (askBase) {
+            try {
+              timestamp = base.getPreferenceTime(userID, itemID);
+            } catch (NoSuchUserException nsue) {
+              askBase = false;
+            }
+          }
+        } else if (timestamp == REMOVED_TIMESTAMP) {
+          timestamp = null;
+        }
+        if (timestamp != null) {
+          if (timestampsForUser == null) {
+            timestampsForUser = new FastByIDMap<Long>();
+            allTimestamps.put(userID, timestampsForUser);
+          }
+          timestampsForUser.put(itemID, timestamp);
+        }
+      }
+    }
+    if (hasPreferenceValues()) {
+      return new GenericDataModel(data, allTimestamps);
+    }
+    return new GenericBooleanPrefDataModel(GenericBooleanPrefDataModel.toDataMap(data), allTimestamps);
+  }
+
+  private PreferenceArray basePrefsFromUser(long userID) throws TasteException {
+    try {
+      return base.getPreferencesFromUser(userID);
+    } catch (NoSuchUserException nsue) {
+      return null;
+    }
+  }
+
+  private PreferenceArray basePrefsForItem(long itemID) throws TasteException {
+    try {
+      return base.getPreferencesForItem(itemID);
+    } catch (NoSuchItemException nsie) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the current preferences of the user if it changed since the base was built, empty if it was removed;
+   *  otherwise {@code null}
+   */
+  private PreferenceArray overlayUserPrefs(long userID) {
+    for (Layer layer = overlay; layer != null; layer = layer.below) {
+      PreferenceArray prefs = layer.userPrefs.get(userID);
+      if (prefs != null) {
+        return prefs;
+      }
+    }
+    return null;
+  }
+
+  private PreferenceArray overlayItemPrefs(long itemID) {
+    for (Layer layer = overlay; layer != null; layer = layer.below) {
+      PreferenceArray prefs = layer.itemPrefs.get(itemID);
+      if (prefs != null) {
+        return prefs;
+      }
+    }
+    return null;
+  }
+
+  private PreferenceArray currentItemPrefs(long itemID) throws TasteException {
+    PreferenceArray prefs = overlayItemPrefs(itemID);
+    return prefs == null ? basePrefsForItem(itemID) : prefs;
+  }
+
+  private static FastByIDMap<Float> toMap(PreferenceArray prefs, boolean byUser) {
+    if (prefs == null) {
+      return new FastByIDMap<Float>();
+    }
+    int length = prefs.length();
+    FastByIDMap<Float> result = new FastByIDMap<Float>(length + 1);
+    for (int i = 0; i < length; i++) {
+      result.put(byUser ? prefs.getItemID(i) : prefs.getUserID(i), prefs.getValue(i));
+    }
+    return result;
+  }
+
+  private static PreferenceArray toArray(long id, FastByIDMap<Float> prefs, boolean byUser, boolean hasPrefValues) {
+    long[] otherIDs = new long[prefs.size()];
+    int i = 0;
+    LongPrimitiveIterator it = prefs.keySetIterator();
+    while (it.hasNext()) {
+      otherIDs[i++] = it.nextLong();
+    }
+    Arrays.sort(otherIDs);
+    PreferenceArray result;
+    if (byUser) {
+      result = hasPrefValues
+          ? new GenericUserPreferenceArray(otherIDs.length) : new BooleanUserPreferenceArray(otherIDs.length);
+    } else {
+      result = hasPrefValues
+          ? new GenericItemPreferenceArray(otherIDs.length) : new BooleanItemPreferenceArray(otherIDs.length);
+    }
+    for (int j = 0; j < otherIDs.length; j++) {
+      if (byUser) {
+        result.setUserID(j, id);
+        result.setItemID(j, otherIDs[j]);
+      } else {
+        result.setUserID(j, otherIDs[j]);
+        result.setItemID(j, id);
+      }
+      if (hasPrefValues) {
+        result.setValue(j, prefs.get(otherIDs[j]));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() throws TasteException {
+    IDChanges changes = userIDChanges;
+    if (changes == null) {
+      changes = new IDChanges(true);
+      userIDChanges = changes;
+    }
+    return new OverlayIDIterator(base.getUserIDs(), changes.removedIDs, changes.addedIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+    PreferenceArray prefs = overlayUserPrefs(userID);
+    if (prefs == null) {
+      return base.getPreferencesFromUser(userID);
+    }
+    if (prefs.length() == 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return prefs;
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    PreferenceArray prefs = overlayUserPrefs(userID);
+    if (prefs == null) {
+      return base.getItemIDsFromUser(userID);
+    }
+    if (prefs.length() == 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return new FastIDSet(prefs.getIDs());
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() throws TasteException {
+    IDChanges changes = itemIDChanges;
+    if (changes == null) {
+      changes = new IDChanges(false);
+      itemIDChanges = changes;
+    }
+    return new OverlayIDIterator(base.getItemIDs(), changes.removedIDs, changes.addedIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+    PreferenceArray prefs = overlayItemPrefs(itemID);
+    if (prefs == null) {
+      return base.getPreferencesForItem(itemID);
+    }
+    if (prefs.length() == 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return prefs;
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    PreferenceArray prefs = overlayUserPrefs(userID);
+    if (prefs == null) {
+      return base.getPreferenceValue(userID, itemID);
+    }
+    if (prefs.length() == 0) {
+      throw new NoSuchUserException(userID);
+    }
+    int index = Arrays.binarySearch(prefs.getIDs(), itemID);
+    return index < 0 ? null : prefs.getValue(index);
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+    PreferenceArray prefs = overlayUserPrefs(userID);
+    if (prefs != null) {
+      if (prefs.length() == 0) {
+        throw new NoSuchUserException(userID);
+      }
+      if (Arrays.binarySearch(prefs.getIDs(), itemID) < 0) {
+        return null;
+      }
+    }
+    Long timestamp = overlayTimestamp(userID, itemID);
+    if (timestamp != null) {
+      return timestamp == REMOVED_TIMESTAMP ? null : timestamp;
+    }
+    if (prefs != null && basePrefsFromUser(userID) == null) {
+      return null;
+    }
+    return base.getPreferenceTime(userID, itemID);
+  }
+
+  /**
+   * @return the latest timestamp the overlay holds for the preference, possibly {@link #REMOVED_TIMESTAMP}; or
+   *  {@code null}
+   */
+  private Long overlayTimestamp(long userID, long itemID) {
+    for (Layer layer = overlay; layer != null; layer = layer.below) {
+      FastByIDMap<Long> timestampsForUser = layer.timestamps.get(userID);
+      if (timestampsForUser != null) {
+        Long timestamp = timestampsForUser.get(itemID);
+        if (timestamp != null) {
+          return timestamp;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getNumItems() throws TasteException {
+    return numItems;
+  }
+
+  @Override
+  public int getNumUsers() throws TasteException {
+    return numUsers;
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID) throws TasteException {
+    PreferenceArray prefs = overlayItemPrefs(itemID);
+    return prefs == null ? base.getNumUsersWithPreferenceFor(itemID) : prefs.length();
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) throws TasteException {
+    if (overlayItemPrefs(itemID1) == null && overlayItemPrefs(itemID2) == null) {
+      return base.getNumUsersWithPreferenceFor(itemID1, itemID2);
+    }
+    PreferenceArray prefs1 = currentItemPrefs(itemID1);
+    PreferenceArray prefs2 = currentItemPrefs(itemID2);
+    if (prefs1 == null || prefs2 == null) {
+      return 0;
+    }
+    if (prefs1.length() > prefs2.length()) {
+      PreferenceArray tmp = prefs1;
+      prefs1 = prefs2;
+      prefs2 = tmp;
+    }
+    FastIDSet userIDs1 = new FastIDSet(prefs1.getIDs());
+    int count = 0;
+    for (int i = 0; i < prefs2.length(); i++) {
+      if (userIDs1.contains(prefs2.getUserID(i))) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Does nothing
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return base.hasPreferenceValues();
+  }
+
+  @Override
+  public String toString() {
+    return "DeltaDataModel[base:" + base + ",changedUsers:" + numOverlayUsers + ",changedItems:"
+        + numOverlayItems + ']';
+  }
+
+  /**
+   * The changes of one or more consecutive deltas, over those of the layers below. Never modified once built.
+   */
+  private static final class Layer {
+
+    private final FastByIDMap<PreferenceArray> userPrefs;
+    private final FastByIDMap<PreferenceArray> itemPrefs;
+    private final FastByIDMap<FastByIDMap<Long>> timestamps;
+    private final Layer below;
+
+    private Layer(FastByIDMap<PreferenceArray> userPrefs,
+                  FastByIDMap<PreferenceArray> itemPrefs,
+                  FastByIDMap<FastByIDMap<Long>> timestamps,
+                  Layer below) {
+      this.userPrefs = userPrefs;
+      this.itemPrefs = itemPrefs;
+      this.timestamps = timestamps;
+      this.below = below;
+    }
+
+    private int size() {
+      return userPrefs.size() + itemPrefs.size() + timestamps.size();
+    }
+
+    /**
+     * @return a new layer holding the changes of this layer over those of the one below, in place of both
+     */
+    private Layer mergeDown() {
+      FastByIDMap<PreferenceArray> mergedUserPrefs = below.userPrefs.clone();
+      for (Map.Entry<Long,PreferenceArray> entry : userPrefs.entrySet()) {
+        mergedUserPrefs.put(entry.getKey(), entry.getValue());
+      }
+      FastByIDMap<PreferenceArray> mergedItemPrefs = below.itemPrefs.clone();
+      for (Map.Entry<Long,PreferenceArray> entry : itemPrefs.entrySet()) {
+        mergedItemPrefs.put(entry.getKey(), entry.getValue());
+      }
+      FastByIDMap<FastByIDMap<Long>> mergedTimestamps = below.timestamps.clone();
+      for (Map.Entry<Long,FastByIDMap<Long>> entry : timestamps.entrySet()) {
+        FastByIDMap<Long> mergedForUser = mergedTimestamps.get(entry.getKey());
+        mergedForUser = mergedForUser == null ? new FastByIDMap<Long>() : mergedForUser.clone();
+        for (Map.Entry<Long,Long> timestamp : entry.getValue().entrySet()) {
+          mergedForUser.put(timestamp.getKey(), timestamp.getValue());
+        }
+        mergedTimestamps.put(entry.getKey(), mergedForUser);
+      }
+      return new Layer(mergedUserPrefs, mergedItemPrefs, mergedTimestamps, below.below);
+    }
+  }
+
+  /**
+   * The users or items which the overlay adds to, or removes from, the base.
+   */
+  private final class IDChanges {
+
+    private final FastIDSet addedIDs = new FastIDSet();
+    private final FastIDSet removedIDs = new FastIDSet();
+
+    private IDChanges(boolean users) throws TasteException {
+      FastIDSet seen = new FastIDSet();
+      for (Layer layer = overlay; layer != null; layer = layer.below) {
+        for (Map.Entry<Long,PreferenceArray> entry : (users ? layer.userPrefs : layer.itemPrefs).entrySet()) {
+          long id = entry.getKey();
+          if (seen.add(id)) {
+            boolean inBase = (users ? basePrefsFromUser(id) : basePrefsForItem(id)) != null;
+            if (entry.getValue().length() == 0) {
+              if (inBase) {
+                removedIDs.add(id);
+              }
+            } else if (!inBase) {
+              addedIDs.add(id);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Iterates over the IDs of the base model which were not removed, followed by those which were added.
+   */
+  private static final class OverlayIDIterator extends AbstractLongPrimitiveIterator {
+
+    private final LongPrimitiveIterator baseIDs;
+    private final FastIDSet removedIDs;
+    private final LongPrimitiveIterator addedIDs;
+    private boolean hasNext;
+    private long next;
+
+    private OverlayIDIterator(LongPrimitiveIterator baseIDs, FastIDSet removedIDs, FastIDSet addedIDs) {
+      this.baseIDs = baseIDs;
+      this.removedIDs = removedIDs;
+      this.addedIDs = addedIDs.iterator();
+      advance();
+    }
+
+    private void advance() {
+      while (baseIDs.hasNext()) {
+        long id = baseIDs.nextLong();
+        if (!removedIDs.contains(id)) {
+          next = id;
+          hasNext = true;
+          return;
+        }
+      }
+      hasNext = addedIDs.hasNext();
+      if (hasNext) {
+        next = addedIDs.nextLong();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return hasNext;
+    }
+
+    @Override
+    public long nextLong() {
+      if (!hasNext) {
+        throw new NoSuchElementException();
+      }
+      long result = next;
+      advance();
+      return result;
+    }
+
+    @Override
+    public long peek() {
+      if (!hasNext) {
+        throw new NoSuchElementException();
+      }
+      return next;
+    }
+
+    @Override
+    public void skip(int n) {
+      for (int i = 0; i < n && hasNext; i++) {
+        advance();
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
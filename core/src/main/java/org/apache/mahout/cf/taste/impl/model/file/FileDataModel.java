@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -122,6 +123,8 @@ public class FileDataModel extends AbstractDataModel {
   private static final Logger log = LoggerFactory.getLogger(FileDataModel.class);
 
   public static final long DEFAULT_MIN_RELOAD_INTERVAL_MS = 60 * 1000L; // 1 minute?
+  /** Fraction of users or items that may be changed by incremental updates before the data is rebuilt. */
+  private static final double MAX_OVERLAY_FRACTION = 0.1;
   private static final char COMMENT_CHAR = '#';
   private static final char[] DELIMIETERS = {',', '\t'};
 
@@ -131,10 +134,13 @@ public class FileDataModel extends AbstractDataModel {
   private final char delimiter;
   private final Splitter delimiterPattern;
   private final boolean hasPrefValues;
-  private DataModel delegate;
+  private volatile DataModel delegate;
   private final ReentrantLock reloadLock;
   private final boolean transpose;
   private final long minReloadIntervalMS;
+  private final boolean incrementalUpdates;
+  // Timestamps the base of incremental updates was built with
+  private FastByIDMap<FastByIDMap<Long>> baseTimestamps;
 
   /**
    * @param dataFile
@@ -176,6 +182,26 @@ public class FileDataModel extends AbstractDataModel {
    */
   public FileDataModel(File dataFile, boolean transpose, long minReloadIntervalMS, String delimiterRegex)
     throws IOException {
+    this(dataFile, transpose, minReloadIntervalMS, delimiterRegex, false);
+  }
+
+  /**
+   * @param incrementalUpdates if true, update files that appear after the data file was loaded are applied
+   *  to the data already in memory rather than rebuilding it. Only the preferences of users and items named
+   *  in the update files are copied, and the result is published as a new immutable snapshot, so that readers
+   *  never block and never see a partially applied update. {@link #setPreference(long, long, float)} and
+   *  {@link #removePreference(long, long)} are applied the same way. Update files are read with
+   *  {@link #processUpdateLine(String, FastByIDMap, FastByIDMap)}; a subclass which overrides
+   *  {@link #processLine(String, FastByIDMap, FastByIDMap, boolean)} or
+   *  {@link #processLineWithoutID(String, FastByIDMap, FastByIDMap)} but not that is reloaded in full instead, so
+   *  that its lines are read the way it expects.
+   * @see #FileDataModel(File, boolean, long, String)
+   */
+  public FileDataModel(File dataFile,
+                       boolean transpose,
+                       long minReloadIntervalMS,
+                       String delimiterRegex,
+                       boolean incrementalUpdates) throws IOException {
 
     this.dataFile = Preconditions.checkNotNull(dataFile.getAbsoluteFile());
     if (!dataFile.exists() || dataFile.isDirectory()) {
@@ -217,6 +243,10 @@ public class FileDataModel extends AbstractDataModel {
     this.reloadLock = new ReentrantLock();
     this.transpose = transpose;
     this.minReloadIntervalMS = minReloadIntervalMS;
+    this.incrementalUpdates = incrementalUpdates && !overridesLineProcessingOnly();
+    if (incrementalUpdates && !this.incrementalUpdates) {
+      log.info("Reloading in full, as {} reads lines its own way but not update lines", getClass().getName());
+    }
 
     reload();
   }
@@ -248,7 +278,12 @@ public class FileDataModel extends AbstractDataModel {
     lastModified = newLastModified;
     lastUpdateFileModified = newLastUpdateFileModified;
 
+    if (incrementalUpdates && !loadFreshData) {
+      return applyUpdateFiles(findUpdateFilesAfter(Math.max(oldLastUpdateFileModifieid, newLastModified)));
+    }
+
     FastByIDMap<FastByIDMap<Long>> timestamps = new FastByIDMap<FastByIDMap<Long>>();
+    baseTimestamps = timestamps;
 
     if (hasPrefValues) {
 
@@ -305,6 +340,121 @@ public class FileDataModel extends AbstractDataModel {
     }
   }
 
+  private DataModel applyUpdateFiles(Iterable<File> updateFiles) throws IOException {
+    FastByIDMap<FastByIDMap<Float>> changes = new FastByIDMap<FastByIDMap<Float>>();
+    FastByIDMap<FastByIDMap<Long>> timestamps = new FastByIDMap<FastByIDMap<Long>>();
+    for (File updateFile : updateFiles) {
+      FileLineIterator iterator = new FileLineIterator(updateFile, false);
+      try {
+        while (iterator.hasNext()) {
+          processUpdateLine(iterator.next(), changes, timestamps);
+        }
+      } finally {
+        Closeables.close(iterator, true);
+      }
+    }
+    try {
+      return applyChanges(changes, timestamps);
+    } catch (TasteException te) {
+      throw new IOException(te);
+    }
+  }
+
+  private DataModel applyChanges(FastByIDMap<FastByIDMap<Float>> changes,
+                                 FastByIDMap<FastByIDMap<Long>> timestamps) throws TasteException {
+    DataModel current = delegate;
+    DeltaDataModel snapshot =
+        current instanceof DeltaDataModel ? (DeltaDataModel) current : new DeltaDataModel(current, baseTimestamps);
+    snapshot = snapshot.applyDelta(changes, timestamps);
+    log.debug("Applied updates for {} users", changes.size());
+    if (snapshot.needsCompaction(MAX_OVERLAY_FRACTION)) {
+      log.info("Compacting incremental updates");
+      FastByIDMap<FastByIDMap<Long>> compactedTimestamps = new FastByIDMap<FastByIDMap<Long>>();
+      DataModel compacted = snapshot.compact(compactedTimestamps);
+      baseTimestamps = compactedTimestamps;
+      return compacted;
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return true if a subclass overrides how lines are read when loading files in full, but not when applying
+   *  update files incrementally
+   */
+  private boolean overridesLineProcessingOnly() {
+    boolean overridesLines = false;
+    for (Class<?> c = getClass(); c != FileDataModel.class; c = c.getSuperclass()) {
+      for (Method method : c.getDeclaredMethods()) {
+        String name = method.getName();
+        if ("processUpdateLine".equals(name)) {
+          return false;
+        }
+        if ("processLine".equals(name) || "processLineWithoutID".equals(name)) {
+          overridesLines = true;
+        }
+      }
+    }
+    return overridesLines;
+  }
+
+  /**
+   * Reads one line of an update file in incremental mode, recording the change it expresses. This reads the
+   * same format as {@link #processLine(String, FastByIDMap, FastByIDMap, boolean)}, and honors
+   * {@link #readUserIDFromString(String)}, {@link #readItemIDFromString(String)} and
+   * {@link #readTimestampFromString(String)}; subclasses which read lines differently should override this too.
+   *
+   * @param changes maps user IDs to item IDs to new preference values; {@link Float#NaN} marks a removal
+   * @param timestamps maps user IDs to item IDs to new timestamps
+   */
+  protected void processUpdateLine(String line,
+                                   FastByIDMap<FastByIDMap<Float>> changes,
+                                   FastByIDMap<FastByIDMap<Long>> timestamps) {
+
+    if (line.isEmpty() || line.charAt(0) == COMMENT_CHAR) {
+      return;
+    }
+
+    Iterator<String> tokens = delimiterPattern.split(line).iterator();
+    String userIDString = tokens.next();
+    String itemIDString = tokens.next();
+    boolean hasPreference = tokens.hasNext();
+    String preferenceValueString = hasPreference ? tokens.next() : "";
+    boolean hasTimestamp = tokens.hasNext();
+    String timestampString = hasTimestamp ? tokens.next() : null;
+
+    long userID = readUserIDFromString(userIDString);
+    long itemID = readItemIDFromString(itemIDString);
+
+    if (transpose) {
+      long tmp = userID;
+      userID = itemID;
+      itemID = tmp;
+    }
+
+    float value;
+    if (hasPreference && !hasTimestamp && preferenceValueString.isEmpty()) {
+      // Then line is of form "userID,itemID,", meaning remove
+      value = Float.NaN;
+      // Also hides any timestamp the base has for it, should it be added back
+      FastByIDMap<Long> itemTimestamps = timestamps.get(userID);
+      if (itemTimestamps == null) {
+        itemTimestamps = new FastByIDMap<Long>();
+        timestamps.put(userID, itemTimestamps);
+      }
+      itemTimestamps.put(itemID, DeltaDataModel.REMOVED_TIMESTAMP);
+    } else {
+      value = hasPrefValues ? Float.parseFloat(preferenceValueString) : 1.0f;
+      addTimestamp(userID, itemID, timestampString, timestamps);
+    }
+
+    FastByIDMap<Float> changesForUser = changes.get(userID);
+    if (changesForUser == null) {
+      changesForUser = new FastByIDMap<Float>();
+      changes.put(userID, changesForUser);
+    }
+    changesForUser.put(itemID, value);
+  }
+
   /**
    * Finds update delta files in the same directory as the data file. This finds any file whose name starts
    * the same way as the data file (up to first period) but isn't the data file itself. For example, if the
@@ -718,13 +868,36 @@ public class FileDataModel extends AbstractDataModel {
    */
   @Override
   public void setPreference(long userID, long itemID, float value) throws TasteException {
-    delegate.setPreference(userID, itemID, value);
+    if (incrementalUpdates) {
+      applyChange(userID, itemID, value);
+    } else {
+      delegate.setPreference(userID, itemID, value);
+    }
+    firePreferencesChanged(userID);
   }
 
   /** See the warning at {@link #setPreference(long, long, float)}. */
   @Override
   public void removePreference(long userID, long itemID) throws TasteException {
-    delegate.removePreference(userID, itemID);
+    if (incrementalUpdates) {
+      applyChange(userID, itemID, Float.NaN);
+    } else {
+      delegate.removePreference(userID, itemID);
+    }
+    firePreferencesChanged(userID);
+  }
+
+  private void applyChange(long userID, long itemID, float value) throws TasteException {
+    FastByIDMap<Float> changesForUser = new FastByIDMap<Float>(1);
+    changesForUser.put(itemID, value);
+    FastByIDMap<FastByIDMap<Float>> changes = new FastByIDMap<FastByIDMap<Float>>(1);
+    changes.put(userID, changesForUser);
+    reloadLock.lock();
+    try {
+      delegate = applyChanges(changes, new FastByIDMap<FastByIDMap<Long>>());
+    } finally {
+      reloadLock.unlock();
+    }
   }
 
   @Override
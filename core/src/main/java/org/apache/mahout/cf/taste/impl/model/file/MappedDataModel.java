@@ -0,0 +1,352 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.common.AbstractLongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.impl.model.AbstractDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+
+/**
+ * <p>
+ * A read-only {@link DataModel} backed by a memory-mapped binary file, as written by
+ * {@link MappedDataModelWriter}. The preference data lives off-heap in the OS page cache instead of in
+ * {@link org.apache.mahout.cf.taste.impl.common.FastByIDMap}s of {@link PreferenceArray}s, so startup time
+ * is independent of the size of the data and heap usage is close to zero, which makes this suitable for
+ * data sets of hundreds of millions of preferences.
+ * </p>
+ *
+ * <p>
+ * The file holds the preferences twice, once in user-major and once in item-major order, each in a
+ * compressed-sparse-row layout: a sorted array of user (item) IDs, an array of offsets into the preference
+ * arrays, then the item (user) IDs of the preferences, sorted within each user (item), and optionally their
+ * values. {@link #getPreferencesFromUser(long)} and {@link #getPreferencesForItem(long)} return views over
+ * these arrays without copying anything.
+ * </p>
+ *
+ * <p>
+ * Preference times are not stored; {@link #getPreferenceTime(long, long)} always returns {@code null}.
+ * {@link #setPreference(long, long, float)} and {@link #removePreference(long, long)} are not supported.
+ * </p>
+ */
+public final class MappedDataModel extends AbstractDataModel {
+
+  static final int MAGIC = 0x4D54444D; // "MTDM"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int FLAG_HAS_PREF_VALUES = 0x01;
+
+  private final File dataFile;
+  private final boolean hasPrefValues;
+  private final int numUsers;
+  private final int numItems;
+  private final long numPrefs;
+  private final MappedSection userIDs;
+  private final MappedSection userOffsets;
+  private final MappedSection userItemIDs;
+  private final MappedSection userValues;
+  private final MappedSection itemIDs;
+  private final MappedSection itemOffsets;
+  private final MappedSection itemUserIDs;
+  private final MappedSection itemValues;
+
+  /**
+   * @param dataFile file written by {@link MappedDataModelWriter}
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MappedDataModel(File dataFile) throws IOException {
+    this.dataFile = Preconditions.checkNotNull(dataFile);
+    RandomAccessFile raf = new RandomAccessFile(dataFile, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException("Truncated header in " + dataFile);
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a mapped data model file: " + dataFile);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " in " + dataFile);
+      }
+      hasPrefValues = (header.getInt() & FLAG_HAS_PREF_VALUES) != 0;
+      numUsers = header.getInt();
+      numItems = header.getInt();
+      header.getInt();
+      numPrefs = header.getLong();
+      setMinPreference(header.getFloat());
+      setMaxPreference(header.getFloat());
+
+      long expectedLength = fileLength(numUsers, numItems, numPrefs, hasPrefValues);
+      if (channel.size() < expectedLength) {
+        throw new IOException("Truncated file " + dataFile + "; expected " + expectedLength + " bytes");
+      }
+
+      // Mappings stay valid after the channel is closed
+      long position = HEADER_SIZE;
+      userIDs = MappedSection.map(channel, position, numUsers, 8);
+      position += 8L * numUsers;
+      userOffsets = MappedSection.map(channel, position, numUsers + 1L, 8);
+      position += 8L * (numUsers + 1L);
+      userItemIDs = MappedSection.map(channel, position, numPrefs, 8);
+      position += 8L * numPrefs;
+      if (hasPrefValues) {
+        userValues = MappedSection.map(channel, position, numPrefs, 4);
+        position += align(4L * numPrefs);
+      } else {
+        userValues = null;
+      }
+      itemIDs = MappedSection.map(channel, position, numItems, 8);
+      position += 8L * numItems;
+      itemOffsets = MappedSection.map(channel, position, numItems + 1L, 8);
+      position += 8L * (numItems + 1L);
+      itemUserIDs = MappedSection.map(channel, position, numPrefs, 8);
+      position += 8L * numPrefs;
+      itemValues = hasPrefValues ? MappedSection.map(channel, position, numPrefs, 4) : null;
+    } finally {
+      Closeables.close(raf, true);
+    }
+  }
+
+  static long align(long size) {
+    return (size + 7L) & ~7L;
+  }
+
+  static long fileLength(int numUsers, int numItems, long numPrefs, boolean hasPrefValues) {
+    long perOrientationValues = hasPrefValues ? align(4L * numPrefs) : 0L;
+    return HEADER_SIZE
+        + 8L * numUsers + 8L * (numUsers + 1L) + 8L * numPrefs + perOrientationValues
+        + 8L * numItems + 8L * (numItems + 1L) + 8L * numPrefs + perOrientationValues;
+  }
+
+  public File getDataFile() {
+    return dataFile;
+  }
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() {
+    return new MappedIDIterator(userIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws NoSuchUserException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    long start = userOffsets.getLong(index);
+    int length = (int) (userOffsets.getLong(index + 1) - start);
+    return new MappedPreferenceArray(true, userID, userItemIDs, userValues, start, length);
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws NoSuchUserException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    long start = userOffsets.getLong(index);
+    long end = userOffsets.getLong(index + 1);
+    FastIDSet result = new FastIDSet((int) (end - start));
+    for (long i = start; i < end; i++) {
+      result.add(userItemIDs.getLong(i));
+    }
+    return result;
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() {
+    return new MappedIDIterator(itemIDs);
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws NoSuchItemException {
+    long index = itemIDs.binarySearch(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    long start = itemOffsets.getLong(index);
+    int length = (int) (itemOffsets.getLong(index + 1) - start);
+    return new MappedPreferenceArray(false, itemID, itemUserIDs, itemValues, start, length);
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws NoSuchUserException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    long prefIndex = userItemIDs.binarySearch(userOffsets.getLong(index), userOffsets.getLong(index + 1), itemID);
+    if (prefIndex < 0) {
+      return null;
+    }
+    return hasPrefValues ? userValues.getFloat(prefIndex) : 1.0f;
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws NoSuchUserException {
+    if (userIDs.binarySearch(0, numUsers, userID) < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return null;
+  }
+
+  @Override
+  public int getNumItems() {
+    return numItems;
+  }
+
+  @Override
+  public int getNumUsers() {
+    return numUsers;
+  }
+
+  /**
+   * @return total number of preferences in the model
+   */
+  public long getNumPreferences() {
+    return numPrefs;
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID) {
+    long index = itemIDs.binarySearch(0, numItems, itemID);
+    return index < 0 ? 0 : (int) (itemOffsets.getLong(index + 1) - itemOffsets.getLong(index));
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) {
+    long index1 = itemIDs.binarySearch(0, numItems, itemID1);
+    if (index1 < 0) {
+      return 0;
+    }
+    long index2 = itemIDs.binarySearch(0, numItems, itemID2);
+    if (index2 < 0) {
+      return 0;
+    }
+    long i = itemOffsets.getLong(index1);
+    long end1 = itemOffsets.getLong(index1 + 1);
+    long j = itemOffsets.getLong(index2);
+    long end2 = itemOffsets.getLong(index2 + 1);
+    int count = 0;
+    while (i < end1 && j < end2) {
+      long userID1 = itemUserIDs.getLong(i);
+      long userID2 = itemUserIDs.getLong(j);
+      if (userID1 < userID2) {
+        i++;
+      } else if (userID1 > userID2) {
+        j++;
+      } else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Does nothing
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return hasPrefValues;
+  }
+
+  @Override
+  public String toString() {
+    return "MappedDataModel[file:" + dataFile + ",users:" + numUsers + ",items:" + numItems + ']';
+  }
+
+  private static final class MappedIDIterator extends AbstractLongPrimitiveIterator {
+
+    private final MappedSection ids;
+    private long position;
+
+    private MappedIDIterator(MappedSection ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < ids.size();
+    }
+
+    @Override
+    public long nextLong() {
+      if (position >= ids.size()) {
+        throw new NoSuchElementException();
+      }
+      return ids.getLong(position++);
+    }
+
+    @Override
+    public long peek() {
+      if (position >= ids.size()) {
+        throw new NoSuchElementException();
+      }
+      return ids.getLong(position);
+    }
+
+    @Override
+    public void skip(int n) {
+      if (n > 0) {
+        position += n;
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.iterator.FileLineIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Writes the contents of any {@link DataModel} in the binary format read by {@link MappedDataModel}.
+ * </p>
+ *
+ * <p>
+ * Run {@link #main(String[])} to convert a file in the text format understood by {@link FileDataModel}:
+ * </p>
+ *
+ * <p>{@code MappedDataModelWriter input.csv output.bin}</p>
+ *
+ * <p>
+ * The preferences are sorted by user and by item on disk, next to the output file, so neither
+ * {@link #convert(File, File)} nor {@link #write(DataModel, File)} needs more heap than for sorting one run of
+ * preferences at a time.
+ * </p>
+ */
+public final class MappedDataModelWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedDataModelWriter.class);
+
+  /** Preferences sorted in memory at a time, taking about 100MB of heap */
+  private static final int DEFAULT_RUN_SIZE = 1 << 22;
+  private static final char COMMENT_CHAR = '#';
+
+  private MappedDataModelWriter() { }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: MappedDataModelWriter [input file] [output file]");
+      return;
+    }
+    convert(new File(args[0]), new File(args[1]));
+  }
+
+  /**
+   * Converts a file in the text format understood by {@link FileDataModel} to a file which {@link MappedDataModel}
+   * can map, without reading all of it into memory. As in {@link FileDataModel}, a later line for the same user and
+   * item replaces an earlier one, and a line of the form "userID,itemID," removes it. Timestamps are not stored.
+   */
+  public static void convert(File inputFile, File outputFile) throws IOException {
+    convert(inputFile, outputFile, DEFAULT_RUN_SIZE);
+  }
+
+  static void convert(File inputFile, File outputFile, int runSize) throws IOException {
+    PreferenceSorter byUser = new PreferenceSorter(tempDir(outputFile), runSize);
+    boolean hasPrefValues = false;
+    FileLineIterator lines = new FileLineIterator(inputFile, false);
+    boolean threw = true;
+    try {
+      Splitter splitter = null;
+      while (lines.hasNext()) {
+        String line = lines.next();
+        if (line.isEmpty() || line.charAt(0) == COMMENT_CHAR) {
+          continue;
+        }
+        if (splitter == null) {
+          splitter = Splitter.on(FileDataModel.determineDelimiter(line));
+          List<String> firstLineSplit = Lists.newArrayList(splitter.split(line));
+          hasPrefValues = firstLineSplit.size() >= 3 && !firstLineSplit.get(2).isEmpty();
+        }
+        Iterator<String> tokens = splitter.split(line).iterator();
+        long userID = Long.parseLong(tokens.next());
+        long itemID = Long.parseLong(tokens.next());
+        boolean hasPreference = tokens.hasNext();
+        String preferenceValueString = hasPreference ? tokens.next() : "";
+        boolean hasTimestamp = tokens.hasNext();
+        float value;
+        if (hasPreference && !hasTimestamp && preferenceValueString.isEmpty()) {
+          // Then line is of form "userID,itemID,", meaning remove
+          value = Float.NaN;
+        } else {
+          value = hasPrefValues ? Float.parseFloat(preferenceValueString) : 1.0f;
+        }
+        byUser.add(userID, itemID, value);
+      }
+      threw = false;
+    } finally {
+      Closeables.close(lines, true);
+      if (threw) {
+        byUser.close();
+      }
+    }
+    write(byUser, runSize, hasPrefValues, null, null, outputFile);
+  }
+
+  /**
+   * Writes all preferences in the given {@link DataModel} to a file which {@link MappedDataModel} can map.
+   */
+  public static void write(DataModel dataModel, File outputFile) throws IOException, TasteException {
+    write(dataModel, outputFile, DEFAULT_RUN_SIZE);
+  }
+
+  static void write(DataModel dataModel, File outputFile, int runSize) throws IOException, TasteException {
+    PreferenceSorter byUser = new PreferenceSorter(tempDir(outputFile), runSize);
+    boolean threw = true;
+    try {
+      LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+      while (userIDs.hasNext()) {
+        long userID = userIDs.nextLong();
+        PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+        for (int i = 0; i < prefs.length(); i++) {
+          byUser.add(userID, prefs.getItemID(i), prefs.getValue(i));
+        }
+      }
+      threw = false;
+    } finally {
+      if (threw) {
+        byUser.close();
+      }
+    }
+    write(byUser, runSize, dataModel.hasPreferenceValues(),
+          dataModel.getMinPreference(), dataModel.getMaxPreference(), outputFile);
+  }
+
+  /**
+   * Sorts the preferences by user and by item, and writes them.
+   *
+   * @param minPreference minimum preference to record, or null to use the smallest value written
+   * @param maxPreference maximum preference to record, or null to use the largest value written
+   */
+  private static void write(PreferenceSorter byUser,
+                            int runSize,
+                            boolean hasPrefValues,
+                            Float minPreference,
+                            Float maxPreference,
+                            File outputFile) throws IOException {
+    File tempDir = tempDir(outputFile);
+    File userSorted = File.createTempFile("byUser", ".prefs", tempDir);
+    File itemSorted = File.createTempFile("byItem", ".prefs", tempDir);
+    try {
+      long numPrefs = byUser.sortTo(userSorted);
+      Orientation users = Orientation.scan(userSorted);
+
+      PreferenceSorter byItem = new PreferenceSorter(tempDir, runSize);
+      PreferenceSorter.Records records = new PreferenceSorter.Records(userSorted);
+      try {
+        while (records.next()) {
+          byItem.add(records.secondID(), records.firstID(), records.value());
+        }
+      } catch (IOException ioe) {
+        byItem.close();
+        throw ioe;
+      } finally {
+        Closeables.close(records, true);
+      }
+      byItem.sortTo(itemSorted);
+      Orientation items = Orientation.scan(itemSorted);
+
+      log.info("Writing {} users, {} items and {} preferences to {}",
+               new Object[] {users.numIDs, items.numIDs, numPrefs, outputFile});
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16));
+      boolean threw = true;
+      try {
+        out.writeInt(MappedDataModel.MAGIC);
+        out.writeInt(MappedDataModel.VERSION);
+        out.writeInt(hasPrefValues ? MappedDataModel.FLAG_HAS_PREF_VALUES : 0);
+        out.writeInt(users.numIDs);
+        out.writeInt(items.numIDs);
+        out.writeInt(0);
+        out.writeLong(numPrefs);
+        out.writeFloat(minPreference == null ? users.minValue : minPreference);
+        out.writeFloat(maxPreference == null ? users.maxValue : maxPreference);
+        for (int i = out.size(); i < MappedDataModel.HEADER_SIZE; i++) {
+          out.writeByte(0);
+        }
+
+        writeOrientation(userSorted, users, hasPrefValues, out);
+        writeOrientation(itemSorted, items, hasPrefValues, out);
+        threw = false;
+      } finally {
+        Closeables.close(out, threw);
+      }
+    } finally {
+      delete(userSorted);
+      delete(itemSorted);
+    }
+  }
+
+  /**
+   * Writes the IDs, offsets, other IDs and values of one orientation in turn, each in one pass over the sorted
+   * preferences.
+   */
+  private static void writeOrientation(File sorted,
+                                       Orientation orientation,
+                                       boolean hasPrefValues,
+                                       DataOutputStream out) throws IOException {
+    PreferenceSorter.Records records = new PreferenceSorter.Records(sorted);
+    try {
+      boolean first = true;
+      long previousID = 0;
+      while (records.next()) {
+        if (first || records.firstID() != previousID) {
+          out.writeLong(records.firstID());
+          previousID = records.firstID();
+          first = false;
+        }
+      }
+    } finally {
+      Closeables.close(records, true);
+    }
+
+    records = new PreferenceSorter.Records(sorted);
+    try {
+      long offset = 0;
+      out.writeLong(offset);
+      boolean first = true;
+      long previousID = 0;
+      while (records.next()) {
+        if (!first && records.firstID() != previousID) {
+          out.writeLong(offset);
+        }
+        previousID = records.firstID();
+        first = false;
+        offset++;
+      }
+      if (!first) {
+        out.writeLong(offset);
+      }
+    } finally {
+      Closeables.close(records, true);
+    }
+
+    records = new PreferenceSorter.Records(sorted);
+    try {
+      while (records.next()) {
+        out.writeLong(records.secondID());
+      }
+    } finally {
+      Closeables.close(records, true);
+    }
+
+    if (hasPrefValues) {
+      records = new PreferenceSorter.Records(sorted);
+      try {
+        while (records.next()) {
+          out.writeFloat(records.value());
+        }
+      } finally {
+        Closeables.close(records, true);
+      }
+      for (long i = 4L * orientation.numPrefs; i < MappedDataModel.align(4L * orientation.numPrefs); i++) {
+        out.writeByte(0);
+      }
+    }
+  }
+
+  private static File tempDir(File outputFile) {
+    return outputFile.getAbsoluteFile().getParentFile();
+  }
+
+  private static void delete(File file) {
+    if (file.exists() && !file.delete()) {
+      log.warn("Unable to delete {}", file);
+    }
+  }
+
+  /**
+   * What is needed about the preferences sorted one way before writing them.
+   */
+  private static final class Orientation {
+
+    private int numIDs;
+    private long numPrefs;
+    private float minValue = Float.NaN;
+    private float maxValue = Float.NaN;
+
+    static Orientation scan(File sorted) throws IOException {
+      Orientation orientation = new Orientation();
+      PreferenceSorter.Records records = new PreferenceSorter.Records(sorted);
+      try {
+        long previousID = 0;
+        while (records.next()) {
+          if (orientation.numPrefs == 0 || records.firstID() != previousID) {
+            orientation.numIDs++;
+            previousID = records.firstID();
+          }
+          orientation.numPrefs++;
+          float value = records.value();
+          if (orientation.numPrefs == 1 || value < orientation.minValue) {
+            orientation.minValue = value;
+          }
+          if (orientation.numPrefs == 1 || value > orientation.maxValue) {
+            orientation.maxValue = value;
+          }
+        }
+      } finally {
+        Closeables.close(records, true);
+      }
+      return orientation;
+    }
+  }
+
+}
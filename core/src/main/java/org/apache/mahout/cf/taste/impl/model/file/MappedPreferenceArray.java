@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.util.Iterator;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.iterator.CountingIterator;
+
+/**
+ * <p>
+ * A read-only {@link PreferenceArray} view over one user's (or one item's) preferences in a
+ * {@link MappedDataModel}. Nothing is copied when the view is created; IDs and values are read straight from
+ * the mapped file.
+ * </p>
+ *
+ * <p>
+ * Preferences of a user are sorted by item ID, and preferences for an item by user ID, so
+ * {@link #sortByUser()} and {@link #sortByItem()} have nothing to do. All other mutating methods throw
+ * {@link UnsupportedOperationException}; callers that need to modify the array should {@link #clone()} it,
+ * which returns a mutable, heap-based copy.
+ * </p>
+ */
+final class MappedPreferenceArray implements PreferenceArray {
+
+  private final boolean byUser;
+  private final long id;
+  private final MappedSection otherIDs;
+  private final MappedSection values;
+  private final long start;
+  private final int length;
+
+  /**
+   * @param byUser true if this holds the preferences of user {@code id}, false if those for item {@code id}
+   * @param values may be {@code null} if the model has no preference values
+   */
+  MappedPreferenceArray(boolean byUser, long id, MappedSection otherIDs, MappedSection values, long start,
+                        int length) {
+    this.byUser = byUser;
+    this.id = id;
+    this.otherIDs = otherIDs;
+    this.values = values;
+    this.start = start;
+    this.length = length;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public Preference get(int i) {
+    return new GenericPreference(getUserID(i), getItemID(i), getValue(i));
+  }
+
+  @Override
+  public void set(int i, Preference pref) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getUserID(int i) {
+    return byUser ? id : otherIDs.getLong(start + i);
+  }
+
+  @Override
+  public void setUserID(int i, long userID) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getItemID(int i) {
+    return byUser ? otherIDs.getLong(start + i) : id;
+  }
+
+  @Override
+  public void setItemID(int i, long itemID) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return a fresh copy of the item IDs (for a user's preferences) or user IDs (for an item's)
+   */
+  @Override
+  public long[] getIDs() {
+    long[] ids = new long[length];
+    for (int i = 0; i < length; i++) {
+      ids[i] = otherIDs.getLong(start + i);
+    }
+    return ids;
+  }
+
+  @Override
+  public float getValue(int i) {
+    return values == null ? 1.0f : values.getFloat(start + i);
+  }
+
+  @Override
+  public void setValue(int i, float value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public PreferenceArray clone() {
+    PreferenceArray copy = byUser ? new GenericUserPreferenceArray(length) : new GenericItemPreferenceArray(length);
+    for (int i = 0; i < length; i++) {
+      copy.setUserID(i, getUserID(i));
+      copy.setItemID(i, getItemID(i));
+      copy.setValue(i, getValue(i));
+    }
+    return copy;
+  }
+
+  @Override
+  public void sortByUser() {
+    // an item's preferences are already sorted by user ID, and all user IDs of a user's preferences are the same
+  }
+
+  @Override
+  public void sortByItem() {
+    // a user's preferences are already sorted by item ID, and all item IDs of an item's preferences are the same
+  }
+
+  @Override
+  public void sortByValue() {
+    throw new UnsupportedOperationException("Read-only view; clone() first");
+  }
+
+  @Override
+  public void sortByValueReversed() {
+    throw new UnsupportedOperationException("Read-only view; clone() first");
+  }
+
+  @Override
+  public boolean hasPrefWithUserID(long userID) {
+    return byUser ? id == userID : otherIDs.binarySearch(start, start + length, userID) >= 0;
+  }
+
+  @Override
+  public boolean hasPrefWithItemID(long itemID) {
+    return byUser ? otherIDs.binarySearch(start, start + length, itemID) >= 0 : id == itemID;
+  }
+
+  @Override
+  public Iterator<Preference> iterator() {
+    return Iterators.transform(new CountingIterator(length),
+      new Function<Integer, Preference>() {
+        @Override
+        public Preference apply(Integer from) {
+          return get(from);
+        }
+      });
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(20 * length + 40);
+    result.append("MappedPreferenceArray[").append(byUser ? "userID:" : "itemID:").append(id).append(",{");
+    for (int i = 0; i < length; i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      result.append(otherIDs.getLong(start + i));
+      result.append('=');
+      result.append(getValue(i));
+    }
+    result.append("}]");
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.function.IntComparator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Sorts more preferences than fit in memory by one ID and then by the other. Preferences are sorted in runs of a
+ * fixed size, which are written to temporary files and finally merged.
+ * </p>
+ *
+ * <p>
+ * Of several preferences for the same pair of IDs, the one added last is kept, and a {@link Float#NaN} value
+ * removes the pair, like the lines of a file read by {@link FileDataModel}.
+ * </p>
+ */
+final class PreferenceSorter implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(PreferenceSorter.class);
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  /** Two IDs and a value */
+  private static final int RECORD_SIZE = 8 + 8 + 4;
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private final File tempDir;
+  private final int runSize;
+  private long[] firstIDs;
+  private long[] secondIDs;
+  private float[] values;
+  private int[] order;
+  private int size;
+  private final List<File> runs = Lists.newArrayList();
+
+  /**
+   * @param tempDir where to write the sorted runs
+   * @param runSize how many preferences to sort in memory at a time; this takes 24 bytes of heap each, which are
+   *  only allocated as preferences are added
+   */
+  PreferenceSorter(File tempDir, int runSize) {
+    Preconditions.checkArgument(runSize > 0, "runSize must be positive");
+    this.tempDir = tempDir;
+    this.runSize = runSize;
+    int capacity = Math.min(runSize, INITIAL_CAPACITY);
+    firstIDs = new long[capacity];
+    secondIDs = new long[capacity];
+    values = new float[capacity];
+    order = new int[capacity];
+  }
+
+  void add(long firstID, long secondID, float value) throws IOException {
+    if (size == firstIDs.length) {
+      if (size < runSize) {
+        grow((int) Math.min(runSize, 2L * size));
+      } else {
+        writeRun();
+      }
+    }
+    firstIDs[size] = firstID;
+    secondIDs[size] = secondID;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Writes all preferences added so far to a file, sorted and without duplicates or removed pairs.
+   *
+   * @return the number of preferences written
+   */
+  long sortTo(File sorted) throws IOException {
+    if (size > 0 || runs.isEmpty()) {
+      writeRun();
+    }
+    log.info("Merging {} sorted runs into {}", runs.size(), sorted);
+    PriorityQueue<Records> queue = new PriorityQueue<Records>(runs.size(), new Comparator<Records>() {
+      @Override
+      public int compare(Records a, Records b) {
+        int cmp = compareIDs(a.firstID(), a.secondID(), b.firstID(), b.secondID());
+        // Of equal pairs, the later run comes out last, so that its preference is kept
+        return cmp != 0 ? cmp : a.run < b.run ? -1 : 1;
+      }
+    });
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sorted), BUFFER_SIZE));
+    long numPrefs = 0;
+    boolean threw = true;
+    try {
+      for (int run = 0; run < runs.size(); run++) {
+        Records records = new Records(runs.get(run), run);
+        if (records.next()) {
+          queue.add(records);
+        }
+      }
+      while (!queue.isEmpty()) {
+        Records records = queue.poll();
+        long firstID = records.firstID();
+        long secondID = records.secondID();
+        float value = records.value();
+        advance(records, queue);
+        while (!queue.isEmpty()
+            && queue.peek().firstID() == firstID && queue.peek().secondID() == secondID) {
+          records = queue.poll();
+          value = records.value();
+          advance(records, queue);
+        }
+        if (!Float.isNaN(value)) {
+          writeRecord(out, firstID, secondID, value);
+          numPrefs++;
+        }
+      }
+      threw = false;
+    } finally {
+      for (Records records : queue) {
+        Closeables.close(records, true);
+      }
+      Closeables.close(out, threw);
+      close();
+    }
+    return numPrefs;
+  }
+
+  /**
+   * Deletes the runs written so far.
+   */
+  @Override
+  public void close() {
+    for (File run : runs) {
+      if (!run.delete()) {
+        log.warn("Unable to delete {}", run);
+      }
+    }
+    runs.clear();
+  }
+
+  private void grow(int capacity) {
+    firstIDs = Arrays.copyOf(firstIDs, capacity);
+    secondIDs = Arrays.copyOf(secondIDs, capacity);
+    values = Arrays.copyOf(values, capacity);
+    order = new int[capacity];
+  }
+
+  private static void advance(Records records, PriorityQueue<Records> queue) throws IOException {
+    if (records.next()) {
+      queue.add(records);
+    } else {
+      records.close();
+    }
+  }
+
+  /**
+   * Sorts the preferences in memory and writes them as the next run. Of equal pairs, only the last one added is
+   * written, even if it removes the pair, as it may also remove one in an earlier run.
+   */
+  private void writeRun() throws IOException {
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Sorting.quickSort(order, 0, size, new IntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        int cmp = compareIDs(firstIDs[a], secondIDs[a], firstIDs[b], secondIDs[b]);
+        // Ties are broken by the order of adding, to find the last one
+        return cmp != 0 ? cmp : a < b ? -1 : a > b ? 1 : 0;
+      }
+    });
+    File run = File.createTempFile("prefs", ".run", tempDir);
+    runs.add(run);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE));
+    boolean threw = true;
+    try {
+      for (int i = 0; i < size; i++) {
+        int current = order[i];
+        if (i + 1 < size
+            && firstIDs[order[i + 1]] == firstIDs[current] && secondIDs[order[i + 1]] == secondIDs[current]) {
+          continue;
+        }
+        writeRecord(out, firstIDs[current], secondIDs[current], values[current]);
+      }
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+    size = 0;
+  }
+
+  private static int compareIDs(long firstA, long secondA, long firstB, long secondB) {
+    if (firstA != firstB) {
+      return firstA < firstB ? -1 : 1;
+    }
+    if (secondA != secondB) {
+      return secondA < secondB ? -1 : 1;
+    }
+    return 0;
+  }
+
+  private static void writeRecord(DataOutputStream out, long firstID, long secondID, float value)
+    throws IOException {
+    out.writeLong(firstID);
+    out.writeLong(secondID);
+    out.writeFloat(value);
+  }
+
+  /**
+   * Reads back the preferences of a file written by this class, in order.
+   */
+  static final class Records implements Closeable {
+
+    private final DataInputStream in;
+    private final long length;
+    private final int run;
+    private long position;
+    private long firstID;
+    private long secondID;
+    private float value;
+
+    Records(File file) throws IOException {
+      this(file, 0);
+    }
+
+    private Records(File file, int run) throws IOException {
+      this.length = file.length() / RECORD_SIZE;
+      this.run = run;
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * @return false if there are no more preferences
+     */
+    boolean next() throws IOException {
+      if (position == length) {
+        return false;
+      }
+      firstID = in.readLong();
+      secondID = in.readLong();
+      value = in.readFloat();
+      position++;
+      return true;
+    }
+
+    long firstID() {
+      return firstID;
+    }
+
+    long secondID() {
+      return secondID;
+    }
+
+    float value() {
+      return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+}
@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.neighborhood;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
+import org.apache.mahout.cf.taste.impl.recommender.TopItems;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.apache.mahout.cf.taste.model.PreferenceChangeNotifier;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.MurmurHash3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Like {@link NearestNUserNeighborhood}, computes a neighborhood of the nearest n users to a given user, but only
+ * computes the {@link UserSimilarity} with candidates found in a locality-sensitive hash index instead of with every
+ * user.
+ * </p>
+ *
+ * <p>
+ * Each user is indexed by a MinHash signature of the set of items they expressed a preference for: the minimum,
+ * over those items, of each of a number of random hash functions. Two users agree on any one of these values with
+ * probability equal to the Jaccard similarity of their item sets. Signatures are split into bands of a few values
+ * each, and users whose signatures agree on all the values of any band are candidates for each other's
+ * neighborhood. With {@code b} bands of {@code r} values, users with Jaccard similarity {@code s} become candidates
+ * with probability {@code 1 - (1 - s^r)^b}; more bands find more neighbors at the cost of more candidates, and
+ * more values per band fewer of both.
+ * </p>
+ *
+ * <p>
+ * The neighborhood is therefore approximate: it can miss users who are similar by the given {@link UserSimilarity}
+ * but share few items, and it is best suited to similarities based on shared items, like
+ * {@link org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity} or
+ * {@link org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity}.
+ * </p>
+ *
+ * <p>
+ * The index is built when this is constructed and rebuilt on {@link #refresh(Collection)}. When a user's
+ * preferences change, {@link #preferencesChanged(long)} re-indexes just that user. If the {@link DataModel} is a
+ * {@link PreferenceChangeNotifier}, as {@link org.apache.mahout.cf.taste.impl.model.file.FileDataModel} is, this
+ * listens to it, so that changes are followed however they are made, for example through a recommender using this
+ * wrapped in a {@link CachingUserNeighborhood}; otherwise changes are only seen after a refresh, unless reported by
+ * calling {@link #preferencesChanged(long)}. Queries and updates may run concurrently, also with a rebuild, which
+ * only locks out the others while swapping in the new index.
+ * </p>
+ */
+public final class MinHashUserNeighborhood implements UserNeighborhood, PreferenceChangeListener {
+
+  private static final Logger log = LoggerFactory.getLogger(MinHashUserNeighborhood.class);
+
+  public static final int DEFAULT_NUM_BANDS = 20;
+  public static final int DEFAULT_ROWS_PER_BAND = 3;
+
+  private static final int[] NO_SIGNATURE = new int[0];
+
+  private final int n;
+  private final double minSimilarity;
+  private final UserSimilarity userSimilarity;
+  private final DataModel dataModel;
+  private final int numBands;
+  private final int rowsPerBand;
+  private final long[] hashSeeds;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Replaced whole by each rebuild; guarded by the lock. */
+  private Index index;
+  /**
+   * While a rebuild runs, the latest signature of each user changed meanwhile, or {@link #NO_SIGNATURE} if they
+   * were removed, to apply again to the new index; otherwise null. Guarded by the lock.
+   */
+  private FastByIDMap<int[]> changedDuringRebuild;
+  private final RefreshHelper refreshHelper;
+
+  /**
+   * @param n neighborhood size
+   * @throws IllegalArgumentException if {@code n < 1}, or userSimilarity or dataModel are {@code null}
+   */
+  public MinHashUserNeighborhood(int n, UserSimilarity userSimilarity, DataModel dataModel) throws TasteException {
+    this(n, Double.NEGATIVE_INFINITY, userSimilarity, dataModel, DEFAULT_NUM_BANDS, DEFAULT_ROWS_PER_BAND);
+  }
+
+  /**
+   * @param n neighborhood size
+   * @param minSimilarity minimal similarity required for neighbors
+   * @param numBands number of bands of the MinHash signature, in any of which users must agree to be candidates
+   * @param rowsPerBand number of MinHash values per band, all of which users must agree on to be candidates
+   * @throws IllegalArgumentException if {@code n < 1}, numBands or rowsPerBand are not positive, or userSimilarity
+   *           or dataModel are {@code null}
+   */
+  public MinHashUserNeighborhood(int n,
+                                 double minSimilarity,
+                                 UserSimilarity userSimilarity,
+                                 DataModel dataModel,
+                                 int numBands,
+                                 int rowsPerBand) throws TasteException {
+    Preconditions.checkArgument(n >= 1, "n must be at least 1");
+    Preconditions.checkArgument(userSimilarity != null, "userSimilarity is null");
+    Preconditions.checkArgument(dataModel != null, "dataModel is null");
+    Preconditions.checkArgument(numBands > 0, "numBands must be positive");
+    Preconditions.checkArgument(rowsPerBand > 0, "rowsPerBand must be positive");
+    this.n = n;
+    this.minSimilarity = minSimilarity;
+    this.userSimilarity = userSimilarity;
+    this.dataModel = dataModel;
+    this.numBands = numBands;
+    this.rowsPerBand = rowsPerBand;
+
+    Random random = RandomUtils.getRandom();
+    hashSeeds = new long[numBands * rowsPerBand];
+    for (int i = 0; i < hashSeeds.length; i++) {
+      hashSeeds[i] = random.nextLong();
+    }
+    index = new Index();
+
+    refreshHelper = new RefreshHelper(new Callable<Void>() {
+      @Override
+      public Void call() throws TasteException {
+        rebuild();
+        return null;
+      }
+    });
+    refreshHelper.addDependency(dataModel);
+    refreshHelper.addDependency(userSimilarity);
+    // Listens before building, so that no change made meanwhile is missed
+    if (dataModel instanceof PreferenceChangeNotifier) {
+      ((PreferenceChangeNotifier) dataModel).addPreferenceChangeListener(this);
+    }
+    rebuild();
+  }
+
+  /**
+   * Builds a new index without holding the lock, so that queries and updates go on meanwhile with the old one, then
+   * swaps it in. Rebuilds run one at a time, from the constructor and from {@link RefreshHelper}.
+   */
+  private void rebuild() throws TasteException {
+    lock.writeLock().lock();
+    try {
+      changedDuringRebuild = new FastByIDMap<int[]>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    Index newIndex = null;
+    try {
+      newIndex = buildIndex();
+    } finally {
+      publish(newIndex);
+    }
+    log.info("Indexed {} users in {} bands", newIndex.signatures.size(), numBands);
+  }
+
+  private Index buildIndex() throws TasteException {
+    Index newIndex = new Index();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      newIndex.add(userID, signature(dataModel.getItemIDsFromUser(userID)));
+    }
+    return newIndex;
+  }
+
+  /**
+   * Replaces the index with a new one, unless null because building it failed, after applying to it again the
+   * changes made while it was built, which it may or may not have read.
+   */
+  private void publish(Index newIndex) {
+    lock.writeLock().lock();
+    try {
+      if (newIndex != null) {
+        for (Map.Entry<Long,int[]> entry : changedDuringRebuild.entrySet()) {
+          long userID = entry.getKey();
+          int[] signature = entry.getValue();
+          newIndex.remove(userID);
+          newIndex.add(userID, signature == NO_SIGNATURE ? null : signature);
+        }
+        index = newIndex;
+      }
+      changedDuringRebuild = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Re-indexes a user after their preferences changed, or removes them from the index if they no longer exist.
+   */
+  @Override
+  public void preferencesChanged(long userID) throws TasteException {
+    FastIDSet itemIDs;
+    try {
+      itemIDs = dataModel.getItemIDsFromUser(userID);
+    } catch (NoSuchUserException nsue) {
+      itemIDs = null;
+    }
+    int[] signature = itemIDs == null ? null : signature(itemIDs);
+    lock.writeLock().lock();
+    try {
+      index.remove(userID);
+      index.add(userID, signature);
+      if (changedDuringRebuild != null) {
+        changedDuringRebuild.put(userID, signature == null ? NO_SIGNATURE : signature);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the MinHash signature of the item IDs, or null if there are none
+   */
+  private int[] signature(FastIDSet itemIDs) {
+    if (itemIDs.isEmpty()) {
+      return null;
+    }
+    int[] signature = new int[hashSeeds.length];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    LongPrimitiveIterator it = itemIDs.iterator();
+    while (it.hasNext()) {
+      long itemID = it.nextLong();
+      for (int i = 0; i < hashSeeds.length; i++) {
+        int hash = (int) MurmurHash3.fmix64(itemID ^ hashSeeds[i]);
+        if (hash < signature[i]) {
+          signature[i] = hash;
+        }
+      }
+    }
+    return signature;
+  }
+
+  private long bandKey(int[] signature, int band) {
+    long key = band;
+    for (int i = band * rowsPerBand; i < (band + 1) * rowsPerBand; i++) {
+      key = MurmurHash3.fmix64(key * 31 + signature[i]);
+    }
+    return key;
+  }
+
+  @Override
+  public long[] getUserNeighborhood(long userID) throws TasteException {
+    int[] signature;
+    lock.readLock().lock();
+    try {
+      signature = index.signatures.get(userID);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (signature == null) {
+      // Not indexed yet, like a new or anonymous user; just find candidates for it
+      signature = signature(dataModel.getItemIDsFromUser(userID));
+      if (signature == null) {
+        return new long[0];
+      }
+    }
+
+    FastIDSet candidates = new FastIDSet();
+    lock.readLock().lock();
+    try {
+      for (int band = 0; band < numBands; band++) {
+        FastIDSet bucket = index.buckets.get(band).get(bandKey(signature, band));
+        if (bucket != null) {
+          candidates.addAll(bucket);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    candidates.remove(userID);
+
+    TopItems.IDEstimator estimator = new NearestNUserNeighborhood.Estimator(userSimilarity, userID, minSimilarity);
+    return TopItems.getTopUsers(n, candidates.iterator(), null, estimator);
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    refreshHelper.refresh(alreadyRefreshed);
+  }
+
+  @Override
+  public String toString() {
+    return "MinHashUserNeighborhood[bands:" + numBands + ",rowsPerBand:" + rowsPerBand + ']';
+  }
+
+  /**
+   * Signatures of users and the buckets they fall in.
+   */
+  private final class Index {
+
+    /** Signature of every indexed user, so that they can be removed from their buckets. */
+    private final FastByIDMap<int[]> signatures;
+    /** For every band, users by the hash of their signature's values in that band. */
+    private final List<FastByIDMap<FastIDSet>> buckets;
+
+    private Index() {
+      signatures = new FastByIDMap<int[]>();
+      buckets = Lists.newArrayListWithCapacity(numBands);
+      for (int band = 0; band < numBands; band++) {
+        buckets.add(new FastByIDMap<FastIDSet>());
+      }
+    }
+
+    /**
+     * Indexes a user, unless their signature is null.
+     */
+    private void add(long userID, int[] signature) {
+      if (signature == null) {
+        return;
+      }
+      signatures.put(userID, signature);
+      for (int band = 0; band < numBands; band++) {
+        FastByIDMap<FastIDSet> bandBuckets = buckets.get(band);
+        long key = bandKey(signature, band);
+        FastIDSet bucket = bandBuckets.get(key);
+        if (bucket == null) {
+          bucket = new FastIDSet(2);
+          bandBuckets.put(key, bucket);
+        }
+        bucket.add(userID);
+      }
+    }
+
+    private void remove(long userID) {
+      int[] signature = signatures.remove(userID);
+      if (signature != null) {
+        for (int band = 0; band < numBands; band++) {
+          FastByIDMap<FastIDSet> bandBuckets = buckets.get(band);
+          long key = bandKey(signature, band);
+          FastIDSet bucket = bandBuckets.get(key);
+          bucket.remove(userID);
+          if (bucket.isEmpty()) {
+            bandBuckets.remove(key);
+          }
+        }
+      }
+    }
+  }
+
+}
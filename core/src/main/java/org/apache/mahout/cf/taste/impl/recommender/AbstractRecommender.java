@@ -20,10 +20,16 @@ package org.apache.mahout.cf.taste.impl.recommender;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.google.common.collect.Lists;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.ExecutorUtils;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
 import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.recommender.Recommender;
 import org.slf4j.Logger;
@@ -63,6 +69,54 @@ public abstract class AbstractRecommender implements Recommender {
     return recommend(userID, howMany, null);
   }
   
+  /**
+   * <p>
+   * Computes recommendations for a batch of users at once, using one thread per available processor.
+   * </p>
+   *
+   * @see #recommend(long[], int, IDRescorer, ExecutorService)
+   */
+  public List<List<RecommendedItem>> recommend(long[] userIDs, int howMany, IDRescorer rescorer)
+    throws TasteException {
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      return recommend(userIDs, howMany, rescorer, executor);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * <p>
+   * Computes recommendations for a batch of users at once, running the work on the given
+   * {@link ExecutorService}. The executor is not shut down. Default implementation which just calls
+   * {@link Recommender#recommend(long, int, IDRescorer)} for each user in parallel; subclasses may override
+   * this to share work between the users of the batch.
+   * </p>
+   *
+   * @param userIDs
+   *          users to compute recommendations for
+   * @return recommendations for each user, in the same order as {@code userIDs}
+   * @throws TasteException
+   *           if an error occurs while computing recommendations for any user
+   */
+  public List<List<RecommendedItem>> recommend(long[] userIDs,
+                                               final int howMany,
+                                               final IDRescorer rescorer,
+                                               ExecutorService executor) throws TasteException {
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    List<Callable<List<RecommendedItem>>> tasks = Lists.newArrayListWithCapacity(userIDs.length);
+    for (final long userID : userIDs) {
+      tasks.add(new Callable<List<RecommendedItem>>() {
+        @Override
+        public List<RecommendedItem> call() throws TasteException {
+          return recommend(userID, howMany, rescorer);
+        }
+      });
+    }
+    return ExecutorUtils.runAll(tasks, executor);
+  }
+
   /**
    * <p>
    * Default implementation which just calls {@link DataModel#setPreference(long, long, float)}.
@@ -25,6 +25,7 @@ import java.util.concurrent.Callable;
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
 import org.apache.mahout.cf.taste.impl.model.PlusAnonymousUserDataModel;
@@ -50,8 +51,8 @@ public final class CachingRecommender implements Recommender {
   private final Recommender recommender;
   private final int[] maxHowMany;
   private final Retriever<Long,Recommendations> recommendationsRetriever;
-  private final Cache<Long,Recommendations> recommendationCache;
-  private final Cache<LongPair,Float> estimatedPrefCache;
+  private final ConcurrentCache<Long,Recommendations> recommendationCache;
+  private final ConcurrentCache<LongPair,Float> estimatedPrefCache;
   private final RefreshHelper refreshHelper;
   private IDRescorer currentRescorer;
   
@@ -62,8 +63,8 @@ public final class CachingRecommender implements Recommender {
     // Use "num users" as an upper limit on cache size. Rough guess.
     int numUsers = recommender.getDataModel().getNumUsers();
     recommendationsRetriever = new RecommendationRetriever();
-    recommendationCache = new Cache<Long, Recommendations>(recommendationsRetriever, numUsers);
-    estimatedPrefCache = new Cache<LongPair, Float>(new EstimatedPrefRetriever(), numUsers);
+    recommendationCache = new ConcurrentCache<Long,Recommendations>(recommendationsRetriever, numUsers);
+    estimatedPrefCache = new ConcurrentCache<LongPair,Float>(new EstimatedPrefRetriever(), numUsers);
     refreshHelper = new RefreshHelper(new Callable<Object>() {
       @Override
       public Object call() {
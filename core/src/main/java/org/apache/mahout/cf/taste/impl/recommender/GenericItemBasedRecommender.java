@@ -18,15 +18,22 @@
 package org.apache.mahout.cf.taste.impl.recommender;
 
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.collect.Lists;
 
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.ExecutorUtils;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.RunningAverage;
 import org.apache.mahout.cf.taste.model.DataModel;
@@ -76,6 +83,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   private EstimatedPreferenceCapper capper;
 
   private static final boolean EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT = true;
+  private static final int CANDIDATES_PER_TASK = 256;
 
   public GenericItemBasedRecommender(DataModel dataModel,
                                      ItemSimilarity similarity,
@@ -128,7 +136,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
 
     FastIDSet possibleItemIDs = getAllOtherItems(userID, preferencesFromUser);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID, preferencesFromUser);
+    TopItems.IDEstimator estimator = new Estimator(userID, preferencesFromUser);
 
     List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
       estimator);
@@ -137,6 +145,105 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     return topItems;
   }
   
+  /**
+   * <p>
+   * Computes recommendations for a batch of users, sharing work between them. Candidate items are gathered
+   * for all users first; then for each distinct candidate item, its similarity to every item preferred by any
+   * user of the batch for which it is a candidate is computed with a single call to
+   * {@link ItemSimilarity#itemSimilarities(long, long[])}, so that each item-item similarity is computed at
+   * most once per batch rather than once per user. Finally the users are scored against these similarities.
+   * All three stages run in parallel on the given executor.
+   * </p>
+   *
+   * <p>
+   * The shared similarities are held in memory until the batch completes, so very large user populations
+   * should be processed in batches of a few thousand users. The results are the same as those of
+   * {@link #recommend(long, int, IDRescorer)}, provided subclasses which customize the estimate do so by
+   * overriding {@link #doEstimatePreference(PreferenceArray, double[])}.
+   * </p>
+   */
+  @Override
+  public List<List<RecommendedItem>> recommend(long[] userIDs,
+                                               final int howMany,
+                                               final IDRescorer rescorer,
+                                               ExecutorService executor) throws TasteException {
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    log.debug("Recommending items for {} users", userIDs.length);
+
+    List<Callable<BatchUser>> candidateTasks = Lists.newArrayListWithCapacity(userIDs.length);
+    for (final long userID : userIDs) {
+      candidateTasks.add(new Callable<BatchUser>() {
+        @Override
+        public BatchUser call() throws TasteException {
+          PreferenceArray preferencesFromUser = getDataModel().getPreferencesFromUser(userID);
+          FastIDSet possibleItemIDs = preferencesFromUser.length() == 0
+              ? new FastIDSet()
+              : getAllOtherItems(userID, preferencesFromUser);
+          return new BatchUser(preferencesFromUser, possibleItemIDs);
+        }
+      });
+    }
+    final List<BatchUser> users = ExecutorUtils.runAll(candidateTasks, executor);
+
+    // For each candidate item, all the preferred items it must be compared to
+    FastByIDMap<FastIDSet> comparedItemIDsByCandidate = new FastByIDMap<FastIDSet>();
+    for (BatchUser user : users) {
+      long[] preferredItemIDs = user.preferencesFromUser.getIDs();
+      LongPrimitiveIterator it = user.possibleItemIDs.iterator();
+      while (it.hasNext()) {
+        long itemID = it.nextLong();
+        if (rescorer != null && rescorer.isFiltered(itemID)) {
+          continue;
+        }
+        FastIDSet comparedItemIDs = comparedItemIDsByCandidate.get(itemID);
+        if (comparedItemIDs == null) {
+          comparedItemIDs = new FastIDSet();
+          comparedItemIDsByCandidate.put(itemID, comparedItemIDs);
+        }
+        comparedItemIDs.addAll(preferredItemIDs);
+      }
+    }
+    log.debug("{} distinct candidate items in batch", comparedItemIDsByCandidate.size());
+
+    List<Callable<List<SimilarityRow>>> similarityTasks = Lists.newArrayList();
+    List<SimilarityRow> rowsToCompute = Lists.newArrayListWithCapacity(CANDIDATES_PER_TASK);
+    LongPrimitiveIterator candidateIDs = comparedItemIDsByCandidate.keySetIterator();
+    while (candidateIDs.hasNext()) {
+      long itemID = candidateIDs.nextLong();
+      long[] comparedItemIDs = comparedItemIDsByCandidate.get(itemID).toArray();
+      Arrays.sort(comparedItemIDs);
+      rowsToCompute.add(new SimilarityRow(itemID, comparedItemIDs));
+      if (rowsToCompute.size() == CANDIDATES_PER_TASK) {
+        similarityTasks.add(new SimilarityTask(rowsToCompute));
+        rowsToCompute = Lists.newArrayListWithCapacity(CANDIDATES_PER_TASK);
+      }
+    }
+    if (!rowsToCompute.isEmpty()) {
+      similarityTasks.add(new SimilarityTask(rowsToCompute));
+    }
+    final FastByIDMap<SimilarityRow> rows = new FastByIDMap<SimilarityRow>();
+    for (List<SimilarityRow> computed : ExecutorUtils.runAll(similarityTasks, executor)) {
+      for (SimilarityRow row : computed) {
+        rows.put(row.itemID, row);
+      }
+    }
+
+    List<Callable<List<RecommendedItem>>> scoringTasks = Lists.newArrayListWithCapacity(users.size());
+    for (final BatchUser user : users) {
+      scoringTasks.add(new Callable<List<RecommendedItem>>() {
+        @Override
+        public List<RecommendedItem> call() throws TasteException {
+          if (user.preferencesFromUser.length() == 0) {
+            return Collections.emptyList();
+          }
+          TopItems.IDEstimator estimator = new BatchEstimator(user.preferencesFromUser, rows);
+          return TopItems.getTopItems(howMany, user.possibleItemIDs.iterator(), rescorer, estimator);
+        }
+      });
+    }
+    return ExecutorUtils.runAll(scoringTasks, executor);
+  }
+
   @Override
   public float estimatePreference(long userID, long itemID) throws TasteException {
     PreferenceArray preferencesFromUser = getDataModel().getPreferencesFromUser(userID);
@@ -165,13 +272,13 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   @Override
   public List<RecommendedItem> mostSimilarItems(long itemID, int howMany,
                                                 Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(itemID, similarity, rescorer);
+    TopItems.IDEstimator estimator = new MostSimilarEstimator(itemID, similarity, rescorer);
     return doMostSimilarItems(new long[] {itemID}, howMany, estimator);
   }
   
   @Override
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
         EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -179,7 +286,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   @Override
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany,
                                                 Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
         EXCLUDE_ITEM_IF_NOT_SIMILAR_TO_ALL_BY_DEFAULT);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -188,7 +295,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs,
                                                 int howMany,
                                                 boolean excludeItemIfNotSimilarToAll) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, null,
         excludeItemIfNotSimilarToAll);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -197,7 +304,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   public List<RecommendedItem> mostSimilarItems(long[] itemIDs, int howMany,
                                                 Rescorer<LongPair> rescorer,
                                                 boolean excludeItemIfNotSimilarToAll) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
+    TopItems.IDEstimator estimator = new MultiMostSimilarEstimator(itemIDs, similarity, rescorer,
         excludeItemIfNotSimilarToAll);
     return doMostSimilarItems(itemIDs, howMany, estimator);
   }
@@ -207,7 +314,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
 
     DataModel model = getDataModel();
-    TopItems.Estimator<Long> estimator = new RecommendedBecauseEstimator(userID, itemID);
+    TopItems.IDEstimator estimator = new RecommendedBecauseEstimator(userID, itemID);
 
     PreferenceArray prefs = model.getPreferencesFromUser(userID);
     int size = prefs.length();
@@ -222,17 +329,28 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
   
   private List<RecommendedItem> doMostSimilarItems(long[] itemIDs,
                                                    int howMany,
-                                                   TopItems.Estimator<Long> estimator) throws TasteException {
+                                                   TopItems.IDEstimator estimator) throws TasteException {
     FastIDSet possibleItemIDs = mostSimilarItemsCandidateItemsStrategy.getCandidateItems(itemIDs, getDataModel());
     return TopItems.getTopItems(howMany, possibleItemIDs.iterator(), null, estimator);
   }
   
   protected float doEstimatePreference(long userID, PreferenceArray preferencesFromUser, long itemID)
     throws TasteException {
+    double[] similarities = similarity.itemSimilarities(itemID, preferencesFromUser.getIDs());
+    return doEstimatePreference(preferencesFromUser, similarities);
+  }
+
+  /**
+   * @param preferencesFromUser
+   *          the preferences from the user
+   * @param similarities
+   *          similarity of the item being estimated to each item in {@code preferencesFromUser}, in order
+   * @return estimated preference for the item
+   */
+  protected float doEstimatePreference(PreferenceArray preferencesFromUser, double[] similarities) {
     double preference = 0.0;
     double totalSimilarity = 0.0;
     int count = 0;
-    double[] similarities = similarity.itemSimilarities(itemID, preferencesFromUser.getIDs());
     for (int i = 0; i < similarities.length; i++) {
       double theSimilarity = similarities[i];
       if (!Double.isNaN(theSimilarity)) {
@@ -276,7 +394,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  public static class MostSimilarEstimator implements TopItems.Estimator<Long> {
+  public static class MostSimilarEstimator implements TopItems.Estimator<Long>, TopItems.IDEstimator {
     
     private final long toItemID;
     private final ItemSimilarity similarity;
@@ -290,6 +408,11 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     
     @Override
     public double estimate(Long itemID) throws TasteException {
+      return estimate(itemID.longValue());
+    }
+
+    @Override
+    public double estimate(long itemID) throws TasteException {
       LongPair pair = new LongPair(toItemID, itemID);
       if (rescorer != null && rescorer.isFiltered(pair)) {
         return Double.NaN;
@@ -299,7 +422,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long userID;
     private final PreferenceArray preferencesFromUser;
@@ -310,12 +433,83 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(userID, preferencesFromUser, itemID);
     }
   }
   
-  private static final class MultiMostSimilarEstimator implements TopItems.Estimator<Long> {
+  private static final class BatchUser {
+
+    private final PreferenceArray preferencesFromUser;
+    private final FastIDSet possibleItemIDs;
+
+    private BatchUser(PreferenceArray preferencesFromUser, FastIDSet possibleItemIDs) {
+      this.preferencesFromUser = preferencesFromUser;
+      this.possibleItemIDs = possibleItemIDs;
+    }
+  }
+
+  /** Similarities of one candidate item to a sorted array of other items. */
+  private static final class SimilarityRow {
+
+    private final long itemID;
+    private final long[] otherItemIDs;
+    private double[] similarities;
+
+    private SimilarityRow(long itemID, long[] otherItemIDs) {
+      this.itemID = itemID;
+      this.otherItemIDs = otherItemIDs;
+    }
+
+    private double similarityTo(long otherItemID) {
+      int index = Arrays.binarySearch(otherItemIDs, otherItemID);
+      return index < 0 ? Double.NaN : similarities[index];
+    }
+  }
+
+  private final class SimilarityTask implements Callable<List<SimilarityRow>> {
+
+    private final List<SimilarityRow> rows;
+
+    private SimilarityTask(List<SimilarityRow> rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public List<SimilarityRow> call() throws TasteException {
+      for (SimilarityRow row : rows) {
+        row.similarities = similarity.itemSimilarities(row.itemID, row.otherItemIDs);
+      }
+      return rows;
+    }
+  }
+
+  private final class BatchEstimator implements TopItems.IDEstimator {
+
+    private final PreferenceArray preferencesFromUser;
+    private final FastByIDMap<SimilarityRow> rows;
+
+    private BatchEstimator(PreferenceArray preferencesFromUser, FastByIDMap<SimilarityRow> rows) {
+      this.preferencesFromUser = preferencesFromUser;
+      this.rows = rows;
+    }
+
+    @Override
+    public double estimate(long itemID) {
+      SimilarityRow row = rows.get(itemID);
+      if (row == null) {
+        return Double.NaN;
+      }
+      int size = preferencesFromUser.length();
+      double[] similarities = new double[size];
+      for (int i = 0; i < size; i++) {
+        similarities[i] = row.similarityTo(preferencesFromUser.getItemID(i));
+      }
+      return doEstimatePreference(preferencesFromUser, similarities);
+    }
+  }
+
+  private static final class MultiMostSimilarEstimator implements TopItems.IDEstimator {
     
     private final long[] toItemIDs;
     private final ItemSimilarity similarity;
@@ -331,7 +525,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       RunningAverage average = new FullRunningAverage();
       double[] similarities = similarity.itemSimilarities(itemID, toItemIDs);
       for (int i = 0; i < toItemIDs.length; i++) {
@@ -353,7 +547,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class RecommendedBecauseEstimator implements TopItems.Estimator<Long> {
+  private final class RecommendedBecauseEstimator implements TopItems.IDEstimator {
     
     private final long userID;
     private final long recommendedItemID;
@@ -364,7 +558,7 @@ public class GenericItemBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       Float pref = getDataModel().getPreferenceValue(userID, itemID);
       if (pref == null) {
         return Float.NaN;
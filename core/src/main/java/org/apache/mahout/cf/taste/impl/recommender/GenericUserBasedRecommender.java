@@ -92,7 +92,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
 
     FastIDSet allItemIDs = getAllOtherItems(theNeighborhood, userID);
 
-    TopItems.Estimator<Long> estimator = new Estimator(userID, theNeighborhood);
+    TopItems.IDEstimator estimator = new Estimator(userID, theNeighborhood);
 
     List<RecommendedItem> topItems = TopItems
         .getTopItems(howMany, allItemIDs.iterator(), rescorer, estimator);
@@ -119,11 +119,11 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
   
   @Override
   public long[] mostSimilarUserIDs(long userID, int howMany, Rescorer<LongPair> rescorer) throws TasteException {
-    TopItems.Estimator<Long> estimator = new MostSimilarEstimator(userID, similarity, rescorer);
+    TopItems.IDEstimator estimator = new MostSimilarEstimator(userID, similarity, rescorer);
     return doMostSimilarUsers(howMany, estimator);
   }
   
-  private long[] doMostSimilarUsers(int howMany, TopItems.Estimator<Long> estimator) throws TasteException {
+  private long[] doMostSimilarUsers(int howMany, TopItems.IDEstimator estimator) throws TasteException {
     DataModel model = getDataModel();
     return TopItems.getTopUsers(howMany, model.getUserIDs(), null, estimator);
   }
@@ -194,7 +194,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private static final class MostSimilarEstimator implements TopItems.Estimator<Long> {
+  private static final class MostSimilarEstimator implements TopItems.IDEstimator {
     
     private final long toUserID;
     private final UserSimilarity similarity;
@@ -207,7 +207,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long userID) throws TasteException {
+    public double estimate(long userID) throws TasteException {
       // Don't consider the user itself as a possible most similar user
       if (userID == toUserID) {
         return Double.NaN;
@@ -225,7 +225,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
   }
   
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private final class Estimator implements TopItems.IDEstimator {
     
     private final long theUserID;
     private final long[] theNeighborhood;
@@ -236,7 +236,7 @@ public class GenericUserBasedRecommender extends AbstractRecommender implements
     }
     
     @Override
-    public double estimate(Long itemID) throws TasteException {
+    public double estimate(long itemID) throws TasteException {
       return doEstimatePreference(theUserID, theNeighborhood, itemID);
     }
   }
@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A bounded min-heap of IDs and their values, kept in parallel {@code long[]} and {@code double[]} arrays, which
+ * retains the IDs with the largest values offered to it. Unlike a {@link java.util.PriorityQueue} of objects it
+ * allocates nothing per offered ID, and it can be {@link #reset(int)} and reused.
+ * </p>
+ *
+ * <p>
+ * Among IDs with equal values, smaller IDs are preferred. This class is not thread-safe.
+ * </p>
+ */
+public final class TopIDHeap {
+
+  private long[] ids;
+  private double[] values;
+  private int capacity;
+  private int size;
+
+  public TopIDHeap(int capacity) {
+    Preconditions.checkArgument(capacity >= 0, "capacity must not be negative");
+    ids = new long[capacity];
+    values = new double[capacity];
+    this.capacity = capacity;
+  }
+
+  /**
+   * Empties the heap and sets its capacity, growing the backing arrays if needed.
+   */
+  public void reset(int capacity) {
+    Preconditions.checkArgument(capacity >= 0, "capacity must not be negative");
+    if (capacity > ids.length) {
+      ids = new long[capacity];
+      values = new double[capacity];
+    }
+    this.capacity = capacity;
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public boolean isFull() {
+    return size == capacity;
+  }
+
+  /**
+   * @return the smallest value currently retained
+   * @throws IllegalStateException if the heap is empty
+   */
+  public double peekValue() {
+    Preconditions.checkState(size > 0, "heap is empty");
+    return values[0];
+  }
+
+  /**
+   * Offers an ID. When the heap is full, the ID is retained only if it ranks above the worst retained ID, which
+   * it then replaces: its value is larger, or equal and its ID smaller.
+   *
+   * @return true if the ID was retained
+   */
+  public boolean offer(long id, double value) {
+    if (size < capacity) {
+      int index = size++;
+      // sift up
+      while (index > 0) {
+        int parent = (index - 1) >>> 1;
+        if (!worse(id, value, ids[parent], values[parent])) {
+          break;
+        }
+        ids[index] = ids[parent];
+        values[index] = values[parent];
+        index = parent;
+      }
+      ids[index] = id;
+      values[index] = value;
+      return true;
+    }
+    if (capacity == 0 || !worse(ids[0], values[0], id, value)) {
+      return false;
+    }
+    siftDown(id, value, size);
+    return true;
+  }
+
+  /**
+   * Sorts the retained IDs in place by descending value, ascending ID among equal values, after which
+   * {@link #getID(int)} and {@link #getValue(int)} return them in that order. Nothing more may be offered until
+   * the heap is {@link #reset(int)}.
+   */
+  public void sort() {
+    for (int end = size - 1; end > 0; end--) {
+      long worstID = ids[0];
+      double worstValue = values[0];
+      siftDown(ids[end], values[end], end);
+      ids[end] = worstID;
+      values[end] = worstValue;
+    }
+    capacity = size;
+  }
+
+  public long getID(int index) {
+    return ids[index];
+  }
+
+  public double getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   * Places the given entry at the root of the first {@code length} elements and moves it down to its position.
+   */
+  private void siftDown(long id, double value, int length) {
+    int index = 0;
+    int half = length >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      int right = child + 1;
+      if (right < length && worse(ids[right], values[right], ids[child], values[child])) {
+        child = right;
+      }
+      if (!worse(ids[child], values[child], id, value)) {
+        break;
+      }
+      ids[index] = ids[child];
+      values[index] = values[child];
+      index = child;
+    }
+    ids[index] = id;
+    values[index] = value;
+  }
+
+  private static boolean worse(long id1, double value1, long id2, double value2) {
+    return value1 < value2 || (value1 == value2 && id1 > id2);
+  }
+
+}
@@ -43,6 +43,14 @@ import com.google.common.base.Preconditions;
 public final class TopItems {
   
   private static final long[] NO_IDS = new long[0];
+  private static final int MAX_REUSED_HEAP_CAPACITY = 1024;
+
+  private static final ThreadLocal<TopIDHeap> HEAPS = new ThreadLocal<TopIDHeap>() {
+    @Override
+    protected TopIDHeap initialValue() {
+      return new TopIDHeap(16);
+    }
+  };
   
   private TopItems() { }
   
@@ -50,88 +58,129 @@ public final class TopItems {
                                                   LongPrimitiveIterator possibleItemIDs,
                                                   IDRescorer rescorer,
                                                   Estimator<Long> estimator) throws TasteException {
+    Preconditions.checkArgument(estimator != null, "estimator is null");
+    return getTopItems(howMany, possibleItemIDs, rescorer, boxing(estimator));
+  }
+
+  /**
+   * Like {@link #getTopItems(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but with an estimator over
+   * primitive IDs. Selection runs on a {@link TopIDHeap} which is reused between calls on the same thread, so that
+   * only the returned list is allocated.
+   */
+  public static List<RecommendedItem> getTopItems(int howMany,
+                                                  LongPrimitiveIterator possibleItemIDs,
+                                                  IDRescorer rescorer,
+                                                  IDEstimator estimator) throws TasteException {
     Preconditions.checkArgument(possibleItemIDs != null, "possibleItemIDs is null");
     Preconditions.checkArgument(estimator != null, "estimator is null");
 
-    Queue<RecommendedItem> topItems = new PriorityQueue<RecommendedItem>(howMany + 1,
-      Collections.reverseOrder(ByValueRecommendedItemComparator.getInstance()));
-    boolean full = false;
-    double lowestTopValue = Double.NEGATIVE_INFINITY;
-    while (possibleItemIDs.hasNext()) {
-      long itemID = possibleItemIDs.next();
-      if (rescorer == null || !rescorer.isFiltered(itemID)) {
-        double preference;
-        try {
-          preference = estimator.estimate(itemID);
-        } catch (NoSuchItemException nsie) {
-          continue;
-        }
-        double rescoredPref = rescorer == null ? preference : rescorer.rescore(itemID, preference);
-        if (!Double.isNaN(rescoredPref) && (!full || rescoredPref > lowestTopValue)) {
-          topItems.add(new GenericRecommendedItem(itemID, (float) rescoredPref));
-          if (full) {
-            topItems.poll();
-          } else if (topItems.size() > howMany) {
-            full = true;
-            topItems.poll();
+    TopIDHeap topItems = acquireHeap(howMany);
+    try {
+      while (possibleItemIDs.hasNext()) {
+        long itemID = possibleItemIDs.nextLong();
+        if (rescorer == null || !rescorer.isFiltered(itemID)) {
+          double preference;
+          try {
+            preference = estimator.estimate(itemID);
+          } catch (NoSuchItemException nsie) {
+            continue;
+          }
+          double rescoredPref = rescorer == null ? preference : rescorer.rescore(itemID, preference);
+          if (!Double.isNaN(rescoredPref)) {
+            // Recommended items hold float values, so rank by those
+            topItems.offer(itemID, (float) rescoredPref);
           }
-          lowestTopValue = topItems.peek().getValue();
         }
       }
+      int size = topItems.size();
+      if (size == 0) {
+        return Collections.emptyList();
+      }
+      topItems.sort();
+      List<RecommendedItem> result = Lists.newArrayListWithCapacity(size);
+      for (int i = 0; i < size; i++) {
+        result.add(new GenericRecommendedItem(topItems.getID(i), (float) topItems.getValue(i)));
+      }
+      return result;
+    } finally {
+      releaseHeap(topItems, howMany);
     }
-    int size = topItems.size();
-    if (size == 0) {
-      return Collections.emptyList();
-    }
-    List<RecommendedItem> result = Lists.newArrayListWithCapacity(size);
-    result.addAll(topItems);
-    Collections.sort(result, ByValueRecommendedItemComparator.getInstance());
-    return result;
   }
   
   public static long[] getTopUsers(int howMany,
                                    LongPrimitiveIterator allUserIDs,
                                    IDRescorer rescorer,
                                    Estimator<Long> estimator) throws TasteException {
-    Queue<SimilarUser> topUsers = new PriorityQueue<SimilarUser>(howMany + 1, Collections.reverseOrder());
-    boolean full = false;
-    double lowestTopValue = Double.NEGATIVE_INFINITY;
-    while (allUserIDs.hasNext()) {
-      long userID = allUserIDs.next();
-      if (rescorer != null && rescorer.isFiltered(userID)) {
-        continue;
+    Preconditions.checkArgument(estimator != null, "estimator is null");
+    return getTopUsers(howMany, allUserIDs, rescorer, boxing(estimator));
+  }
+
+  /**
+   * Like {@link #getTopUsers(int, LongPrimitiveIterator, IDRescorer, Estimator)}, but with an estimator over
+   * primitive IDs.
+   */
+  public static long[] getTopUsers(int howMany,
+                                   LongPrimitiveIterator allUserIDs,
+                                   IDRescorer rescorer,
+                                   IDEstimator estimator) throws TasteException {
+    TopIDHeap topUsers = acquireHeap(howMany);
+    try {
+      while (allUserIDs.hasNext()) {
+        long userID = allUserIDs.nextLong();
+        if (rescorer != null && rescorer.isFiltered(userID)) {
+          continue;
+        }
+        double similarity;
+        try {
+          similarity = estimator.estimate(userID);
+        } catch (NoSuchUserException nsue) {
+          continue;
+        }
+        double rescoredSimilarity = rescorer == null ? similarity : rescorer.rescore(userID, similarity);
+        if (!Double.isNaN(rescoredSimilarity)) {
+          topUsers.offer(userID, rescoredSimilarity);
+        }
       }
-      double similarity;
-      try {
-        similarity = estimator.estimate(userID);
-      } catch (NoSuchUserException nsue) {
-        continue;
+      int size = topUsers.size();
+      if (size == 0) {
+        return NO_IDS;
       }
-      double rescoredSimilarity = rescorer == null ? similarity : rescorer.rescore(userID, similarity);
-      if (!Double.isNaN(rescoredSimilarity) && (!full || rescoredSimilarity > lowestTopValue)) {
-        topUsers.add(new SimilarUser(userID, rescoredSimilarity));
-        if (full) {
-          topUsers.poll();
-        } else if (topUsers.size() > howMany) {
-          full = true;
-          topUsers.poll();
-        }
-        lowestTopValue = topUsers.peek().getSimilarity();
+      topUsers.sort();
+      long[] result = new long[size];
+      for (int i = 0; i < size; i++) {
+        result[i] = topUsers.getID(i);
       }
+      return result;
+    } finally {
+      releaseHeap(topUsers, howMany);
     }
-    int size = topUsers.size();
-    if (size == 0) {
-      return NO_IDS;
+  }
+
+  private static TopIDHeap acquireHeap(int capacity) {
+    TopIDHeap heap = HEAPS.get();
+    if (heap == null || capacity > MAX_REUSED_HEAP_CAPACITY) {
+      // Either very large, or the thread's heap is in use by an enclosing call (an estimator may itself
+      // compute top items)
+      return new TopIDHeap(capacity);
     }
-    List<SimilarUser> sorted = Lists.newArrayListWithCapacity(size);
-    sorted.addAll(topUsers);
-    Collections.sort(sorted);
-    long[] result = new long[size];
-    int i = 0;
-    for (SimilarUser similarUser : sorted) {
-      result[i++] = similarUser.getUserID();
+    HEAPS.set(null);
+    heap.reset(capacity);
+    return heap;
+  }
+
+  private static void releaseHeap(TopIDHeap heap, int capacity) {
+    if (capacity <= MAX_REUSED_HEAP_CAPACITY) {
+      HEAPS.set(heap);
     }
-    return result;
+  }
+
+  private static IDEstimator boxing(final Estimator<Long> estimator) {
+    return new IDEstimator() {
+      @Override
+      public double estimate(long id) throws TasteException {
+        return estimator.estimate(id);
+      }
+    };
   }
   
   /**
@@ -208,5 +257,13 @@ public final class TopItems {
   public interface Estimator<T> {
     double estimate(T thing) throws TasteException;
   }
+
+  /**
+   * An {@link Estimator} of user or item IDs which takes them as primitives, so that no {@link Long} needs to be
+   * allocated per estimate.
+   */
+  public interface IDEstimator {
+    double estimate(long id) throws TasteException;
+  }
   
 }
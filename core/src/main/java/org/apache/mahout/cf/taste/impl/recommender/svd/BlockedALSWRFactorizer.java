@@ -0,0 +1,354 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.ExecutorUtils;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.CholeskyDecomposition;
+import org.apache.mahout.math.DenseSymmetricMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Computes the same factorization as {@link ALSWRFactorizer}, explicit or implicit feedback, but is built to scale
+ * to hundreds of millions of ratings on one machine:
+ * </p>
+ *
+ * <ul>
+ *   <li>The ratings are copied once into compressed rows of item indices and values per user, and per item, instead
+ *   of being read as {@link org.apache.mahout.cf.taste.model.Preference}s in every iteration.</li>
+ *   <li>Rows are solved in blocks of consecutive indices which the threads take from a shared counter, so that they
+ *   stay busy until the end of each sweep.</li>
+ *   <li>Every thread accumulates the normal equations of a row into a {@link DenseSymmetricMatrix} and a vector
+ *   that it reuses for all its rows, and solves them in place with
+ *   {@link CholeskyDecomposition#solveInPlace(DenseSymmetricMatrix, double[])}. Nothing is allocated per row.</li>
+ *   <li>With implicit feedback, {@code Y' Y} is computed once per sweep, in parallel, and shared by all threads,
+ *   which then only add the {@code Y' (Cu - I) Y} terms of the row's ratings to a copy of it.</li>
+ * </ul>
+ */
+public class BlockedALSWRFactorizer extends AbstractFactorizer {
+
+  private static final Logger log = LoggerFactory.getLogger(BlockedALSWRFactorizer.class);
+
+  private static final double DEFAULT_ALPHA = 40;
+  /** number of consecutive rows a thread solves before taking the next block */
+  private static final int ROWS_PER_BLOCK = 64;
+
+  private final DataModel dataModel;
+  /** number of features used to compute this factorization */
+  private final int numFeatures;
+  /** parameter to control the regularization */
+  private final double lambda;
+  private final int numIterations;
+  private final boolean usesImplicitFeedback;
+  /** confidence weighting parameter, only necessary when working with implicit feedback */
+  private final double alpha;
+  private final int numTrainingThreads;
+
+  public BlockedALSWRFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations,
+      boolean usesImplicitFeedback, double alpha, int numTrainingThreads) throws TasteException {
+    super(dataModel);
+    Preconditions.checkArgument(numFeatures > 0, "numFeatures must be positive");
+    Preconditions.checkArgument(numTrainingThreads > 0, "numTrainingThreads must be positive");
+    this.dataModel = dataModel;
+    this.numFeatures = numFeatures;
+    this.lambda = lambda;
+    this.numIterations = numIterations;
+    this.usesImplicitFeedback = usesImplicitFeedback;
+    this.alpha = alpha;
+    this.numTrainingThreads = numTrainingThreads;
+  }
+
+  public BlockedALSWRFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations,
+      boolean usesImplicitFeedback, double alpha) throws TasteException {
+    this(dataModel, numFeatures, lambda, numIterations, usesImplicitFeedback, alpha,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  public BlockedALSWRFactorizer(DataModel dataModel, int numFeatures, double lambda, int numIterations)
+    throws TasteException {
+    this(dataModel, numFeatures, lambda, numIterations, false, DEFAULT_ALPHA);
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    log.info("starting to compute the factorization...");
+    Ratings userRatings = userRatings();
+    Ratings itemRatings = userRatings.transpose(dataModel.getNumItems());
+
+    double[][] userFeatures = new double[userRatings.numRows()][numFeatures];
+    double[][] itemFeatures = new double[itemRatings.numRows()][numFeatures];
+    // as ALSWRFactorizer: the first feature of an item is its average rating, the others small random values
+    Random random = RandomUtils.getRandom();
+    for (int item = 0; item < itemFeatures.length; item++) {
+      itemFeatures[item][0] = itemRatings.averageValue(item);
+      for (int feature = 1; feature < numFeatures; feature++) {
+        itemFeatures[item][feature] = random.nextDouble() * 0.1;
+      }
+    }
+
+    Workspace[] workspaces = new Workspace[numTrainingThreads];
+    for (int i = 0; i < workspaces.length; i++) {
+      workspaces[i] = new Workspace();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(numTrainingThreads);
+    try {
+      for (int iteration = 0; iteration < numIterations; iteration++) {
+        log.info("iteration {}", iteration);
+        long start = System.nanoTime();
+        /* fix M - compute U */
+        sweep(userRatings, itemFeatures, userFeatures, workspaces, executor);
+        /* fix U - compute M */
+        sweep(itemRatings, userFeatures, itemFeatures, workspaces, executor);
+        log.info("iteration {} took {} ms", iteration, (System.nanoTime() - start) / 1000000);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    log.info("finished computation of the factorization...");
+    return createFactorization(userFeatures, itemFeatures);
+  }
+
+  /**
+   * Solves every row of {@code solved} given the {@code fixed} features of the other side.
+   */
+  private void sweep(final Ratings ratings, final double[][] fixed, final double[][] solved, Workspace[] workspaces,
+      ExecutorService executor) throws TasteException {
+    final double[] fixedGram = usesImplicitFeedback ? gram(fixed, workspaces, executor) : null;
+    final AtomicInteger nextBlock = new AtomicInteger();
+    List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(workspaces.length);
+    for (final Workspace workspace : workspaces) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          int start;
+          while ((start = nextBlock.getAndIncrement() * ROWS_PER_BLOCK) < ratings.numRows()) {
+            int end = Math.min(start + ROWS_PER_BLOCK, ratings.numRows());
+            for (int row = start; row < end; row++) {
+              workspace.solve(ratings, row, fixed, fixedGram, solved[row]);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    ExecutorUtils.runAll(tasks, executor);
+  }
+
+  /**
+   * @return the packed upper triangle of {@code Y' Y}, summed by every thread over blocks of rows of {@code Y}
+   */
+  private double[] gram(final double[][] features, Workspace[] workspaces, ExecutorService executor)
+    throws TasteException {
+    final AtomicInteger nextBlock = new AtomicInteger();
+    List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(workspaces.length);
+    for (final Workspace workspace : workspaces) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          double[] partialGram = workspace.partialGram;
+          Arrays.fill(partialGram, 0);
+          int start;
+          while ((start = nextBlock.getAndIncrement() * ROWS_PER_BLOCK) < features.length) {
+            int end = Math.min(start + ROWS_PER_BLOCK, features.length);
+            for (int row = start; row < end; row++) {
+              addOuterProduct(partialGram, features[row], 1);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    ExecutorUtils.runAll(tasks, executor);
+
+    double[] gram = new double[workspaces[0].partialGram.length];
+    for (Workspace workspace : workspaces) {
+      for (int i = 0; i < gram.length; i++) {
+        gram[i] += workspace.partialGram[i];
+      }
+    }
+    return gram;
+  }
+
+  /** adds {@code weight * x x'} to the packed upper triangle {@code a} */
+  private static void addOuterProduct(double[] a, double[] x, double weight) {
+    int n = x.length;
+    int index = 0;
+    for (int row = 0; row < n; row++) {
+      double scaled = weight * x[row];
+      for (int column = row; column < n; column++) {
+        a[index++] += scaled * x[column];
+      }
+    }
+  }
+
+  private Ratings userRatings() throws TasteException {
+    int numUsers = dataModel.getNumUsers();
+    int[] starts = new int[numUsers + 1];
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      starts[userIndex(userID) + 1] = dataModel.getPreferencesFromUser(userID).length();
+    }
+    for (int row = 1; row < starts.length; row++) {
+      starts[row] += starts[row - 1];
+    }
+
+    int[] indices = new int[starts[numUsers]];
+    float[] values = new float[starts[numUsers]];
+    userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      int position = starts[userIndex(userID)];
+      PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+      for (int i = 0; i < prefs.length(); i++) {
+        indices[position] = itemIndex(prefs.getItemID(i));
+        values[position] = prefs.getValue(i);
+        position++;
+      }
+    }
+    return new Ratings(starts, indices, values);
+  }
+
+  /**
+   * The ratings of a matrix in compressed rows: the column indices and values of row {@code r} are at positions
+   * {@code [starts[r], starts[r + 1])}.
+   */
+  static final class Ratings {
+
+    private final int[] starts;
+    private final int[] indices;
+    private final float[] values;
+
+    Ratings(int[] starts, int[] indices, float[] values) {
+      this.starts = starts;
+      this.indices = indices;
+      this.values = values;
+    }
+
+    int numRows() {
+      return starts.length - 1;
+    }
+
+    double averageValue(int row) {
+      int length = starts[row + 1] - starts[row];
+      if (length == 0) {
+        return 0;
+      }
+      double sum = 0;
+      for (int i = starts[row]; i < starts[row + 1]; i++) {
+        sum += values[i];
+      }
+      return sum / length;
+    }
+
+    Ratings transpose(int numColumns) {
+      int[] transposedStarts = new int[numColumns + 1];
+      for (int index : indices) {
+        transposedStarts[index + 1]++;
+      }
+      for (int column = 1; column < transposedStarts.length; column++) {
+        transposedStarts[column] += transposedStarts[column - 1];
+      }
+      int[] next = Arrays.copyOf(transposedStarts, numColumns);
+      int[] transposedIndices = new int[indices.length];
+      float[] transposedValues = new float[values.length];
+      for (int row = 0; row < numRows(); row++) {
+        for (int i = starts[row]; i < starts[row + 1]; i++) {
+          int position = next[indices[i]]++;
+          transposedIndices[position] = row;
+          transposedValues[position] = values[i];
+        }
+      }
+      return new Ratings(transposedStarts, transposedIndices, transposedValues);
+    }
+  }
+
+  /**
+   * The arrays one thread needs to solve rows, allocated once per factorization.
+   */
+  private final class Workspace {
+
+    private final DenseSymmetricMatrix gram = new DenseSymmetricMatrix(numFeatures);
+    private final double[] rhs = new double[numFeatures];
+    private final double[] partialGram = new double[gram.getData().length];
+
+    /**
+     * Explicit feedback solves {@code (Y' Y + λ n I) x = Y' r} over the {@code n} rated rows of {@code Y};
+     * implicit feedback solves {@code (Y' Y + Y' (Cu - I) Y + λ I) x = Y' Cu p(u)} over all rows.
+     */
+    void solve(Ratings ratings, int row, double[][] fixed, double[] fixedGram, double[] solution) {
+      int start = ratings.starts[row];
+      int end = ratings.starts[row + 1];
+      if (start == end) {
+        return;
+      }
+      double[] a = gram.getData();
+      if (fixedGram == null) {
+        Arrays.fill(a, 0);
+      } else {
+        System.arraycopy(fixedGram, 0, a, 0, a.length);
+      }
+      Arrays.fill(rhs, 0);
+
+      for (int i = start; i < end; i++) {
+        double[] features = fixed[ratings.indices[i]];
+        double value = ratings.values[i];
+        double weight;
+        double target;
+        if (fixedGram == null) {
+          weight = 1;
+          target = value;
+        } else {
+          double confidence = 1 + alpha * value;
+          weight = confidence - 1;
+          target = confidence;
+        }
+        addOuterProduct(a, features, weight);
+        for (int feature = 0; feature < numFeatures; feature++) {
+          rhs[feature] += target * features[feature];
+        }
+      }
+
+      double regularization = fixedGram == null ? lambda * (end - start) : lambda;
+      for (int feature = 0, diagonal = 0; feature < numFeatures; diagonal += numFeatures - feature, feature++) {
+        a[diagonal] += regularization;
+      }
+
+      CholeskyDecomposition.solveInPlace(gram, rhs);
+      System.arraycopy(rhs, 0, solution, 0, numFeatures);
+    }
+  }
+
+}
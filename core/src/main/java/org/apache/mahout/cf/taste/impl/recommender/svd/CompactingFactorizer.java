@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * A {@link Factorizer} which converts the factorizations computed by another one to a more compact
+ * {@link FeatureStorage}, so that an {@link SVDRecommender} serves from it.
+ */
+public final class CompactingFactorizer implements Factorizer {
+
+  private final Factorizer delegate;
+  private final FeatureStorage featureStorage;
+
+  public CompactingFactorizer(Factorizer delegate, FeatureStorage featureStorage) {
+    this.delegate = Preconditions.checkNotNull(delegate);
+    this.featureStorage = Preconditions.checkNotNull(featureStorage);
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    return featureStorage.convert(delegate.factorize());
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    delegate.refresh(alreadyRefreshed);
+  }
+
+}
@@ -23,6 +23,7 @@ import java.util.Map;
 import com.google.common.base.Preconditions;
 import org.apache.mahout.cf.taste.common.NoSuchItemException;
 import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 
 /**
@@ -48,6 +49,16 @@ public class Factorization {
     this.itemFeatures = itemFeatures;
   }
 
+  /**
+   * For subclasses which keep the features elsewhere; they must override every public method.
+   */
+  protected Factorization() {
+    userIDMapping = null;
+    itemIDMapping = null;
+    userFeatures = null;
+    itemFeatures = null;
+  }
+
   public double[][] allUserFeatures() {
     return userFeatures;
   }
@@ -72,6 +83,21 @@ public class Factorization {
     return itemFeatures[index];
   }
 
+  /**
+   * @return the dot product of the user's and the item's feature vectors, which is the estimated preference
+   * @throws NoSuchUserException if the user is unknown
+   * @throws NoSuchItemException if the item is unknown
+   */
+  public double dotProduct(long userID, long itemID) throws TasteException {
+    double[] userFeatures = getUserFeatures(userID);
+    double[] itemFeatures = getItemFeatures(itemID);
+    double dotProduct = 0.0;
+    for (int feature = 0; feature < userFeatures.length; feature++) {
+      dotProduct += userFeatures[feature] * itemFeatures[feature];
+    }
+    return dotProduct;
+  }
+
   public int userIndex(long userID) throws NoSuchUserException {
     Integer index = userIDMapping.get(userID);
     if (index == null) {
@@ -108,6 +134,65 @@ public class Factorization {
     return itemIDMapping.size();
   }
 
+  /**
+   * Sets the features of the user at the given index; used while a factorization is filled in.
+   */
+  void setUserFeatures(int userIndex, double[] features) {
+    System.arraycopy(features, 0, userFeatures[userIndex], 0, features.length);
+  }
+
+  /**
+   * Sets the features of the item at the given index; used while a factorization is filled in.
+   */
+  void setItemFeatures(int itemIndex, double[] features) {
+    System.arraycopy(features, 0, itemFeatures[itemIndex], 0, features.length);
+  }
+
+  /**
+   * Copies the features of one factorization into another with the same ID mappings, one vector at a time.
+   */
+  static void copyFeatures(Factorization from, Factorization to) {
+    try {
+      for (Map.Entry<Long,Integer> entry : from.getUserIDMappings()) {
+        to.setUserFeatures(entry.getValue(), from.getUserFeatures(entry.getKey()));
+      }
+      for (Map.Entry<Long,Integer> entry : from.getItemIDMappings()) {
+        to.setItemFeatures(entry.getValue(), from.getItemFeatures(entry.getKey()));
+      }
+    } catch (TasteException te) {
+      throw new IllegalStateException("ID mappings and features of " + from + " disagree", te);
+    }
+  }
+
+  /**
+   * @return the size of a single array holding {@code rows} vectors of {@code numFeatures} features, which any
+   *  {@code row * numFeatures} offset into it is then guaranteed to be less than
+   * @throws IllegalArgumentException if they don't fit in one array
+   */
+  static int packedSize(int rows, int numFeatures) {
+    long size = (long) rows * numFeatures;
+    Preconditions.checkArgument(size <= Integer.MAX_VALUE,
+        "%s vectors of %s features don't fit in one array", rows, numFeatures);
+    return (int) size;
+  }
+
+  static FastByIDMap<Integer> copyIDMapping(Iterable<Map.Entry<Long,Integer>> mappings, int size) {
+    FastByIDMap<Integer> mapping = new FastByIDMap<Integer>(size);
+    for (Map.Entry<Long,Integer> entry : mappings) {
+      mapping.put(entry.getKey(), entry.getValue());
+    }
+    return mapping;
+  }
+
+  /** for subclasses which use the ID mappings of this class */
+  boolean sameIDMappings(Factorization other) {
+    return userIDMapping.equals(other.userIDMapping) && itemIDMapping.equals(other.itemIDMapping);
+  }
+
+  int idMappingsHashCode() {
+    return 31 * userIDMapping.hashCode() + itemIDMapping.hashCode();
+  }
+
   @Override
   public boolean equals(Object o) {
     if (o instanceof Factorization) {
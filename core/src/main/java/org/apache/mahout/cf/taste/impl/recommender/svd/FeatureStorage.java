@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+
+/**
+ * How a {@link Factorization} keeps its feature vectors in memory, trading accuracy of the estimates for memory
+ * and scoring speed.
+ */
+public enum FeatureStorage {
+
+  /** {@code double[][]} matrices, as computed by the {@link Factorizer}s */
+  DOUBLE {
+    @Override
+    public Factorization convert(Factorization factorization) {
+      return factorization;
+    }
+
+    @Override
+    Factorization create(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                         int numUsers, int numItems, int numFeatures) {
+      return new Factorization(userIDMapping, itemIDMapping,
+          new double[numUsers][numFeatures], new double[numItems][numFeatures]);
+    }
+  },
+
+  /** @see FloatFactorization */
+  FLOAT {
+    @Override
+    public Factorization convert(Factorization factorization) {
+      return factorization instanceof FloatFactorization ? factorization : new FloatFactorization(factorization);
+    }
+
+    @Override
+    Factorization create(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                         int numUsers, int numItems, int numFeatures) {
+      return new FloatFactorization(userIDMapping, itemIDMapping, numUsers, numItems, numFeatures);
+    }
+  },
+
+  /** @see QuantizedFactorization */
+  INT8 {
+    @Override
+    public Factorization convert(Factorization factorization) {
+      return factorization instanceof QuantizedFactorization
+          ? factorization
+          : new QuantizedFactorization(factorization);
+    }
+
+    @Override
+    Factorization create(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                         int numUsers, int numItems, int numFeatures) {
+      return new QuantizedFactorization(userIDMapping, itemIDMapping, numUsers, numItems, numFeatures);
+    }
+  };
+
+  /**
+   * @return a factorization with the same users and items which stores its features this way; this may be the
+   *  given factorization itself
+   */
+  public abstract Factorization convert(Factorization factorization);
+
+  /**
+   * @return a factorization which stores features this way, all 0 until they are set with
+   *  {@link Factorization#setUserFeatures(int, double[])} and {@link Factorization#setItemFeatures(int, double[])}.
+   *  It uses the given ID mappings as they are, so they may be filled in meanwhile.
+   */
+  abstract Factorization create(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                                int numUsers, int numItems, int numFeatures);
+
+}
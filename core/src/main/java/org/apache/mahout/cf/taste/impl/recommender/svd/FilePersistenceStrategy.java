@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 public class FilePersistenceStrategy implements PersistenceStrategy {
 
   private final File file;
+  private final FeatureStorage featureStorage;
 
   private static final Logger log = LoggerFactory.getLogger(FilePersistenceStrategy.class);
 
@@ -48,7 +49,16 @@ public class FilePersistenceStrategy implements PersistenceStrategy {
    * @param file the file to use for storage. If the file does not exist it will be created when required.
    */
   public FilePersistenceStrategy(File file) {
+    this(file, FeatureStorage.DOUBLE);
+  }
+
+  /**
+   * @param file the file to use for storage. If the file does not exist it will be created when required.
+   * @param featureStorage how loaded factorizations keep their features. The file always stores {@code double}s.
+   */
+  public FilePersistenceStrategy(File file, FeatureStorage featureStorage) {
     this.file = Preconditions.checkNotNull(file);
+    this.featureStorage = Preconditions.checkNotNull(featureStorage);
   }
 
   @Override
@@ -61,7 +71,7 @@ public class FilePersistenceStrategy implements PersistenceStrategy {
     try {
       log.info("Reading factorization from {}...", file.getAbsolutePath());
       in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-      return readBinary(in);
+      return readBinary(in, featureStorage);
     } finally {
       Closeables.close(in, true);
     }
@@ -114,35 +124,47 @@ public class FilePersistenceStrategy implements PersistenceStrategy {
   }
 
   public static Factorization readBinary(DataInput in) throws IOException {
+    return readBinary(in, FeatureStorage.DOUBLE);
+  }
+
+  /**
+   * Reads features straight into the given storage, one vector at a time, so that loading a compact
+   * factorization doesn't need the memory of the {@code double} matrices as well.
+   */
+  static Factorization readBinary(DataInput in, FeatureStorage featureStorage) throws IOException {
     int numFeatures = in.readInt();
     int numUsers = in.readInt();
     int numItems = in.readInt();
 
     FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>(numUsers);
-    double[][] userFeatures = new double[numUsers][numFeatures];
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>(numItems);
+    Factorization factorization =
+        featureStorage.create(userIDMapping, itemIDMapping, numUsers, numItems, numFeatures);
+    double[] features = new double[numFeatures];
 
     for (int n = 0; n < numUsers; n++) {
       int userIndex = in.readInt();
       long userID = in.readLong();
       userIDMapping.put(userID, userIndex);
-      for (int feature = 0; feature < numFeatures; feature++) {
-        userFeatures[userIndex][feature] = in.readDouble();
-      }
+      readFeatures(in, features);
+      factorization.setUserFeatures(userIndex, features);
     }
 
-    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>(numItems);
-    double[][] itemFeatures = new double[numItems][numFeatures];
-
     for (int n = 0; n < numItems; n++) {
       int itemIndex = in.readInt();
       long itemID = in.readLong();
       itemIDMapping.put(itemID, itemIndex);
-      for (int feature = 0; feature < numFeatures; feature++) {
-        itemFeatures[itemIndex][feature] = in.readDouble();
-      }
+      readFeatures(in, features);
+      factorization.setItemFeatures(itemIndex, features);
     }
 
-    return new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+    return factorization;
+  }
+
+  private static void readFeatures(DataInput in, double[] features) throws IOException {
+    for (int feature = 0; feature < features.length; feature++) {
+      features[feature] = in.readDouble();
+    }
   }
 
 }
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+
+/**
+ * <p>
+ * A {@link Factorization} which stores the user and the item feature matrices as single row-major {@code float[]}s
+ * rather than as {@code double[][]}s. It takes half the memory, and computing a {@link #dotProduct(long, long)}
+ * reads half as many bytes from adjacent locations, which matters when scoring many items for a user is limited by
+ * memory bandwidth. The products are still summed in {@code double}.
+ * </p>
+ *
+ * <p>
+ * As each matrix is a single array, users or items times features must not exceed {@link Integer#MAX_VALUE}.
+ * {@link #getUserFeatures(long)} and {@link #getItemFeatures(long)} return a fresh {@code double[]} copy of the
+ * vector on every call, and {@link #allUserFeatures()} and {@link #allItemFeatures()} copy the entire matrix.
+ * </p>
+ */
+public final class FloatFactorization extends Factorization {
+
+  private final int numFeatures;
+  private final float[] userFeatures;
+  private final float[] itemFeatures;
+
+  /**
+   * Copies a factorization, rounding its features to {@code float}.
+   */
+  public FloatFactorization(Factorization factorization) {
+    this(copyIDMapping(factorization.getUserIDMappings(), factorization.numUsers()),
+         copyIDMapping(factorization.getItemIDMappings(), factorization.numItems()),
+         factorization.numUsers(), factorization.numItems(), factorization.numFeatures());
+    copyFeatures(factorization, this);
+  }
+
+  /**
+   * Creates a factorization whose features are all 0 until they are set. The ID mappings are not copied, so they
+   * may be filled in meanwhile too.
+   */
+  FloatFactorization(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                     int numUsers, int numItems, int numFeatures) {
+    super(userIDMapping, itemIDMapping, null, null);
+    this.numFeatures = numFeatures;
+    userFeatures = new float[packedSize(numUsers, numFeatures)];
+    itemFeatures = new float[packedSize(numItems, numFeatures)];
+  }
+
+  @Override
+  void setUserFeatures(int userIndex, double[] features) {
+    pack(features, userFeatures, userIndex);
+  }
+
+  @Override
+  void setItemFeatures(int itemIndex, double[] features) {
+    pack(features, itemFeatures, itemIndex);
+  }
+
+  private void pack(double[] features, float[] packed, int row) {
+    int offset = row * numFeatures;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      packed[offset + feature] = (float) features[feature];
+    }
+  }
+
+  private double[] unpack(float[] packed, int row) {
+    double[] features = new double[numFeatures];
+    int offset = row * numFeatures;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      features[feature] = packed[offset + feature];
+    }
+    return features;
+  }
+
+  private double[][] unpackAll(float[] packed, int rows) {
+    double[][] features = new double[rows][];
+    for (int row = 0; row < rows; row++) {
+      features[row] = unpack(packed, row);
+    }
+    return features;
+  }
+
+  @Override
+  public double[][] allUserFeatures() {
+    return unpackAll(userFeatures, numUsers());
+  }
+
+  @Override
+  public double[] getUserFeatures(long userID) throws NoSuchUserException {
+    return unpack(userFeatures, userIndex(userID));
+  }
+
+  @Override
+  public double[][] allItemFeatures() {
+    return unpackAll(itemFeatures, numItems());
+  }
+
+  @Override
+  public double[] getItemFeatures(long itemID) throws NoSuchItemException {
+    return unpack(itemFeatures, itemIndex(itemID));
+  }
+
+  @Override
+  public double dotProduct(long userID, long itemID) throws TasteException {
+    int userOffset = userIndex(userID) * numFeatures;
+    int itemOffset = itemIndex(itemID) * numFeatures;
+    double dotProduct = 0.0;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      dotProduct += (double) userFeatures[userOffset + feature] * itemFeatures[itemOffset + feature];
+    }
+    return dotProduct;
+  }
+
+  @Override
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof FloatFactorization) {
+      FloatFactorization other = (FloatFactorization) o;
+      return numFeatures == other.numFeatures && sameIDMappings(other)
+          && Arrays.equals(userFeatures, other.userFeatures) && Arrays.equals(itemFeatures, other.itemFeatures);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = 31 * idMappingsHashCode() + numFeatures;
+    hashCode = 31 * hashCode + Arrays.hashCode(userFeatures);
+    hashCode = 31 * hashCode + Arrays.hashCode(itemFeatures);
+    return hashCode;
+  }
+
+}
@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
+
+/**
+ * <p>
+ * An approximate maximum-inner-product index over the item feature vectors of a {@link Factorization}, which
+ * lets {@link SVDRecommender} find the items with the highest estimated preference for a user without scoring
+ * every item.
+ * </p>
+ *
+ * <p>
+ * Locality sensitive hashing finds the vectors at the smallest angle to a query, which is not the same as the
+ * vectors with the largest inner product with it. The item vectors are therefore extended with one extra dimension,
+ * {@code sqrt(M^2 - |x|^2)} where {@code M} is the largest item vector norm, so that they all have norm
+ * {@code M}; queries are extended with a zero. The inner product of a query with an item is unchanged, and since
+ * all items now have the same norm, ranking items by angle to the query ranks them by inner product.
+ * </p>
+ *
+ * <p>
+ * Each of a number of hash tables keys the items by the signs of their extended vectors' projections onto a few
+ * random hyperplanes. A search only looks at the items in the query's bucket of each table, and computes their
+ * exact inner products through {@link Factorization#dotProduct(long, long)}. More bits per table make buckets
+ * smaller and searches faster; more tables raise the chance that a good item shares a bucket with the query.
+ * </p>
+ *
+ * <p>
+ * The index holds only the bucket of every item in every table, two {@code int}s per item and table; the features
+ * stay in the factorization. It is not modified after it is built, so searches may run concurrently.
+ * </p>
+ */
+public final class ItemFeatureIndex {
+
+  /** Tables used when the number of bits per table is derived from a search size */
+  private static final int DEFAULT_NUM_TABLES = 8;
+  private static final int MAX_BITS_PER_TABLE = 30;
+
+  private final Factorization factorization;
+  private final long[] itemIDs;
+  private final int numTables;
+  private final int bitsPerTable;
+  /** numTables * bitsPerTable hyperplanes of numFeatures + 1 dimensions, one after the other */
+  private final double[] hyperplanes;
+  /** for each table, the bucket of each item, sorted */
+  private final int[][] bucketKeys;
+  /** for each table, the item indices in the same order as {@link #bucketKeys} */
+  private final int[][] bucketItems;
+
+  /**
+   * Indexes the items of the factorization with {@value #DEFAULT_NUM_TABLES} tables, whose buckets hold
+   * {@code searchSize} items on average; short item vectors, which are extended the most, tend to share buckets.
+   * If {@code searchSize} is at least the number of items, searches are exact.
+   *
+   * @param searchSize about how many candidates each table contributes to a search
+   */
+  public ItemFeatureIndex(Factorization factorization, int searchSize) {
+    this(factorization,
+         bitsFor(factorization.numItems(), searchSize) == 0 ? 1 : DEFAULT_NUM_TABLES,
+         bitsFor(factorization.numItems(), searchSize));
+  }
+
+  /**
+   * @param numTables number of hash tables
+   * @param bitsPerTable number of hyperplanes per table; each table has up to {@code 2^bitsPerTable} buckets
+   */
+  public ItemFeatureIndex(Factorization factorization, int numTables, int bitsPerTable) {
+    Preconditions.checkArgument(numTables > 0, "numTables must be positive");
+    Preconditions.checkArgument(bitsPerTable >= 0 && bitsPerTable <= MAX_BITS_PER_TABLE,
+        "bitsPerTable must be between 0 and %s", MAX_BITS_PER_TABLE);
+    this.factorization = Preconditions.checkNotNull(factorization);
+    this.numTables = numTables;
+    this.bitsPerTable = bitsPerTable;
+
+    int numFeatures = factorization.numFeatures();
+    Random random = RandomUtils.getRandom();
+    hyperplanes = new double[numTables * bitsPerTable * (numFeatures + 1)];
+    for (int i = 0; i < hyperplanes.length; i++) {
+      hyperplanes[i] = random.nextGaussian();
+    }
+
+    // Reads the features by ID rather than through allItemFeatures(), which a MappedFactorization would have
+    // to copy onto the heap
+    double maxSquaredNorm = 0.0;
+    for (Map.Entry<Long,Integer> mapping : factorization.getItemIDMappings()) {
+      maxSquaredNorm = Math.max(maxSquaredNorm, squaredNorm(itemFeatures(factorization, mapping.getKey())));
+    }
+
+    int numItems = factorization.numItems();
+    itemIDs = new long[numItems];
+    bucketKeys = new int[numTables][numItems];
+    bucketItems = new int[numTables][numItems];
+    for (Map.Entry<Long,Integer> mapping : factorization.getItemIDMappings()) {
+      int index = mapping.getValue();
+      itemIDs[index] = mapping.getKey();
+      double[] features = itemFeatures(factorization, mapping.getKey());
+      double extension = Math.sqrt(Math.max(0.0, maxSquaredNorm - squaredNorm(features)));
+      for (int table = 0; table < numTables; table++) {
+        bucketKeys[table][index] = bucket(table, features, extension);
+        bucketItems[table][index] = index;
+      }
+    }
+    for (int table = 0; table < numTables; table++) {
+      sortByKey(bucketKeys[table], bucketItems[table]);
+    }
+  }
+
+  /**
+   * @return the number of bits which split {@code numItems} into buckets of about {@code searchSize}
+   */
+  private static int bitsFor(int numItems, int searchSize) {
+    Preconditions.checkArgument(searchSize > 0, "searchSize must be positive");
+    int bits = 0;
+    while (bits < MAX_BITS_PER_TABLE && (long) searchSize << (bits + 1) <= numItems) {
+      bits++;
+    }
+    return bits;
+  }
+
+  private static double[] itemFeatures(Factorization factorization, long itemID) {
+    try {
+      return factorization.getItemFeatures(itemID);
+    } catch (NoSuchItemException nsie) {
+      throw new IllegalStateException(nsie);
+    }
+  }
+
+  private static double squaredNorm(double[] features) {
+    double sum = 0.0;
+    for (double feature : features) {
+      sum += feature * feature;
+    }
+    return sum;
+  }
+
+  /**
+   * @param extension the extra dimension of the vector, 0 for queries
+   * @return the bucket of the vector in the table: one bit per hyperplane, set if it is on its positive side
+   */
+  private int bucket(int table, double[] features, double extension) {
+    int dimensions = features.length + 1;
+    int key = 0;
+    for (int bit = 0; bit < bitsPerTable; bit++) {
+      int offset = (table * bitsPerTable + bit) * dimensions;
+      double projection = extension * hyperplanes[offset + features.length];
+      for (int feature = 0; feature < features.length; feature++) {
+        projection += features[feature] * hyperplanes[offset + feature];
+      }
+      if (projection >= 0.0) {
+        key |= 1 << bit;
+      }
+    }
+    return key;
+  }
+
+  private static void sortByKey(final int[] keys, final int[] items) {
+    Sorting.quickSort(0, keys.length, new IntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        return keys[a] < keys[b] ? -1 : keys[a] > keys[b] ? 1 : 0;
+      }
+    }, new Swapper() {
+      @Override
+      public void swap(int a, int b) {
+        int tmp = keys[a];
+        keys[a] = keys[b];
+        keys[b] = tmp;
+        tmp = items[a];
+        items[a] = items[b];
+        items[b] = tmp;
+      }
+    });
+  }
+
+  /**
+   * @return the index of the first entry of {@code keys} not less than {@code key}
+   */
+  private static int lowerBound(int[] keys, int key) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the factorization whose item vectors this index holds
+   */
+  public Factorization getFactorization() {
+    return factorization;
+  }
+
+  /**
+   * @param userID user of the factorization to find items for
+   * @param howMany maximum number of items to return
+   * @return IDs of (approximately) the items with the largest inner product with the user's features, best first
+   * @throws NoSuchUserException if the factorization doesn't know the user
+   */
+  public long[] search(long userID, int howMany) throws TasteException {
+    double[] userFeatures = factorization.getUserFeatures(userID);
+
+    int numCandidates = 0;
+    int[] candidates = new int[16];
+    for (int table = 0; table < numTables; table++) {
+      int key = bucket(table, userFeatures, 0.0);
+      int[] keys = bucketKeys[table];
+      int[] items = bucketItems[table];
+      for (int i = lowerBound(keys, key); i < keys.length && keys[i] == key; i++) {
+        if (numCandidates == candidates.length) {
+          candidates = Arrays.copyOf(candidates, 2 * numCandidates);
+        }
+        candidates[numCandidates++] = items[i];
+      }
+    }
+
+    // Items may be in the query's bucket of several tables
+    Arrays.sort(candidates, 0, numCandidates);
+    int numDistinct = 0;
+    for (int i = 0; i < numCandidates; i++) {
+      if (i == 0 || candidates[i] != candidates[i - 1]) {
+        candidates[numDistinct++] = candidates[i];
+      }
+    }
+
+    final int[] theCandidates = candidates;
+    final double[] scores = new double[numDistinct];
+    for (int i = 0; i < numDistinct; i++) {
+      scores[i] = factorization.dotProduct(userID, itemIDs[candidates[i]]);
+    }
+    Sorting.quickSort(0, numDistinct, new IntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        return Double.compare(scores[b], scores[a]);
+      }
+    }, new Swapper() {
+      @Override
+      public void swap(int a, int b) {
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int candidate = theCandidates[a];
+        theCandidates[a] = theCandidates[b];
+        theCandidates[b] = candidate;
+      }
+    });
+
+    long[] result = new long[Math.min(howMany, numDistinct)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = itemIDs[candidates[i]];
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+
+/**
+ * <p>
+ * A {@link Factorization} whose IDs and feature vectors stay in a memory-mapped file written by
+ * {@link MappedFilePersistenceStrategy}, instead of in {@link org.apache.mahout.cf.taste.impl.common.FastByIDMap}s
+ * and {@code double[][]}s on the heap. Mapping a file takes constant time regardless of its size, and the
+ * features are paged in by the OS as they are used.
+ * </p>
+ *
+ * <p>
+ * Users and items are found by binary search over sorted ID arrays; their index is their position in that order.
+ * {@link #getUserFeatures(long)} and {@link #getItemFeatures(long)} return a fresh copy of the vector on every call;
+ * {@link #dotProduct(long, long)} reads both vectors in place.
+ * {@link #allUserFeatures()} and {@link #allItemFeatures()} copy the entire matrix onto the heap and should be
+ * avoided for large factorizations.
+ * </p>
+ */
+public final class MappedFactorization extends Factorization {
+
+  static final int MAGIC = 0x4D464143; // "MFAC"
+  static final int VERSION = 1;
+  static final int PAGE_SIZE = 4096;
+  static final int FLAG_SINGLE_PRECISION = 0x01;
+
+  private final File file;
+  private final long lastModified;
+  private final long length;
+  private final boolean singlePrecision;
+  private final int numFeatures;
+  private final int numUsers;
+  private final int numItems;
+  private final MappedSection userIDs;
+  private final MappedSection itemIDs;
+  private final MappedSection userFeatures;
+  private final MappedSection itemFeatures;
+
+  /**
+   * @param file file written by {@link MappedFilePersistenceStrategy}
+   * @throws IOException if the file can't be read or is not in the expected format
+   */
+  public MappedFactorization(File file) throws IOException {
+    this.file = Preconditions.checkNotNull(file);
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      lastModified = file.lastModified();
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.BIG_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException("Truncated header in " + file);
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a mapped factorization file: " + file);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " in " + file);
+      }
+      singlePrecision = (header.getInt() & FLAG_SINGLE_PRECISION) != 0;
+      numFeatures = header.getInt();
+      numUsers = header.getInt();
+      numItems = header.getInt();
+
+      int featureSize = singlePrecision ? 4 : 8;
+      long expectedLength = fileLength(numFeatures, numUsers, numItems, singlePrecision);
+      if (length < expectedLength) {
+        throw new IOException("Truncated file " + file + "; expected " + expectedLength + " bytes");
+      }
+
+      // Mappings stay valid after the channel is closed
+      long position = PAGE_SIZE;
+      userIDs = MappedSection.map(channel, position, numUsers, 8);
+      position = pageAlign(position + 8L * numUsers);
+      itemIDs = MappedSection.map(channel, position, numItems, 8);
+      position = pageAlign(position + 8L * numItems);
+      userFeatures = MappedSection.map(channel, position, (long) numUsers * numFeatures, featureSize);
+      position = pageAlign(position + (long) featureSize * numUsers * numFeatures);
+      itemFeatures = MappedSection.map(channel, position, (long) numItems * numFeatures, featureSize);
+    } finally {
+      Closeables.close(raf, true);
+    }
+  }
+
+  static long pageAlign(long position) {
+    return (position + PAGE_SIZE - 1) & ~(PAGE_SIZE - 1L);
+  }
+
+  static long fileLength(int numFeatures, int numUsers, int numItems, boolean singlePrecision) {
+    int featureSize = singlePrecision ? 4 : 8;
+    long length = PAGE_SIZE;
+    length = pageAlign(length + 8L * numUsers);
+    length = pageAlign(length + 8L * numItems);
+    length = pageAlign(length + (long) featureSize * numUsers * numFeatures);
+    return length + (long) featureSize * numItems * numFeatures;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return true if the file still has the length and modification time it had when it was mapped
+   */
+  boolean isCurrent() {
+    return file.length() == length && file.lastModified() == lastModified;
+  }
+
+  /**
+   * @return true if the features are stored as {@code float}s
+   */
+  public boolean isSinglePrecision() {
+    return singlePrecision;
+  }
+
+  @Override
+  public double[][] allUserFeatures() {
+    return allFeatures(userFeatures, numUsers);
+  }
+
+  @Override
+  public double[] getUserFeatures(long userID) throws NoSuchUserException {
+    return features(userFeatures, userIndex(userID));
+  }
+
+  @Override
+  public double[][] allItemFeatures() {
+    return allFeatures(itemFeatures, numItems);
+  }
+
+  @Override
+  public double[] getItemFeatures(long itemID) throws NoSuchItemException {
+    return features(itemFeatures, itemIndex(itemID));
+  }
+
+  @Override
+  public double dotProduct(long userID, long itemID) throws NoSuchUserException, NoSuchItemException {
+    long userOffset = (long) userIndex(userID) * numFeatures;
+    long itemOffset = (long) itemIndex(itemID) * numFeatures;
+    double dotProduct = 0.0;
+    if (singlePrecision) {
+      for (int feature = 0; feature < numFeatures; feature++) {
+        dotProduct += (double) userFeatures.getFloat(userOffset + feature)
+            * itemFeatures.getFloat(itemOffset + feature);
+      }
+    } else {
+      for (int feature = 0; feature < numFeatures; feature++) {
+        dotProduct += userFeatures.getDouble(userOffset + feature) * itemFeatures.getDouble(itemOffset + feature);
+      }
+    }
+    return dotProduct;
+  }
+
+  @Override
+  public int userIndex(long userID) throws NoSuchUserException {
+    long index = userIDs.binarySearch(0, numUsers, userID);
+    if (index < 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return (int) index;
+  }
+
+  @Override
+  public Iterable<Map.Entry<Long,Integer>> getUserIDMappings() {
+    return new IDMappings(userIDs);
+  }
+
+  @Override
+  public int itemIndex(long itemID) throws NoSuchItemException {
+    long index = itemIDs.binarySearch(0, numItems, itemID);
+    if (index < 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return (int) index;
+  }
+
+  @Override
+  public Iterable<Map.Entry<Long,Integer>> getItemIDMappings() {
+    return new IDMappings(itemIDs);
+  }
+
+  @Override
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public int numUsers() {
+    return numUsers;
+  }
+
+  @Override
+  public int numItems() {
+    return numItems;
+  }
+
+  private double[] features(MappedSection section, int index) {
+    double[] features = new double[numFeatures];
+    long offset = (long) index * numFeatures;
+    if (singlePrecision) {
+      for (int feature = 0; feature < numFeatures; feature++) {
+        features[feature] = section.getFloat(offset + feature);
+      }
+    } else {
+      for (int feature = 0; feature < numFeatures; feature++) {
+        features[feature] = section.getDouble(offset + feature);
+      }
+    }
+    return features;
+  }
+
+  private double[][] allFeatures(MappedSection section, int count) {
+    double[][] all = new double[count][];
+    for (int index = 0; index < count; index++) {
+      all[index] = features(section, index);
+    }
+    return all;
+  }
+
+  /**
+   * Two mapped factorizations are equal if they map the same version of the same file.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof MappedFactorization) {
+      MappedFactorization other = (MappedFactorization) o;
+      return file.equals(other.file) && lastModified == other.lastModified;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * file.hashCode() + (int) (lastModified ^ (lastModified >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return "MappedFactorization[file:" + file + ",users:" + numUsers + ",items:" + numItems
+        + ",features:" + numFeatures + ']';
+  }
+
+  private static final class IDMappings implements Iterable<Map.Entry<Long,Integer>> {
+
+    private final MappedSection ids;
+
+    private IDMappings(MappedSection ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public Iterator<Map.Entry<Long,Integer>> iterator() {
+      return new Iterator<Map.Entry<Long,Integer>>() {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+          return index < ids.size();
+        }
+
+        @Override
+        public Map.Entry<Long,Integer> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          Map.Entry<Long,Integer> entry =
+              new AbstractMap.SimpleImmutableEntry<Long,Integer>(ids.getLong(index), index);
+          index++;
+          return entry;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+}
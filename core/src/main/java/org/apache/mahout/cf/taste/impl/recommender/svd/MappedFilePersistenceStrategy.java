@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A persistent store which writes factorizations in a page-aligned binary format: sorted arrays of user and item
+ * IDs, followed by the user and item feature vectors as contiguous blocks of {@code double}s or, optionally,
+ * {@code float}s. {@link #load()} memory-maps the file as a {@link MappedFactorization}, which is near instant and
+ * keeps the features off the heap.
+ * </p>
+ *
+ * <p>
+ * A new factorization is written to a temporary file which then replaces the store, so that a factorization
+ * mapped from the previous file stays valid. Use {@link PersistedFactorizer} to have
+ * {@link SVDRecommender#refresh(java.util.Collection)} pick up factorizations written by another process.
+ * </p>
+ */
+public class MappedFilePersistenceStrategy implements PersistenceStrategy {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedFilePersistenceStrategy.class);
+
+  private final File file;
+  private final boolean singlePrecision;
+
+  /**
+   * @param file the file to use for storage. If the file does not exist it will be created when required.
+   * @param singlePrecision store features as {@code float}s, halving the size of the file
+   */
+  public MappedFilePersistenceStrategy(File file, boolean singlePrecision) {
+    this.file = Preconditions.checkNotNull(file);
+    this.singlePrecision = singlePrecision;
+  }
+
+  public MappedFilePersistenceStrategy(File file) {
+    this(file, false);
+  }
+
+  @Override
+  public Factorization load() throws IOException {
+    if (!file.exists()) {
+      log.info("{} does not yet exist, no factorization found", file.getAbsolutePath());
+      return null;
+    }
+    log.info("Mapping factorization from {}...", file.getAbsolutePath());
+    return new MappedFactorization(file);
+  }
+
+  @Override
+  public void maybePersist(Factorization factorization) throws IOException {
+    if (factorization instanceof MappedFactorization && ((MappedFactorization) factorization).getFile().equals(file)) {
+      // Already what's in the store, or was replaced there by a newer one
+      return;
+    }
+    File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+    log.info("Writing factorization to {}...", file.getAbsolutePath());
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+    boolean threw = true;
+    try {
+      write(factorization, singlePrecision, out);
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+    // Renaming over an existing file is atomic on POSIX file systems; elsewhere it may fail if the file exists
+    if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+      throw new IOException("Unable to replace " + file + " with " + tempFile);
+    }
+  }
+
+  static void write(Factorization factorization, boolean singlePrecision, DataOutputStream out)
+    throws IOException {
+    int numFeatures = factorization.numFeatures();
+    long[] userIDs = sortedIDs(factorization.getUserIDMappings(), factorization.numUsers());
+    long[] itemIDs = sortedIDs(factorization.getItemIDMappings(), factorization.numItems());
+
+    out.writeInt(MappedFactorization.MAGIC);
+    out.writeInt(MappedFactorization.VERSION);
+    out.writeInt(singlePrecision ? MappedFactorization.FLAG_SINGLE_PRECISION : 0);
+    out.writeInt(numFeatures);
+    out.writeInt(userIDs.length);
+    out.writeInt(itemIDs.length);
+    pad(24, out);
+
+    for (long userID : userIDs) {
+      out.writeLong(userID);
+    }
+    pad(8L * userIDs.length, out);
+    for (long itemID : itemIDs) {
+      out.writeLong(itemID);
+    }
+    pad(8L * itemIDs.length, out);
+    try {
+      for (long userID : userIDs) {
+        writeFeatures(factorization.getUserFeatures(userID), numFeatures, singlePrecision, out);
+      }
+      pad((singlePrecision ? 4L : 8L) * userIDs.length * numFeatures, out);
+      for (long itemID : itemIDs) {
+        writeFeatures(factorization.getItemFeatures(itemID), numFeatures, singlePrecision, out);
+      }
+    } catch (TasteException te) {
+      throw new IOException("Unable to persist factorization", te);
+    }
+  }
+
+  private static long[] sortedIDs(Iterable<Map.Entry<Long,Integer>> mappings, int size) {
+    long[] ids = new long[size];
+    int i = 0;
+    for (Map.Entry<Long,Integer> mapping : mappings) {
+      ids[i++] = mapping.getKey();
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  private static void writeFeatures(double[] features, int numFeatures, boolean singlePrecision,
+      DataOutputStream out) throws IOException {
+    for (int feature = 0; feature < numFeatures; feature++) {
+      if (singlePrecision) {
+        out.writeFloat((float) features[feature]);
+      } else {
+        out.writeDouble(features[feature]);
+      }
+    }
+  }
+
+  /**
+   * Pads a section which started on a page boundary with zeroes up to the next page boundary.
+   *
+   * @param sectionLength number of bytes written in the section
+   */
+  private static void pad(long sectionLength, DataOutputStream out) throws IOException {
+    out.write(new byte[(int) (MappedFactorization.pageAlign(sectionLength) - sectionLength)]);
+  }
+
+}
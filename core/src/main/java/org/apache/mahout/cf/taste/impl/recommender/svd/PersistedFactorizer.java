@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * <p>
+ * A {@link Factorizer} which does not compute anything, but loads the latest factorization from a
+ * {@link PersistenceStrategy}, typically written by a training job running elsewhere. An {@link SVDRecommender}
+ * using it picks up a new factorization on every refresh; with a {@link MappedFilePersistenceStrategy} that is a
+ * near instant swap which doesn't need room on the heap for both the old and the new factorization.
+ * </p>
+ *
+ * <p>
+ * A {@link MappedFactorization} is kept until its file changes length or modification time, so a refresh while the
+ * file is unchanged neither maps it again nor makes the {@link SVDRecommender} rebuild its item index.
+ * </p>
+ */
+public final class PersistedFactorizer implements Factorizer {
+
+  private final PersistenceStrategy persistenceStrategy;
+  private volatile Factorization loaded;
+
+  public PersistedFactorizer(PersistenceStrategy persistenceStrategy) {
+    this.persistenceStrategy = Preconditions.checkNotNull(persistenceStrategy);
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    Factorization factorization = loaded;
+    if (factorization instanceof MappedFactorization && ((MappedFactorization) factorization).isCurrent()) {
+      return factorization;
+    }
+    try {
+      factorization = persistenceStrategy.load();
+    } catch (IOException ioe) {
+      throw new TasteException("Error loading factorization", ioe);
+    }
+    if (factorization == null) {
+      throw new TasteException("No factorization found in " + persistenceStrategy);
+    }
+    loaded = factorization;
+    return factorization;
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Nothing to do; every call to factorize() checks for a newer factorization
+  }
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+
+/**
+ * <p>
+ * A {@link Factorization} which quantizes every user and item feature vector to signed bytes with a scale of its
+ * own: feature {@code f} of a vector is stored as {@code round(f / scale)} where {@code scale} is the largest
+ * absolute feature of that vector divided by 127. This takes an eighth of the memory of {@code double}s, and a
+ * {@link #dotProduct(long, long)} sums integer products and applies both scales once at the end.
+ * </p>
+ *
+ * <p>
+ * The error of each feature is at most half a step, {@code scale / 2}, so estimates are typically accurate to one
+ * or two percent of the largest features. Check the effect on accuracy with a
+ * {@link org.apache.mahout.cf.taste.eval.RecommenderEvaluator} before using this for serving.
+ * </p>
+ *
+ * <p>
+ * As each matrix is a single array, users or items times features must not exceed {@link Integer#MAX_VALUE}.
+ * {@link #getUserFeatures(long)} and {@link #getItemFeatures(long)} return a fresh, dequantized copy of the vector
+ * on every call, and {@link #allUserFeatures()} and {@link #allItemFeatures()} dequantize the entire matrix.
+ * </p>
+ */
+public final class QuantizedFactorization extends Factorization {
+
+  private static final int MAX_QUANTIZED = 127;
+
+  private final int numFeatures;
+  private final byte[] userFeatures;
+  private final float[] userScales;
+  private final byte[] itemFeatures;
+  private final float[] itemScales;
+
+  /**
+   * Copies a factorization, quantizing its features.
+   */
+  public QuantizedFactorization(Factorization factorization) {
+    this(copyIDMapping(factorization.getUserIDMappings(), factorization.numUsers()),
+         copyIDMapping(factorization.getItemIDMappings(), factorization.numItems()),
+         factorization.numUsers(), factorization.numItems(), factorization.numFeatures());
+    copyFeatures(factorization, this);
+  }
+
+  /**
+   * Creates a factorization whose features are all 0 until they are set. The ID mappings are not copied, so they
+   * may be filled in meanwhile too.
+   */
+  QuantizedFactorization(FastByIDMap<Integer> userIDMapping, FastByIDMap<Integer> itemIDMapping,
+                         int numUsers, int numItems, int numFeatures) {
+    super(userIDMapping, itemIDMapping, null, null);
+    this.numFeatures = numFeatures;
+    userFeatures = new byte[packedSize(numUsers, numFeatures)];
+    userScales = new float[numUsers];
+    itemFeatures = new byte[packedSize(numItems, numFeatures)];
+    itemScales = new float[numItems];
+  }
+
+  @Override
+  void setUserFeatures(int userIndex, double[] features) {
+    quantize(features, userFeatures, userScales, userIndex);
+  }
+
+  @Override
+  void setItemFeatures(int itemIndex, double[] features) {
+    quantize(features, itemFeatures, itemScales, itemIndex);
+  }
+
+  private void quantize(double[] features, byte[] quantized, float[] scales, int row) {
+    int offset = row * numFeatures;
+    double maxAbs = 0.0;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      maxAbs = Math.max(maxAbs, Math.abs(features[feature]));
+    }
+    if (maxAbs == 0.0) {
+      // all zeroes
+      scales[row] = 0.0f;
+      Arrays.fill(quantized, offset, offset + numFeatures, (byte) 0);
+      return;
+    }
+    float scale = (float) (maxAbs / MAX_QUANTIZED);
+    scales[row] = scale;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      long value = Math.round(features[feature] / scale);
+      // the float scale may round down, which could push the largest feature just past the range
+      quantized[offset + feature] = (byte) Math.max(-MAX_QUANTIZED, Math.min(MAX_QUANTIZED, value));
+    }
+  }
+
+  private double[] dequantize(byte[] quantized, float[] scales, int row) {
+    double[] features = new double[numFeatures];
+    int offset = row * numFeatures;
+    double scale = scales[row];
+    for (int feature = 0; feature < numFeatures; feature++) {
+      features[feature] = quantized[offset + feature] * scale;
+    }
+    return features;
+  }
+
+  private double[][] dequantizeAll(byte[] quantized, float[] scales) {
+    double[][] features = new double[scales.length][];
+    for (int row = 0; row < scales.length; row++) {
+      features[row] = dequantize(quantized, scales, row);
+    }
+    return features;
+  }
+
+  @Override
+  public double[][] allUserFeatures() {
+    return dequantizeAll(userFeatures, userScales);
+  }
+
+  @Override
+  public double[] getUserFeatures(long userID) throws NoSuchUserException {
+    return dequantize(userFeatures, userScales, userIndex(userID));
+  }
+
+  @Override
+  public double[][] allItemFeatures() {
+    return dequantizeAll(itemFeatures, itemScales);
+  }
+
+  @Override
+  public double[] getItemFeatures(long itemID) throws NoSuchItemException {
+    return dequantize(itemFeatures, itemScales, itemIndex(itemID));
+  }
+
+  @Override
+  public double dotProduct(long userID, long itemID) throws TasteException {
+    int userIndex = userIndex(userID);
+    int itemIndex = itemIndex(itemID);
+    int userOffset = userIndex * numFeatures;
+    int itemOffset = itemIndex * numFeatures;
+    // 127 * 127 * numFeatures can't overflow an int for any sensible number of features
+    int dotProduct = 0;
+    for (int feature = 0; feature < numFeatures; feature++) {
+      dotProduct += userFeatures[userOffset + feature] * itemFeatures[itemOffset + feature];
+    }
+    return (double) dotProduct * userScales[userIndex] * itemScales[itemIndex];
+  }
+
+  @Override
+  public int numFeatures() {
+    return numFeatures;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof QuantizedFactorization) {
+      QuantizedFactorization other = (QuantizedFactorization) o;
+      return numFeatures == other.numFeatures && sameIDMappings(other)
+          && Arrays.equals(userFeatures, other.userFeatures) && Arrays.equals(userScales, other.userScales)
+          && Arrays.equals(itemFeatures, other.itemFeatures) && Arrays.equals(itemScales, other.itemScales);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = 31 * idMappingsHashCode() + numFeatures;
+    hashCode = 31 * hashCode + Arrays.hashCode(userFeatures);
+    hashCode = 31 * hashCode + Arrays.hashCode(userScales);
+    hashCode = 31 * hashCode + Arrays.hashCode(itemFeatures);
+    hashCode = 31 * hashCode + Arrays.hashCode(itemScales);
+    return hashCode;
+  }
+
+}
@@ -44,9 +44,12 @@ import org.slf4j.LoggerFactory;
  */
 public final class SVDRecommender extends AbstractRecommender {
 
-  private Factorization factorization;
+  private volatile Factorization factorization;
+  private volatile ItemFeatureIndex itemIndex;
   private final Factorizer factorizer;
   private final PersistenceStrategy persistenceStrategy;
+  private final int approximateSearchSize;
+  private final boolean allUnknownItemsAreCandidates;
   private final RefreshHelper refreshHelper;
 
   private static final Logger log = LoggerFactory.getLogger(SVDRecommender.class);
@@ -92,9 +95,31 @@ public final class SVDRecommender extends AbstractRecommender {
    */
   public SVDRecommender(DataModel dataModel, Factorizer factorizer, CandidateItemsStrategy candidateItemsStrategy,
       PersistenceStrategy persistenceStrategy) throws TasteException {
+    this(dataModel, factorizer, candidateItemsStrategy, persistenceStrategy, 0);
+  }
+
+  /**
+   * Create an SVDRecommender which finds the top items for a user with an approximate maximum-inner-product search
+   * over the item feature vectors (see {@link ItemFeatureIndex}) rather than by scoring every candidate item.
+   *
+   * In that mode only the items returned by the index which the {@link CandidateItemsStrategy} also returns are
+   * considered. An {@link AllUnknownItemsCandidateItemsStrategy} is not called, as it only excludes the items the
+   * user already has a preference for; other strategies still run for every request, but only the items both
+   * agree on are scored. The returned items are ranked by their exact estimated preference.
+   *
+   * @param approximateSearchSize number of items fetched from the index per request, and about the number in each
+   *  of its buckets, which trades recall for latency; it should comfortably exceed the number of recommendations
+   *  requested plus the number of items a typical user has a preference for. 0 disables the index.
+   * @throws TasteException
+   */
+  public SVDRecommender(DataModel dataModel, Factorizer factorizer, CandidateItemsStrategy candidateItemsStrategy,
+      PersistenceStrategy persistenceStrategy, int approximateSearchSize) throws TasteException {
     super(dataModel, candidateItemsStrategy);
     this.factorizer = Preconditions.checkNotNull(factorizer);
     this.persistenceStrategy = Preconditions.checkNotNull(persistenceStrategy);
+    Preconditions.checkArgument(approximateSearchSize >= 0, "approximateSearchSize must not be negative");
+    this.approximateSearchSize = approximateSearchSize;
+    this.allUnknownItemsAreCandidates = candidateItemsStrategy instanceof AllUnknownItemsCandidateItemsStrategy;
     try {
       factorization = persistenceStrategy.load();
     } catch (IOException e) {
@@ -103,6 +128,8 @@ public final class SVDRecommender extends AbstractRecommender {
     
     if (factorization == null) {
       train();
+    } else {
+      buildItemIndex();
     }
     
     refreshHelper = new RefreshHelper(new Callable<Object>() {
@@ -122,12 +149,25 @@ public final class SVDRecommender extends AbstractRecommender {
   }
 
   private void train() throws TasteException {
-    factorization = factorizer.factorize();
+    Factorization newFactorization = factorizer.factorize();
+    if (newFactorization == factorization) {
+      // Unchanged, as a PersistedFactorizer reports it; so is the item index
+      return;
+    }
+    factorization = newFactorization;
     try {
       persistenceStrategy.maybePersist(factorization);
     } catch (IOException e) {
       throw new TasteException("Error persisting factorization", e);
     }
+    buildItemIndex();
+  }
+
+  private void buildItemIndex() {
+    if (approximateSearchSize > 0) {
+      log.info("Indexing {} item feature vectors", factorization.numItems());
+      itemIndex = new ItemFeatureIndex(factorization, approximateSearchSize);
+    }
   }
   
   @Override
@@ -136,10 +176,25 @@ public final class SVDRecommender extends AbstractRecommender {
     log.debug("Recommending items for user ID '{}'", userID);
 
     PreferenceArray preferencesFromUser = getDataModel().getPreferencesFromUser(userID);
-    FastIDSet possibleItemIDs = getAllOtherItems(userID, preferencesFromUser);
+    ItemFeatureIndex index = itemIndex;
+    FastIDSet possibleItemIDs;
+    TopItems.IDEstimator estimator;
+    if (index == null) {
+      possibleItemIDs = getAllOtherItems(userID, preferencesFromUser);
+      estimator = new Estimator(factorization, userID);
+    } else {
+      // The index and the factorization it was built from are replaced together on refresh
+      Factorization indexedFactorization = index.getFactorization();
+      possibleItemIDs = new FastIDSet(index.search(userID, approximateSearchSize));
+      if (allUnknownItemsAreCandidates) {
+        possibleItemIDs.removeAll(preferencesFromUser.getIDs());
+      } else {
+        possibleItemIDs.retainAll(getAllOtherItems(userID, preferencesFromUser));
+      }
+      estimator = new Estimator(indexedFactorization, userID);
+    }
 
-    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer,
-        new Estimator(userID));
+    List<RecommendedItem> topItems = TopItems.getTopItems(howMany, possibleItemIDs.iterator(), rescorer, estimator);
     log.debug("Recommendations are: {}", topItems);
 
     return topItems;
@@ -150,26 +205,27 @@ public final class SVDRecommender extends AbstractRecommender {
    */
   @Override
   public float estimatePreference(long userID, long itemID) throws TasteException {
-    double[] userFeatures = factorization.getUserFeatures(userID);
-    double[] itemFeatures = factorization.getItemFeatures(itemID);
-    double estimate = 0;
-    for (int feature = 0; feature < userFeatures.length; feature++) {
-      estimate += userFeatures[feature] * itemFeatures[feature];
-    }
-    return (float) estimate;
+    return estimatePreference(factorization, userID, itemID);
+  }
+
+  private static float estimatePreference(Factorization factorization, long userID, long itemID)
+    throws TasteException {
+    return (float) factorization.dotProduct(userID, itemID);
   }
 
-  private final class Estimator implements TopItems.Estimator<Long> {
+  private static final class Estimator implements TopItems.IDEstimator {
 
+    private final Factorization factorization;
     private final long theUserID;
 
-    private Estimator(long theUserID) {
+    private Estimator(Factorization factorization, long theUserID) {
+      this.factorization = factorization;
       this.theUserID = theUserID;
     }
 
     @Override
-    public double estimate(Long itemID) throws TasteException {
-      return estimatePreference(theUserID, itemID);
+    public double estimate(long itemID) throws TasteException {
+      return estimatePreference(factorization, theUserID, itemID);
     }
   }
 
@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.ExecutorUtils;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.common.RandomWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A parallel SGD factorizer which, unlike {@link ParallelSGDFactorizer}, never lets two threads update the same
+ * user or item vector at the same time. It follows the stratified schedule of
+ * <a href="http://www.mpi-inf.mpg.de/~rgemulla/publications/gemulla11dsgd.pdf">
+ * "Large-Scale Matrix Factorization with Distributed Stochastic Gradient Descent"</a>: users and items are split
+ * into {@code b} ranges of consecutive indices, which cuts the rating matrix into {@code b x b} blocks. An epoch
+ * consists of {@code b} sub-epochs; each one processes {@code b} blocks which share no users or items, one per
+ * thread, in parallel. The order of the sub-epochs and of the ratings within each block is shuffled every epoch.
+ * </p>
+ *
+ * <p>
+ * The ratings are kept in primitive arrays of user indices, item indices and values, grouped by block, rather than
+ * as {@link org.apache.mahout.cf.taste.model.Preference} objects, so shuffling a block moves a few bytes per rating
+ * and threads stream through memory of their own. Because each thread works on its own range of user and item
+ * vectors, they don't contend for cache lines, and updates are not lost as they can be with Hogwild!. The learning
+ * rate schedule, the bias terms and the update rule are the same as {@link ParallelSGDFactorizer}'s.
+ * </p>
+ *
+ * <p>
+ * The number of ratings per second of every epoch is logged at info level.
+ * </p>
+ */
+public class StratifiedSGDFactorizer extends AbstractFactorizer {
+
+  private static final Logger log = LoggerFactory.getLogger(StratifiedSGDFactorizer.class);
+
+  /** place in user vector where the bias is stored */
+  private static final int USER_BIAS_INDEX = 1;
+  /** place in item vector where the bias is stored */
+  private static final int ITEM_BIAS_INDEX = 2;
+  private static final int FEATURE_OFFSET = 3;
+  /** Standard deviation for random initialization of features */
+  private static final double NOISE = 0.02;
+
+  private final DataModel dataModel;
+  /** Parameter used to prevent overfitting. */
+  private final double lambda;
+  /** Number of features used to compute this factorization, plus the bias terms */
+  private final int rank;
+  private final int numEpochs;
+  private final int numThreads;
+
+  private final double mu0;
+  private final double decayFactor;
+  private final int stepOffset;
+  private final double forgettingExponent;
+  private final double biasMuRatio;
+  private final double biasLambdaRatio;
+
+  public StratifiedSGDFactorizer(DataModel dataModel, int numFeatures, double lambda, int numEpochs)
+    throws TasteException {
+    this(dataModel, numFeatures, lambda, numEpochs, 0.01, 1, 0, 0, 0.5, 0.1,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param mu0 initial learning rate
+   * @param decayFactor the learning rate is multiplied by this after every epoch
+   * @param stepOffset together with {@code forgettingExponent}, anneals the learning rate by
+   *  {@code (epoch + stepOffset)^forgettingExponent}
+   * @param numThreads number of threads, which is also the number of user and item ranges
+   */
+  public StratifiedSGDFactorizer(DataModel dataModel, int numFeatures, double lambda, int numEpochs,
+      double mu0, double decayFactor, int stepOffset, double forgettingExponent,
+      double biasMuRatio, double biasLambdaRatio, int numThreads) throws TasteException {
+    super(dataModel);
+    Preconditions.checkArgument(numFeatures > 0, "numFeatures must be positive");
+    Preconditions.checkArgument(numEpochs > 0, "numEpochs must be positive");
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    this.dataModel = dataModel;
+    this.rank = numFeatures + FEATURE_OFFSET;
+    this.lambda = lambda;
+    this.numEpochs = numEpochs;
+    this.mu0 = mu0;
+    this.decayFactor = decayFactor;
+    this.stepOffset = stepOffset;
+    this.forgettingExponent = forgettingExponent;
+    this.biasMuRatio = biasMuRatio;
+    this.biasLambdaRatio = biasLambdaRatio;
+    this.numThreads = numThreads;
+  }
+
+  private double getMu(int epoch) {
+    return mu0 * Math.pow(decayFactor, epoch - 1) * Math.pow(epoch + stepOffset, forgettingExponent);
+  }
+
+  @Override
+  public Factorization factorize() throws TasteException {
+    int numUsers = dataModel.getNumUsers();
+    int numItems = dataModel.getNumItems();
+    int numBlocks = Math.max(1, Math.min(numThreads, Math.min(numUsers, numItems)));
+
+    BlockedRatings ratings = new BlockedRatings(numBlocks, numUsers, numItems);
+    RandomWrapper random = RandomUtils.getRandom();
+    double[][] userVectors = new double[numUsers][rank];
+    double[][] itemVectors = new double[numItems][rank];
+    initialize(userVectors, itemVectors, ratings.averageValue(), random);
+
+    // each thread shuffles the blocks of one range of users, so it gets its own Random
+    Random[] randoms = new Random[numBlocks];
+    for (int userBlock = 0; userBlock < numBlocks; userBlock++) {
+      randoms[userBlock] = RandomUtils.getRandom(random.nextLong());
+    }
+    int[] subEpochs = new int[numBlocks];
+    for (int i = 0; i < numBlocks; i++) {
+      subEpochs[i] = i;
+    }
+
+    log.info("Computing the factorization of {} ratings with {} x {} blocks...", ratings.size(), numBlocks, numBlocks);
+    ExecutorService executor = Executors.newFixedThreadPool(numBlocks);
+    try {
+      for (int epoch = 1; epoch <= numEpochs; epoch++) {
+        long start = System.nanoTime();
+        double mu = getMu(epoch);
+        shuffle(subEpochs, random);
+        for (int shift : subEpochs) {
+          // user range b and item range (b + shift) % numBlocks, for every b, share no users or items
+          List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(numBlocks);
+          for (int userBlock = 0; userBlock < numBlocks; userBlock++) {
+            int itemBlock = (userBlock + shift) % numBlocks;
+            tasks.add(new BlockUpdate(ratings, userBlock * numBlocks + itemBlock, userVectors, itemVectors, mu,
+                                      randoms[userBlock]));
+          }
+          ExecutorUtils.runAll(tasks, executor);
+        }
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        log.info("Epoch {}: {} ratings/second", epoch, (long) (ratings.size() / seconds));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return createFactorization(userVectors, itemVectors);
+  }
+
+  private void initialize(double[][] userVectors, double[][] itemVectors, double globalAverage, Random random) {
+    for (double[] userVector : userVectors) {
+      userVector[0] = globalAverage;
+      userVector[USER_BIAS_INDEX] = 0; // will store user bias
+      userVector[ITEM_BIAS_INDEX] = 1; // corresponding item feature contains item bias
+      for (int feature = FEATURE_OFFSET; feature < rank; feature++) {
+        userVector[feature] = random.nextGaussian() * NOISE;
+      }
+    }
+    for (double[] itemVector : itemVectors) {
+      itemVector[0] = 1; // corresponding user feature contains global average
+      itemVector[USER_BIAS_INDEX] = 1; // corresponding user feature contains user bias
+      itemVector[ITEM_BIAS_INDEX] = 0; // will store item bias
+      for (int feature = FEATURE_OFFSET; feature < rank; feature++) {
+        itemVector[feature] = random.nextGaussian() * NOISE;
+      }
+    }
+  }
+
+  private static void shuffle(int[] values, Random random) {
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int value = values[i];
+      values[i] = values[j];
+      values[j] = value;
+    }
+  }
+
+  /** the same update as {@link ParallelSGDFactorizer#update(org.apache.mahout.cf.taste.model.Preference, double)} */
+  void update(double[] userVector, double[] itemVector, float value, double mu) {
+    double prediction = 0;
+    for (int k = 0; k < rank; k++) {
+      prediction += userVector[k] * itemVector[k];
+    }
+    double err = value - prediction;
+
+    // adjust features
+    for (int k = FEATURE_OFFSET; k < rank; k++) {
+      double userFeature = userVector[k];
+      double itemFeature = itemVector[k];
+
+      userVector[k] += mu * (err * itemFeature - lambda * userFeature);
+      itemVector[k] += mu * (err * userFeature - lambda * itemFeature);
+    }
+
+    // adjust user and item bias
+    userVector[USER_BIAS_INDEX] += biasMuRatio * mu * (err - biasLambdaRatio * lambda * userVector[USER_BIAS_INDEX]);
+    itemVector[ITEM_BIAS_INDEX] += biasMuRatio * mu * (err - biasLambdaRatio * lambda * itemVector[ITEM_BIAS_INDEX]);
+  }
+
+  /**
+   * Shuffles the ratings of one block and makes a pass over them.
+   */
+  private final class BlockUpdate implements Callable<Void> {
+
+    private final BlockedRatings ratings;
+    private final int block;
+    private final double[][] userVectors;
+    private final double[][] itemVectors;
+    private final double mu;
+    private final Random random;
+
+    private BlockUpdate(BlockedRatings ratings, int block, double[][] userVectors, double[][] itemVectors,
+        double mu, Random random) {
+      this.ratings = ratings;
+      this.block = block;
+      this.userVectors = userVectors;
+      this.itemVectors = itemVectors;
+      this.mu = mu;
+      this.random = random;
+    }
+
+    @Override
+    public Void call() {
+      int start = ratings.blockStarts[block];
+      int end = ratings.blockStarts[block + 1];
+      ratings.shuffle(start, end, random);
+      int[] userIndices = ratings.userIndices;
+      int[] itemIndices = ratings.itemIndices;
+      float[] values = ratings.values;
+      for (int i = start; i < end; i++) {
+        update(userVectors[userIndices[i]], itemVectors[itemIndices[i]], values[i], mu);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * All ratings of the data model as user index, item index and value arrays, grouped by block: the ratings of
+   * block {@code userBlock * numBlocks + itemBlock} are at {@code [blockStarts[block], blockStarts[block + 1])}.
+   */
+  final class BlockedRatings {
+
+    final int[] userIndices;
+    final int[] itemIndices;
+    final float[] values;
+    final int[] blockStarts;
+    private double sum;
+
+    BlockedRatings(int numBlocks, int numUsers, int numItems) throws TasteException {
+      // first pass counts the ratings of each block, second pass places them
+      blockStarts = new int[numBlocks * numBlocks + 1];
+      LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+      while (userIDs.hasNext()) {
+        long userID = userIDs.nextLong();
+        int userBlock = range(userIndex(userID), numUsers, numBlocks);
+        PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+        for (int i = 0; i < prefs.length(); i++) {
+          int itemBlock = range(itemIndex(prefs.getItemID(i)), numItems, numBlocks);
+          blockStarts[userBlock * numBlocks + itemBlock + 1]++;
+          sum += prefs.getValue(i);
+        }
+      }
+      for (int block = 1; block < blockStarts.length; block++) {
+        blockStarts[block] += blockStarts[block - 1];
+      }
+
+      int numRatings = blockStarts[blockStarts.length - 1];
+      userIndices = new int[numRatings];
+      itemIndices = new int[numRatings];
+      values = new float[numRatings];
+      int[] next = blockStarts.clone();
+      userIDs = dataModel.getUserIDs();
+      while (userIDs.hasNext()) {
+        long userID = userIDs.nextLong();
+        int userIndex = userIndex(userID);
+        int userBlock = range(userIndex, numUsers, numBlocks);
+        PreferenceArray prefs = dataModel.getPreferencesFromUser(userID);
+        for (int i = 0; i < prefs.length(); i++) {
+          int itemIndex = itemIndex(prefs.getItemID(i));
+          int position = next[userBlock * numBlocks + range(itemIndex, numItems, numBlocks)]++;
+          userIndices[position] = userIndex;
+          itemIndices[position] = itemIndex;
+          values[position] = prefs.getValue(i);
+        }
+      }
+    }
+
+    private int range(int index, int count, int numRanges) {
+      return (int) ((long) index * numRanges / count);
+    }
+
+    int size() {
+      return values.length;
+    }
+
+    double averageValue() {
+      return values.length == 0 ? 0.0 : sum / values.length;
+    }
+
+    void shuffle(int start, int end, Random random) {
+      for (int i = end - 1; i > start; i--) {
+        int j = start + random.nextInt(i - start + 1);
+        int userIndex = userIndices[i];
+        userIndices[i] = userIndices[j];
+        userIndices[j] = userIndex;
+        int itemIndex = itemIndices[i];
+        itemIndices[i] = itemIndices[j];
+        itemIndices[j] = itemIndex;
+        float value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+      }
+    }
+  }
+
+}
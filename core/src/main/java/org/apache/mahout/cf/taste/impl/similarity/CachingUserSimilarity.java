@@ -22,7 +22,7 @@ import java.util.concurrent.Callable;
 
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
-import org.apache.mahout.cf.taste.impl.common.Cache;
+import org.apache.mahout.cf.taste.impl.common.ConcurrentCache;
 import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
 import org.apache.mahout.cf.taste.impl.common.Retriever;
 import org.apache.mahout.cf.taste.model.DataModel;
@@ -38,7 +38,7 @@ import com.google.common.base.Preconditions;
 public final class CachingUserSimilarity implements UserSimilarity {
   
   private final UserSimilarity similarity;
-  private final Cache<LongPair,Double> similarityCache;
+  private final ConcurrentCache<LongPair,Double> similarityCache;
   private final RefreshHelper refreshHelper;
 
   /**
@@ -56,7 +56,7 @@ public final class CachingUserSimilarity implements UserSimilarity {
   public CachingUserSimilarity(UserSimilarity similarity, int maxCacheSize) {
     Preconditions.checkArgument(similarity != null, "similarity is null");
     this.similarity = similarity;
-    this.similarityCache = new Cache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize);
+    this.similarityCache = new ConcurrentCache<LongPair,Double>(new SimilarityRetriever(similarity), maxCacheSize);
     this.refreshHelper = new RefreshHelper(new Callable<Void>() {
       @Override
       public Void call() {
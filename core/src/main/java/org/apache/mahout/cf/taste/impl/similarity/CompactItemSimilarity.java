@@ -0,0 +1,498 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.MappedSection;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
+
+/**
+ * <p>
+ * An immutable {@link ItemSimilarity} over precomputed similarities, like {@link GenericItemSimilarity}, which
+ * stores them in compressed rows instead of maps of boxed values: the items are kept in a sorted array of IDs, and
+ * the similar items of each item as a sorted run of {@code int} indices into that array with a parallel run of
+ * {@code float} similarities. A similarity takes 8 bytes per direction, and is found by binary search.
+ * </p>
+ *
+ * <p>
+ * As with {@link GenericItemSimilarity}, similarities are symmetric, the similarity of an item to itself is 1.0,
+ * and the similarity of any other pair that was not given is {@link Double#NaN}. If a pair is given more than once,
+ * one of its values is kept.
+ * </p>
+ *
+ * <p>
+ * The similarities can be written to a file with {@link #write(File)} and memory-mapped from it with
+ * {@link #map(File)}, which takes no heap for the similarities and no time to load. To build one from the text
+ * output of {@link org.apache.mahout.cf.taste.impl.similarity.precompute.FileSimilarItemsWriter} or of the Hadoop
+ * {@code ItemSimilarityJob}, pass a
+ * {@link org.apache.mahout.cf.taste.impl.similarity.file.FileItemItemSimilarityIterable} to the constructor.
+ * </p>
+ */
+public final class CompactItemSimilarity implements ItemSimilarity {
+
+  private static final long[] NO_IDS = new long[0];
+
+  static final int MAGIC = 0x43495349; // "CISI"
+  static final int VERSION = 1;
+  private static final int PAGE_SIZE = 4096;
+  private static final int HEADER_SIZE = 24;
+
+  private final Rows rows;
+
+  /**
+   * Builds the rows from the given similarities, which are iterated over twice: once to count the similar items of
+   * each item, and once to place them.
+   *
+   * @param similarities similarities between distinct items; those of an item with itself are ignored
+   */
+  public CompactItemSimilarity(Iterable<GenericItemSimilarity.ItemItemSimilarity> similarities) {
+    this.rows = HeapRows.build(similarities);
+  }
+
+  private CompactItemSimilarity(Rows rows) {
+    this.rows = rows;
+  }
+
+  /**
+   * Maps similarities written by {@link #write(File)}. The mapping stays valid, with the contents it had when it was
+   * mapped, even if the file is later replaced by renaming another file over it.
+   */
+  public static CompactItemSimilarity map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException("Truncated header in " + file);
+        }
+      }
+      header.flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not an item similarity file: " + file);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " in " + file);
+      }
+      int numItems = header.getInt();
+      header.getInt(); // unused
+      long numEntries = header.getLong();
+
+      long expectedLength = fileLength(numItems, numEntries);
+      if (channel.size() < expectedLength) {
+        throw new IOException("Truncated file " + file + "; expected " + expectedLength + " bytes");
+      }
+      long position = PAGE_SIZE;
+      MappedSection itemIDs = MappedSection.map(channel, position, numItems, 8);
+      position = pageAlign(position + 8L * numItems);
+      MappedSection starts = MappedSection.map(channel, position, numItems + 1L, 8);
+      position = pageAlign(position + 8L * (numItems + 1L));
+      MappedSection neighbours = MappedSection.map(channel, position, numEntries, 4);
+      position = pageAlign(position + 4L * numEntries);
+      MappedSection similarities = MappedSection.map(channel, position, numEntries, 4);
+      return new CompactItemSimilarity(new MappedRows(numItems, itemIDs, starts, neighbours, similarities));
+    } finally {
+      Closeables.close(raf, true);
+    }
+  }
+
+  /**
+   * @return true if the file starts like one written by {@link #write(File)}
+   */
+  public static boolean isCompactFile(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      return in.readInt() == MAGIC;
+    } catch (EOFException eofe) {
+      return false;
+    } finally {
+      Closeables.close(in, true);
+    }
+  }
+
+  private static long pageAlign(long position) {
+    return (position + PAGE_SIZE - 1) & ~(PAGE_SIZE - 1L);
+  }
+
+  private static long fileLength(int numItems, long numEntries) {
+    long length = PAGE_SIZE;
+    length = pageAlign(length + 8L * numItems);
+    length = pageAlign(length + 8L * (numItems + 1L));
+    length = pageAlign(length + 4L * numEntries);
+    return length + 4L * numEntries;
+  }
+
+  /**
+   * Writes the similarities in a page-aligned binary format which {@link #map(File)} reads: a header, then the
+   * sorted item IDs as {@code long}s, the start of each item's run as {@code long}s, and all runs of neighbour
+   * indices as {@code int}s and of similarities as {@code float}s.
+   */
+  public void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    boolean threw = true;
+    try {
+      int numItems = rows.numItems();
+      long numEntries = rows.start(numItems);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(numItems);
+      out.writeInt(0);
+      out.writeLong(numEntries);
+      pad(HEADER_SIZE, out);
+      for (int row = 0; row < numItems; row++) {
+        out.writeLong(rows.itemID(row));
+      }
+      pad(8L * numItems, out);
+      for (int row = 0; row <= numItems; row++) {
+        out.writeLong(rows.start(row));
+      }
+      pad(8L * (numItems + 1L), out);
+      for (long entry = 0; entry < numEntries; entry++) {
+        out.writeInt(rows.neighbour(entry));
+      }
+      pad(4L * numEntries, out);
+      for (long entry = 0; entry < numEntries; entry++) {
+        out.writeFloat(rows.similarity(entry));
+      }
+      threw = false;
+    } finally {
+      Closeables.close(out, threw);
+    }
+  }
+
+  /**
+   * Pads a section which started on a page boundary with zeroes up to the next page boundary.
+   */
+  private static void pad(long sectionLength, DataOutputStream out) throws IOException {
+    out.write(new byte[(int) (pageAlign(sectionLength) - sectionLength)]);
+  }
+
+  /**
+   * @return number of items with at least one similar item
+   */
+  public int numItems() {
+    return rows.numItems();
+  }
+
+  /**
+   * @return index of the entry for the similarity between the items in the given rows, or -1 if there is none
+   */
+  private long find(int row, int neighbourRow) {
+    long low = rows.start(row);
+    long high = rows.start(row + 1) - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int midNeighbour = rows.neighbour(mid);
+      if (midNeighbour < neighbourRow) {
+        low = mid + 1;
+      } else if (midNeighbour > neighbourRow) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1L;
+  }
+
+  private double similarity(int row, long itemID2) {
+    int neighbourRow = rows.indexOf(itemID2);
+    if (neighbourRow < 0) {
+      return Double.NaN;
+    }
+    long entry = find(row, neighbourRow);
+    return entry < 0 ? Double.NaN : rows.similarity(entry);
+  }
+
+  @Override
+  public double itemSimilarity(long itemID1, long itemID2) {
+    if (itemID1 == itemID2) {
+      return 1.0;
+    }
+    int row = rows.indexOf(itemID1);
+    return row < 0 ? Double.NaN : similarity(row, itemID2);
+  }
+
+  @Override
+  public double[] itemSimilarities(long itemID1, long[] itemID2s) {
+    double[] result = new double[itemID2s.length];
+    int row = rows.indexOf(itemID1);
+    for (int i = 0; i < itemID2s.length; i++) {
+      long itemID2 = itemID2s[i];
+      if (itemID1 == itemID2) {
+        result[i] = 1.0;
+      } else {
+        result[i] = row < 0 ? Double.NaN : similarity(row, itemID2);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public long[] allSimilarItemIDs(long itemID) {
+    int row = rows.indexOf(itemID);
+    if (row < 0) {
+      return NO_IDS;
+    }
+    long start = rows.start(row);
+    long[] similarItemIDs = new long[(int) (rows.start(row + 1) - start)];
+    for (int i = 0; i < similarItemIDs.length; i++) {
+      similarItemIDs[i] = rows.itemID(rows.neighbour(start + i));
+    }
+    return similarItemIDs;
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    // Do nothing
+  }
+
+  @Override
+  public String toString() {
+    return "CompactItemSimilarity[items:" + rows.numItems() + ",entries:" + rows.start(rows.numItems()) + ']';
+  }
+
+  /**
+   * Read access to the compressed rows, wherever they are stored. Entries {@code [start(row), start(row + 1))} hold
+   * the neighbours of the item in {@code row}, ordered by their own row.
+   */
+  private interface Rows {
+
+    int numItems();
+
+    long itemID(int row);
+
+    /** @return the row of the item, or a negative value if it has none */
+    int indexOf(long itemID);
+
+    long start(int row);
+
+    int neighbour(long entry);
+
+    float similarity(long entry);
+  }
+
+  private static final class HeapRows implements Rows {
+
+    private final long[] itemIDs;
+    private final int[] starts;
+    private final int[] neighbours;
+    private final float[] similarities;
+
+    private HeapRows(long[] itemIDs, int[] starts, int[] neighbours, float[] similarities) {
+      this.itemIDs = itemIDs;
+      this.starts = starts;
+      this.neighbours = neighbours;
+      this.similarities = similarities;
+    }
+
+    static HeapRows build(Iterable<GenericItemSimilarity.ItemItemSimilarity> similarities) {
+      // first pass: count both directions of every similarity
+      FastByIDMap<int[]> counts = new FastByIDMap<int[]>();
+      long numEntries = 0;
+      for (GenericItemSimilarity.ItemItemSimilarity similarity : similarities) {
+        if (similarity.getItemID1() != similarity.getItemID2()) {
+          count(counts, similarity.getItemID1());
+          count(counts, similarity.getItemID2());
+          numEntries += 2;
+        }
+      }
+      Preconditions.checkArgument(numEntries <= Integer.MAX_VALUE, "Too many similarities: %s", numEntries);
+
+      long[] itemIDs = new long[counts.size()];
+      LongPrimitiveIterator it = counts.keySetIterator();
+      for (int row = 0; row < itemIDs.length; row++) {
+        itemIDs[row] = it.nextLong();
+      }
+      Arrays.sort(itemIDs);
+      int[] starts = new int[itemIDs.length + 1];
+      for (int row = 0; row < itemIDs.length; row++) {
+        starts[row + 1] = starts[row] + counts.get(itemIDs[row])[0];
+      }
+      counts = null;
+
+      // second pass: place them
+      int[] next = Arrays.copyOf(starts, itemIDs.length);
+      int[] neighbours = new int[(int) numEntries];
+      float[] values = new float[(int) numEntries];
+      for (GenericItemSimilarity.ItemItemSimilarity similarity : similarities) {
+        if (similarity.getItemID1() != similarity.getItemID2()) {
+          int row1 = Arrays.binarySearch(itemIDs, similarity.getItemID1());
+          int row2 = Arrays.binarySearch(itemIDs, similarity.getItemID2());
+          Preconditions.checkState(row1 >= 0 && row2 >= 0 && next[row1] < starts[row1 + 1]
+              && next[row2] < starts[row2 + 1], "Similarities changed between iterations");
+          float value = (float) similarity.getValue();
+          neighbours[next[row1]] = row2;
+          values[next[row1]++] = value;
+          neighbours[next[row2]] = row1;
+          values[next[row2]++] = value;
+        }
+      }
+
+      // sort each row by neighbour and drop repeated pairs, compacting the arrays
+      int end = 0;
+      for (int row = 0; row < itemIDs.length; row++) {
+        int start = starts[row];
+        sortRow(neighbours, values, start, starts[row + 1]);
+        starts[row] = end;
+        for (int i = start; i < starts[row + 1]; i++) {
+          if (i == start || neighbours[i] != neighbours[i - 1]) {
+            neighbours[end] = neighbours[i];
+            values[end] = values[i];
+            end++;
+          }
+        }
+      }
+      starts[itemIDs.length] = end;
+      if (end < neighbours.length) {
+        neighbours = Arrays.copyOf(neighbours, end);
+        values = Arrays.copyOf(values, end);
+      }
+      return new HeapRows(itemIDs, starts, neighbours, values);
+    }
+
+    private static void count(FastByIDMap<int[]> counts, long itemID) {
+      int[] count = counts.get(itemID);
+      if (count == null) {
+        count = new int[1];
+        counts.put(itemID, count);
+      }
+      count[0]++;
+    }
+
+    private static void sortRow(final int[] neighbours, final float[] values, int from, int to) {
+      Sorting.quickSort(from, to, new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          return neighbours[a] < neighbours[b] ? -1 : neighbours[a] > neighbours[b] ? 1 : 0;
+        }
+      }, new Swapper() {
+        @Override
+        public void swap(int a, int b) {
+          int neighbour = neighbours[a];
+          neighbours[a] = neighbours[b];
+          neighbours[b] = neighbour;
+          float value = values[a];
+          values[a] = values[b];
+          values[b] = value;
+        }
+      });
+    }
+
+    @Override
+    public int numItems() {
+      return itemIDs.length;
+    }
+
+    @Override
+    public long itemID(int row) {
+      return itemIDs[row];
+    }
+
+    @Override
+    public int indexOf(long itemID) {
+      return Arrays.binarySearch(itemIDs, itemID);
+    }
+
+    @Override
+    public long start(int row) {
+      return starts[row];
+    }
+
+    @Override
+    public int neighbour(long entry) {
+      return neighbours[(int) entry];
+    }
+
+    @Override
+    public float similarity(long entry) {
+      return similarities[(int) entry];
+    }
+  }
+
+  private static final class MappedRows implements Rows {
+
+    private final int numItems;
+    private final MappedSection itemIDs;
+    private final MappedSection starts;
+    private final MappedSection neighbours;
+    private final MappedSection similarities;
+
+    private MappedRows(int numItems, MappedSection itemIDs, MappedSection starts, MappedSection neighbours,
+        MappedSection similarities) {
+      this.numItems = numItems;
+      this.itemIDs = itemIDs;
+      this.starts = starts;
+      this.neighbours = neighbours;
+      this.similarities = similarities;
+    }
+
+    @Override
+    public int numItems() {
+      return numItems;
+    }
+
+    @Override
+    public long itemID(int row) {
+      return itemIDs.getLong(row);
+    }
+
+    @Override
+    public int indexOf(long itemID) {
+      return (int) itemIDs.binarySearch(0, numItems, itemID);
+    }
+
+    @Override
+    public long start(int row) {
+      return starts.getLong(row);
+    }
+
+    @Override
+    public int neighbour(long entry) {
+      return neighbours.getInt(entry);
+    }
+
+    @Override
+    public float similarity(long entry) {
+      return similarities.getFloat(entry);
+    }
+  }
+
+}
@@ -26,11 +26,11 @@ import java.util.Iterator;
 /**
  * {@link Iterable} to be able to read a file linewise into a {@link GenericItemSimilarity}
  */
-final class FileItemItemSimilarityIterable implements Iterable<GenericItemSimilarity.ItemItemSimilarity> {
+public final class FileItemItemSimilarityIterable implements Iterable<GenericItemSimilarity.ItemItemSimilarity> {
 
   private final File similaritiesFile;
 
-  FileItemItemSimilarityIterable(File similaritiesFile) {
+  public FileItemItemSimilarityIterable(File similaritiesFile) {
     this.similaritiesFile = similaritiesFile;
   }
 
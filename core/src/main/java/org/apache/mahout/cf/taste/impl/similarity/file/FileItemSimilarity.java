@@ -18,11 +18,13 @@
 package org.apache.mahout.cf.taste.impl.similarity.file;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.similarity.CompactItemSimilarity;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
 import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.slf4j.Logger;
@@ -44,6 +46,12 @@ import com.google.common.base.Preconditions;
  * </p>
  *
  * <p>
+ * The file may instead be a binary one written by
+ * {@link org.apache.mahout.cf.taste.impl.similarity.precompute.BinarySimilarItemsWriter} or
+ * {@link CompactItemSimilarity#write(File)}, which is memory-mapped rather than parsed into memory.
+ * </p>
+ *
+ * <p>
  * This class will reload data from the data file when {@link #refresh(Collection)} is called, unless the file
  * has been reloaded very recently already.
  * </p>
@@ -121,8 +129,14 @@ public class FileItemSimilarity implements ItemSimilarity {
     if (reloadLock.tryLock()) {
       try {
         long newLastModified = dataFile.lastModified();
-        delegate = new GenericItemSimilarity(new FileItemItemSimilarityIterable(dataFile));
+        if (CompactItemSimilarity.isCompactFile(dataFile)) {
+          delegate = CompactItemSimilarity.map(dataFile);
+        } else {
+          delegate = new GenericItemSimilarity(new FileItemItemSimilarityIterable(dataFile));
+        }
         lastModified = newLastModified;
+      } catch (IOException ioe) {
+        throw new IllegalStateException("Can't read " + dataFile, ioe);
       } finally {
         reloadLock.unlock();
       }
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.precompute;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.Closeables;
+import org.apache.mahout.cf.taste.impl.similarity.CompactItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItem;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItemsWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Persists the precomputed item similarities in the binary format of {@link CompactItemSimilarity#write(File)},
+ * which {@link CompactItemSimilarity#map(File)} and
+ * {@link org.apache.mahout.cf.taste.impl.similarity.file.FileItemSimilarity} memory-map instead of parsing.
+ * </p>
+ *
+ * <p>
+ * Similarities are appended to a temporary file as fixed-size binary records while they are computed, which is
+ * much cheaper than formatting them as text. On {@link #close()} they are read back into a
+ * {@link CompactItemSimilarity}, which needs 16 bytes of heap per similarity, and written to the file.
+ * {@link #abort()} discards them instead, leaving the file as it was.
+ * </p>
+ */
+public class BinarySimilarItemsWriter implements SimilarItemsWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(BinarySimilarItemsWriter.class);
+
+  private final File file;
+  private final File tempFile;
+  private DataOutputStream out;
+  private long numSimilarities;
+
+  public BinarySimilarItemsWriter(File file) {
+    this.file = file;
+    this.tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+  }
+
+  @Override
+  public void open() throws IOException {
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+    numSimilarities = 0;
+  }
+
+  @Override
+  public void add(SimilarItems similarItems) throws IOException {
+    long itemID = similarItems.getItemID();
+    for (SimilarItem similarItem : similarItems.getSimilarItems()) {
+      out.writeLong(itemID);
+      out.writeLong(similarItem.getItemID());
+      out.writeFloat((float) similarItem.getSimilarity());
+      numSimilarities++;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out == null) {
+      return;
+    }
+    File compactFile = new File(tempFile.getPath() + ".compact");
+    try {
+      out.close();
+      out = null;
+      log.info("Compacting {} similarities into {}", numSimilarities, file);
+      new CompactItemSimilarity(new RecordsIterable(tempFile)).write(compactFile);
+      // Replace rather than overwrite the file, which may be mapped by a FileItemSimilarity
+      if (!compactFile.renameTo(file) && !(file.delete() && compactFile.renameTo(file))) {
+        throw new IOException("Unable to replace " + file + " with " + compactFile);
+      }
+    } finally {
+      delete(tempFile);
+      delete(compactFile);
+    }
+  }
+
+  @Override
+  public void abort() throws IOException {
+    if (out == null) {
+      return;
+    }
+    try {
+      Closeables.close(out, true);
+      out = null;
+    } finally {
+      delete(tempFile);
+    }
+  }
+
+  private static void delete(File toDelete) {
+    if (toDelete.exists() && !toDelete.delete()) {
+      log.warn("Unable to delete {}", toDelete);
+    }
+  }
+
+  /**
+   * Reads back the records written by {@link #add(SimilarItems)}.
+   */
+  private static final class RecordsIterable implements Iterable<GenericItemSimilarity.ItemItemSimilarity> {
+
+    private final File records;
+
+    private RecordsIterable(File records) {
+      this.records = records;
+    }
+
+    @Override
+    public Iterator<GenericItemSimilarity.ItemItemSimilarity> iterator() {
+      final DataInputStream in;
+      try {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(records), 1 << 16));
+      } catch (IOException ioe) {
+        throw new IllegalStateException("Can't read " + records, ioe);
+      }
+      return new AbstractIterator<GenericItemSimilarity.ItemItemSimilarity>() {
+        @Override
+        protected GenericItemSimilarity.ItemItemSimilarity computeNext() {
+          try {
+            try {
+              return new GenericItemSimilarity.ItemItemSimilarity(in.readLong(), in.readLong(), in.readFloat());
+            } catch (EOFException eofe) {
+              // records are written whole, so this is the end of the last one
+              Closeables.close(in, true);
+              return endOfData();
+            }
+          } catch (IOException ioe) {
+            throw new IllegalStateException("Can't read " + records, ioe);
+          }
+        }
+      };
+    }
+  }
+
+}
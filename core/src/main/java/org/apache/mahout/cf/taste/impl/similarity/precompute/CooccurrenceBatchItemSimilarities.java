@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.precompute;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.impl.recommender.TopIDHeap;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.ItemBasedRecommender;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.similarity.precompute.BatchItemSimilarities;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItemsWriter;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.stats.LogLikelihood;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Precomputes item similarities on a single machine by counting co-occurrences, for similarities which only depend
+ * on the number of users who interacted with each item and with both: log-likelihood as in
+ * {@link org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity}, and Tanimoto coefficient as in
+ * {@link org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity}. Preference values are ignored.
+ * </p>
+ *
+ * <p>
+ * Rather than intersecting the users of every candidate pair of items as
+ * {@link ItemBasedRecommender#mostSimilarItems(long, int)} does, the items of every user who interacted with an
+ * item are walked once and counted in a dense array, which yields the co-occurrence counts of that item with all
+ * others. Items are spread over the worker threads, each of which keeps its own counts.
+ * </p>
+ *
+ * <p>
+ * The cost of this grows with the square of the number of interactions per user, so like the Hadoop
+ * {@link org.apache.mahout.math.hadoop.similarity.cooccurrence.RowSimilarityJob}, users and items with many
+ * interactions are randomly sampled down to a maximum number of them first.
+ * </p>
+ *
+ * <p>
+ * The recommender is only used for its {@link DataModel}.
+ * </p>
+ */
+public class CooccurrenceBatchItemSimilarities extends BatchItemSimilarities {
+
+  public enum Measure {
+    LOG_LIKELIHOOD,
+    TANIMOTO
+  }
+
+  public static final int DEFAULT_MAX_PREFS_PER_USER = 500;
+  public static final int DEFAULT_MAX_PREFS_PER_ITEM = 500;
+
+  private static final int ITEMS_PER_BATCH = 16;
+
+  private static final Logger log = LoggerFactory.getLogger(CooccurrenceBatchItemSimilarities.class);
+
+  private final Measure measure;
+  private final int maxPrefsPerUser;
+  private final int maxPrefsPerItem;
+
+  /**
+   * @param recommender recommender whose data to use
+   * @param similarItemsPerItem number of similar items to compute per item
+   * @param measure similarity measure to compute
+   */
+  public CooccurrenceBatchItemSimilarities(ItemBasedRecommender recommender, int similarItemsPerItem,
+      Measure measure) {
+    this(recommender, similarItemsPerItem, measure, DEFAULT_MAX_PREFS_PER_USER, DEFAULT_MAX_PREFS_PER_ITEM);
+  }
+
+  /**
+   * @param recommender recommender whose data to use
+   * @param similarItemsPerItem number of similar items to compute per item
+   * @param measure similarity measure to compute
+   * @param maxPrefsPerUser users with more preferences are sampled down to about this many
+   * @param maxPrefsPerItem items with more preferences are sampled down to about this many
+   */
+  public CooccurrenceBatchItemSimilarities(ItemBasedRecommender recommender, int similarItemsPerItem,
+      Measure measure, int maxPrefsPerUser, int maxPrefsPerItem) {
+    super(recommender, similarItemsPerItem);
+    Preconditions.checkArgument(maxPrefsPerUser > 0, "maxPrefsPerUser must be positive");
+    Preconditions.checkArgument(maxPrefsPerItem > 0, "maxPrefsPerItem must be positive");
+    this.measure = Preconditions.checkNotNull(measure);
+    this.maxPrefsPerUser = maxPrefsPerUser;
+    this.maxPrefsPerItem = maxPrefsPerItem;
+  }
+
+  @Override
+  public int computeItemSimilarities(int degreeOfParallelism, int maxDurationInHours, SimilarItemsWriter writer)
+    throws IOException {
+
+    long deadline = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(maxDurationInHours);
+    ExecutorService executorService = Executors.newFixedThreadPool(degreeOfParallelism);
+
+    int numSimilaritiesProcessed;
+    boolean threw = true;
+    try {
+      writer.open();
+
+      Interactions interactions = new Interactions(getRecommender().getDataModel(), maxPrefsPerUser, maxPrefsPerItem);
+      AtomicInteger nextItem = new AtomicInteger();
+      SimilarItemsQueue results = new SimilarItemsQueue(degreeOfParallelism);
+      for (int n = 0; n < degreeOfParallelism; n++) {
+        executorService.execute(new CooccurrenceWorker(interactions, nextItem, results));
+      }
+      numSimilaritiesProcessed = results.writeAll(writer, deadline, maxDurationInHours);
+      threw = false;
+
+    } catch (TasteException te) {
+      throw new IOException(te);
+    } catch (InterruptedException ie) {
+      throw new IOException(ie);
+    } finally {
+      executorService.shutdownNow();
+      SimilarItemsQueue.closeOrAbort(writer, threw);
+    }
+
+    return numSimilaritiesProcessed;
+  }
+
+  private double similarity(int cooccurrences, int count1, int count2, int numUsers) {
+    switch (measure) {
+      case LOG_LIKELIHOOD:
+        double logLikelihood = LogLikelihood.logLikelihoodRatio(cooccurrences,
+                                                                count2 - cooccurrences,
+                                                                count1 - cooccurrences,
+                                                                numUsers - count1 - count2 + cooccurrences);
+        return 1.0 - 1.0 / (1.0 + logLikelihood);
+      case TANIMOTO:
+        return (double) cooccurrences / (count1 + count2 - cooccurrences);
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  /**
+   * The sampled interactions, by user and by item, with items identified by their index in the sorted item IDs.
+   */
+  private static final class Interactions {
+
+    private final int numUsers;
+    private final long[] itemIDs;
+    private final int[][] itemsOfUsers;
+    private final int[] userStarts;
+    private final int[] usersOfItems;
+
+    Interactions(DataModel dataModel, int maxPrefsPerUser, int maxPrefsPerItem) throws TasteException {
+      numUsers = dataModel.getNumUsers();
+      itemIDs = new long[dataModel.getNumItems()];
+      int[] itemCounts = new int[itemIDs.length];
+      LongPrimitiveIterator itemIDIterator = dataModel.getItemIDs();
+      for (int item = 0; item < itemIDs.length; item++) {
+        itemIDs[item] = itemIDIterator.nextLong();
+      }
+      Arrays.sort(itemIDs);
+      for (int item = 0; item < itemIDs.length; item++) {
+        itemCounts[item] = dataModel.getNumUsersWithPreferenceFor(itemIDs[item]);
+      }
+
+      // Keep each interaction with the smaller of the rates at which its user and its item are sampled
+      Random random = RandomUtils.getRandom();
+      itemsOfUsers = new int[numUsers][];
+      int[] sampledItemCounts = new int[itemIDs.length];
+      long numInteractions = 0;
+      long numSampledInteractions = 0;
+      LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+      for (int user = 0; user < numUsers; user++) {
+        FastIDSet itemIDsOfUser = dataModel.getItemIDsFromUser(userIDs.nextLong());
+        double userSampleRate = (double) Math.min(maxPrefsPerUser, itemIDsOfUser.size()) / itemIDsOfUser.size();
+        int[] items = new int[itemIDsOfUser.size()];
+        int numItems = 0;
+        LongPrimitiveIterator it = itemIDsOfUser.iterator();
+        while (it.hasNext()) {
+          int item = Arrays.binarySearch(itemIDs, it.nextLong());
+          double itemSampleRate = (double) Math.min(maxPrefsPerItem, itemCounts[item]) / itemCounts[item];
+          if (random.nextDouble() <= Math.min(userSampleRate, itemSampleRate)) {
+            items[numItems++] = item;
+            sampledItemCounts[item]++;
+          }
+        }
+        itemsOfUsers[user] = numItems == items.length ? items : Arrays.copyOf(items, numItems);
+        numInteractions += items.length;
+        numSampledInteractions += numItems;
+      }
+      log.info("Sampled {} of {} interactions of {} users with {} items",
+          numSampledInteractions, numInteractions, numUsers, itemIDs.length);
+
+      userStarts = new int[itemIDs.length + 1];
+      for (int item = 0; item < itemIDs.length; item++) {
+        userStarts[item + 1] = userStarts[item] + sampledItemCounts[item];
+      }
+      usersOfItems = new int[userStarts[itemIDs.length]];
+      int[] next = Arrays.copyOf(userStarts, itemIDs.length);
+      for (int user = 0; user < numUsers; user++) {
+        for (int item : itemsOfUsers[user]) {
+          usersOfItems[next[item]++] = user;
+        }
+      }
+    }
+
+    int numItems() {
+      return itemIDs.length;
+    }
+
+    int count(int item) {
+      return userStarts[item + 1] - userStarts[item];
+    }
+  }
+
+  private final class CooccurrenceWorker implements Runnable {
+
+    private final Interactions interactions;
+    private final AtomicInteger nextItem;
+    private final SimilarItemsQueue results;
+    private final int[] cooccurrences;
+    private final int[] cooccurring;
+    private final TopIDHeap topItems;
+
+    CooccurrenceWorker(Interactions interactions, AtomicInteger nextItem, SimilarItemsQueue results) {
+      this.interactions = interactions;
+      this.nextItem = nextItem;
+      this.results = results;
+      cooccurrences = new int[interactions.numItems()];
+      cooccurring = new int[interactions.numItems()];
+      topItems = new TopIDHeap(getSimilarItemsPerItem());
+    }
+
+    @Override
+    public void run() {
+      try {
+        int numItems = interactions.numItems();
+        int start;
+        while ((start = nextItem.getAndAdd(ITEMS_PER_BATCH)) < numItems) {
+          int end = Math.min(start + ITEMS_PER_BATCH, numItems);
+          List<SimilarItems> similarItemsOfBatch = Lists.newArrayListWithCapacity(end - start);
+          for (int item = start; item < end; item++) {
+            similarItemsOfBatch.add(new SimilarItems(interactions.itemIDs[item], mostSimilarItems(item)));
+          }
+          results.put(similarItemsOfBatch);
+        }
+      } catch (InterruptedException ie) {
+        log.info("Stopped before all items were processed");
+      } catch (Throwable t) {
+        results.workerFailed(t);
+      } finally {
+        results.workerDone();
+      }
+    }
+
+    private List<RecommendedItem> mostSimilarItems(int item) {
+      // Count the co-occurrences with all other items, remembering which ones occurred
+      int numCooccurring = 0;
+      for (int i = interactions.userStarts[item]; i < interactions.userStarts[item + 1]; i++) {
+        for (int other : interactions.itemsOfUsers[interactions.usersOfItems[i]]) {
+          if (other != item && cooccurrences[other]++ == 0) {
+            cooccurring[numCooccurring++] = other;
+          }
+        }
+      }
+
+      topItems.reset(getSimilarItemsPerItem());
+      int count = interactions.count(item);
+      for (int i = 0; i < numCooccurring; i++) {
+        int other = cooccurring[i];
+        double value = similarity(cooccurrences[other], count, interactions.count(other), interactions.numUsers);
+        if (!Double.isNaN(value)) {
+          topItems.offer(interactions.itemIDs[other], value);
+        }
+        cooccurrences[other] = 0;
+      }
+
+      topItems.sort();
+      List<RecommendedItem> similarItems = Lists.newArrayListWithCapacity(topItems.size());
+      for (int i = 0; i < topItems.size(); i++) {
+        similarItems.add(new GenericRecommendedItem(topItems.getID(i), (float) topItems.getValue(i)));
+      }
+      return similarItems;
+    }
+  }
+
+}
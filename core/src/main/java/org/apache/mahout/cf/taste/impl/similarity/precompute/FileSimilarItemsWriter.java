@@ -64,4 +64,12 @@ public class FileSimilarItemsWriter implements SimilarItemsWriter {
   public void close() throws IOException {
     Closeables.close(writer, false);
   }
+
+  /**
+   * Closes the file, which keeps the similarities written so far, as they are written to it directly.
+   */
+  @Override
+  public void abort() throws IOException {
+    Closeables.close(writer, true);
+  }
 }
@@ -19,15 +19,13 @@ package org.apache.mahout.cf.taste.impl.similarity.precompute;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.io.Closeables;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.model.DataModel;
@@ -36,14 +34,32 @@ import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.apache.mahout.cf.taste.similarity.precompute.BatchItemSimilarities;
 import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
 import org.apache.mahout.cf.taste.similarity.precompute.SimilarItemsWriter;
+import org.apache.mahout.math.Sorting;
+import org.apache.mahout.math.Swapper;
+import org.apache.mahout.math.function.IntComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * <p>
  * Precompute item similarities in parallel on a single machine. The recommender given to this class must use a
  * DataModel that holds the interactions in memory (such as
  * {@link org.apache.mahout.cf.taste.impl.model.GenericDataModel} or
  * {@link org.apache.mahout.cf.taste.impl.model.file.FileDataModel}) as fast random access to the data is required
+ * </p>
+ *
+ * <p>
+ * The time to find the items most similar to an item grows with the number of users who expressed a preference
+ * for it, so with skewed data a few popular items take most of the time. Items are therefore handed out in order of
+ * decreasing popularity, in batches which shrink as fewer items remain, so that the most expensive items start
+ * first and the last batches are small enough for the workers to finish at about the same time.
+ * </p>
+ *
+ * <p>
+ * Workers hand their results over through a bounded queue to the calling thread, which writes them. When the
+ * {@link SimilarItemsWriter} can't keep up, the workers wait instead of buffering ever more results. A
+ * {@link BinarySimilarItemsWriter} is much cheaper to write to than a {@link FileSimilarItemsWriter}.
+ * </p>
  */
 public class MultithreadedBatchItemSimilarities extends BatchItemSimilarities {
 
@@ -64,10 +80,11 @@ public class MultithreadedBatchItemSimilarities extends BatchItemSimilarities {
   /**
    * @param recommender recommender to use
    * @param similarItemsPerItem number of similar items to compute per item
-   * @param batchSize size of item batches sent to worker threads
+   * @param batchSize maximum size of item batches sent to worker threads
    */
   public MultithreadedBatchItemSimilarities(ItemBasedRecommender recommender, int similarItemsPerItem, int batchSize) {
     super(recommender, similarItemsPerItem);
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
     this.batchSize = batchSize;
   }
 
@@ -75,103 +92,99 @@ public class MultithreadedBatchItemSimilarities extends BatchItemSimilarities {
   public int computeItemSimilarities(int degreeOfParallelism, int maxDurationInHours, SimilarItemsWriter writer)
     throws IOException {
 
-    ExecutorService executorService = Executors.newFixedThreadPool(degreeOfParallelism + 1);
+    long deadline = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(maxDurationInHours);
+    ExecutorService executorService = Executors.newFixedThreadPool(degreeOfParallelism);
 
-    Output output = null;
+    int numSimilaritiesProcessed = 0;
+    boolean threw = true;
     try {
       writer.open();
 
-      DataModel dataModel = getRecommender().getDataModel();
-
-      BlockingQueue<long[]> itemsIDsInBatches = queueItemIDsInBatches(dataModel, batchSize);
-      BlockingQueue<List<SimilarItems>> results = new LinkedBlockingQueue<List<SimilarItems>>();
-
-      AtomicInteger numActiveWorkers = new AtomicInteger(degreeOfParallelism);
+      ItemSchedule schedule = new ItemSchedule(itemIDsByDecreasingCost(getRecommender().getDataModel()),
+          batchSize, degreeOfParallelism);
+      SimilarItemsQueue results = new SimilarItemsQueue(degreeOfParallelism);
       for (int n = 0; n < degreeOfParallelism; n++) {
-        executorService.execute(new SimilarItemsWorker(n, itemsIDsInBatches, results, numActiveWorkers));
+        executorService.execute(new SimilarItemsWorker(n, schedule, results));
       }
+      numSimilaritiesProcessed = results.writeAll(writer, deadline, maxDurationInHours);
+      threw = false;
 
-      output = new Output(results, writer, numActiveWorkers);
-      executorService.execute(output);
-
-    } catch (Exception e) {
-      throw new IOException(e);
+    } catch (TasteException te) {
+      throw new IOException(te);
+    } catch (InterruptedException ie) {
+      throw new IOException(ie);
     } finally {
-      executorService.shutdown();
-      try {
-        boolean succeeded = executorService.awaitTermination(maxDurationInHours, TimeUnit.HOURS);
-        if (!succeeded) {
-          throw new RuntimeException("Unable to complete the computation in " + maxDurationInHours + " hours!");
-        }
-      } catch (InterruptedException e) {
-        throw new RuntimeException(e);
-      }
-      Closeables.close(writer, false);
+      // Stops the workers if we're failing, who may be waiting to hand over results
+      executorService.shutdownNow();
+      SimilarItemsQueue.closeOrAbort(writer, threw);
     }
 
-    return output.getNumSimilaritiesProcessed();
+    return numSimilaritiesProcessed;
   }
 
-  private static BlockingQueue<long[]> queueItemIDsInBatches(DataModel dataModel, int batchSize) throws TasteException {
-
-    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
-    int numItems = dataModel.getNumItems();
-
-    BlockingQueue<long[]> itemIDBatches = new LinkedBlockingQueue<long[]>((numItems / batchSize) + 1);
-
-    long[] batch = new long[batchSize];
-    int pos = 0;
-    while (itemIDs.hasNext()) {
-      if (pos == batchSize) {
-        itemIDBatches.add(batch.clone());
-        pos = 0;
-      }
-      batch[pos] = itemIDs.nextLong();
-      pos++;
-    }
-    int nonQueuedItemIDs = batchSize - pos;
-    if (nonQueuedItemIDs > 0) {
-      long[] lastBatch = new long[nonQueuedItemIDs];
-      System.arraycopy(batch, 0, lastBatch, 0, nonQueuedItemIDs);
-      itemIDBatches.add(lastBatch);
+  /**
+   * Sorts the item IDs by decreasing number of users who expressed a preference for them, which is the cost of
+   * finding their most similar items.
+   */
+  private static long[] itemIDsByDecreasingCost(DataModel dataModel) throws TasteException {
+    final long[] itemIDs = new long[dataModel.getNumItems()];
+    final int[] costs = new int[itemIDs.length];
+    LongPrimitiveIterator it = dataModel.getItemIDs();
+    for (int i = 0; i < itemIDs.length; i++) {
+      itemIDs[i] = it.nextLong();
+      costs[i] = dataModel.getNumUsersWithPreferenceFor(itemIDs[i]);
     }
-
-    log.info("Queued {} items in {} batches", numItems, itemIDBatches.size());
-
-    return itemIDBatches;
+    Sorting.quickSort(0, itemIDs.length, new IntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        return costs[a] > costs[b] ? -1 : costs[a] < costs[b] ? 1 : 0;
+      }
+    }, new Swapper() {
+      @Override
+      public void swap(int a, int b) {
+        long itemID = itemIDs[a];
+        itemIDs[a] = itemIDs[b];
+        itemIDs[b] = itemID;
+        int cost = costs[a];
+        costs[a] = costs[b];
+        costs[b] = cost;
+      }
+    });
+    log.info("Scheduled {} items, the most popular with {} users", itemIDs.length, costs.length > 0 ? costs[0] : 0);
+    return itemIDs;
   }
 
+  /**
+   * Hands out consecutive batches of items to workers, each a fraction of the items left, capped at the batch size.
+   */
+  private static final class ItemSchedule {
 
-  private static class Output implements Runnable {
-
-    private final BlockingQueue<List<SimilarItems>> results;
-    private final SimilarItemsWriter writer;
-    private final AtomicInteger numActiveWorkers;
-    private int numSimilaritiesProcessed = 0;
-
-    Output(BlockingQueue<List<SimilarItems>> results, SimilarItemsWriter writer, AtomicInteger numActiveWorkers) {
-      this.results = results;
-      this.writer = writer;
-      this.numActiveWorkers = numActiveWorkers;
-    }
+    private final long[] itemIDs;
+    private final int maxBatchSize;
+    private final int divisor;
+    private final AtomicInteger next = new AtomicInteger();
 
-    private int getNumSimilaritiesProcessed() {
-      return numSimilaritiesProcessed;
+    private ItemSchedule(long[] itemIDs, int maxBatchSize, int numWorkers) {
+      this.itemIDs = itemIDs;
+      this.maxBatchSize = maxBatchSize;
+      this.divisor = 2 * numWorkers;
     }
 
-    @Override
-    public void run() {
-      while (numActiveWorkers.get() != 0) {
-        try {
-          List<SimilarItems> similarItemsOfABatch = results.poll(10, TimeUnit.MILLISECONDS);
-          if (similarItemsOfABatch != null) {
-            for (SimilarItems similarItems : similarItemsOfABatch) {
-              writer.add(similarItems);
-              numSimilaritiesProcessed += similarItems.numSimilarItems();
-            }
-          }
-        } catch (Exception e) {
-          throw new RuntimeException(e);
+    /**
+     * @return the next batch of item IDs, or null if there are none left
+     */
+    long[] nextBatch() {
+      while (true) {
+        int start = next.get();
+        int remaining = itemIDs.length - start;
+        if (remaining <= 0) {
+          return null;
+        }
+        int size = Math.min(maxBatchSize, Math.max(1, remaining / divisor));
+        if (next.compareAndSet(start, start + size)) {
+          long[] batch = new long[size];
+          System.arraycopy(itemIDs, start, batch, 0, size);
+          return batch;
         }
       }
     }
@@ -180,45 +193,42 @@ public class MultithreadedBatchItemSimilarities extends BatchItemSimilarities {
   private class SimilarItemsWorker implements Runnable {
 
     private final int number;
-    private final BlockingQueue<long[]> itemIDBatches;
-    private final BlockingQueue<List<SimilarItems>> results;
-    private final AtomicInteger numActiveWorkers;
+    private final ItemSchedule schedule;
+    private final SimilarItemsQueue results;
 
-    SimilarItemsWorker(int number, BlockingQueue<long[]> itemIDBatches, BlockingQueue<List<SimilarItems>> results,
-        AtomicInteger numActiveWorkers) {
+    SimilarItemsWorker(int number, ItemSchedule schedule, SimilarItemsQueue results) {
       this.number = number;
-      this.itemIDBatches = itemIDBatches;
+      this.schedule = schedule;
       this.results = results;
-      this.numActiveWorkers = numActiveWorkers;
     }
 
     @Override
     public void run() {
-
       int numBatchesProcessed = 0;
-      while (!itemIDBatches.isEmpty()) {
-        try {
-          long[] itemIDBatch = itemIDBatches.take();
-
+      try {
+        long[] itemIDBatch;
+        while ((itemIDBatch = schedule.nextBatch()) != null) {
           List<SimilarItems> similarItemsOfBatch = Lists.newArrayListWithCapacity(itemIDBatch.length);
           for (long itemID : itemIDBatch) {
             List<RecommendedItem> similarItems = getRecommender().mostSimilarItems(itemID, getSimilarItemsPerItem());
-
             similarItemsOfBatch.add(new SimilarItems(itemID, similarItems));
           }
 
-          results.offer(similarItemsOfBatch);
+          // Blocks while the writer is behind
+          results.put(similarItemsOfBatch);
 
           if (++numBatchesProcessed % 5 == 0) {
             log.info("worker {} processed {} batches", number, numBatchesProcessed);
           }
-
-        } catch (Exception e) {
-          throw new RuntimeException(e);
         }
+        log.info("worker {} processed {} batches. done.", number, numBatchesProcessed);
+      } catch (InterruptedException ie) {
+        log.info("worker {} stopped after {} batches", number, numBatchesProcessed);
+      } catch (Throwable t) {
+        results.workerFailed(t);
+      } finally {
+        results.workerDone();
       }
-      log.info("worker {} processed {} batches. done.", number, numBatchesProcessed);
-      numActiveWorkers.decrementAndGet();
     }
   }
 }
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.precompute;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItemsWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands batches of results from worker threads over to the thread which writes them. The queue is bounded, so that
+ * workers wait when the {@link SimilarItemsWriter} can't keep up instead of buffering ever more results.
+ */
+final class SimilarItemsQueue {
+
+  private static final Logger log = LoggerFactory.getLogger(SimilarItemsQueue.class);
+
+  /** Number of batches of results per worker which may wait to be written. */
+  private static final int QUEUED_BATCHES_PER_WORKER = 4;
+
+  private final BlockingQueue<List<SimilarItems>> results;
+  private final AtomicInteger numActiveWorkers;
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+  SimilarItemsQueue(int numWorkers) {
+    results = new ArrayBlockingQueue<List<SimilarItems>>(QUEUED_BATCHES_PER_WORKER * numWorkers);
+    numActiveWorkers = new AtomicInteger(numWorkers);
+  }
+
+  /**
+   * Called by workers; blocks while the queue is full.
+   */
+  void put(List<SimilarItems> similarItemsOfABatch) throws InterruptedException {
+    results.put(similarItemsOfABatch);
+  }
+
+  /**
+   * Called by workers when they fail, before {@link #workerDone()}.
+   */
+  void workerFailed(Throwable t) {
+    failure.compareAndSet(null, t);
+  }
+
+  /**
+   * Called once by every worker when it is done, whether or not it succeeded.
+   */
+  void workerDone() {
+    numActiveWorkers.decrementAndGet();
+  }
+
+  /**
+   * Writes results as they come until all workers are done.
+   *
+   * @return the number of similarities written
+   * @throws IOException if the writer or a worker failed
+   * @throws RuntimeException if the workers are not done by the deadline
+   */
+  int writeAll(SimilarItemsWriter writer, long deadline, int maxDurationInHours)
+    throws IOException, InterruptedException {
+    int numSimilaritiesProcessed = 0;
+    boolean done = false;
+    while (!done) {
+      // Once no worker is active, everything they produced is in the queue
+      done = numActiveWorkers.get() == 0;
+      List<SimilarItems> similarItemsOfABatch = results.poll(10, TimeUnit.MILLISECONDS);
+      while (similarItemsOfABatch != null) {
+        for (SimilarItems similarItems : similarItemsOfABatch) {
+          writer.add(similarItems);
+          numSimilaritiesProcessed += similarItems.numSimilarItems();
+        }
+        similarItemsOfABatch = results.poll();
+      }
+      if (failure.get() != null) {
+        throw new IOException(failure.get());
+      }
+      if (System.currentTimeMillis() > deadline) {
+        throw new RuntimeException("Unable to complete the computation in " + maxDurationInHours + " hours!");
+      }
+    }
+    return numSimilaritiesProcessed;
+  }
+
+  /**
+   * Closes the writer, publishing its results, or aborts it if the computation failed. Like
+   * {@link com.google.common.io.Closeables#close(java.io.Closeable, boolean)}, an {@link IOException} while aborting
+   * is only logged, so that it doesn't hide the failure.
+   */
+  static void closeOrAbort(SimilarItemsWriter writer, boolean threw) throws IOException {
+    if (!threw) {
+      writer.close();
+      return;
+    }
+    try {
+      writer.abort();
+    } catch (IOException ioe) {
+      log.warn("IOException thrown while aborting {}", writer, ioe);
+    }
+  }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.model;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+
+/**
+ * <p>
+ * Notified by a {@link PreferenceChangeNotifier} after a user's preferences changed through
+ * {@link DataModel#setPreference(long, long, float)} or {@link DataModel#removePreference(long, long)}.
+ * </p>
+ */
+public interface PreferenceChangeListener {
+
+  /**
+   * Called after the preferences of the user changed; the {@link DataModel} already reflects the change.
+   *
+   * @param userID user whose preferences changed, who may no longer exist
+   * @throws TasteException if the listener fails to process the change
+   */
+  void preferencesChanged(long userID) throws TasteException;
+
+}
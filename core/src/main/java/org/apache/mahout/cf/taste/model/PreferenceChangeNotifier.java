@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.model;
+
+/**
+ * <p>
+ * Implemented by a {@link DataModel} which notifies {@link PreferenceChangeListener}s of the changes made through
+ * its {@link DataModel#setPreference(long, long, float)} and {@link DataModel#removePreference(long, long)}, so that
+ * components depending on it, such as an index of its users, can follow them without a full refresh.
+ * </p>
+ */
+public interface PreferenceChangeNotifier {
+
+  void addPreferenceChangeListener(PreferenceChangeListener listener);
+
+  void removePreferenceChangeListener(PreferenceChangeListener listener);
+
+}
@@ -30,4 +30,10 @@ public interface SimilarItemsWriter extends Closeable {
 
   void add(SimilarItems similarItems) throws IOException;
 
+  /**
+   * Called instead of {@link #close()} when the computation failed. Whatever was written so far is discarded where
+   * the writer is able to, so that a previous output is not replaced by partial results.
+   */
+  void abort() throws IOException;
+
 }
@@ -32,7 +32,12 @@ public final class VectorWritable extends Configured implements Writable {
   public static final int FLAG_SEQUENTIAL = 0x02;
   public static final int FLAG_NAMED = 0x04;
   public static final int FLAG_LAX_PRECISION = 0x08;
-  public static final int NUM_FLAGS = 4;
+  /**
+   * Set, along with {@link #FLAG_LAX_PRECISION}, for float-backed vectors such as {@link FloatDenseVector}, which are
+   * read back as the same kind of vector
+   */
+  public static final int FLAG_SINGLE_PRECISION = 0x10;
+  public static final int NUM_FLAGS = 5;
 
   private Vector vector;
   private boolean writesLaxPrecision;
@@ -89,11 +94,18 @@ public final class VectorWritable extends Configured implements Writable {
     boolean dense = (flags & FLAG_DENSE) != 0;
     boolean sequential = (flags & FLAG_SEQUENTIAL) != 0;
     boolean named = (flags & FLAG_NAMED) != 0;
+    boolean singlePrecision = (flags & FLAG_SINGLE_PRECISION) != 0;
     boolean laxPrecision = (flags & FLAG_LAX_PRECISION) != 0;
 
     int size = Varint.readUnsignedVarInt(in);
     Vector v;
-    if (dense) {
+    if (dense && singlePrecision) {
+      float[] values = new float[size];
+      for (int i = 0; i < size; i++) {
+        values[i] = in.readFloat();
+      }
+      v = new FloatDenseVector(values, true);
+    } else if (dense) {
       double[] values = new double[size];
       for (int i = 0; i < size; i++) {
         values[i] = laxPrecision ? in.readFloat() : in.readDouble();
@@ -101,9 +113,15 @@ public final class VectorWritable extends Configured implements Writable {
       v = new DenseVector(values);
     } else {
       int numNonDefaultElements = Varint.readUnsignedVarInt(in);
-      v = sequential
-          ? new SequentialAccessSparseVector(size, numNonDefaultElements)
-          : new RandomAccessSparseVector(size, numNonDefaultElements);
+      if (singlePrecision) {
+        v = sequential
+            ? new FloatSequentialAccessSparseVector(size, numNonDefaultElements)
+            : new FloatRandomAccessSparseVector(size, numNonDefaultElements);
+      } else {
+        v = sequential
+            ? new SequentialAccessSparseVector(size, numNonDefaultElements)
+            : new RandomAccessSparseVector(size, numNonDefaultElements);
+      }
       if (sequential) {
         int lastIndex = 0;
         for (int i = 0; i < numNonDefaultElements; i++) {
@@ -133,15 +151,22 @@ public final class VectorWritable extends Configured implements Writable {
     writeVector(out, vector, false);
   }
 
+  /**
+   * Writes values as floats if {@code laxPrecision}, and always for the float-backed vectors, such as
+   * {@link FloatDenseVector}, which are then read back as the same kind of vector.
+   */
   public static void writeVector(DataOutput out, Vector vector, boolean laxPrecision) throws IOException {
     boolean dense = vector.isDense();
     boolean sequential = vector.isSequentialAccess();
     boolean named = vector instanceof NamedVector;
+    boolean singlePrecision = isSinglePrecision(named ? ((NamedVector) vector).getDelegate() : vector);
+    laxPrecision |= singlePrecision;
 
     out.writeByte((dense ? FLAG_DENSE : 0)
         | (sequential ? FLAG_SEQUENTIAL : 0)
         | (named ? FLAG_NAMED : 0)
-        | (laxPrecision ? FLAG_LAX_PRECISION : 0));
+        | (laxPrecision ? FLAG_LAX_PRECISION : 0)
+        | (singlePrecision ? FLAG_SINGLE_PRECISION : 0));
 
     Varint.writeUnsignedVarInt(vector.size(), out);
     if (dense) {
@@ -194,6 +219,12 @@ public final class VectorWritable extends Configured implements Writable {
     }
   }
 
+  private static boolean isSinglePrecision(Vector vector) {
+    return vector instanceof FloatDenseVector
+        || vector instanceof FloatSequentialAccessSparseVector
+        || vector instanceof FloatRandomAccessSparseVector;
+  }
+
   public static Vector readVector(DataInput in) throws IOException {
     VectorWritable v = new VectorWritable();
     v.readFields(in);
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ConcurrentCacheTest extends TasteTestCase {
+
+  @Test
+  public void testLotsOfGets() throws TasteException {
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new IdentityRetriever(), 1000);
+    for (int i = 0; i < 1000000; i++) {
+      assertEquals(i, cache.get(i));
+    }
+    assertEquals(1000000L, cache.getMissCount());
+    assertTrue(cache.getEvictionCount() > 0L);
+  }
+
+  @Test
+  public void testMixedUsage() throws TasteException {
+    Random random = RandomUtils.getRandom();
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new IdentityRetriever(), 1000);
+    for (int i = 0; i < 1000000; i++) {
+      double r = random.nextDouble();
+      if (r < 0.01) {
+        cache.clear();
+      } else if (r < 0.1) {
+        cache.remove(r - 100);
+      } else {
+        assertEquals(i, cache.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testHitsAndLRUEviction() throws TasteException {
+    ConcurrentCache<Object,Object> cache =
+        new ConcurrentCache<Object,Object>(new IdentityRetriever(), 2, null, 1);
+    cache.get(1);
+    cache.get(2);
+    cache.get(1);
+    cache.get(3);
+    assertEquals(1L, cache.getHitCount());
+    assertEquals(3L, cache.getMissCount());
+    assertEquals(1L, cache.getEvictionCount());
+    cache.get(1);
+    assertEquals(2L, cache.getHitCount());
+    cache.get(2);
+    assertEquals(4L, cache.getMissCount());
+  }
+
+  @Test
+  public void testWeigher() throws TasteException {
+    ConcurrentCache.Weigher<Object,Object> weigher = new ConcurrentCache.Weigher<Object,Object>() {
+      @Override
+      public int weigh(Object key, Object value) {
+        return 10;
+      }
+    };
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new IdentityRetriever(), 30, weigher, 1);
+    for (int i = 0; i < 10; i++) {
+      cache.get(i);
+    }
+    assertEquals(3, cache.size());
+    assertEquals(30L, cache.weightedSize());
+    cache.removeKeysMatching(new Cache.MatchPredicate<Object>() {
+      @Override
+      public boolean matches(Object key) {
+        return (Integer) key == 9;
+      }
+    });
+    assertEquals(20L, cache.weightedSize());
+  }
+
+  @Test
+  public void testConcurrentLoadsOnce() throws Exception {
+    final AtomicInteger loads = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) {
+        loads.incrementAndGet();
+        try {
+          Thread.sleep(50L);
+        } catch (InterruptedException ie) {
+          throw new IllegalStateException(ie);
+        }
+        return key;
+      }
+    }, 100);
+    Thread[] threads = new Thread[8];
+    final AtomicInteger wrongValues = new AtomicInteger();
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            if (!"key".equals(cache.get("key"))) {
+              wrongValues.incrementAndGet();
+            }
+          } catch (Exception e) {
+            wrongValues.incrementAndGet();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, wrongValues.get());
+    assertEquals(1, loads.get());
+    assertEquals(1L, cache.getMissCount());
+    assertEquals(7L, cache.getHitCount());
+  }
+
+  @Test
+  public void testErrorDoesNotPoisonKey() throws TasteException {
+    final AtomicInteger loads = new AtomicInteger();
+    ConcurrentCache<Object,Object> cache = new ConcurrentCache<Object,Object>(new Retriever<Object,Object>() {
+      @Override
+      public Object get(Object key) {
+        if (loads.getAndIncrement() == 0) {
+          throw new InternalError("first load fails");
+        }
+        return key;
+      }
+    }, 100);
+    try {
+      cache.get("key");
+      fail();
+    } catch (InternalError ie) {
+      // expected
+    }
+    assertEquals(0, cache.size());
+    assertEquals("key", cache.get("key"));
+    assertEquals(2, loads.get());
+  }
+
+  private static class IdentityRetriever implements Retriever<Object,Object> {
+    @Override
+    public Object get(Object key) throws TasteException {
+      return key;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.common;
+
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class SortedIDSetTest extends TasteTestCase {
+
+  @Test
+  public void testContentsAndOrder() {
+    FastIDSet set = new FastIDSet();
+    set.add(5);
+    set.add(-3);
+    set.add(12);
+    SortedIDSet sorted = SortedIDSet.copyOf(set);
+    assertEquals(3, sorted.size());
+    assertArrayEquals(new long[] {-3, 5, 12}, sorted.toArray());
+    assertTrue(sorted.contains(5));
+    assertFalse(sorted.contains(6));
+    LongPrimitiveIterator it = sorted.iterator();
+    assertEquals(-3, it.nextLong());
+    assertEquals(5, it.nextLong());
+    assertEquals(12, it.nextLong());
+    assertFalse(it.hasNext());
+    FastIDSet copy = sorted.toFastIDSet();
+    assertEquals(3, copy.size());
+    assertEquals(3, copy.intersectionSize(set));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrapUnsorted() {
+    SortedIDSet.wrap(new long[] {1, 3, 2});
+  }
+
+  @Test
+  public void testIntersectionSize() {
+    SortedIDSet a = SortedIDSet.wrap(new long[] {1, 3, 5, 7});
+    assertEquals(2, a.intersectionSize(SortedIDSet.wrap(new long[] {2, 3, 7, 8})));
+    assertEquals(0, a.intersectionSize(SortedIDSet.wrap(new long[] {8, 9})));
+    assertEquals(0, a.intersectionSize(SortedIDSet.wrap(new long[0])));
+    assertEquals(4, a.intersectionSize(a));
+  }
+
+  @Test
+  public void testIntersectionSizeSameAsFastIDSet() {
+    Random random = RandomUtils.getRandom();
+    for (int trial = 0; trial < 200; trial++) {
+      // Sizes differing by up to 1000x exercise both merging and galloping
+      FastIDSet a = randomSet(random, 1 + random.nextInt(10), 500);
+      FastIDSet b = randomSet(random, 1 + random.nextInt(trial % 2 == 0 ? 10 : 10000), 500);
+      int expected = a.intersectionSize(b);
+      assertEquals(expected, SortedIDSet.copyOf(a).intersectionSize(SortedIDSet.copyOf(b)));
+      assertEquals(expected, SortedIDSet.copyOf(b).intersectionSize(SortedIDSet.copyOf(a)));
+    }
+  }
+
+  @Test
+  public void testRangeIntersectionSize() {
+    long[] longs = {9, 1, 3, 5, 7, 0, 2, 3, 7, 8, 9};
+    int[] ints = {9, 1, 3, 5, 7, 0, 2, 3, 7, 8, 9};
+    assertEquals(2, SortedIDSet.intersectionSize(longs, 1, 5, longs, 5, 10));
+    assertEquals(2, SortedIDSet.intersectionSize(ints, 1, 5, ints, 5, 10));
+    assertEquals(1, SortedIDSet.intersectionSize(ints, 6, 9, ints, 1, 3));
+    assertEquals(0, SortedIDSet.intersectionSize(ints, 1, 1, ints, 5, 10));
+    long[] large = new long[1000];
+    int[] largeInts = new int[large.length];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = 2 * i;
+      largeInts[i] = 2 * i;
+    }
+    assertEquals(3, SortedIDSet.intersectionSize(longs, 5, 10, large, 0, large.length));
+    assertEquals(3, SortedIDSet.intersectionSize(largeInts, 0, largeInts.length, ints, 5, 10));
+    assertEquals(0, SortedIDSet.intersectionSize(ints, 5, 10, largeInts, 10, largeInts.length));
+  }
+
+  private static FastIDSet randomSet(Random random, int size, int range) {
+    FastIDSet set = new FastIDSet(size);
+    for (int i = 0; i < size; i++) {
+      set.add(random.nextInt(range + size) - range / 2);
+    }
+    return set;
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class LatencyHistogramTest extends TasteTestCase {
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 0; value < 100; value++) {
+      histogram.recordValue(value);
+    }
+    assertEquals(100, histogram.getTotalCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(99, histogram.getMax());
+    assertEquals(49.5, histogram.getMean(), EPSILON);
+    assertEquals(49, histogram.getValueAtPercentile(50.0));
+    assertEquals(98, histogram.getValueAtPercentile(99.0));
+    assertEquals(99, histogram.getValueAtPercentile(100.0));
+  }
+
+  @Test
+  public void testBuckets() {
+    long previous = -1L;
+    for (int index = 0; index < 1000; index++) {
+      long highest = LatencyHistogram.highestEquivalentValue(index);
+      assertEquals(index, LatencyHistogram.index(highest));
+      assertEquals(index, LatencyHistogram.index(previous + 1));
+      assertTrue((highest - previous) <= Math.max(1L, (previous + 1) / 64));
+      previous = highest;
+    }
+    assertTrue(LatencyHistogram.index(Long.MAX_VALUE) >= 0);
+  }
+
+  @Test
+  public void testPercentilesAreWithinPrecision() {
+    Random random = RandomUtils.getRandom();
+    long[] values = new long[10000];
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      // Log-normal, like latencies, between about 100us and 1s
+      values[i] = (long) Math.exp(15.0 + 1.5 * random.nextGaussian());
+      (i % 2 == 0 ? first : second).recordValue(values[i]);
+    }
+    first.add(second);
+    Arrays.sort(values);
+    assertEquals(values.length, first.getTotalCount());
+    assertEquals(values[0], first.getMin());
+    assertEquals(values[values.length - 1], first.getMax());
+    for (double percentile : new double[] {50.0, 90.0, 99.0, 99.9}) {
+      long exact = values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+      long estimate = first.getValueAtPercentile(percentile);
+      assertTrue(estimate >= exact);
+      assertTrue(estimate <= exact + exact / 64);
+    }
+  }
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getTotalCount());
+    assertEquals(0, histogram.getValueAtPercentile(99.0));
+    assertTrue(Double.isNaN(histogram.getMean()));
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.junit.Test;
+
+public final class LatencyLoadEvaluatorTest extends TasteTestCase {
+
+  @Test
+  public void testOpenLoop() throws Exception {
+    DataModel model = getDataModel();
+    Recommender recommender = new GenericItemBasedRecommender(model, new PearsonCorrelationSimilarity(model));
+    LatencyStatistics statistics = new LatencyLoadEvaluator(2, 200.0, 100L, 500L).runLoad(recommender, 2);
+    long numRequests = statistics.getLatencies().getTotalCount();
+    // 100 requests are due during the 500ms measured; fewer may complete on a busy machine, but never more
+    assertTrue(numRequests > 0 && numRequests <= 101);
+    assertEquals(0, statistics.getNumErrors());
+    assertTrue(statistics.getThroughput() > 0.0);
+    assertTrue(statistics.getLatencies().getValueAtPercentile(50.0)
+               <= statistics.getLatencies().getValueAtPercentile(99.9));
+
+    Map<String,LatencyStatistics> report = Maps.newLinkedHashMap();
+    report.put("item-based", statistics);
+    assertTrue(LatencyStatistics.formatReport(report).contains("item-based"));
+  }
+
+  @Test
+  public void testClosedLoop() throws Exception {
+    DataModel model = getDataModel();
+    Recommender recommender = new GenericItemBasedRecommender(model, new PearsonCorrelationSimilarity(model));
+    LatencyStatistics statistics = new LatencyLoadEvaluator(2, 0.0, 50L, 200L).runLoad(recommender);
+    assertTrue(statistics.getLatencies().getTotalCount() > 100);
+  }
+
+  @Test
+  public void testToStringWithoutRequests() {
+    LatencyStatistics statistics = new LatencyStatistics(new LatencyHistogram(), 0, 0.0, Double.NaN);
+    String string = statistics.toString();
+    assertFalse(string, string.contains("NaN"));
+    assertFalse(string, string.contains("bytes/request"));
+    assertTrue(new LatencyStatistics(new LatencyHistogram(), 0, 0.0, 12.0).toString().contains("bytes/request:12"));
+  }
+
+}
@@ -29,6 +29,9 @@ import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
 import org.apache.mahout.cf.taste.similarity.UserSimilarity;
 
 import java.io.File;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
 
 public final class LoadEvaluationRunner {
 
@@ -48,21 +51,31 @@ public final class LoadEvaluationRunner {
 
     System.out.println("Run Items");
     ItemSimilarity similarity = new EuclideanDistanceSimilarity(model);
-    Recommender recommender = new GenericItemBasedRecommender(model, similarity); // Use an item-item recommender
+    Recommender itemRecommender = new GenericItemBasedRecommender(model, similarity); // Use an item-item recommender
     for (int i = 0; i < LOOPS; i++) {
-      LoadStatistics loadStats = LoadEvaluator.runLoad(recommender, howMany);
+      LoadStatistics loadStats = LoadEvaluator.runLoad(itemRecommender, howMany);
       System.out.println(loadStats);
     }
 
     System.out.println("Run Users");
     UserSimilarity userSim = new EuclideanDistanceSimilarity(model);
     UserNeighborhood neighborhood = new NearestNUserNeighborhood(10, userSim, model);
-    recommender = new GenericUserBasedRecommender(model, neighborhood, userSim);
+    Recommender userRecommender = new GenericUserBasedRecommender(model, neighborhood, userSim);
     for (int i = 0; i < LOOPS; i++) {
-      LoadStatistics loadStats = LoadEvaluator.runLoad(recommender, howMany);
+      LoadStatistics loadStats = LoadEvaluator.runLoad(userRecommender, howMany);
       System.out.println(loadStats);
     }
 
+    // Optional third argument: requests per second for an open-loop latency test; 0 sends them back to back
+    double requestsPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 0.0;
+    System.out.println("Run Latency");
+    LatencyLoadEvaluator evaluator = new LatencyLoadEvaluator(Runtime.getRuntime().availableProcessors(),
+        requestsPerSecond, 5000L, 30000L);
+    Map<String,LatencyStatistics> report = Maps.newLinkedHashMap();
+    report.put("GenericItemBasedRecommender", evaluator.runLoad(itemRecommender, howMany));
+    report.put("GenericUserBasedRecommender", evaluator.runLoad(userRecommender, howMany));
+    System.out.print(LatencyStatistics.formatReport(report));
+
   }
 
 }
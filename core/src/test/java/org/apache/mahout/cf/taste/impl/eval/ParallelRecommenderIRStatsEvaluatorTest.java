@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.eval;
+
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.eval.IRStatistics;
+import org.apache.mahout.cf.taste.eval.RecommenderBuilder;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class ParallelRecommenderIRStatsEvaluatorTest extends TasteTestCase {
+
+  private static final RecommenderBuilder BUILDER = new RecommenderBuilder() {
+    @Override
+    public Recommender buildRecommender(DataModel dataModel) throws TasteException {
+      return new GenericItemBasedRecommender(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    }
+  };
+
+  @Test
+  public void testSameResultsWithAnyNumberOfThreads() throws Exception {
+    DataModel dataModel = randomDataModel();
+    ParallelRecommenderIRStatsEvaluator serial = new ParallelRecommenderIRStatsEvaluator(1234L, 1);
+    IRStatistics expected = serial.evaluate(BUILDER, null, dataModel, null, 3,
+        GenericRecommenderIRStatsEvaluator.CHOOSE_THRESHOLD, 0.5);
+    ParallelRecommenderIRStatsEvaluator parallel = new ParallelRecommenderIRStatsEvaluator(1234L, 4);
+    IRStatistics actual = parallel.evaluate(BUILDER, null, dataModel, null, 3,
+        GenericRecommenderIRStatsEvaluator.CHOOSE_THRESHOLD, 0.5);
+
+    assertTrue(expected.getPrecision() > 0.0 && expected.getPrecision() <= 1.0);
+    assertEquals(expected.getPrecision(), actual.getPrecision(), 0.0);
+    assertEquals(expected.getRecall(), actual.getRecall(), 0.0);
+    assertEquals(expected.getFallOut(), actual.getFallOut(), 0.0);
+    assertEquals(expected.getNormalizedDiscountedCumulativeGain(),
+        actual.getNormalizedDiscountedCumulativeGain(), 0.0);
+    assertEquals(expected.getReach(), actual.getReach(), 0.0);
+
+    assertEquals(1, parallel.getSplitTiming().getCount());
+    assertEquals(1, parallel.getBuildTiming().getCount());
+    assertEquals(serial.getRecommendTiming().getCount(), parallel.getRecommendTiming().getCount());
+    assertTrue(parallel.getRecommendTiming().getCount() > 0);
+  }
+
+  @Test
+  public void testSeedSelectsUsers() throws Exception {
+    DataModel dataModel = randomDataModel();
+    ParallelRecommenderIRStatsEvaluator all = new ParallelRecommenderIRStatsEvaluator(1L, 2);
+    all.evaluate(BUILDER, null, dataModel, null, 3, GenericRecommenderIRStatsEvaluator.CHOOSE_THRESHOLD, 1.0);
+    ParallelRecommenderIRStatsEvaluator some = new ParallelRecommenderIRStatsEvaluator(1L, 2);
+    some.evaluate(BUILDER, null, dataModel, null, 3, GenericRecommenderIRStatsEvaluator.CHOOSE_THRESHOLD, 0.3);
+    assertTrue(some.getRecommendTiming().getCount() < all.getRecommendTiming().getCount());
+  }
+
+  private static DataModel randomDataModel() {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 60;
+    int numItems = 30;
+    long[] userIDs = new long[numUsers];
+    Double[][] prefs = new Double[numUsers][numItems];
+    for (int user = 0; user < numUsers; user++) {
+      userIDs[user] = user;
+      for (int item = 0; item < numItems; item++) {
+        if (random.nextDouble() < 0.4) {
+          prefs[user][item] = (double) (1 + random.nextInt(5));
+        }
+      }
+    }
+    return getDataModel(userIDs, prefs);
+  }
+
+}
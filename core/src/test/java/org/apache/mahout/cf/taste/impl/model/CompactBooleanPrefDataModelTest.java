@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompactBooleanPrefDataModel}.
+ */
+public final class CompactBooleanPrefDataModelTest extends TasteTestCase {
+
+  @Test
+  public void testSameAsGeneric() throws Exception {
+    FastByIDMap<FastIDSet> userData = randomUserData();
+    DataModel expected = new GenericBooleanPrefDataModel(userData);
+    assertSame(expected, new CompactBooleanPrefDataModel(userData, false));
+    assertSame(expected, new CompactBooleanPrefDataModel(userData, true));
+    assertSame(expected, new CompactBooleanPrefDataModel(expected, true));
+  }
+
+  @Test
+  public void testFromPreferences() throws Exception {
+    FastByIDMap<FastIDSet> userData = randomUserData();
+    List<Preference> preferences = Lists.newArrayList();
+    for (Map.Entry<Long,FastIDSet> entry : userData.entrySet()) {
+      LongPrimitiveIterator itemIDs = entry.getValue().iterator();
+      while (itemIDs.hasNext()) {
+        Preference preference = new GenericPreference(entry.getKey(), itemIDs.nextLong(), 2.0f);
+        preferences.add(preference);
+        if (preferences.size() % 3 == 0) {
+          preferences.add(preference);
+        }
+      }
+    }
+    Collections.shuffle(preferences, RandomUtils.getRandom());
+    DataModel expected = new GenericBooleanPrefDataModel(userData);
+    assertSame(expected, new CompactBooleanPrefDataModel(preferences, false));
+    assertSame(expected, new CompactBooleanPrefDataModel(preferences, true));
+    // A small buffer reads the preferences a few users and items at a time
+    assertSame(expected, new CompactBooleanPrefDataModel(preferences, false, 100));
+    assertSame(expected, new CompactBooleanPrefDataModel(preferences, true, 100));
+  }
+
+  @Test
+  public void testFromFile() throws Exception {
+    File dataFile = getTestTempFile("prefs.txt");
+    writeLines(dataFile, "# comment", "1,5,1.0", "", "1,3", "2,3,4.5,12345", "1,5");
+    DataModel model = new CompactBooleanPrefDataModel(dataFile, true);
+    assertEquals(2, model.getNumUsers());
+    assertEquals(2, model.getNumItems());
+    assertEquals(2, model.getPreferencesFromUser(1L).length());
+    assertEquals(2, model.getNumUsersWithPreferenceFor(3L));
+    assertEquals(1, model.getNumUsersWithPreferenceFor(3L, 5L));
+    File tabFile = getTestTempFile("prefs.tsv");
+    writeLines(tabFile, "1\t5", "2\t3");
+    model = new CompactBooleanPrefDataModel(tabFile, false);
+    assertEquals(1.0f, model.getPreferenceValue(2L, 3L), EPSILON);
+    assertNull(model.getPreferenceValue(2L, 5L));
+  }
+
+  @Test
+  public void testLineWithoutDelimiter() throws Exception {
+    File dataFile = getTestTempFile("prefs.txt");
+    writeLines(dataFile, "1,5", "2,3", "17");
+    try {
+      new CompactBooleanPrefDataModel(dataFile, false);
+      fail();
+    } catch (IllegalArgumentException iae) {
+      assertTrue(iae.getMessage().endsWith(": 17"));
+    }
+  }
+
+  @Test
+  public void testCompressedIsSmaller() {
+    FastByIDMap<FastIDSet> userData = randomUserData();
+    long plain = new CompactBooleanPrefDataModel(userData, false).rowBytes();
+    long compressed = new CompactBooleanPrefDataModel(userData, true).rowBytes();
+    assertTrue(compressed < plain);
+  }
+
+  @Test
+  public void testViews() throws Exception {
+    FastByIDMap<FastIDSet> userData = new FastByIDMap<FastIDSet>();
+    userData.put(1L, ids(5L, 3L));
+    userData.put(2L, ids(3L));
+    for (boolean compressed : new boolean[] {false, true}) {
+      DataModel model = new CompactBooleanPrefDataModel(userData, compressed);
+      PreferenceArray prefs = model.getPreferencesFromUser(1L);
+      assertEquals(2, prefs.length());
+      assertEquals(3L, prefs.getItemID(0));
+      assertEquals(5L, prefs.getItemID(1));
+      assertEquals(1L, prefs.getUserID(1));
+      assertEquals(1.0f, prefs.getValue(0), EPSILON);
+      assertTrue(prefs.hasPrefWithItemID(5L));
+      assertFalse(prefs.hasPrefWithItemID(4L));
+      PreferenceArray copy = prefs.clone();
+      copy.setItemID(0, 4L);
+      assertEquals(3L, prefs.getItemID(0));
+      try {
+        prefs.setItemID(0, 4L);
+        fail();
+      } catch (UnsupportedOperationException uoe) {
+        // good
+      }
+      prefs = model.getPreferencesForItem(3L);
+      assertEquals(2, prefs.length());
+      assertEquals(1L, prefs.getUserID(0));
+      assertEquals(2L, prefs.getUserID(1));
+      assertEquals(3L, prefs.getItemID(1));
+      assertNull(model.getPreferenceValue(2L, 5L));
+      assertEquals(0, model.getNumUsersWithPreferenceFor(7L));
+      try {
+        model.getPreferencesFromUser(3L);
+        fail();
+      } catch (NoSuchUserException nsue) {
+        // good
+      }
+    }
+  }
+
+  private static FastIDSet ids(long... ids) {
+    FastIDSet set = new FastIDSet();
+    for (long id : ids) {
+      set.add(id);
+    }
+    return set;
+  }
+
+  /**
+   * Users with widely varying numbers of items, some popular, and IDs spread over the whole range.
+   */
+  private static FastByIDMap<FastIDSet> randomUserData() {
+    Random random = RandomUtils.getRandom();
+    long[] itemIDs = new long[300];
+    for (int i = 0; i < itemIDs.length; i++) {
+      itemIDs[i] = random.nextLong() >>> 1;
+    }
+    FastByIDMap<FastIDSet> userData = new FastByIDMap<FastIDSet>();
+    for (int i = 0; i < 200; i++) {
+      int numItems = 1 + random.nextInt(i % 10 == 0 ? itemIDs.length : 20);
+      FastIDSet items = new FastIDSet();
+      for (int j = 0; j < numItems; j++) {
+        items.add(itemIDs[(int) (itemIDs.length * Math.pow(random.nextDouble(), 3))]);
+      }
+      userData.put(random.nextLong() >>> 1, items);
+    }
+    return userData;
+  }
+
+  private static void assertSame(DataModel expected, DataModel actual) throws Exception {
+    assertEquals(expected.getNumUsers(), actual.getNumUsers());
+    assertEquals(expected.getNumItems(), actual.getNumItems());
+    assertFalse(actual.hasPreferenceValues());
+    LongPrimitiveIterator userIDs = expected.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      FastIDSet itemIDs = expected.getItemIDsFromUser(userID);
+      FastIDSet actualItemIDs = actual.getItemIDsFromUser(userID);
+      assertEquals(itemIDs.size(), actualItemIDs.size());
+      LongPrimitiveIterator actualItemIt = actualItemIDs.iterator();
+      while (actualItemIt.hasNext()) {
+        assertTrue(itemIDs.contains(actualItemIt.nextLong()));
+      }
+      PreferenceArray prefs = actual.getPreferencesFromUser(userID);
+      assertEquals(itemIDs.size(), prefs.length());
+      for (int i = 0; i < prefs.length(); i++) {
+        assertEquals(userID, prefs.getUserID(i));
+        assertTrue(itemIDs.contains(prefs.getItemID(i)));
+        assertTrue(i == 0 || prefs.getItemID(i - 1) < prefs.getItemID(i));
+      }
+    }
+    long[] itemIDs = new long[expected.getNumItems()];
+    LongPrimitiveIterator itemIt = expected.getItemIDs();
+    for (int i = 0; i < itemIDs.length; i++) {
+      itemIDs[i] = itemIt.nextLong();
+      PreferenceArray expectedPrefs = expected.getPreferencesForItem(itemIDs[i]);
+      PreferenceArray actualPrefs = actual.getPreferencesForItem(itemIDs[i]);
+      assertEquals(expectedPrefs.length(), actualPrefs.length());
+      for (int j = 0; j < actualPrefs.length(); j++) {
+        assertTrue(expectedPrefs.hasPrefWithUserID(actualPrefs.getUserID(j)));
+        assertEquals(1.0f, actual.getPreferenceValue(actualPrefs.getUserID(j), itemIDs[i]), EPSILON);
+      }
+    }
+    for (int i = 0; i < itemIDs.length; i++) {
+      for (int j = i; j < itemIDs.length; j += 7) {
+        assertEquals(expected.getNumUsersWithPreferenceFor(itemIDs[i], itemIDs[j]),
+                     actual.getNumUsersWithPreferenceFor(itemIDs[i], itemIDs[j]));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link DeltaDataModel}.</p> */
+public final class DeltaDataModelTest extends TasteTestCase {
+
+  private static FastByIDMap<FastByIDMap<Float>> changes(long[][] userItemPairs, float[] values) {
+    FastByIDMap<FastByIDMap<Float>> changes = new FastByIDMap<FastByIDMap<Float>>();
+    for (int i = 0; i < userItemPairs.length; i++) {
+      FastByIDMap<Float> changesForUser = changes.get(userItemPairs[i][0]);
+      if (changesForUser == null) {
+        changesForUser = new FastByIDMap<Float>();
+        changes.put(userItemPairs[i][0], changesForUser);
+      }
+      changesForUser.put(userItemPairs[i][1], values[i]);
+    }
+    return changes;
+  }
+
+  @Test
+  public void testApplyDelta() throws Exception {
+    DataModel base = getDataModel();
+    DeltaDataModel original = new DeltaDataModel(base);
+    DeltaDataModel updated = original.applyDelta(
+        changes(new long[][] {{1, 0}, {1, 5}, {5, 2}}, new float[] {0.9f, 0.5f, 0.4f}),
+        new FastByIDMap<FastByIDMap<Long>>());
+
+    // the original snapshot is unchanged
+    assertEquals(0.1f, original.getPreferenceValue(1, 0), EPSILON);
+    assertEquals(4, original.getNumUsers());
+
+    assertEquals(0.9f, updated.getPreferenceValue(1, 0), EPSILON);
+    assertEquals(0.5f, updated.getPreferenceValue(1, 5), EPSILON);
+    assertEquals(3, updated.getPreferencesFromUser(1).length());
+    assertEquals(5, updated.getNumUsers());
+    assertEquals(4, updated.getNumItems());
+    assertEquals(1, updated.getNumUsersWithPreferenceFor(0, 5));
+    assertEquals(4, updated.getPreferencesForItem(2).length());
+    assertEquals(new FastIDSet(new long[] {2}), updated.getItemIDsFromUser(5));
+    // unchanged users and items come from the base
+    assertSame(base.getPreferencesFromUser(2), updated.getPreferencesFromUser(2));
+    assertFalse(original.needsCompaction(0.5));
+    assertTrue(updated.needsCompaction(0.5));
+  }
+
+  @Test
+  public void testRemoveUser() throws Exception {
+    DeltaDataModel updated = new DeltaDataModel(getDataModel()).applyDelta(
+        changes(new long[][] {{1, 0}, {1, 1}}, new float[] {Float.NaN, Float.NaN}),
+        new FastByIDMap<FastByIDMap<Long>>());
+    assertEquals(3, updated.getNumUsers());
+    assertEquals(3, updated.getNumUsersWithPreferenceFor(1));
+    LongPrimitiveIterator userIDs = updated.getUserIDs();
+    int count = 0;
+    while (userIDs.hasNext()) {
+      assertTrue(userIDs.nextLong() != 1);
+      count++;
+    }
+    assertEquals(3, count);
+    try {
+      updated.getPreferencesFromUser(1);
+      fail();
+    } catch (NoSuchUserException nsue) {
+      // good
+    }
+
+    DataModel compacted = updated.compact(new FastByIDMap<FastByIDMap<Long>>());
+    assertEquals(3, compacted.getNumUsers());
+    assertEquals(3, compacted.getNumItems());
+  }
+
+  @Test
+  public void testRemovedTimestampStaysRemoved() throws Exception {
+    FastByIDMap<PreferenceArray> data = GenericDataModel.toDataMap(getDataModel());
+    FastByIDMap<FastByIDMap<Long>> baseTimestamps = new FastByIDMap<FastByIDMap<Long>>();
+    FastByIDMap<Long> timestampsForUser = new FastByIDMap<Long>();
+    timestampsForUser.put(0, 100L);
+    timestampsForUser.put(1, 200L);
+    baseTimestamps.put(1, timestampsForUser);
+    DataModel base = new GenericDataModel(data, baseTimestamps);
+
+    DeltaDataModel removed = new DeltaDataModel(base, baseTimestamps).applyDelta(
+        changes(new long[][] {{1, 0}}, new float[] {Float.NaN}), new FastByIDMap<FastByIDMap<Long>>());
+    DeltaDataModel readded = removed.applyDelta(
+        changes(new long[][] {{1, 0}}, new float[] {0.3f}), new FastByIDMap<FastByIDMap<Long>>());
+    assertEquals(0.3f, readded.getPreferenceValue(1, 0), EPSILON);
+    assertNull(readded.getPreferenceTime(1, 0));
+    assertEquals(200L, readded.getPreferenceTime(1, 1).longValue());
+
+    FastByIDMap<FastByIDMap<Long>> compactedTimestamps = new FastByIDMap<FastByIDMap<Long>>();
+    DataModel compacted = readded.compact(compactedTimestamps);
+    assertNull(compacted.getPreferenceTime(1, 0));
+    assertEquals(200L, compacted.getPreferenceTime(1, 1).longValue());
+    assertEquals(1, compactedTimestamps.get(1).size());
+  }
+
+  @Test
+  public void testManyDeltas() throws Exception {
+    Random random = RandomUtils.getRandom();
+    DataModel base = getDataModel();
+    FastByIDMap<FastByIDMap<Float>> expected = new FastByIDMap<FastByIDMap<Float>>();
+    for (Map.Entry<Long,PreferenceArray> entry : GenericDataModel.toDataMap(base).entrySet()) {
+      FastByIDMap<Float> prefs = new FastByIDMap<Float>();
+      for (int i = 0; i < entry.getValue().length(); i++) {
+        prefs.put(entry.getValue().getItemID(i), entry.getValue().getValue(i));
+      }
+      expected.put(entry.getKey(), prefs);
+    }
+
+    DeltaDataModel first = new DeltaDataModel(base).applyDelta(
+        changes(new long[][] {{1, 0}}, new float[] {0.6f}), new FastByIDMap<FastByIDMap<Long>>());
+    expected.get(1).put(0, 0.6f);
+    DeltaDataModel snapshot = first;
+    for (int round = 0; round < 200; round++) {
+      int size = 1 + random.nextInt(4);
+      long[][] pairs = new long[size][];
+      float[] values = new float[size];
+      for (int i = 0; i < size; i++) {
+        pairs[i] = new long[] {1 + random.nextInt(8), random.nextInt(8)};
+        values[i] = random.nextInt(4) == 0 ? Float.NaN : random.nextFloat();
+      }
+      FastByIDMap<FastByIDMap<Float>> changes = changes(pairs, values);
+      snapshot = snapshot.applyDelta(changes, new FastByIDMap<FastByIDMap<Long>>());
+      for (Map.Entry<Long,FastByIDMap<Float>> entry : changes.entrySet()) {
+        FastByIDMap<Float> prefs = expected.get(entry.getKey());
+        if (prefs == null) {
+          prefs = new FastByIDMap<Float>();
+          expected.put(entry.getKey(), prefs);
+        }
+        for (Map.Entry<Long,Float> change : entry.getValue().entrySet()) {
+          if (Float.isNaN(change.getValue())) {
+            prefs.remove(change.getKey());
+          } else {
+            prefs.put(change.getKey(), change.getValue());
+          }
+        }
+        if (prefs.isEmpty()) {
+          expected.remove(entry.getKey());
+        }
+      }
+      assertSameData(expected, snapshot);
+    }
+    // the first snapshot is unchanged
+    assertEquals(0.6f, first.getPreferenceValue(1, 0), EPSILON);
+    assertEquals(4, first.getNumUsers());
+  }
+
+  private static void assertSameData(FastByIDMap<FastByIDMap<Float>> expected, DataModel model) throws Exception {
+    assertEquals(expected.size(), model.getNumUsers());
+    FastIDSet userIDs = new FastIDSet();
+    LongPrimitiveIterator it = model.getUserIDs();
+    while (it.hasNext()) {
+      assertTrue(userIDs.add(it.nextLong()));
+    }
+    assertEquals(expected.size(), userIDs.size());
+    FastByIDMap<FastIDSet> usersOfItems = new FastByIDMap<FastIDSet>();
+    for (Map.Entry<Long,FastByIDMap<Float>> entry : expected.entrySet()) {
+      long userID = entry.getKey();
+      assertTrue(userIDs.contains(userID));
+      assertEquals(entry.getValue().size(), model.getPreferencesFromUser(userID).length());
+      for (Map.Entry<Long,Float> pref : entry.getValue().entrySet()) {
+        assertEquals(pref.getValue(), model.getPreferenceValue(userID, pref.getKey()), EPSILON);
+        FastIDSet users = usersOfItems.get(pref.getKey());
+        if (users == null) {
+          users = new FastIDSet();
+          usersOfItems.put(pref.getKey(), users);
+        }
+        users.add(userID);
+      }
+    }
+    assertEquals(usersOfItems.size(), model.getNumItems());
+    for (Map.Entry<Long,FastIDSet> entry : usersOfItems.entrySet()) {
+      assertEquals(entry.getValue().size(), model.getNumUsersWithPreferenceFor(entry.getKey()));
+    }
+    int numItems = 0;
+    it = model.getItemIDs();
+    while (it.hasNext()) {
+      assertTrue(usersOfItems.containsKey(it.nextLong()));
+      numItems++;
+    }
+    assertEquals(usersOfItems.size(), numItems);
+  }
+
+}
@@ -23,6 +23,7 @@ import java.util.NoSuchElementException;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
 import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
 import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
@@ -202,6 +203,69 @@ public final class FileDataModelTest extends TasteTestCase {
     assertEquals(5.0f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
   }
 
+  @Test
+  public void testIncrementalUpdates() throws Exception {
+    File file = getTestTempFile("incremental.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L, null, true);
+    PreferenceArray oldPrefs = dataModel.getPreferencesFromUser(123L);
+
+    File updateFile = getTestTempFile("incremental.1.txt");
+    writeLines(updateFile, "123,456,5.0", "567,789,1.0", "234,999,");
+    assertTrue(updateFile.setLastModified(file.lastModified() + 5000L));
+    dataModel.refresh(null);
+
+    assertEquals(5.0f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
+    assertEquals(0.1f, oldPrefs.getValue(0), EPSILON);
+    assertEquals(5, dataModel.getNumUsers());
+    assertEquals(1.0f, dataModel.getPreferenceValue(567L, 789L), EPSILON);
+    assertNull(dataModel.getPreferenceValue(234L, 999L));
+    assertEquals(2, dataModel.getNumUsersWithPreferenceFor(999L));
+    assertEquals(4, dataModel.getPreferencesForItem(789L).length());
+    assertEquals(6, dataModel.getNumItems());
+    assertEquals(5.0f, dataModel.getMaxPreference(), EPSILON);
+
+    dataModel.removePreference(567L, 789L);
+    assertEquals(4, dataModel.getNumUsers());
+    assertEquals(3, dataModel.getNumUsersWithPreferenceFor(789L));
+    dataModel.setPreference(234L, 999L, 0.3f);
+    assertEquals(0.3f, dataModel.getPreferenceValue(234L, 999L), EPSILON);
+
+    int numUsers = 0;
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      dataModel.getPreferencesFromUser(userIDs.nextLong());
+      numUsers++;
+    }
+    assertEquals(4, numUsers);
+  }
+
+  @Test
+  public void testIncrementalUpdatesHonorProcessLine() throws Exception {
+    File file = getTestTempFile("filtered.txt");
+    writeLines(file, DATA);
+    FileDataModel dataModel = new FileDataModel(file, false, 0L, null, true) {
+      @Override
+      protected void processLine(String line,
+                                 FastByIDMap<?> data,
+                                 FastByIDMap<FastByIDMap<Long>> timestamps,
+                                 boolean fromPriorData) {
+        if (!line.startsWith("567,")) {
+          super.processLine(line, data, timestamps, fromPriorData);
+        }
+      }
+    };
+    dataModel.getNumUsers();
+
+    File updateFile = getTestTempFile("filtered.1.txt");
+    writeLines(updateFile, "123,456,5.0", "567,789,1.0");
+    assertTrue(updateFile.setLastModified(file.lastModified() + 5000L));
+    dataModel.refresh(null);
+
+    assertEquals(5.0f, dataModel.getPreferenceValue(123L, 456L), EPSILON);
+    assertEquals(4, dataModel.getNumUsers());
+  }
+
   @Test
   public void testToString() {
     assertFalse(model.toString().isEmpty());
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.neighborhood.NearestNUserNeighborhood;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.neighborhood.UserNeighborhood;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/** <p>Tests {@link MappedDataModel} and {@link MappedDataModelWriter}.</p> */
+public final class MappedDataModelTest extends TasteTestCase {
+
+  private static final String[] DATA = {
+      "123,456,0.1",
+      "123,789,0.6",
+      "123,654,0.7",
+      "234,123,0.5",
+      "234,234,1.0",
+      "234,999,0.9",
+      "345,789,0.6",
+      "345,654,0.7",
+      "345,123,1.0",
+      "345,234,0.5",
+      "345,999,0.5",
+      "456,456,0.1",
+      "456,789,0.5",
+      "456,654,0.0",
+      "456,999,0.2",};
+
+  private DataModel textModel;
+  private MappedDataModel model;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    File testFile = getTestTempFile("test.txt");
+    writeLines(testFile, DATA);
+    textModel = new FileDataModel(testFile);
+    File binaryFile = getTestTempFile("test.bin");
+    MappedDataModelWriter.write(textModel, binaryFile);
+    model = new MappedDataModel(binaryFile);
+  }
+
+  @Test
+  public void testSameContents() throws Exception {
+    assertEquals(textModel.getNumUsers(), model.getNumUsers());
+    assertEquals(textModel.getNumItems(), model.getNumItems());
+    assertEquals(DATA.length, model.getNumPreferences());
+    assertEquals(textModel.getMinPreference(), model.getMinPreference(), EPSILON);
+    assertEquals(textModel.getMaxPreference(), model.getMaxPreference(), EPSILON);
+    assertTrue(model.hasPreferenceValues());
+
+    LongPrimitiveIterator userIDs = model.getUserIDs();
+    long previous = Long.MIN_VALUE;
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      assertTrue(userID > previous);
+      previous = userID;
+      PreferenceArray prefs = model.getPreferencesFromUser(userID);
+      assertEquals(textModel.getPreferencesFromUser(userID).length(), prefs.length());
+      assertEquals(textModel.getItemIDsFromUser(userID), model.getItemIDsFromUser(userID));
+      for (int i = 0; i < prefs.length(); i++) {
+        assertEquals(userID, prefs.getUserID(i));
+        assertEquals(textModel.getPreferenceValue(userID, prefs.getItemID(i)), prefs.getValue(i), EPSILON);
+        if (i > 0) {
+          assertTrue(prefs.getItemID(i) > prefs.getItemID(i - 1));
+        }
+      }
+    }
+
+    LongPrimitiveIterator itemIDs = model.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      PreferenceArray prefs = model.getPreferencesForItem(itemID);
+      assertEquals(textModel.getNumUsersWithPreferenceFor(itemID), prefs.length());
+      assertEquals(prefs.length(), model.getNumUsersWithPreferenceFor(itemID));
+      for (int i = 0; i < prefs.length(); i++) {
+        assertEquals(itemID, prefs.getItemID(i));
+        assertTrue(prefs.hasPrefWithUserID(prefs.getUserID(i)));
+      }
+    }
+  }
+
+  @Test
+  public void testConvertInRuns() throws Exception {
+    Random random = RandomUtils.getRandom();
+    String[] lines = new String[500];
+    for (int i = 0; i < lines.length; i++) {
+      // small ranges of IDs, so that many lines replace or remove earlier ones
+      String pair = random.nextInt(20) + "," + random.nextInt(30) + ',';
+      lines[i] = i > 0 && random.nextInt(5) == 0 ? pair : pair + random.nextInt(5);
+    }
+    File textFile = getTestTempFile("random.txt");
+    writeLines(textFile, lines);
+    DataModel expected = new FileDataModel(textFile);
+    File binaryFile = getTestTempFile("random.bin");
+    MappedDataModelWriter.convert(textFile, binaryFile, 37);
+    DataModel converted = new MappedDataModel(binaryFile);
+
+    assertEquals(expected.getNumUsers(), converted.getNumUsers());
+    assertEquals(expected.getNumItems(), converted.getNumItems());
+    assertEquals(expected.getMinPreference(), converted.getMinPreference(), EPSILON);
+    assertEquals(expected.getMaxPreference(), converted.getMaxPreference(), EPSILON);
+    LongPrimitiveIterator userIDs = expected.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      PreferenceArray prefs = expected.getPreferencesFromUser(userID);
+      assertEquals(prefs.length(), converted.getPreferencesFromUser(userID).length());
+      for (int i = 0; i < prefs.length(); i++) {
+        assertEquals(prefs.getValue(i), converted.getPreferenceValue(userID, prefs.getItemID(i)), EPSILON);
+      }
+    }
+    LongPrimitiveIterator itemIDs = expected.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      assertEquals(expected.getNumUsersWithPreferenceFor(itemID), converted.getPreferencesForItem(itemID).length());
+    }
+    assertEquals(0, binaryFile.getParentFile().listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(".run") || name.endsWith(".prefs");
+      }
+    }).length);
+  }
+
+  @Test
+  public void testLookups() throws Exception {
+    assertEquals(0.7f, model.getPreferenceValue(345, 654), EPSILON);
+    assertNull(model.getPreferenceValue(345, 456));
+    assertEquals(textModel.getNumUsersWithPreferenceFor(654, 999), model.getNumUsersWithPreferenceFor(654, 999));
+    assertEquals(0, model.getNumUsersWithPreferenceFor(654, 1000));
+    assertNull(model.getPreferenceTime(345, 654));
+  }
+
+  @Test(expected = NoSuchUserException.class)
+  public void testNoSuchUser() throws Exception {
+    model.getPreferencesFromUser(999);
+  }
+
+  @Test(expected = NoSuchItemException.class)
+  public void testNoSuchItem() throws Exception {
+    model.getPreferencesForItem(345);
+  }
+
+  @Test
+  public void testCloneIsMutable() throws Exception {
+    PreferenceArray prefs = model.getPreferencesFromUser(456).clone();
+    prefs.sortByValueReversed();
+    assertEquals(0.5f, prefs.getValue(0), EPSILON);
+  }
+
+  @Test
+  public void testRecommender() throws Exception {
+    UserSimilarity userSimilarity = new PearsonCorrelationSimilarity(model);
+    UserNeighborhood neighborhood = new NearestNUserNeighborhood(3, userSimilarity, model);
+    Recommender recommender = new GenericUserBasedRecommender(model, neighborhood, userSimilarity);
+    assertEquals(1, recommender.recommend(123, 3).size());
+    assertEquals(0, recommender.recommend(234, 3).size());
+    assertEquals(1, recommender.recommend(345, 3).size());
+  }
+
+}
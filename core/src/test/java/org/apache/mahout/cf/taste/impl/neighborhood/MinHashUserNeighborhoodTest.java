@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.neighborhood;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.model.file.FileDataModel;
+import org.apache.mahout.cf.taste.impl.recommender.GenericUserBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceChangeNotifier;
+import org.apache.mahout.cf.taste.similarity.UserSimilarity;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link MinHashUserNeighborhood}.</p> */
+public final class MinHashUserNeighborhoodTest extends TasteTestCase {
+
+  private static final int NUM_CLUSTERS = 5;
+  private static final int USERS_PER_CLUSTER = 20;
+  private static final int ITEMS_PER_CLUSTER = 30;
+  private static final int ITEMS_PER_USER = 20;
+
+  @Test
+  public void testFindsNearestUsers() throws Exception {
+    DataModel dataModel = getBooleanDataModel(clusteredUserIDs(), clusteredPrefs());
+    UserSimilarity similarity = new TanimotoCoefficientSimilarity(dataModel);
+    NearestNUserNeighborhood exact = new NearestNUserNeighborhood(5, similarity, dataModel);
+    MinHashUserNeighborhood approximate = new MinHashUserNeighborhood(5, similarity, dataModel);
+
+    int found = 0;
+    int total = 0;
+    for (long userID = 0; userID < NUM_CLUSTERS * USERS_PER_CLUSTER; userID++) {
+      long[] approximateNeighborhood = approximate.getUserNeighborhood(userID);
+      assertFalse(arrayContains(approximateNeighborhood, userID));
+      for (long neighborID : exact.getUserNeighborhood(userID)) {
+        if (arrayContains(approximateNeighborhood, neighborID)) {
+          found++;
+        }
+        total++;
+      }
+    }
+    assertTrue("recall " + found + '/' + total, found >= 0.9 * total);
+  }
+
+  @Test
+  public void testUpdatedIncrementally() throws Exception {
+    File dataFile = getTestTempFile("prefs.txt");
+    boolean[][] prefs = clusteredPrefs();
+    writePrefs(dataFile, clusteredUserIDs(), prefs);
+    DataModel dataModel = new FileDataModel(dataFile, false, FileDataModel.DEFAULT_MIN_RELOAD_INTERVAL_MS, null, true);
+    UserSimilarity similarity = new TanimotoCoefficientSimilarity(dataModel);
+    MinHashUserNeighborhood neighborhood = new MinHashUserNeighborhood(3, similarity, dataModel);
+    GenericUserBasedRecommender recommender = new GenericUserBasedRecommender(
+        dataModel, new CachingUserNeighborhood(neighborhood, dataModel), similarity);
+
+    // A new user with exactly the items of user 0 is certain to be found, also when set through a wrapper
+    long newUserID = 1000L;
+    for (int item = 0; item < prefs[0].length; item++) {
+      if (prefs[0][item]) {
+        recommender.setPreference(newUserID, item, 1.0f);
+      }
+    }
+    assertEquals(newUserID, neighborhood.getUserNeighborhood(0L)[0]);
+
+    // and no longer once it has no items in common, also when changed directly in the model
+    for (int item = 0; item < prefs[0].length; item++) {
+      if (prefs[0][item]) {
+        dataModel.setPreference(newUserID, item + 10000, 1.0f);
+        dataModel.removePreference(newUserID, item);
+      }
+    }
+    assertFalse(arrayContains(neighborhood.getUserNeighborhood(0L), newUserID));
+  }
+
+  @Test
+  public void testRebuildDoesNotBlock() throws Exception {
+    File dataFile = getTestTempFile("prefs.txt");
+    final boolean[][] prefs = clusteredPrefs();
+    writePrefs(dataFile, clusteredUserIDs(), prefs);
+    final DataModel delegate =
+        new FileDataModel(dataFile, false, FileDataModel.DEFAULT_MIN_RELOAD_INTERVAL_MS, null, true);
+    final long changedUserID = prefs.length - 1;
+    final AtomicBoolean blockRebuild = new AtomicBoolean();
+    final CountDownLatch rebuilding = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    // Stops the next rebuild just after it reads the items of the user to change
+    final DataModel dataModel = (DataModel) Proxy.newProxyInstance(DataModel.class.getClassLoader(),
+        new Class<?>[] {DataModel.class, PreferenceChangeNotifier.class}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+              result = method.invoke(delegate, args);
+            } catch (InvocationTargetException ite) {
+              throw ite.getCause();
+            }
+            if ("getItemIDsFromUser".equals(method.getName()) && args[0].equals(changedUserID)
+                && blockRebuild.compareAndSet(true, false)) {
+              rebuilding.countDown();
+              proceed.await();
+            }
+            return result;
+          }
+        });
+    final UserSimilarity similarity = new TanimotoCoefficientSimilarity(delegate);
+    final MinHashUserNeighborhood neighborhood = new MinHashUserNeighborhood(3, similarity, dataModel);
+    GenericUserBasedRecommender recommender = new GenericUserBasedRecommender(dataModel, neighborhood, similarity);
+
+    blockRebuild.set(true);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Thread refresher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          neighborhood.refresh(Lists.<Refreshable>newArrayList(dataModel, similarity));
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    refresher.start();
+    assertTrue(rebuilding.await(10, TimeUnit.SECONDS));
+
+    // Queries and updates go on meanwhile; the user changed now gets exactly the items of user 0
+    assertTrue(neighborhood.getUserNeighborhood(0L).length > 0);
+    for (int item = 0; item < prefs[0].length; item++) {
+      if (prefs[0][item]) {
+        recommender.setPreference(changedUserID, item, 1.0f);
+      }
+    }
+    for (int item = 0; item < prefs[0].length; item++) {
+      if (prefs[(int) changedUserID][item]) {
+        recommender.removePreference(changedUserID, item);
+      }
+    }
+    assertEquals(changedUserID, neighborhood.getUserNeighborhood(0L)[0]);
+
+    // and is not lost from the new index, though the rebuild read its old items
+    proceed.countDown();
+    refresher.join();
+    assertNull(failure.get());
+    assertEquals(changedUserID, neighborhood.getUserNeighborhood(0L)[0]);
+  }
+
+  private static void writePrefs(File dataFile, long[] userIDs, boolean[][] prefs) throws IOException {
+    List<String> lines = Lists.newArrayList();
+    for (int user = 0; user < userIDs.length; user++) {
+      for (int item = 0; item < prefs[user].length; item++) {
+        if (prefs[user][item]) {
+          lines.add(userIDs[user] + "," + item + ",1.0");
+        }
+      }
+    }
+    writeLines(dataFile, lines.toArray(new String[lines.size()]));
+  }
+
+  private static long[] clusteredUserIDs() {
+    long[] userIDs = new long[NUM_CLUSTERS * USERS_PER_CLUSTER];
+    for (int user = 0; user < userIDs.length; user++) {
+      userIDs[user] = user;
+    }
+    return userIDs;
+  }
+
+  /**
+   * Users in the same cluster pick their items among the same ones, and so have a Jaccard similarity around 0.5.
+   */
+  private static boolean[][] clusteredPrefs() {
+    Random random = RandomUtils.getRandom();
+    boolean[][] prefs = new boolean[NUM_CLUSTERS * USERS_PER_CLUSTER][NUM_CLUSTERS * ITEMS_PER_CLUSTER];
+    for (int user = 0; user < prefs.length; user++) {
+      int firstItem = (user / USERS_PER_CLUSTER) * ITEMS_PER_CLUSTER;
+      int numItems = 0;
+      while (numItems < ITEMS_PER_USER) {
+        int item = firstItem + random.nextInt(ITEMS_PER_CLUSTER);
+        if (!prefs[user][item]) {
+          prefs[user][item] = true;
+          numItems++;
+        }
+      }
+    }
+    return prefs;
+  }
+
+}
@@ -23,6 +23,7 @@ import org.apache.mahout.cf.taste.impl.common.FastIDSet;
 import org.apache.mahout.cf.taste.impl.model.GenericPreference;
 import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
 import org.apache.mahout.cf.taste.impl.similarity.GenericItemSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.PearsonCorrelationSimilarity;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
@@ -215,6 +216,28 @@ public final class GenericItemBasedRecommenderTest extends TasteTestCase {
     assertEquals(0.2f, third.getValue(), EPSILON);
   }
 
+  @Test
+  public void testBatchRecommend() throws Exception {
+    DataModel dataModel = getDataModel(
+        new long[] {1, 2, 3, 4, 5},
+        new Double[][] {
+                {0.1, 0.3, null, 0.8, null, 0.2},
+                {0.2, null, 0.3, 0.4, 0.9},
+                {0.4, 0.3, 0.5, null, 0.1, null},
+                {null, 0.3, 0.8, 0.5, 0.6, 0.7},
+                {0.9, null, null, 0.2, 0.4, 0.3},
+        });
+    GenericItemBasedRecommender recommender =
+        new GenericItemBasedRecommender(dataModel, new PearsonCorrelationSimilarity(dataModel));
+    long[] userIDs = {1, 2, 3, 4, 5};
+    List<List<RecommendedItem>> batch = recommender.recommend(userIDs, 2, null);
+    assertEquals(userIDs.length, batch.size());
+    for (int i = 0; i < userIDs.length; i++) {
+      assertEquals(recommender.recommend(userIDs[i], 2), batch.get(i));
+    }
+    assertFalse(batch.get(0).isEmpty());
+  }
+
   private static ItemBasedRecommender buildRecommender() {
     DataModel dataModel = getDataModel();
     Collection<GenericItemSimilarity.ItemItemSimilarity> similarities = Lists.newArrayList();
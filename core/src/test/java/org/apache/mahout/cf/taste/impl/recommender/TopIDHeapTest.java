@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link TopIDHeap}.</p> */
+public final class TopIDHeapTest extends TasteTestCase {
+
+  @Test
+  public void testRetainsLargest() {
+    Random random = RandomUtils.getRandom();
+    TopIDHeap heap = new TopIDHeap(1);
+    for (int round = 0; round < 20; round++) {
+      int capacity = 1 + random.nextInt(50);
+      int n = random.nextInt(200);
+      heap.reset(capacity);
+      double[] values = new double[n];
+      for (int i = 0; i < n; i++) {
+        // few distinct values, so that there are ties
+        values[i] = random.nextInt(20);
+        heap.offer(i, values[i]);
+      }
+      assertEquals(Math.min(capacity, n), heap.size());
+      heap.sort();
+
+      double[] sorted = values.clone();
+      Arrays.sort(sorted);
+      for (int i = 0; i < heap.size(); i++) {
+        assertEquals(sorted[n - 1 - i], heap.getValue(i), 0.0);
+        assertEquals(values[(int) heap.getID(i)], heap.getValue(i), 0.0);
+        if (i > 0 && heap.getValue(i) == heap.getValue(i - 1)) {
+          assertTrue(heap.getID(i) > heap.getID(i - 1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFull() {
+    TopIDHeap heap = new TopIDHeap(2);
+    assertTrue(heap.offer(1, 1.0));
+    assertTrue(heap.offer(2, 2.0));
+    assertTrue(heap.isFull());
+    assertEquals(1.0, heap.peekValue(), 0.0);
+    assertFalse(heap.offer(3, 1.0));
+    assertTrue(heap.offer(4, 3.0));
+    assertEquals(2.0, heap.peekValue(), 0.0);
+    heap.sort();
+    assertEquals(4, heap.getID(0));
+    assertEquals(2, heap.getID(1));
+  }
+
+  @Test
+  public void testEqualValuesPreferSmallerIDs() {
+    TopIDHeap heap = new TopIDHeap(3);
+    for (long id = 10; id >= 1; id--) {
+      heap.offer(id, 1.0);
+    }
+    assertFalse(heap.offer(4, 1.0));
+    assertTrue(heap.offer(0, 1.0));
+    heap.sort();
+    assertEquals(0, heap.getID(0));
+    assertEquals(1, heap.getID(1));
+    assertEquals(2, heap.getID(2));
+  }
+
+  @Test
+  public void testZeroCapacity() {
+    TopIDHeap heap = new TopIDHeap(0);
+    assertFalse(heap.offer(1, 1.0));
+    assertEquals(0, heap.size());
+  }
+
+}
@@ -18,6 +18,7 @@
 package org.apache.mahout.cf.taste.impl.recommender;
 
 import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveArrayIterator;
 import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
@@ -99,6 +100,37 @@ public final class TopItemsTest extends TasteTestCase {
     }
   }
 
+  @Test
+  public void testTopItemsPrimitive() throws Exception {
+    long[] ids = new long[100];
+    for (int i = 0; i < 100; i++) {
+      ids[i] = i;
+    }
+    final TopItems.IDEstimator identity = new TopItems.IDEstimator() {
+      @Override
+      public double estimate(long id) {
+        return id;
+      }
+    };
+    TopItems.IDEstimator estimator = new TopItems.IDEstimator() {
+      @Override
+      public double estimate(long id) throws TasteException {
+        // a nested selection must not disturb the enclosing one
+        long[] top = TopItems.getTopUsers(3, new LongPrimitiveArrayIterator(new long[] {1, 2, 3, 4}), null, identity);
+        assertEquals(3, top.length);
+        return id % 10 == 0 ? Double.NaN : id;
+      }
+    };
+    List<RecommendedItem> topItems =
+        TopItems.getTopItems(5, new LongPrimitiveArrayIterator(ids), null, estimator);
+    assertEquals(5, topItems.size());
+    long[] expected = {99, 98, 97, 96, 95};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], topItems.get(i).getItemID());
+      assertEquals(expected[i], topItems.get(i).getValue(), EPSILON);
+    }
+  }
+
   @Test
   public void testTopItemItem() throws Exception {
     List<GenericItemSimilarity.ItemItemSimilarity> sims = Lists.newArrayList();
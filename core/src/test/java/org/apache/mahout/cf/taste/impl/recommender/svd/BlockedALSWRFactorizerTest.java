@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.als.AlternatingLeastSquaresSolver;
+import org.junit.Test;
+
+public final class BlockedALSWRFactorizerTest extends TasteTestCase {
+
+  private static DataModel randomDataModel(int numUsers, int numItems, double density) {
+    Random random = RandomUtils.getRandom();
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (int user = 0; user < numUsers; user++) {
+      long[] itemIDs = new long[numItems];
+      float[] values = new float[numItems];
+      int numPrefs = 0;
+      for (int item = 0; item < numItems; item++) {
+        // make sure every item has a rating
+        if (item == user % numItems || random.nextDouble() < density) {
+          itemIDs[numPrefs] = 10 + item;
+          values[numPrefs] = 1 + random.nextInt(5);
+          numPrefs++;
+        }
+      }
+      PreferenceArray prefs = new GenericUserPreferenceArray(numPrefs);
+      prefs.setUserID(0, 1000 + user);
+      for (int i = 0; i < numPrefs; i++) {
+        prefs.setItemID(i, itemIDs[i]);
+        prefs.setValue(i, values[i]);
+      }
+      userData.put(1000 + user, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+  private static void assertSameFactorization(Factorization expected, Factorization actual) throws Exception {
+    for (Map.Entry<Long,Integer> mapping : expected.getUserIDMappings()) {
+      assertArrayEquals(expected.getUserFeatures(mapping.getKey()), actual.getUserFeatures(mapping.getKey()), 1.0e-6);
+    }
+    for (Map.Entry<Long,Integer> mapping : expected.getItemIDMappings()) {
+      assertArrayEquals(expected.getItemFeatures(mapping.getKey()), actual.getItemFeatures(mapping.getKey()), 1.0e-6);
+    }
+  }
+
+  /**
+   * The last half-sweep solves the items given the final user features, so every item's features must be what
+   * the reference solver computes from them.
+   */
+  @Test
+  public void testItemFeaturesSolveNormalEquations() throws Exception {
+    DataModel dataModel = randomDataModel(300, 80, 0.1);
+    Factorization factorization = new BlockedALSWRFactorizer(dataModel, 5, 0.065, 5, false, 0, 3).factorize();
+
+    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      PreferenceArray prefs = dataModel.getPreferencesForItem(itemID);
+      List<Vector> userFeatures = Lists.newArrayList();
+      for (int i = 0; i < prefs.length(); i++) {
+        userFeatures.add(new DenseVector(factorization.getUserFeatures(prefs.getUserID(i))));
+      }
+      Vector expected =
+          AlternatingLeastSquaresSolver.solve(userFeatures, ALSWRFactorizer.ratingVector(prefs), 0.065, 5);
+      double[] actual = factorization.getItemFeatures(itemID);
+      for (int feature = 0; feature < 5; feature++) {
+        assertEquals(expected.get(feature), actual[feature], 1.0e-9);
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsALSWRFactorizerWithImplicitFeedback() throws Exception {
+    DataModel dataModel = randomDataModel(200, 60, 0.1);
+
+    RandomUtils.useTestSeed();
+    Factorization expected = new ALSWRFactorizer(dataModel, 4, 0.1, 4, true, 2.0, 2).factorize();
+    RandomUtils.useTestSeed();
+    Factorization actual = new BlockedALSWRFactorizer(dataModel, 4, 0.1, 4, true, 2.0, 3).factorize();
+
+    assertSameFactorization(expected, actual);
+  }
+
+  @Test
+  public void testRecommender() throws Exception {
+    DataModel dataModel = randomDataModel(100, 30, 0.3);
+    SVDRecommender recommender = new SVDRecommender(dataModel, new BlockedALSWRFactorizer(dataModel, 3, 0.065, 10));
+    assertFalse(Float.isNaN(recommender.estimatePreference(1000, 10)));
+    assertEquals(5, recommender.recommend(1000, 5).size());
+  }
+
+}
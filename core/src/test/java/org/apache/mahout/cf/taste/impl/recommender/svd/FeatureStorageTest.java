@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.eval.RecommenderBuilder;
+import org.apache.mahout.cf.taste.eval.RecommenderEvaluator;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.eval.RMSRecommenderEvaluator;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class FeatureStorageTest extends TasteTestCase {
+
+  private static final int NUM_USERS = 60;
+  private static final int NUM_ITEMS = 40;
+  private static final int NUM_FEATURES = 6;
+
+  private static Factorization randomFactorization(Random random) {
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    for (int user = 0; user < NUM_USERS; user++) {
+      userIDMapping.put(100L + user, user);
+    }
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+    for (int item = 0; item < NUM_ITEMS; item++) {
+      itemIDMapping.put(1000L + item, item);
+    }
+    return new Factorization(userIDMapping, itemIDMapping, randomMatrix(random, NUM_USERS),
+        randomMatrix(random, NUM_ITEMS));
+  }
+
+  private static double[][] randomMatrix(Random random, int rows) {
+    double[][] matrix = new double[rows][NUM_FEATURES];
+    for (double[] row : matrix) {
+      for (int feature = 0; feature < NUM_FEATURES; feature++) {
+        row[feature] = random.nextGaussian();
+      }
+    }
+    // one vector of zeroes, which can't be scaled
+    matrix[rows - 1] = new double[NUM_FEATURES];
+    return matrix;
+  }
+
+  private static double norm(double[] vector) {
+    double sum = 0.0;
+    for (double value : vector) {
+      sum += value * value;
+    }
+    return Math.sqrt(sum);
+  }
+
+  @Test
+  public void testCompactDotProducts() throws Exception {
+    Factorization factorization = randomFactorization(RandomUtils.getRandom());
+    assertSame(factorization, FeatureStorage.DOUBLE.convert(factorization));
+    Factorization floats = FeatureStorage.FLOAT.convert(factorization);
+    Factorization bytes = FeatureStorage.INT8.convert(factorization);
+    assertSame(bytes, FeatureStorage.INT8.convert(bytes));
+    assertEquals(NUM_FEATURES, bytes.numFeatures());
+    assertEquals(NUM_USERS, bytes.numUsers());
+    assertEquals(NUM_ITEMS, floats.numItems());
+
+    for (int user = 0; user < NUM_USERS; user++) {
+      long userID = 100L + user;
+      assertEquals(factorization.userIndex(userID), bytes.userIndex(userID));
+      double[] userFeatures = factorization.getUserFeatures(userID);
+      for (int item = 0; item < NUM_ITEMS; item++) {
+        long itemID = 1000L + item;
+        double[] itemFeatures = factorization.getItemFeatures(itemID);
+        double exact = factorization.dotProduct(userID, itemID);
+        double scale = norm(userFeatures) * norm(itemFeatures);
+        assertEquals(exact, floats.dotProduct(userID, itemID), 1.0e-6 * scale + EPSILON);
+        // each quantized feature is off by at most half a step, 1/254 of the vector's largest feature
+        assertEquals(exact, bytes.dotProduct(userID, itemID), 0.02 * scale + EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testLoadCompact() throws Exception {
+    Factorization factorization = randomFactorization(RandomUtils.getRandom());
+    File storage = getTestTempFile("storage.bin");
+    new FilePersistenceStrategy(storage).maybePersist(factorization);
+
+    Factorization loaded = new FilePersistenceStrategy(storage, FeatureStorage.INT8).load();
+    assertTrue(loaded instanceof QuantizedFactorization);
+    assertEquals(new QuantizedFactorization(factorization), loaded);
+    assertEquals(factorization.userIndex(123L), loaded.userIndex(123L));
+  }
+
+  @Test
+  public void testLoadFloat() throws Exception {
+    Factorization factorization = randomFactorization(RandomUtils.getRandom());
+    File storage = getTestTempFile("storage.bin");
+    new FilePersistenceStrategy(storage).maybePersist(factorization);
+
+    Factorization loaded = new FilePersistenceStrategy(storage, FeatureStorage.FLOAT).load();
+    assertTrue(loaded instanceof FloatFactorization);
+    assertEquals(new FloatFactorization(factorization), loaded);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooManyFeaturesForOneArray() {
+    new FloatFactorization(new FastByIDMap<Integer>(), new FastByIDMap<Integer>(), 1 << 20, 0, 1 << 12);
+  }
+
+  /**
+   * Compares the accuracy of recommenders serving from each kind of storage, trained on the same split of a
+   * synthetic low-rank rating matrix.
+   */
+  @Test
+  public void testEvaluateStorages() throws Exception {
+    DataModel dataModel = lowRankDataModel(RandomUtils.getRandom());
+    double[] scores = new double[FeatureStorage.values().length];
+    for (final FeatureStorage storage : FeatureStorage.values()) {
+      RandomUtils.useTestSeed();
+      RecommenderEvaluator evaluator = new RMSRecommenderEvaluator();
+      RecommenderBuilder builder = new RecommenderBuilder() {
+        @Override
+        public Recommender buildRecommender(DataModel model) throws TasteException {
+          Factorizer factorizer = new CompactingFactorizer(new ALSWRFactorizer(model, 4, 0.065, 10), storage);
+          return new SVDRecommender(model, factorizer);
+        }
+      };
+      scores[storage.ordinal()] = evaluator.evaluate(builder, null, dataModel, 0.8, 1.0);
+    }
+    double exact = scores[FeatureStorage.DOUBLE.ordinal()];
+    assertFalse(Double.isNaN(exact));
+    assertEquals(exact, scores[FeatureStorage.FLOAT.ordinal()], 0.001);
+    assertEquals(exact, scores[FeatureStorage.INT8.ordinal()], 0.05);
+  }
+
+  private static DataModel lowRankDataModel(Random random) {
+    int rank = 3;
+    double[][] users = new double[NUM_USERS][rank];
+    double[][] items = new double[NUM_ITEMS][rank];
+    for (double[] user : users) {
+      for (int i = 0; i < rank; i++) {
+        user[i] = random.nextDouble();
+      }
+    }
+    for (double[] item : items) {
+      for (int i = 0; i < rank; i++) {
+        item[i] = random.nextDouble();
+      }
+    }
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (int user = 0; user < NUM_USERS; user++) {
+      PreferenceArray prefs = new GenericUserPreferenceArray(NUM_ITEMS);
+      prefs.setUserID(0, user);
+      int length = 0;
+      for (int item = 0; item < NUM_ITEMS; item++) {
+        if (random.nextDouble() < 0.5) {
+          double rating = 1.0;
+          for (int i = 0; i < rank; i++) {
+            rating += users[user][i] * items[item][i];
+          }
+          prefs.setItemID(length, item);
+          prefs.setValue(length, (float) rating);
+          length++;
+        }
+      }
+      PreferenceArray truncated = new GenericUserPreferenceArray(length);
+      truncated.setUserID(0, user);
+      for (int i = 0; i < length; i++) {
+        truncated.setItemID(i, prefs.getItemID(i));
+        truncated.setValue(i, prefs.getValue(i));
+      }
+      userData.put(user, truncated);
+    }
+    return new GenericDataModel(userData);
+  }
+
+}
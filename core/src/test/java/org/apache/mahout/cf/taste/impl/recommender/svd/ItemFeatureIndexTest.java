@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class ItemFeatureIndexTest extends TasteTestCase {
+
+  private static final int NUM_FEATURES = 8;
+
+  @Test
+  public void testSearchEverythingIsExact() throws Exception {
+    int numItems = 300;
+    Factorization factorization = randomFactorization(RandomUtils.getRandom(), 1, numItems);
+    ItemFeatureIndex index = new ItemFeatureIndex(factorization, numItems);
+    long[] top = index.search(0L, 10);
+    assertEquals(10, top.length);
+    int[] byScore = itemsByScore(factorization, 0L);
+    for (int i = 0; i < top.length; i++) {
+      assertEquals(1000L + byScore[i], top[i]);
+    }
+  }
+
+  @Test
+  public void testSearchScoresOnlyBuckets() throws Exception {
+    int numUsers = 20;
+    int numItems = 5000;
+    final AtomicInteger numScored = new AtomicInteger();
+    Factorization factorization = randomFactorization(RandomUtils.getRandom(), numUsers, numItems);
+    Factorization counting = new Factorization(userIDMapping(numUsers), itemIDMapping(numItems),
+        factorization.allUserFeatures(), factorization.allItemFeatures()) {
+      @Override
+      public double dotProduct(long userID, long itemID) throws TasteException {
+        numScored.incrementAndGet();
+        return super.dotProduct(userID, itemID);
+      }
+    };
+    ItemFeatureIndex index = new ItemFeatureIndex(counting, 50);
+
+    int found = 0;
+    for (long userID = 0; userID < numUsers; userID++) {
+      long[] top = index.search(userID, 10);
+      for (int i = 1; i < top.length; i++) {
+        assertTrue(factorization.dotProduct(userID, top[i - 1]) >= factorization.dotProduct(userID, top[i]));
+      }
+      FastIDSet exactTop = new FastIDSet();
+      int[] byScore = itemsByScore(factorization, userID);
+      for (int i = 0; i < 10; i++) {
+        exactTop.add(1000L + byScore[i]);
+      }
+      for (long itemID : top) {
+        if (exactTop.contains(itemID)) {
+          found++;
+        }
+      }
+    }
+    // Buckets are uneven, as short item vectors are extended the most and crowd around the extra dimension
+    assertTrue(numScored.get() < numUsers * numItems / 5);
+    // Far better than the 10 * 10 / 5000 of picking items at random
+    assertTrue(found >= numUsers * 10 / 5);
+  }
+
+  @Test
+  public void testRecommenderHonorsCandidateItemsStrategy() throws Exception {
+    int numUsers = 3;
+    int numItems = 40;
+    Double[][] prefs = new Double[numUsers][numItems];
+    for (int user = 0; user < numUsers; user++) {
+      prefs[user][user] = 1.0;
+    }
+    DataModel dataModel = getDataModel(new long[] {0, 1, 2}, prefs);
+    final Factorization factorization = randomFactorization(RandomUtils.getRandom(), numUsers, numItems);
+    Factorizer factorizer = new Factorizer() {
+      @Override
+      public Factorization factorize() {
+        return factorization;
+      }
+      @Override
+      public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // do nothing
+      }
+    };
+    final FastIDSet allowed = new FastIDSet(new long[] {1003L, 1010L, 1020L});
+    CandidateItemsStrategy strategy = new CandidateItemsStrategy() {
+      @Override
+      public FastIDSet getCandidateItems(long userID, PreferenceArray preferencesFromUser, DataModel model) {
+        return allowed;
+      }
+      @Override
+      public void refresh(Collection<Refreshable> alreadyRefreshed) {
+        // do nothing
+      }
+    };
+    SVDRecommender recommender =
+        new SVDRecommender(dataModel, factorizer, strategy, new NoPersistenceStrategy(), numItems);
+    List<RecommendedItem> recommended = recommender.recommend(0L, 10);
+    assertEquals(allowed.size(), recommended.size());
+    for (RecommendedItem item : recommended) {
+      assertTrue(allowed.contains(item.getItemID()));
+    }
+  }
+
+  /**
+   * @return user IDs from 0 and item IDs from 1000, with items of very different norms, so that nearest by angle is
+   *  not the same as largest inner product
+   */
+  private static Factorization randomFactorization(Random random, int numUsers, int numItems) {
+    double[][] userFeatures = new double[numUsers][NUM_FEATURES];
+    for (double[] features : userFeatures) {
+      for (int f = 0; f < NUM_FEATURES; f++) {
+        features[f] = random.nextGaussian();
+      }
+    }
+    double[][] itemFeatures = new double[numItems][NUM_FEATURES];
+    for (double[] features : itemFeatures) {
+      double scale = 0.1 + 5.0 * random.nextDouble();
+      for (int f = 0; f < NUM_FEATURES; f++) {
+        features[f] = scale * random.nextGaussian();
+      }
+    }
+    return new Factorization(userIDMapping(numUsers), itemIDMapping(numItems), userFeatures, itemFeatures);
+  }
+
+  private static FastByIDMap<Integer> userIDMapping(int numUsers) {
+    FastByIDMap<Integer> mapping = new FastByIDMap<Integer>();
+    for (int i = 0; i < numUsers; i++) {
+      mapping.put(i, i);
+    }
+    return mapping;
+  }
+
+  private static FastByIDMap<Integer> itemIDMapping(int numItems) {
+    FastByIDMap<Integer> mapping = new FastByIDMap<Integer>();
+    for (int i = 0; i < numItems; i++) {
+      mapping.put(1000L + i, i);
+    }
+    return mapping;
+  }
+
+  /**
+   * @return item indices by decreasing inner product with the user's features
+   */
+  private static int[] itemsByScore(Factorization factorization, long userID) throws TasteException {
+    int numItems = factorization.numItems();
+    final double[] scores = new double[numItems];
+    Integer[] byScore = new Integer[numItems];
+    for (int i = 0; i < numItems; i++) {
+      scores[i] = factorization.dotProduct(userID, 1000L + i);
+      byScore[i] = i;
+    }
+    Arrays.sort(byScore, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(scores[b], scores[a]);
+      }
+    });
+    int[] result = new int[numItems];
+    for (int i = 0; i < numItems; i++) {
+      result[i] = byScore[i];
+    }
+    return result;
+  }
+
+}
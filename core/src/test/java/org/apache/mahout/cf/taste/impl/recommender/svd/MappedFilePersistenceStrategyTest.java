@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.junit.Test;
+
+public final class MappedFilePersistenceStrategyTest extends TasteTestCase {
+
+  private static Factorization createFactorization(double offset) {
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+
+    userIDMapping.put(456, 0);
+    userIDMapping.put(123, 1);
+    userIDMapping.put(1, 2);
+
+    itemIDMapping.put(34, 0);
+    itemIDMapping.put(12, 1);
+
+    double[][] userFeatures = { { 0.1, 0.2, 0.3 }, { 0.4, 0.5, 0.6 }, { 0.7, 0.8, 0.9 } };
+    double[][] itemFeatures = { { 0.7, 0.8, 0.9 }, { 1.0, 1.1, 1.2 } };
+    for (double[] features : userFeatures) {
+      for (int feature = 0; feature < features.length; feature++) {
+        features[feature] += offset;
+      }
+    }
+
+    return new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+  }
+
+  private static void assertSameFeatures(Factorization expected, Factorization actual, double epsilon)
+    throws Exception {
+    assertEquals(expected.numFeatures(), actual.numFeatures());
+    assertEquals(expected.numUsers(), actual.numUsers());
+    assertEquals(expected.numItems(), actual.numItems());
+    for (Map.Entry<Long,Integer> mapping : expected.getUserIDMappings()) {
+      assertArrayEquals(expected.getUserFeatures(mapping.getKey()), actual.getUserFeatures(mapping.getKey()), epsilon);
+    }
+    for (Map.Entry<Long,Integer> mapping : expected.getItemIDMappings()) {
+      assertArrayEquals(expected.getItemFeatures(mapping.getKey()), actual.getItemFeatures(mapping.getKey()), epsilon);
+    }
+  }
+
+  @Test
+  public void persistAndLoad() throws Exception {
+    Factorization original = createFactorization(0.0);
+    File storage = getTestTempFile("storage.mapped");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+
+    assertNull(persistenceStrategy.load());
+
+    persistenceStrategy.maybePersist(original);
+    Factorization mapped = persistenceStrategy.load();
+
+    assertSameFeatures(original, mapped, 0.0);
+    // IDs are mapped to indices in ascending order
+    assertEquals(0, mapped.userIndex(1));
+    assertEquals(2, mapped.userIndex(456));
+    assertEquals(1, mapped.itemIndex(34));
+    assertEquals(mapped.allItemFeatures()[1][2], original.getItemFeatures(34)[2], 0.0);
+    try {
+      mapped.getUserFeatures(789);
+      fail();
+    } catch (NoSuchUserException nsue) {
+      // expected
+    }
+
+    long lastModified = storage.lastModified();
+    persistenceStrategy.maybePersist(mapped);
+    assertEquals(lastModified, storage.lastModified());
+  }
+
+  @Test
+  public void persistAndLoadSinglePrecision() throws Exception {
+    Factorization original = createFactorization(0.0);
+    File storage = getTestTempFile("storage.mapped");
+    MappedFilePersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage, true);
+
+    persistenceStrategy.maybePersist(original);
+    MappedFactorization mapped = (MappedFactorization) persistenceStrategy.load();
+
+    assertTrue(mapped.isSinglePrecision());
+    assertEquals(MappedFactorization.fileLength(3, 3, 2, true), storage.length());
+    assertSameFeatures(original, mapped, 1.0e-7);
+    assertEquals(original.dotProduct(123, 12), mapped.dotProduct(123, 12), 1.0e-6);
+  }
+
+  @Test
+  public void dotProduct() throws Exception {
+    Factorization original = createFactorization(0.0);
+    File storage = getTestTempFile("storage.mapped");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+    persistenceStrategy.maybePersist(original);
+    Factorization mapped = persistenceStrategy.load();
+    for (Map.Entry<Long,Integer> user : original.getUserIDMappings()) {
+      for (Map.Entry<Long,Integer> item : original.getItemIDMappings()) {
+        assertEquals(original.dotProduct(user.getKey(), item.getKey()),
+                     mapped.dotProduct(user.getKey(), item.getKey()), 0.0);
+      }
+    }
+    try {
+      mapped.dotProduct(789, 12);
+      fail();
+    } catch (NoSuchUserException nsue) {
+      // expected
+    }
+  }
+
+  @Test
+  public void persistedFactorizerKeepsUnchangedFile() throws Exception {
+    File storage = getTestTempFile("storage.mapped");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+    persistenceStrategy.maybePersist(createFactorization(0.0));
+    Factorizer factorizer = new PersistedFactorizer(persistenceStrategy);
+
+    Factorization first = factorizer.factorize();
+    assertSame(first, factorizer.factorize());
+
+    long lastModified = storage.lastModified();
+    new MappedFilePersistenceStrategy(storage).maybePersist(createFactorization(1.0));
+    // The file may be replaced within the resolution of modification times
+    assertTrue(storage.setLastModified(lastModified + 2000L));
+    Factorization second = factorizer.factorize();
+    assertNotSame(first, second);
+    assertEquals(1.7, second.getUserFeatures(1)[0], EPSILON);
+  }
+
+  @Test
+  public void reloadOnRefresh() throws Exception {
+    DataModel dataModel = getDataModel(new long[] { 1, 123, 456 },
+                                       new Double[][] { { 0.1 }, { 0.2, 0.3 }, { 0.4 } });
+    File storage = getTestTempFile("storage.mapped");
+    PersistenceStrategy persistenceStrategy = new MappedFilePersistenceStrategy(storage);
+    persistenceStrategy.maybePersist(createFactorization(0.0));
+
+    SVDRecommender recommender = new SVDRecommender(dataModel, new PersistedFactorizer(persistenceStrategy),
+        persistenceStrategy);
+    float before = recommender.estimatePreference(1, 12);
+    assertEquals(0.7 * 1.0 + 0.8 * 1.1 + 0.9 * 1.2, before, EPSILON);
+
+    // Another process replaces the stored factorization
+    new MappedFilePersistenceStrategy(storage).maybePersist(createFactorization(1.0));
+    recommender.refresh(null);
+    assertEquals(1.7 * 1.0 + 1.8 * 1.1 + 1.9 * 1.2, recommender.estimatePreference(1, 12), EPSILON);
+  }
+
+}
@@ -17,8 +17,11 @@
 
 package org.apache.mahout.cf.taste.impl.recommender.svd;
 
+import org.apache.mahout.cf.taste.common.Refreshable;
 import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
 import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.recommender.AllUnknownItemsCandidateItemsStrategy;
 import org.apache.mahout.cf.taste.model.DataModel;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
 import org.apache.mahout.cf.taste.recommender.CandidateItemsStrategy;
@@ -26,6 +29,7 @@ import org.apache.mahout.cf.taste.recommender.RecommendedItem;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import java.util.Collection;
 import java.util.List;
 
 public class SVDRecommenderTest extends TasteTestCase {
@@ -83,4 +87,40 @@ public class SVDRecommenderTest extends TasteTestCase {
 
     EasyMock.verify(dataModel, candidateItemsStrategy, factorizer, factorization);
   }
+
+  @Test
+  public void recommendWithItemIndex() throws Exception {
+    DataModel dataModel = getDataModel();
+    FastByIDMap<Integer> userIDMapping = new FastByIDMap<Integer>();
+    for (int i = 0; i < 4; i++) {
+      userIDMapping.put(i + 1, i);
+    }
+    FastByIDMap<Integer> itemIDMapping = new FastByIDMap<Integer>();
+    for (int i = 0; i < 3; i++) {
+      itemIDMapping.put(i, i);
+    }
+    double[][] userFeatures = { { 0.4, 2 }, { 1, 1 }, { 0.5, 0.5 }, { 2, 0.1 } };
+    double[][] itemFeatures = { { 1, 0.3 }, { 0.1, 0.2 }, { 2, 0.6 } };
+    final Factorization factorization = new Factorization(userIDMapping, itemIDMapping, userFeatures, itemFeatures);
+    Factorizer factorizer = new Factorizer() {
+      @Override
+      public Factorization factorize() {
+        return factorization;
+      }
+      @Override
+      public void refresh(Collection<Refreshable> alreadyRefreshed) {
+      }
+    };
+
+    SVDRecommender exact = new SVDRecommender(dataModel, factorizer);
+    SVDRecommender approximate = new SVDRecommender(dataModel, factorizer,
+        new AllUnknownItemsCandidateItemsStrategy(), new NoPersistenceStrategy(), 3);
+    for (long userID = 1; userID <= 4; userID++) {
+      assertEquals(exact.recommend(userID, 2), approximate.recommend(userID, 2));
+    }
+    List<RecommendedItem> recommendedItems = approximate.recommend(1L, 2);
+    assertEquals(1, recommendedItems.size());
+    assertEquals(2L, recommendedItems.get(0).getItemID());
+    assertEquals(2.0f, recommendedItems.get(0).getValue(), EPSILON);
+  }
 }
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.recommender.svd;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FullRunningAverage;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RunningAverage;
+import org.apache.mahout.cf.taste.impl.model.GenericDataModel;
+import org.apache.mahout.cf.taste.impl.model.GenericPreference;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class StratifiedSGDFactorizerTest extends TasteTestCase {
+
+  private static DataModel toyData() {
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+
+    userData.put(1L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(1L, 1L, 5.0f),
+        new GenericPreference(1L, 2L, 5.0f),
+        new GenericPreference(1L, 3L, 2.0f))));
+
+    userData.put(2L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(2L, 1L, 2.0f),
+        new GenericPreference(2L, 3L, 3.0f),
+        new GenericPreference(2L, 4L, 5.0f))));
+
+    userData.put(3L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(3L, 2L, 5.0f),
+        new GenericPreference(3L, 4L, 3.0f))));
+
+    userData.put(4L, new GenericUserPreferenceArray(Arrays.asList(new GenericPreference(4L, 1L, 3.0f),
+        new GenericPreference(4L, 4L, 5.0f))));
+    return new GenericDataModel(userData);
+  }
+
+  private static DataModel syntheticData(int numUsers, int numItems, int rank) {
+    Random random = RandomUtils.getRandom();
+    double[][] users = new double[numUsers][rank];
+    double[][] items = new double[numItems][rank];
+    for (double[] user : users) {
+      for (int k = 0; k < rank; k++) {
+        user[k] = random.nextDouble();
+      }
+    }
+    for (double[] item : items) {
+      for (int k = 0; k < rank; k++) {
+        item[k] = random.nextDouble();
+      }
+    }
+    FastByIDMap<PreferenceArray> userData = new FastByIDMap<PreferenceArray>();
+    for (int user = 0; user < numUsers; user++) {
+      int numPrefs = 0;
+      long[] itemIDs = new long[numItems];
+      float[] values = new float[numItems];
+      for (int item = 0; item < numItems; item++) {
+        if (random.nextDouble() < 0.3) {
+          double rating = 0;
+          for (int k = 0; k < rank; k++) {
+            rating += users[user][k] * items[item][k];
+          }
+          itemIDs[numPrefs] = item;
+          values[numPrefs] = (float) rating;
+          numPrefs++;
+        }
+      }
+      PreferenceArray prefs = new GenericUserPreferenceArray(numPrefs);
+      prefs.setUserID(0, user);
+      for (int i = 0; i < numPrefs; i++) {
+        prefs.setItemID(i, itemIDs[i]);
+        prefs.setValue(i, values[i]);
+      }
+      userData.put(user, prefs);
+    }
+    return new GenericDataModel(userData);
+  }
+
+  private static double rmse(DataModel dataModel, Factorization factorization) throws Exception {
+    RunningAverage average = new FullRunningAverage();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      for (Preference pref : dataModel.getPreferencesFromUser(userID)) {
+        double err = pref.getValue() - factorization.dotProduct(userID, pref.getItemID());
+        average.addDatum(err * err);
+      }
+    }
+    return Math.sqrt(average.getAverage());
+  }
+
+  @Test
+  public void testBlockedRatings() throws Exception {
+    DataModel dataModel = syntheticData(50, 30, 2);
+    StratifiedSGDFactorizer factorizer = new StratifiedSGDFactorizer(dataModel, 2, 0.01, 1);
+    int numBlocks = 4;
+    StratifiedSGDFactorizer.BlockedRatings ratings = factorizer.new BlockedRatings(numBlocks, 50, 30);
+
+    int numPrefs = 0;
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      numPrefs += dataModel.getPreferencesFromUser(userIDs.nextLong()).length();
+    }
+    assertEquals(numPrefs, ratings.size());
+
+    ratings.shuffle(0, ratings.size(), RandomUtils.getRandom());
+    // shuffling the whole array breaks the blocks, but must keep every rating intact
+    FastByIDMap<Integer> userIndices = new FastByIDMap<Integer>();
+    FastByIDMap<Integer> itemIndices = new FastByIDMap<Integer>();
+    userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      userIndices.put(factorizer.userIndex(userID), (int) userID);
+    }
+    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      itemIndices.put(factorizer.itemIndex(itemID), (int) itemID);
+    }
+    for (int i = 0; i < ratings.size(); i++) {
+      long userID = userIndices.get(ratings.userIndices[i]);
+      long itemID = itemIndices.get(ratings.itemIndices[i]);
+      assertEquals(dataModel.getPreferenceValue(userID, itemID), ratings.values[i], 0.0f);
+    }
+
+    ratings = factorizer.new BlockedRatings(numBlocks, 50, 30);
+    for (int block = 0; block < numBlocks * numBlocks; block++) {
+      for (int i = ratings.blockStarts[block]; i < ratings.blockStarts[block + 1]; i++) {
+        assertEquals(block / numBlocks, ratings.userIndices[i] * numBlocks / 50);
+        assertEquals(block % numBlocks, ratings.itemIndices[i] * numBlocks / 30);
+      }
+    }
+  }
+
+  @Test
+  public void testFactorizerWithToyData() throws Exception {
+    DataModel dataModel = toyData();
+    Factorizer factorizer = new StratifiedSGDFactorizer(dataModel, 3, 0.01, 1000, 0.01, 1, 0, 0, 0.5, 0.1, 2);
+    assertTrue(rmse(dataModel, factorizer.factorize()) < 0.2);
+  }
+
+  @Test
+  public void testFactorizerWithSyntheticData() throws Exception {
+    DataModel dataModel = syntheticData(400, 200, 5);
+    Factorizer factorizer = new StratifiedSGDFactorizer(dataModel, 5, 0.000000001, 60, 0.01, 1, 0, 0, 0.5, 0.1, 4);
+    assertTrue(rmse(dataModel, factorizer.factorize()) < 0.2);
+  }
+
+  @Test
+  public void testRecommenderWithSyntheticData() throws Exception {
+    DataModel dataModel = syntheticData(200, 100, 3);
+    SVDRecommender recommender =
+        new SVDRecommender(dataModel, new StratifiedSGDFactorizer(dataModel, 3, 0.000000001, 60));
+    RunningAverage average = new FullRunningAverage();
+    LongPrimitiveIterator userIDs = dataModel.getUserIDs();
+    while (userIDs.hasNext()) {
+      long userID = userIDs.nextLong();
+      for (Preference pref : dataModel.getPreferencesFromUser(userID)) {
+        double err = pref.getValue() - recommender.estimatePreference(userID, pref.getItemID());
+        average.addDatum(err * err);
+      }
+    }
+    assertTrue(Math.sqrt(average.getAverage()) < 0.2);
+  }
+
+}
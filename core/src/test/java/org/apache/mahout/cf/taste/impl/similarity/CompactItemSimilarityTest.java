@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.impl.similarity.file.FileItemItemSimilarityIterable;
+import org.apache.mahout.cf.taste.impl.similarity.precompute.FileSimilarItemsWriter;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+/** <p>Tests {@link CompactItemSimilarity}.</p> */
+public final class CompactItemSimilarityTest extends TasteTestCase {
+
+  @Test
+  public void testSimilarities() {
+    List<GenericItemSimilarity.ItemItemSimilarity> similarities = Lists.newArrayList();
+    similarities.add(new GenericItemSimilarity.ItemItemSimilarity(1, 2, 0.5));
+    similarities.add(new GenericItemSimilarity.ItemItemSimilarity(1, 3, 0.6));
+    similarities.add(new GenericItemSimilarity.ItemItemSimilarity(3, 1, 0.6));
+    similarities.add(new GenericItemSimilarity.ItemItemSimilarity(4, 4, 0.3));
+    similarities.add(new GenericItemSimilarity.ItemItemSimilarity(-7, 2, -0.2));
+    CompactItemSimilarity similarity = new CompactItemSimilarity(similarities);
+
+    assertEquals(4, similarity.numItems());
+    assertEquals(0.5, similarity.itemSimilarity(1, 2), EPSILON);
+    assertEquals(0.5, similarity.itemSimilarity(2, 1), EPSILON);
+    assertEquals(0.6, similarity.itemSimilarity(3, 1), EPSILON);
+    assertEquals(-0.2, similarity.itemSimilarity(2, -7), EPSILON);
+    assertEquals(1.0, similarity.itemSimilarity(4, 4), EPSILON);
+    assertTrue(Double.isNaN(similarity.itemSimilarity(2, 3)));
+    assertTrue(Double.isNaN(similarity.itemSimilarity(5, 1)));
+
+    double[] values = similarity.itemSimilarities(1, new long[] {2, 1, 4, 3});
+    assertEquals(0.5, values[0], EPSILON);
+    assertEquals(1.0, values[1], EPSILON);
+    assertTrue(Double.isNaN(values[2]));
+    assertEquals(0.6, values[3], EPSILON);
+
+    long[] similarItemIDs = similarity.allSimilarItemIDs(2);
+    Arrays.sort(similarItemIDs);
+    assertArrayEquals(new long[] {-7, 1}, similarItemIDs);
+    assertEquals(0, similarity.allSimilarItemIDs(4).length);
+  }
+
+  @Test
+  public void testSameAsGenericItemSimilarity() throws Exception {
+    Random random = RandomUtils.getRandom();
+    List<GenericItemSimilarity.ItemItemSimilarity> similarities = Lists.newArrayList();
+    for (long itemID1 = 0; itemID1 < 200; itemID1++) {
+      for (long itemID2 = itemID1 + 1; itemID2 < 200; itemID2++) {
+        if (random.nextInt(10) == 0) {
+          // float precision, which is what CompactItemSimilarity keeps
+          double value = (float) (2.0 * random.nextDouble() - 1.0);
+          similarities.add(new GenericItemSimilarity.ItemItemSimilarity(itemID1 * 31, itemID2 * 31, value));
+        }
+      }
+    }
+    GenericItemSimilarity expected = new GenericItemSimilarity(similarities);
+    CompactItemSimilarity compact = new CompactItemSimilarity(similarities);
+    assertSameSimilarities(expected, compact);
+
+    File file = getTestTempFile("similarities.bin");
+    compact.write(file);
+    assertSameSimilarities(expected, CompactItemSimilarity.map(file));
+  }
+
+  @Test
+  public void testFromSimilarItemsFile() throws Exception {
+    File file = getTestTempFile("similarities.txt");
+    FileSimilarItemsWriter writer = new FileSimilarItemsWriter(file);
+    writer.open();
+    try {
+      writer.add(new SimilarItems(1L, Arrays.<RecommendedItem>asList(
+          new GenericRecommendedItem(5L, 0.125f), new GenericRecommendedItem(7L, 0.5f))));
+      writer.add(new SimilarItems(5L, Arrays.<RecommendedItem>asList(new GenericRecommendedItem(1L, 0.125f))));
+    } finally {
+      writer.close();
+    }
+
+    ItemSimilarity similarity = new CompactItemSimilarity(new FileItemItemSimilarityIterable(file));
+    assertEquals(0.125, similarity.itemSimilarity(5L, 1L), EPSILON);
+    assertEquals(0.5, similarity.itemSimilarity(7L, 1L), EPSILON);
+    assertTrue(Double.isNaN(similarity.itemSimilarity(5L, 7L)));
+    assertEquals(2, similarity.allSimilarItemIDs(1L).length);
+  }
+
+  private static void assertSameSimilarities(ItemSimilarity expected, ItemSimilarity actual) throws Exception {
+    long[] itemIDs = new long[210];
+    for (int i = 0; i < itemIDs.length; i++) {
+      itemIDs[i] = i * 31L;
+    }
+    for (long itemID : itemIDs) {
+      double[] expectedValues = expected.itemSimilarities(itemID, itemIDs);
+      double[] actualValues = actual.itemSimilarities(itemID, itemIDs);
+      for (int i = 0; i < itemIDs.length; i++) {
+        assertEquals(expectedValues[i], actualValues[i], 0.0);
+        assertEquals(expectedValues[i], actual.itemSimilarity(itemID, itemIDs[i]), 0.0);
+      }
+      long[] expectedIDs = expected.allSimilarItemIDs(itemID);
+      long[] actualIDs = actual.allSimilarItemIDs(itemID);
+      Arrays.sort(expectedIDs);
+      Arrays.sort(actualIDs);
+      assertArrayEquals(expectedIDs, actualIDs);
+    }
+  }
+
+}
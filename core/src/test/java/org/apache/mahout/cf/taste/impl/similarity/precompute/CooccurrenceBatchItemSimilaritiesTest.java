@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.precompute;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.TanimotoCoefficientSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.ItemBasedRecommender;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItem;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItemsWriter;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class CooccurrenceBatchItemSimilaritiesTest extends TasteTestCase {
+
+  private static final int SIMILAR_ITEMS_PER_ITEM = 6;
+
+  @Test
+  public void testLogLikelihoodSameAsRecommender() throws Exception {
+    DataModel dataModel = randomBooleanDataModel();
+    assertSameAsRecommender(dataModel, new LogLikelihoodSimilarity(dataModel),
+        CooccurrenceBatchItemSimilarities.Measure.LOG_LIKELIHOOD);
+  }
+
+  @Test
+  public void testTanimotoSameAsRecommender() throws Exception {
+    DataModel dataModel = randomBooleanDataModel();
+    assertSameAsRecommender(dataModel, new TanimotoCoefficientSimilarity(dataModel),
+        CooccurrenceBatchItemSimilarities.Measure.TANIMOTO);
+  }
+
+  @Test
+  public void testSampling() throws Exception {
+    DataModel dataModel = randomBooleanDataModel();
+    ItemBasedRecommender recommender =
+        new GenericItemBasedRecommender(dataModel, new LogLikelihoodSimilarity(dataModel));
+    CollectingWriter writer = new CollectingWriter();
+    new CooccurrenceBatchItemSimilarities(recommender, SIMILAR_ITEMS_PER_ITEM,
+        CooccurrenceBatchItemSimilarities.Measure.LOG_LIKELIHOOD, 3, 10).computeItemSimilarities(2, 1, writer);
+    assertEquals(dataModel.getNumItems(), writer.similarItems.size());
+    for (SimilarItems similarItems : writer.similarItems.values()) {
+      assertTrue(similarItems.numSimilarItems() <= SIMILAR_ITEMS_PER_ITEM);
+    }
+  }
+
+  private static void assertSameAsRecommender(DataModel dataModel, ItemSimilarity similarity,
+      CooccurrenceBatchItemSimilarities.Measure measure) throws Exception {
+    ItemBasedRecommender recommender = new GenericItemBasedRecommender(dataModel, similarity);
+    CollectingWriter writer = new CollectingWriter();
+    int numSimilarities = new CooccurrenceBatchItemSimilarities(recommender, SIMILAR_ITEMS_PER_ITEM, measure,
+        Integer.MAX_VALUE, Integer.MAX_VALUE).computeItemSimilarities(3, 1, writer);
+
+    int expectedNumSimilarities = 0;
+    for (long itemID = 0; itemID < dataModel.getNumItems(); itemID++) {
+      List<RecommendedItem> expected = recommender.mostSimilarItems(itemID, SIMILAR_ITEMS_PER_ITEM);
+      expectedNumSimilarities += expected.size();
+      List<SimilarItem> actual = Lists.newArrayList(writer.similarItems.get(itemID).getSimilarItems());
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        // Ties may be broken differently, so compare values, and check the items' similarities
+        assertEquals(expected.get(i).getValue(), actual.get(i).getSimilarity(), EPSILON);
+        assertEquals(similarity.itemSimilarity(itemID, actual.get(i).getItemID()), actual.get(i).getSimilarity(),
+            EPSILON);
+      }
+    }
+    assertEquals(expectedNumSimilarities, numSimilarities);
+  }
+
+  private static DataModel randomBooleanDataModel() {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 80;
+    int numItems = 40;
+    long[] userIDs = new long[numUsers];
+    boolean[][] prefs = new boolean[numUsers][numItems];
+    for (int user = 0; user < numUsers; user++) {
+      userIDs[user] = user;
+      for (int item = 0; item < numItems; item++) {
+        prefs[user][item] = random.nextDouble() < 3.0 / (item + 4);
+      }
+    }
+    return getBooleanDataModel(userIDs, prefs);
+  }
+
+  private static final class CollectingWriter implements SimilarItemsWriter {
+
+    private final FastByIDMap<SimilarItems> similarItems = new FastByIDMap<SimilarItems>();
+
+    @Override
+    public void open() {
+      similarItems.clear();
+    }
+
+    @Override
+    public void add(SimilarItems items) {
+      similarItems.put(items.getItemID(), items);
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do
+    }
+
+    @Override
+    public void abort() {
+      // Nothing to do
+    }
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.similarity.precompute;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.recommender.GenericItemBasedRecommender;
+import org.apache.mahout.cf.taste.impl.similarity.LogLikelihoodSimilarity;
+import org.apache.mahout.cf.taste.impl.similarity.file.FileItemSimilarity;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.recommender.ItemBasedRecommender;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.similarity.ItemSimilarity;
+import org.apache.mahout.cf.taste.similarity.precompute.SimilarItems;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+public final class MultithreadedBatchItemSimilaritiesTest extends TasteTestCase {
+
+  private static final int SIMILAR_ITEMS_PER_ITEM = 5;
+
+  @Test
+  public void testBinaryOutputMatchesRecommender() throws Exception {
+    DataModel dataModel = skewedDataModel();
+    ItemBasedRecommender recommender =
+        new GenericItemBasedRecommender(dataModel, new LogLikelihoodSimilarity(dataModel));
+
+    File file = getTestTempFile("similarities.bin");
+    int numSimilarities = new MultithreadedBatchItemSimilarities(recommender, SIMILAR_ITEMS_PER_ITEM, 7)
+        .computeItemSimilarities(3, 1, new BinarySimilarItemsWriter(file));
+
+    ItemSimilarity similarity = new FileItemSimilarity(file);
+    int expectedNumSimilarities = 0;
+    LongPrimitiveIterator itemIDs = dataModel.getItemIDs();
+    while (itemIDs.hasNext()) {
+      long itemID = itemIDs.nextLong();
+      List<RecommendedItem> similarItems = recommender.mostSimilarItems(itemID, SIMILAR_ITEMS_PER_ITEM);
+      expectedNumSimilarities += similarItems.size();
+      for (RecommendedItem similarItem : similarItems) {
+        assertEquals(similarItem.getValue(), similarity.itemSimilarity(itemID, similarItem.getItemID()), EPSILON);
+      }
+    }
+    assertEquals(expectedNumSimilarities, numSimilarities);
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void testFailureLeavesFileUntouched() throws Exception {
+    DataModel dataModel = skewedDataModel();
+    ItemBasedRecommender recommender =
+        new GenericItemBasedRecommender(dataModel, new LogLikelihoodSimilarity(dataModel));
+    File file = getTestTempFile("similarities.bin");
+    new MultithreadedBatchItemSimilarities(recommender, SIMILAR_ITEMS_PER_ITEM, 7)
+        .computeItemSimilarities(2, 1, new BinarySimilarItemsWriter(file));
+    long length = file.length();
+    long lastModified = file.lastModified();
+
+    BinarySimilarItemsWriter failingWriter = new BinarySimilarItemsWriter(file) {
+      private int numAdded;
+      @Override
+      public void add(SimilarItems similarItems) throws IOException {
+        if (++numAdded > 10) {
+          throw new IOException("failing on purpose");
+        }
+        super.add(similarItems);
+      }
+    };
+    try {
+      new MultithreadedBatchItemSimilarities(recommender, SIMILAR_ITEMS_PER_ITEM, 7)
+          .computeItemSimilarities(2, 1, failingWriter);
+      fail();
+    } catch (IOException ioe) {
+      // good
+    }
+    assertEquals(length, file.length());
+    assertEquals(lastModified, file.lastModified());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+    assertNotNull(new FileItemSimilarity(file).allSimilarItemIDs(0));
+  }
+
+  private static DataModel skewedDataModel() {
+    Random random = RandomUtils.getRandom();
+    int numUsers = 100;
+    int numItems = 60;
+    long[] userIDs = new long[numUsers];
+    boolean[][] prefs = new boolean[numUsers][numItems];
+    for (int user = 0; user < numUsers; user++) {
+      userIDs[user] = user;
+      for (int item = 0; item < numItems; item++) {
+        // skewed, so that low item IDs are much more popular
+        prefs[user][item] = random.nextDouble() < 2.0 / (item + 3);
+      }
+    }
+    return getBooleanDataModel(userIDs, prefs);
+  }
+
+}
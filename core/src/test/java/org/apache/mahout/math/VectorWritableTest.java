@@ -88,7 +88,48 @@ public final class VectorWritableTest extends RandomizedTest {
     doTestVectorWritableEquals(v);
   }
 
-  private static void doTestVectorWritableEquals(Vector v) throws IOException {
+  @Test
+  @Repeat(iterations = 20)
+  public void testFloatDenseVectorWritable() throws Exception {
+    Vector v = new FloatDenseVector(MAX_VECTOR_SIZE);
+    createRandom(v);
+    assertTrue(doTestVectorWritableEquals(v) instanceof FloatDenseVector);
+  }
+
+  @Test
+  @Repeat(iterations = 20)
+  public void testFloatSequentialAccessSparseVectorWritable() throws Exception {
+    Vector v = new FloatSequentialAccessSparseVector(MAX_VECTOR_SIZE);
+    createRandom(v);
+    assertTrue(doTestVectorWritableEquals(v) instanceof FloatSequentialAccessSparseVector);
+  }
+
+  @Test
+  @Repeat(iterations = 20)
+  public void testFloatRandomAccessSparseVectorWritable() throws Exception {
+    Vector v = new FloatRandomAccessSparseVector(MAX_VECTOR_SIZE);
+    createRandom(v);
+    assertTrue(doTestVectorWritableEquals(v) instanceof FloatRandomAccessSparseVector);
+  }
+
+  @Test
+  public void testSinglePrecision() throws Exception {
+    Vector v = new NamedVector(new FloatDenseVector(new float[] {0.1f, 0.0f, 3.0f}), "Victor");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(baos);
+    VectorWritable.writeVector(dos, v);
+    dos.close();
+    byte[] bytes = baos.toByteArray();
+    assertTrue((bytes[0] & VectorWritable.FLAG_SINGLE_PRECISION) != 0);
+    // flags, size, three floats, name
+    assertEquals(1 + 1 + 3 * 4 + 2 + 6, bytes.length);
+
+    Vector v2 = VectorWritable.readVector(new DataInputStream(new ByteArrayInputStream(bytes)));
+    assertTrue(((NamedVector) v2).getDelegate() instanceof FloatDenseVector);
+    assertEquals(v, v2);
+  }
+
+  private static Vector doTestVectorWritableEquals(Vector v) throws IOException {
     Writable vectorWritable = new VectorWritable(v);
     VectorWritable vectorWritable2 = new VectorWritable();
     writeAndRead(vectorWritable, vectorWritable2);
@@ -101,6 +142,7 @@ public final class VectorWritableTest extends RandomizedTest {
       assertEquals("Victor", nv.getName());
     }
     assertEquals(v, v2);
+    return v2;
   }
 
   private static void writeAndRead(Writable toWrite, Writable toRead) throws IOException {
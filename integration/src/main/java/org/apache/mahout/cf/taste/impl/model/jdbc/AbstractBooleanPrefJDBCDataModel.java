@@ -117,6 +117,7 @@ public abstract class AbstractBooleanPrefJDBCDataModel extends AbstractJDBCDataM
     } finally {
       IOUtils.quietClose(null, stmt, conn);
     }
+    firePreferencesChanged(userID);
   }
 
   @Override
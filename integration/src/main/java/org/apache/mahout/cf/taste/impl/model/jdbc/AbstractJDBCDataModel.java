@@ -42,9 +42,12 @@ import org.apache.mahout.cf.taste.impl.common.jdbc.ResultSetIterator;
 import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
 import org.apache.mahout.cf.taste.impl.model.GenericPreference;
 import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.PreferenceChangeSupport;
 import org.apache.mahout.cf.taste.model.JDBCDataModel;
 import org.apache.mahout.cf.taste.model.Preference;
 import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.apache.mahout.cf.taste.model.PreferenceChangeNotifier;
 import org.apache.mahout.common.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,7 +73,8 @@ import com.google.common.base.Preconditions;
  * to create a {@link DataSource} on top of your database whose {@link Connection}s are pooled.
  * </p>
  */
-public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent implements JDBCDataModel {
+public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent
+    implements JDBCDataModel, PreferenceChangeNotifier {
 
   private static final Logger log = LoggerFactory.getLogger(AbstractJDBCDataModel.class);
 
@@ -103,6 +107,7 @@ public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent implem
   private int cachedNumUsers;
   private int cachedNumItems;
   private final Cache<Long,Integer> itemPrefCounts;
+  private final PreferenceChangeSupport preferenceChangeSupport = new PreferenceChangeSupport();
   private float maxPreference;
   private float minPreference;
 
@@ -250,6 +255,11 @@ public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent implem
     return setPreferenceSQL;
   }
 
+  /** Lets models in this package which query through this one use the same fetch size */
+  int fetchSize() {
+    return getFetchSize();
+  }
+
   @Override
   public LongPrimitiveIterator getUserIDs() throws TasteException {
     log.debug("Retrieving all users...");
@@ -625,6 +635,7 @@ public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent implem
     } finally {
       IOUtils.quietClose(null, stmt, conn);
     }
+    firePreferencesChanged(userID);
   }
 
   @Override
@@ -650,6 +661,25 @@ public abstract class AbstractJDBCDataModel extends AbstractJDBCComponent implem
     } finally {
       IOUtils.quietClose(null, stmt, conn);
     }
+    firePreferencesChanged(userID);
+  }
+
+  @Override
+  public void addPreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.addListener(listener);
+  }
+
+  @Override
+  public void removePreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.removeListener(listener);
+  }
+
+  /**
+   * Notifies the {@link PreferenceChangeListener}s that the preferences of the user changed; subclasses which
+   * override {@link #setPreference(long, long, float)} or {@link #removePreference(long, long)} should call it.
+   */
+  protected void firePreferencesChanged(long userID) throws TasteException {
+    preferenceChangeSupport.firePreferencesChanged(userID);
   }
 
   @Override
@@ -0,0 +1,625 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.NoSuchItemException;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.impl.common.FastIDSet;
+import org.apache.mahout.cf.taste.impl.common.LongPrimitiveIterator;
+import org.apache.mahout.cf.taste.impl.common.RefreshHelper;
+import org.apache.mahout.cf.taste.impl.model.GenericItemPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.GenericUserPreferenceArray;
+import org.apache.mahout.cf.taste.impl.model.PreferenceChangeSupport;
+import org.apache.mahout.cf.taste.model.DataModel;
+import org.apache.mahout.cf.taste.model.Preference;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.apache.mahout.cf.taste.model.PreferenceChangeNotifier;
+import org.apache.mahout.common.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link DataModel} which reads preferences through an {@link AbstractJDBCDataModel}, but keeps the preferences of
+ * recently used users and items in memory, and loads them in batches. It sits between the delegate, which queries
+ * the database on every call, and {@link ReloadFromJDBCDataModel}, which must hold all data in memory.
+ * </p>
+ *
+ * <p>
+ * {@link #prefetchUsers(long...)} and {@link #prefetchItems(long...)} load the preferences of many users or items
+ * with one {@code IN (...)} query per {@link #getMaxBatchSize()} IDs; {@link #prefetchUser(long)} loads a user and
+ * then all the items the user has preferences for, which is what an item-based recommender reads. Users and items
+ * that are not cached are loaded one at a time when first needed, so an item-based recommender should call
+ * {@link #prefetchUser(long)} before recommending, or have it done on every miss with
+ * {@link #setPrefetchItemsOfUsers(boolean)}; otherwise each item it reads costs one query. Each cache holds at most
+ * a given number of entries; when full, it evicts one which has not been used recently. Users and items which don't
+ * exist are cached too.
+ * </p>
+ *
+ * <p>
+ * Preferences set or removed through this model evict the affected user and item, and are then reported to its
+ * {@link PreferenceChangeListener}s, which so read the new preferences. Changes made to the database by others are
+ * found by {@link #refresh(Collection)}: given a column holding the time each row was last modified, it evicts the
+ * users and items of rows modified since the last refresh; otherwise it empties the caches. Rows deleted by others
+ * leave no trace in the table and stay cached until evicted; so may rows whose modification time is no later than
+ * that of the last change seen, if they were committed after it was seen.
+ * </p>
+ *
+ * <p>
+ * The number of users and items, the lists of all IDs and preference times are read from the delegate.
+ * </p>
+ */
+public final class CachingJDBCDataModel implements DataModel, PreferenceChangeNotifier {
+
+  private static final Logger log = LoggerFactory.getLogger(CachingJDBCDataModel.class);
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+  private final AbstractJDBCDataModel delegate;
+  private final String timestampColumn;
+  private final FastByIDMap<PreferenceArray> userCache;
+  private final FastByIDMap<PreferenceArray> itemCache;
+  private final String selectColumns;
+  private final String changedSinceSQL;
+  private final RefreshHelper refreshHelper;
+  private final PreferenceChangeSupport preferenceChangeSupport = new PreferenceChangeSupport();
+  // Loads in progress, guarded by the lock of the corresponding cache
+  private final List<PendingLoad> pendingUserLoads;
+  private final List<PendingLoad> pendingItemLoads;
+  private Object lastModified;
+  private int maxBatchSize;
+  private boolean prefetchItemsOfUsers;
+
+  /**
+   * Caches at most the given number of users and items and empties the caches on refresh.
+   */
+  public CachingJDBCDataModel(AbstractJDBCDataModel delegate, int maxCachedUsers, int maxCachedItems)
+    throws TasteException {
+    this(delegate, maxCachedUsers, maxCachedItems, null);
+  }
+
+  /**
+   * @param timestampColumn column of the delegate's preference table holding the time each row was last modified,
+   *  of any type which increases with time, such as a {@code TIMESTAMP} or a {@code BIGINT}; or {@code null}
+   * @throws TasteException if the latest modification time can't be read
+   */
+  public CachingJDBCDataModel(AbstractJDBCDataModel delegate, int maxCachedUsers, int maxCachedItems,
+                              String timestampColumn) throws TasteException {
+    Preconditions.checkArgument(delegate != null, "delegate is null");
+    Preconditions.checkArgument(maxCachedUsers >= 1, "maxCachedUsers must be at least 1");
+    Preconditions.checkArgument(maxCachedItems >= 1, "maxCachedItems must be at least 1");
+    this.delegate = delegate;
+    this.timestampColumn = timestampColumn;
+    userCache = new FastByIDMap<PreferenceArray>(Math.min(maxCachedUsers, 1024), maxCachedUsers);
+    itemCache = new FastByIDMap<PreferenceArray>(Math.min(maxCachedItems, 1024), maxCachedItems);
+    pendingUserLoads = Lists.newArrayList();
+    pendingItemLoads = Lists.newArrayList();
+    maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    // Columns in the order buildPreference() expects them
+    selectColumns = delegate.getUserIDColumn() + ", " + delegate.getItemIDColumn()
+        + (delegate.hasPreferenceValues() ? ", " + delegate.getPreferenceColumn() : "");
+    changedSinceSQL = timestampColumn == null ? null
+        : "SELECT " + delegate.getUserIDColumn() + ", " + delegate.getItemIDColumn() + ", " + timestampColumn
+          + " FROM " + delegate.getPreferenceTable() + " WHERE " + timestampColumn + " > ?";
+
+    refreshHelper = new RefreshHelper(new Callable<Void>() {
+      @Override
+      public Void call() throws TasteException {
+        invalidateChanged();
+        return null;
+      }
+    });
+    refreshHelper.addDependency(delegate);
+    if (timestampColumn != null) {
+      lastModified = queryLastModified();
+    }
+  }
+
+  public AbstractJDBCDataModel getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * @return maximum number of IDs in the {@code IN (...)} list of one query
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Some databases limit the number of values in an {@code IN (...)} list, or the number of parameters of a
+   * statement; Oracle allows at most 1000. The default is 500.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    Preconditions.checkArgument(maxBatchSize >= 1, "maxBatchSize must be at least 1");
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * @return whether loading a user which is not cached also loads all the items the user has preferences for
+   */
+  public boolean isPrefetchItemsOfUsers() {
+    return prefetchItemsOfUsers;
+  }
+
+  /**
+   * If set, {@link #getPreferencesFromUser(long)} and {@link #getItemIDsFromUser(long)} behave like
+   * {@link #prefetchUser(long)} when the user is not cached. This suits item-based recommenders, which go on to
+   * read all those items, but not user-based ones, which read the preferences of many users. Off by default.
+   */
+  public void setPrefetchItemsOfUsers(boolean prefetchItemsOfUsers) {
+    this.prefetchItemsOfUsers = prefetchItemsOfUsers;
+  }
+
+  /**
+   * Loads the preferences of those of the given users which are not cached yet.
+   */
+  public void prefetchUsers(long... userIDs) throws TasteException {
+    load(userIDs, true);
+  }
+
+  /**
+   * Loads the preferences of those of the given items which are not cached yet.
+   */
+  public void prefetchItems(long... itemIDs) throws TasteException {
+    load(itemIDs, false);
+  }
+
+  /**
+   * Loads the preferences of a user, and of all items the user has a preference for.
+   */
+  public void prefetchUser(long userID) throws TasteException {
+    PreferenceArray prefs = cachedOrLoad(userID, true);
+    prefetchItems(prefs.getIDs());
+  }
+
+  // Delegated methods:
+
+  @Override
+  public LongPrimitiveIterator getUserIDs() throws TasteException {
+    return delegate.getUserIDs();
+  }
+
+  @Override
+  public PreferenceArray getPreferencesFromUser(long userID) throws TasteException {
+    PreferenceArray prefs;
+    synchronized (userCache) {
+      prefs = userCache.get(userID);
+    }
+    if (prefs == null) {
+      prefs = load(new long[] {userID}, true).get(userID);
+      if (prefetchItemsOfUsers) {
+        prefetchItems(prefs.getIDs());
+      }
+    }
+    if (prefs.length() == 0) {
+      throw new NoSuchUserException(userID);
+    }
+    return prefs;
+  }
+
+  @Override
+  public FastIDSet getItemIDsFromUser(long userID) throws TasteException {
+    PreferenceArray prefs = getPreferencesFromUser(userID);
+    int size = prefs.length();
+    FastIDSet result = new FastIDSet(size);
+    for (int i = 0; i < size; i++) {
+      result.add(prefs.getItemID(i));
+    }
+    return result;
+  }
+
+  @Override
+  public Float getPreferenceValue(long userID, long itemID) throws TasteException {
+    PreferenceArray itemPrefs;
+    synchronized (itemCache) {
+      itemPrefs = itemCache.get(itemID);
+    }
+    // Prefer whichever is cached, which is usually the item while computing item-item similarities
+    if (itemPrefs != null) {
+      return valueOf(itemPrefs, userID, true);
+    }
+    return valueOf(cachedOrLoad(userID, true), itemID, false);
+  }
+
+  private static Float valueOf(PreferenceArray prefs, long id, boolean byUser) {
+    int size = prefs.length();
+    for (int i = 0; i < size; i++) {
+      if ((byUser ? prefs.getUserID(i) : prefs.getItemID(i)) == id) {
+        return prefs.getValue(i);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Long getPreferenceTime(long userID, long itemID) throws TasteException {
+    return delegate.getPreferenceTime(userID, itemID);
+  }
+
+  @Override
+  public LongPrimitiveIterator getItemIDs() throws TasteException {
+    return delegate.getItemIDs();
+  }
+
+  @Override
+  public PreferenceArray getPreferencesForItem(long itemID) throws TasteException {
+    PreferenceArray prefs = cachedOrLoad(itemID, false);
+    if (prefs.length() == 0) {
+      throw new NoSuchItemException(itemID);
+    }
+    return prefs;
+  }
+
+  @Override
+  public int getNumItems() throws TasteException {
+    return delegate.getNumItems();
+  }
+
+  @Override
+  public int getNumUsers() throws TasteException {
+    return delegate.getNumUsers();
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID) throws TasteException {
+    return cachedOrLoad(itemID, false).length();
+  }
+
+  @Override
+  public int getNumUsersWithPreferenceFor(long itemID1, long itemID2) throws TasteException {
+    PreferenceArray prefs1 = cachedOrLoad(itemID1, false);
+    PreferenceArray prefs2 = cachedOrLoad(itemID2, false);
+    if (prefs1.length() > prefs2.length()) {
+      PreferenceArray swap = prefs1;
+      prefs1 = prefs2;
+      prefs2 = swap;
+    }
+    if (prefs1.length() == 0) {
+      return 0;
+    }
+    FastIDSet userIDs = new FastIDSet(prefs1.length());
+    for (int i = 0; i < prefs1.length(); i++) {
+      userIDs.add(prefs1.getUserID(i));
+    }
+    int count = 0;
+    for (int i = 0; i < prefs2.length(); i++) {
+      if (userIDs.contains(prefs2.getUserID(i))) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void setPreference(long userID, long itemID, float value) throws TasteException {
+    delegate.setPreference(userID, itemID, value);
+    evict(userID, itemID);
+    preferenceChangeSupport.firePreferencesChanged(userID);
+  }
+
+  @Override
+  public void removePreference(long userID, long itemID) throws TasteException {
+    delegate.removePreference(userID, itemID);
+    evict(userID, itemID);
+    preferenceChangeSupport.firePreferencesChanged(userID);
+  }
+
+  @Override
+  public void addPreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.addListener(listener);
+  }
+
+  @Override
+  public void removePreferenceChangeListener(PreferenceChangeListener listener) {
+    preferenceChangeSupport.removeListener(listener);
+  }
+
+  @Override
+  public boolean hasPreferenceValues() {
+    return delegate.hasPreferenceValues();
+  }
+
+  @Override
+  public float getMaxPreference() {
+    return delegate.getMaxPreference();
+  }
+
+  @Override
+  public float getMinPreference() {
+    return delegate.getMinPreference();
+  }
+
+  @Override
+  public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    refreshHelper.refresh(alreadyRefreshed);
+  }
+
+  private void evict(long userID, long itemID) {
+    synchronized (userCache) {
+      userCache.remove(userID);
+      markChanged(pendingUserLoads, userID);
+    }
+    synchronized (itemCache) {
+      itemCache.remove(itemID);
+      markChanged(pendingItemLoads, itemID);
+    }
+  }
+
+  /**
+   * Keeps loads in progress from caching what they read of a user or item which just changed. Must be called
+   * while holding the lock of the cache of the loads.
+   */
+  private static void markChanged(List<PendingLoad> pendingLoads, long id) {
+    for (PendingLoad pendingLoad : pendingLoads) {
+      if (pendingLoad.ids.contains(id)) {
+        pendingLoad.changedIDs.add(id);
+      }
+    }
+  }
+
+  /**
+   * Keeps loads in progress from caching anything. Must be called while holding the lock of the cache of the loads.
+   */
+  private static void markAllChanged(List<PendingLoad> pendingLoads) {
+    for (PendingLoad pendingLoad : pendingLoads) {
+      pendingLoad.allChanged = true;
+    }
+  }
+
+  private PreferenceArray cachedOrLoad(long id, boolean users) throws TasteException {
+    FastByIDMap<PreferenceArray> cache = users ? userCache : itemCache;
+    PreferenceArray prefs;
+    synchronized (cache) {
+      prefs = cache.get(id);
+    }
+    if (prefs == null) {
+      prefs = load(new long[] {id}, users).get(id);
+    }
+    return prefs;
+  }
+
+  /**
+   * Loads the preferences of the users or items which are not cached and caches them.
+   *
+   * @return preferences of all the given users or items, whether they were cached already or not
+   */
+  private FastByIDMap<PreferenceArray> load(long[] ids, boolean users) throws TasteException {
+    FastByIDMap<PreferenceArray> cache = users ? userCache : itemCache;
+    List<PendingLoad> pendingLoads = users ? pendingUserLoads : pendingItemLoads;
+    FastByIDMap<PreferenceArray> loaded = new FastByIDMap<PreferenceArray>(ids.length);
+    long[] missing = new long[ids.length];
+    int numMissing = 0;
+    PendingLoad pendingLoad = new PendingLoad();
+    synchronized (cache) {
+      for (long id : ids) {
+        PreferenceArray cached = cache.get(id);
+        if (cached == null) {
+          missing[numMissing++] = id;
+          pendingLoad.ids.add(id);
+        } else {
+          loaded.put(id, cached);
+        }
+      }
+      if (numMissing == 0) {
+        return loaded;
+      }
+      pendingLoads.add(pendingLoad);
+    }
+    try {
+      Arrays.sort(missing, 0, numMissing);
+      for (int from = 0; from < numMissing; from += maxBatchSize) {
+        int to = Math.min(numMissing, from + maxBatchSize);
+        loadBatch(missing, from, to, users, loaded);
+      }
+    } finally {
+      synchronized (cache) {
+        pendingLoads.remove(pendingLoad);
+      }
+    }
+    synchronized (cache) {
+      // Rows read before a concurrent change may be stale; hand them to this caller but don't cache them
+      if (!pendingLoad.allChanged) {
+        for (int i = 0; i < numMissing; i++) {
+          if (!pendingLoad.changedIDs.contains(missing[i])) {
+            cache.put(missing[i], loaded.get(missing[i]));
+          }
+        }
+      }
+    }
+    return loaded;
+  }
+
+  private void loadBatch(long[] ids, int from, int to, boolean users, FastByIDMap<PreferenceArray> loaded)
+    throws TasteException {
+    StringBuilder sql = new StringBuilder();
+    sql.append("SELECT ").append(selectColumns).append(" FROM ").append(delegate.getPreferenceTable())
+        .append(" WHERE ").append(users ? delegate.getUserIDColumn() : delegate.getItemIDColumn()).append(" IN (");
+    for (int i = from; i < to; i++) {
+      sql.append(i == from ? "?" : ",?");
+    }
+    // Rows of each user in order of item, and of each item in order of user, as preference arrays must be
+    sql.append(") ORDER BY ").append(users ? delegate.getUserIDColumn() : delegate.getItemIDColumn())
+        .append(", ").append(users ? delegate.getItemIDColumn() : delegate.getUserIDColumn());
+
+    FastByIDMap<List<Preference>> prefsByID = new FastByIDMap<List<Preference>>(to - from);
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      conn = delegate.getDataSource().getConnection();
+      stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchDirection(ResultSet.FETCH_FORWARD);
+      stmt.setFetchSize(delegate.fetchSize());
+      for (int i = from; i < to; i++) {
+        delegate.setLongParameter(stmt, i - from + 1, ids[i]);
+      }
+
+      log.debug("Executing SQL query: {}", sql);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        Preference pref = delegate.buildPreference(rs);
+        long id = users ? pref.getUserID() : pref.getItemID();
+        List<Preference> prefs = prefsByID.get(id);
+        if (prefs == null) {
+          prefs = Lists.newArrayList();
+          prefsByID.put(id, prefs);
+        }
+        prefs.add(pref);
+      }
+    } catch (SQLException sqle) {
+      log.warn("Exception while loading preferences", sqle);
+      throw new TasteException(sqle);
+    } finally {
+      IOUtils.quietClose(rs, stmt, conn);
+    }
+
+    for (int i = from; i < to; i++) {
+      List<Preference> prefs = prefsByID.get(ids[i]);
+      PreferenceArray array;
+      if (prefs == null) {
+        array = users ? new GenericUserPreferenceArray(0) : new GenericItemPreferenceArray(0);
+      } else {
+        array = users ? new GenericUserPreferenceArray(prefs) : new GenericItemPreferenceArray(prefs);
+      }
+      loaded.put(ids[i], array);
+    }
+  }
+
+  /**
+   * Evicts the users and items of rows modified since the last call, or everything if there is no timestamp
+   * column or the table was empty.
+   */
+  private void invalidateChanged() throws TasteException {
+    if (changedSinceSQL == null || lastModified == null) {
+      synchronized (userCache) {
+        userCache.clear();
+        markAllChanged(pendingUserLoads);
+      }
+      synchronized (itemCache) {
+        itemCache.clear();
+        markAllChanged(pendingItemLoads);
+      }
+      if (changedSinceSQL != null) {
+        lastModified = queryLastModified();
+      }
+      return;
+    }
+
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    FastIDSet changedUserIDs = new FastIDSet();
+    FastIDSet changedItemIDs = new FastIDSet();
+    Object newLastModified = lastModified;
+    try {
+      conn = delegate.getDataSource().getConnection();
+      stmt = conn.prepareStatement(changedSinceSQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchDirection(ResultSet.FETCH_FORWARD);
+      stmt.setFetchSize(delegate.fetchSize());
+      stmt.setObject(1, lastModified);
+
+      log.debug("Executing SQL query: {}", changedSinceSQL);
+      rs = stmt.executeQuery();
+      while (rs.next()) {
+        changedUserIDs.add(delegate.getLongColumn(rs, 1));
+        changedItemIDs.add(delegate.getLongColumn(rs, 2));
+        Object modified = rs.getObject(3);
+        if (modified != null && isLater(modified, newLastModified)) {
+          newLastModified = modified;
+        }
+      }
+    } catch (SQLException sqle) {
+      log.warn("Exception while polling for changes", sqle);
+      throw new TasteException(sqle);
+    } finally {
+      IOUtils.quietClose(rs, stmt, conn);
+    }
+
+    log.info("Evicting {} users and {} items modified since {}",
+        changedUserIDs.size(), changedItemIDs.size(), lastModified);
+    synchronized (userCache) {
+      LongPrimitiveIterator it = changedUserIDs.iterator();
+      while (it.hasNext()) {
+        long userID = it.nextLong();
+        userCache.remove(userID);
+        markChanged(pendingUserLoads, userID);
+      }
+    }
+    synchronized (itemCache) {
+      LongPrimitiveIterator it = changedItemIDs.iterator();
+      while (it.hasNext()) {
+        long itemID = it.nextLong();
+        itemCache.remove(itemID);
+        markChanged(pendingItemLoads, itemID);
+      }
+    }
+    lastModified = newLastModified;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static boolean isLater(Object modified, Object than) {
+    return ((Comparable<Object>) modified).compareTo(than) > 0;
+  }
+
+  /**
+   * IDs being loaded by one call, and those of them which changed meanwhile.
+   */
+  private static final class PendingLoad {
+
+    private final FastIDSet ids = new FastIDSet();
+    private final FastIDSet changedIDs = new FastIDSet();
+    private boolean allChanged;
+  }
+
+  private Object queryLastModified() throws TasteException {
+    String sql = "SELECT MAX(" + timestampColumn + ") FROM " + delegate.getPreferenceTable();
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      conn = delegate.getDataSource().getConnection();
+      stmt = conn.prepareStatement(sql);
+      log.debug("Executing SQL query: {}", sql);
+      rs = stmt.executeQuery();
+      return rs.next() ? rs.getObject(1) : null;
+    } catch (SQLException sqle) {
+      log.warn("Exception while polling for changes", sqle);
+      throw new TasteException(sqle);
+    } finally {
+      IOUtils.quietClose(rs, stmt, conn);
+    }
+  }
+
+}
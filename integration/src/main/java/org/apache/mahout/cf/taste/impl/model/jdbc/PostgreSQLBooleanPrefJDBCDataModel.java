@@ -141,6 +141,7 @@ public class PostgreSQLBooleanPrefJDBCDataModel extends SQL92BooleanPrefJDBCData
     } finally {
       IOUtils.quietClose(null, stmt, conn);
     }
+    firePreferencesChanged(userID);
   }
 
 }
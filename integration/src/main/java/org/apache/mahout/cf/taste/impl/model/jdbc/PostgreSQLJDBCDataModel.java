@@ -167,6 +167,7 @@ public class PostgreSQLJDBCDataModel extends SQL92JDBCDataModel {
       IOUtils.quietClose(null, stmt2, null);
       IOUtils.quietClose(null, null, conn);
     }
+    firePreferencesChanged(userID);
   }
   
 }
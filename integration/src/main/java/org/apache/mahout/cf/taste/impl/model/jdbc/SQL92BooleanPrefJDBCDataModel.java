@@ -216,6 +216,7 @@ public class SQL92BooleanPrefJDBCDataModel extends AbstractBooleanPrefJDBCDataMo
       IOUtils.quietClose(stmt2);
       IOUtils.quietClose(conn);
     }
+    firePreferencesChanged(userID);
   }
 
 }
@@ -243,6 +243,7 @@ public class SQL92JDBCDataModel extends AbstractJDBCDataModel {
       IOUtils.quietClose(stmt3);
       IOUtils.quietClose(conn);
     }
+    firePreferencesChanged(userID);
   }
 
 }
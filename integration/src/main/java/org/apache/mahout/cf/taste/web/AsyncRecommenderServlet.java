@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A servlet which returns recommendations like {@link RecommenderServlet}, but without holding a container
+ * thread while they are computed. Requests are handed to a {@link RecommendationDispatcher}, which computes
+ * recommendations on its own threads, computes them once for identical concurrent requests, and answers each
+ * request by its deadline. The response is written by the dispatcher's thread once recommendations are ready.</p>
+ *
+ * <p>The servlet accepts the {@code userID}, {@code howMany} and {@code format} parameters of
+ * {@link RecommenderServlet}; {@code debug} is not supported. When the deadline passed or the server was too busy
+ * to compute recommendations, the response holds the last recommendations computed for the user, or none, and has
+ * the header {@code X-Recommendations-Complete: false}.</p>
+ *
+ * <p>A request with the parameter {@code metrics} returns, as text, the number of requests queued and in
+ * progress, and counts of requests coalesced, expired, rejected and failed.</p>
+ *
+ * <p>This servlet requires Servlet 3.0 and must be declared with {@code <async-supported>true</async-supported>}
+ * in {@code web.xml}. Like {@link RecommenderServlet} it requires the {@code init-param} "recommender-class".
+ * These optional ones configure the dispatcher:</p>
+ *
+ * <ul>
+ * <li><em>threads</em>: number of recommendations computed at the same time; defaults to the number of
+ * processors</li>
+ * <li><em>queue-size</em>: number of requests which may wait for a thread; defaults to 1000</li>
+ * <li><em>deadline-ms</em>: time after which a request is answered with what is at hand; defaults to 1000</li>
+ * <li><em>cached-users</em>: number of users whose last recommendations are kept; defaults to 10000</li>
+ * </ul>
+ */
+public final class AsyncRecommenderServlet extends HttpServlet {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncRecommenderServlet.class);
+
+  private static final int DEFAULT_HOW_MANY = 20;
+  private static final int DEFAULT_QUEUE_SIZE = 1000;
+  private static final long DEFAULT_DEADLINE_MS = 1000L;
+  private static final int DEFAULT_CACHED_USERS = 10000;
+  static final String COMPLETE_HEADER = "X-Recommendations-Complete";
+
+  private RecommendationDispatcher dispatcher;
+  private long deadlineMS;
+
+  @Override
+  public void init(ServletConfig config) throws ServletException {
+    super.init(config);
+    String recommenderClassName = config.getInitParameter("recommender-class");
+    if (recommenderClassName == null) {
+      throw new ServletException("Servlet init-param \"recommender-class\" is not defined");
+    }
+    RecommenderSingleton.initializeIfNeeded(recommenderClassName);
+    int numThreads = intParameter(config, "threads", Runtime.getRuntime().availableProcessors());
+    int queueSize = intParameter(config, "queue-size", DEFAULT_QUEUE_SIZE);
+    int cachedUsers = intParameter(config, "cached-users", DEFAULT_CACHED_USERS);
+    String deadlineString = config.getInitParameter("deadline-ms");
+    deadlineMS = deadlineString == null ? DEFAULT_DEADLINE_MS : Long.parseLong(deadlineString);
+    dispatcher = new RecommendationDispatcher(RecommenderSingleton.getInstance().getRecommender(),
+        numThreads, queueSize, cachedUsers);
+  }
+
+  private static int intParameter(ServletConfig config, String name, int defaultValue) {
+    String value = config.getInitParameter(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  @Override
+  public void destroy() {
+    if (dispatcher != null) {
+      dispatcher.close();
+    }
+    super.destroy();
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request,
+                    HttpServletResponse response) throws ServletException {
+
+    if (request.getParameter("metrics") != null) {
+      try {
+        writeMetrics(response);
+      } catch (IOException ioe) {
+        throw new ServletException(ioe);
+      }
+      return;
+    }
+
+    String userIDString = request.getParameter("userID");
+    if (userIDString == null) {
+      throw new ServletException("userID was not specified");
+    }
+    long userID = Long.parseLong(userIDString);
+    String howManyString = request.getParameter("howMany");
+    int howMany = howManyString == null ? DEFAULT_HOW_MANY : Integer.parseInt(howManyString);
+    String format = request.getParameter("format");
+    if (format == null) {
+      format = "text";
+    }
+    if (!"text".equals(format) && !"xml".equals(format) && !"json".equals(format)) {
+      throw new ServletException("Bad format parameter: " + format);
+    }
+
+    AsyncContext asyncContext = request.startAsync();
+    // The dispatcher answers by the deadline; this only guards against it being shut down
+    asyncContext.setTimeout(2 * deadlineMS + 1000L);
+    dispatcher.recommend(userID, howMany, deadlineMS, new ResponseCallback(asyncContext, userID, format));
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request,
+                     HttpServletResponse response) throws ServletException {
+    doGet(request, response);
+  }
+
+  private void writeMetrics(HttpServletResponse response) throws IOException {
+    response.setContentType("text/plain");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    PrintWriter writer = response.getWriter();
+    writeMetric(writer, "queueDepth", dispatcher.getQueueDepth());
+    writeMetric(writer, "inFlight", dispatcher.getInFlight());
+    writeMetric(writer, "active", dispatcher.getActiveCount());
+    writeMetric(writer, "requests", dispatcher.getNumRequests());
+    writeMetric(writer, "coalesced", dispatcher.getNumCoalesced());
+    writeMetric(writer, "expired", dispatcher.getNumExpired());
+    writeMetric(writer, "rejected", dispatcher.getNumRejected());
+    writeMetric(writer, "failed", dispatcher.getNumFailed());
+  }
+
+  private static void writeMetric(PrintWriter writer, String name, long value) {
+    writer.print(name);
+    writer.print('\t');
+    writer.println(value);
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncRecommenderServlet[dispatcher:" + dispatcher + ']';
+  }
+
+  private static final class ResponseCallback implements RecommendationDispatcher.Callback {
+
+    private final AsyncContext asyncContext;
+    private final long userID;
+    private final String format;
+
+    private ResponseCallback(AsyncContext asyncContext, long userID, String format) {
+      this.asyncContext = asyncContext;
+      this.userID = userID;
+      this.format = format;
+    }
+
+    @Override
+    public void recommended(List<RecommendedItem> items, boolean complete) {
+      try {
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        response.setHeader(COMPLETE_HEADER, String.valueOf(complete));
+        if ("xml".equals(format)) {
+          RecommenderServlet.writeXML(response, items);
+        } else if ("json".equals(format)) {
+          RecommenderServlet.writeJSON(response, items);
+        } else {
+          response.setContentType("text/plain");
+          response.setCharacterEncoding("UTF-8");
+          response.setHeader("Cache-Control", "no-cache");
+          RecommenderServlet.writeRecommendations(items, response.getWriter());
+        }
+      } catch (IOException ioe) {
+        log.warn("Unable to write recommendations for user {}", userID, ioe);
+      } finally {
+        asyncContext.complete();
+      }
+    }
+
+    @Override
+    public void failed(Exception e) {
+      try {
+        ((HttpServletResponse) asyncContext.getResponse()).sendError(
+            HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.toString());
+      } catch (IOException ioe) {
+        log.warn("Unable to send error for user {}", userID, ioe);
+      } finally {
+        asyncContext.complete();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,425 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.common.FastByIDMap;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.apache.mahout.cf.taste.recommender.Recommender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Computes recommendations on a pool of its own threads and hands them to a {@link Callback}, so that the caller,
+ * typically a servlet container thread, need not wait for them. Used by {@link AsyncRecommenderServlet}.
+ * </p>
+ *
+ * <p>
+ * Requests for the same user and number of items which arrive while one is being computed, or waits to be,
+ * share its result rather than computing it again. Each request has a deadline; when it passes first, the request
+ * is answered with the most recent recommendations computed for the user, cut to the number requested, or with
+ * none, and marked incomplete. The computation continues, and its result is kept for later requests. Requests which
+ * find the queue of computations full are answered in the same way at once.
+ * </p>
+ *
+ * <p>
+ * Counters and the current queue depth and number of computations in progress are available for monitoring.
+ * </p>
+ */
+public final class RecommendationDispatcher implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(RecommendationDispatcher.class);
+
+  /**
+   * Receives the answer to a request, exactly once, on one of the dispatcher's threads.
+   */
+  public interface Callback {
+
+    /**
+     * @param items recommendations, best first
+     * @param complete false if these are not the result of this request, but older or no recommendations given
+     *  because the deadline passed or the queue was full
+     */
+    void recommended(List<RecommendedItem> items, boolean complete);
+
+    /**
+     * @param e a {@link TasteException} or {@link RuntimeException} thrown while computing recommendations
+     */
+    void failed(Exception e);
+  }
+
+  private final Recommender recommender;
+  private final ThreadPoolExecutor executor;
+  private final ScheduledExecutorService timer;
+  private final ConcurrentMap<Key,Computation> inFlight;
+  private final FastByIDMap<List<RecommendedItem>> lastRecommended;
+  private final AtomicLong numRequests;
+  private final AtomicLong numCoalesced;
+  private final AtomicLong numExpired;
+  private final AtomicLong numRejected;
+  private final AtomicLong numFailed;
+
+  /**
+   * @param numThreads number of recommendations computed at the same time
+   * @param maxQueued number of computations which may wait for a thread
+   * @param maxCachedUsers number of users whose last recommendations are kept to answer late requests
+   */
+  public RecommendationDispatcher(Recommender recommender, int numThreads, int maxQueued, int maxCachedUsers) {
+    Preconditions.checkArgument(recommender != null, "recommender is null");
+    Preconditions.checkArgument(numThreads >= 1, "numThreads must be at least 1");
+    Preconditions.checkArgument(maxQueued >= 1, "maxQueued must be at least 1");
+    Preconditions.checkArgument(maxCachedUsers >= 1, "maxCachedUsers must be at least 1");
+    this.recommender = recommender;
+    executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(maxQueued));
+    timer = Executors.newSingleThreadScheduledExecutor();
+    inFlight = new ConcurrentHashMap<Key,Computation>();
+    lastRecommended = new FastByIDMap<List<RecommendedItem>>(Math.min(maxCachedUsers, 1024), maxCachedUsers);
+    numRequests = new AtomicLong();
+    numCoalesced = new AtomicLong();
+    numExpired = new AtomicLong();
+    numRejected = new AtomicLong();
+    numFailed = new AtomicLong();
+  }
+
+  public Recommender getRecommender() {
+    return recommender;
+  }
+
+  /**
+   * Requests recommendations, and returns at once.
+   *
+   * @param deadlineMS time after which the request is answered with whatever recommendations are at hand
+   */
+  public void recommend(long userID, int howMany, long deadlineMS, Callback callback) {
+    Preconditions.checkArgument(howMany >= 1, "howMany must be at least 1");
+    Preconditions.checkArgument(deadlineMS >= 0L, "deadlineMS must not be negative");
+    Preconditions.checkArgument(callback != null, "callback is null");
+    numRequests.incrementAndGet();
+
+    Key key = new Key(userID, howMany);
+    final Waiter waiter = new Waiter(userID, howMany, callback);
+    Computation computation;
+    while (true) {
+      computation = inFlight.get(key);
+      if (computation == null) {
+        Computation newComputation = new Computation(key);
+        newComputation.add(waiter);
+        if (inFlight.putIfAbsent(key, newComputation) == null) {
+          computation = newComputation;
+          break;
+        }
+      } else if (computation.add(waiter)) {
+        numCoalesced.incrementAndGet();
+        computation = null;
+        break;
+      }
+      // Lost a race with another request, or the computation just finished: try again
+    }
+
+    if (computation != null) {
+      try {
+        executor.execute(computation);
+      } catch (RejectedExecutionException ree) {
+        inFlight.remove(key, computation);
+        computation.abandon();
+        return;
+      }
+    }
+
+    if (!waiter.isAnswered()) {
+      waiter.timeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          waiter.answerLate(numExpired);
+        }
+      }, deadlineMS, TimeUnit.MILLISECONDS);
+      if (waiter.isAnswered()) {
+        waiter.timeout.cancel(false);
+      }
+    }
+  }
+
+  private List<RecommendedItem> lastRecommended(long userID, int howMany) {
+    List<RecommendedItem> items;
+    synchronized (lastRecommended) {
+      items = lastRecommended.get(userID);
+    }
+    if (items == null) {
+      return Collections.emptyList();
+    }
+    return items.size() <= howMany ? items : items.subList(0, howMany);
+  }
+
+  private void remember(long userID, List<RecommendedItem> items) {
+    synchronized (lastRecommended) {
+      List<RecommendedItem> previous = lastRecommended.get(userID);
+      // Keep the longer list, which also answers requests for fewer items; but not if it is empty
+      if (previous == null || previous.isEmpty() || items.size() >= previous.size()) {
+        lastRecommended.put(userID, items);
+      }
+    }
+  }
+
+  /**
+   * @return number of computations waiting for a thread
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return number of computations waiting for a thread or running
+   */
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+  /**
+   * @return number of threads computing recommendations right now
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  public long getNumRequests() {
+    return numRequests.get();
+  }
+
+  /**
+   * @return number of requests which shared the computation of an earlier one
+   */
+  public long getNumCoalesced() {
+    return numCoalesced.get();
+  }
+
+  /**
+   * @return number of requests answered incompletely because their deadline passed
+   */
+  public long getNumExpired() {
+    return numExpired.get();
+  }
+
+  /**
+   * @return number of requests answered incompletely because the queue was full
+   */
+  public long getNumRejected() {
+    return numRejected.get();
+  }
+
+  /**
+   * @return number of computations which threw an exception
+   */
+  public long getNumFailed() {
+    return numFailed.get();
+  }
+
+  /**
+   * Stops the threads of this dispatcher. Requests which have not been answered yet never will be.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    timer.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "RecommendationDispatcher[recommender:" + recommender + ']';
+  }
+
+  private static final class Key {
+
+    private final long userID;
+    private final int howMany;
+
+    private Key(long userID, int howMany) {
+      this.userID = userID;
+      this.howMany = howMany;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return userID == other.userID && howMany == other.howMany;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (int) (userID ^ (userID >>> 32)) + howMany;
+    }
+  }
+
+  /**
+   * One request, which is answered by the first of its computation and its deadline.
+   */
+  private final class Waiter {
+
+    private final long userID;
+    private final int howMany;
+    private final Callback callback;
+    private final AtomicBoolean answered;
+    private volatile ScheduledFuture<?> timeout;
+
+    private Waiter(long userID, int howMany, Callback callback) {
+      this.userID = userID;
+      this.howMany = howMany;
+      this.callback = callback;
+      answered = new AtomicBoolean();
+    }
+
+    boolean isAnswered() {
+      return answered.get();
+    }
+
+    void answer(List<RecommendedItem> items) {
+      if (answered.compareAndSet(false, true)) {
+        cancelTimeout();
+        try {
+          callback.recommended(items, true);
+        } catch (RuntimeException re) {
+          log.warn("Exception in callback", re);
+        }
+      }
+    }
+
+    /**
+     * Answers with the last recommendations computed for the user, unless already answered.
+     *
+     * @param reason counted if this answered the request
+     */
+    void answerLate(AtomicLong reason) {
+      if (answered.compareAndSet(false, true)) {
+        cancelTimeout();
+        reason.incrementAndGet();
+        try {
+          callback.recommended(lastRecommended(userID, howMany), false);
+        } catch (RuntimeException re) {
+          log.warn("Exception in callback", re);
+        }
+      }
+    }
+
+    void fail(Exception e) {
+      if (answered.compareAndSet(false, true)) {
+        cancelTimeout();
+        try {
+          callback.failed(e);
+        } catch (RuntimeException re) {
+          log.warn("Exception in callback", re);
+        }
+      }
+    }
+
+    private void cancelTimeout() {
+      ScheduledFuture<?> theTimeout = timeout;
+      if (theTimeout != null) {
+        theTimeout.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Computes recommendations for a user once, for all requests which join it before it finishes.
+   */
+  private final class Computation implements Runnable {
+
+    private final Key key;
+    private final List<Waiter> waiters;
+    private boolean done;
+
+    private Computation(Key key) {
+      this.key = key;
+      waiters = Lists.newArrayListWithCapacity(1);
+    }
+
+    /**
+     * @return false if the computation has already finished, and can't take more requests
+     */
+    synchronized boolean add(Waiter waiter) {
+      if (done) {
+        return false;
+      }
+      waiters.add(waiter);
+      return true;
+    }
+
+    private synchronized List<Waiter> finish() {
+      done = true;
+      return waiters;
+    }
+
+    @Override
+    public void run() {
+      List<RecommendedItem> items = null;
+      Exception failure = null;
+      try {
+        items = recommender.recommend(key.userID, key.howMany);
+        remember(key.userID, items);
+      } catch (TasteException te) {
+        failure = te;
+      } catch (RuntimeException re) {
+        failure = re;
+      } finally {
+        inFlight.remove(key, this);
+      }
+      if (failure != null) {
+        numFailed.incrementAndGet();
+        log.warn("Unable to recommend for user {}", key.userID, failure);
+      }
+      for (Waiter waiter : finish()) {
+        if (failure == null) {
+          waiter.answer(items);
+        } else {
+          waiter.fail(failure);
+        }
+      }
+    }
+
+    /**
+     * Answers the requests with what is at hand, when the computation can't be queued.
+     */
+    void abandon() {
+      for (Waiter waiter : finish()) {
+        waiter.answerLate(numRejected);
+      }
+    }
+  }
+
+}
@@ -110,7 +110,7 @@ public final class RecommenderServlet extends HttpServlet {
 
   }
 
-  private static void writeXML(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
+  static void writeXML(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
     response.setContentType("application/xml");
     response.setCharacterEncoding("UTF-8");
     response.setHeader("Cache-Control", "no-cache");
@@ -126,7 +126,7 @@ public final class RecommenderServlet extends HttpServlet {
     writer.println("</recommendedItems>");
   }
 
-  private static void writeJSON(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
+  static void writeJSON(HttpServletResponse response, Iterable<RecommendedItem> items) throws IOException {
     response.setContentType("application/json");
     response.setCharacterEncoding("UTF-8");
     response.setHeader("Cache-Control", "no-cache");
@@ -163,7 +163,7 @@ public final class RecommenderServlet extends HttpServlet {
     }
   }
 
-  private static void writeRecommendations(Iterable<RecommendedItem> items, PrintWriter writer) {
+  static void writeRecommendations(Iterable<RecommendedItem> items, PrintWriter writer) {
     for (RecommendedItem recommendedItem : items) {
       writer.print(recommendedItem.getValue());
       writer.print('\t');
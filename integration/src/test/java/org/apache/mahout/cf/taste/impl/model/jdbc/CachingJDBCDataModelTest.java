@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.impl.model.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.NoSuchUserException;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.model.PreferenceArray;
+import org.apache.mahout.cf.taste.model.PreferenceChangeListener;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class CachingJDBCDataModelTest extends TasteTestCase {
+
+  private CountingDataSource dataSource;
+  private SQL92JDBCDataModel delegate;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    dataSource = new CountingDataSource();
+    dataSource.setUrl("jdbc:hsqldb:mem:CachingJDBCDataModelTest");
+    dataSource.setUser("SA");
+    dataSource.setPassword("");
+    execute("CREATE TABLE taste_preferences (user_id BIGINT NOT NULL, item_id BIGINT NOT NULL, "
+            + "preference REAL NOT NULL, modified BIGINT DEFAULT 0 NOT NULL, PRIMARY KEY (user_id, item_id))");
+    // User u has preferences for items 10 + i for i < u
+    for (int user = 1; user <= 5; user++) {
+      for (int i = 0; i < user; i++) {
+        execute("INSERT INTO taste_preferences VALUES (" + user + ", " + (10 + i) + ", " + (user + i) + ", 1)");
+      }
+    }
+    delegate = new SQL92JDBCDataModel(dataSource, "taste_preferences", "user_id", "item_id", "preference",
+        "modified");
+    dataSource.connections.set(0);
+  }
+
+  @Override
+  @After
+  public void tearDown() throws Exception {
+    execute("DROP TABLE taste_preferences");
+    super.tearDown();
+  }
+
+  @Test
+  public void testPrefetchUsesOneQueryPerBatch() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    model.setMaxBatchSize(3);
+    dataSource.connections.set(0);
+    model.prefetchUsers(1L, 2L, 3L, 4L, 5L, 6L);
+    assertEquals(2, dataSource.connections.get());
+
+    PreferenceArray prefs = model.getPreferencesFromUser(4L);
+    assertEquals(4, prefs.length());
+    assertEquals(4L, prefs.getUserID(0));
+    assertEquals(5.0f, model.getPreferenceValue(3L, 12L), EPSILON);
+    assertNull(model.getPreferenceValue(3L, 13L));
+    assertEquals(3, model.getItemIDsFromUser(3L).size());
+    try {
+      model.getPreferencesFromUser(6L);
+      fail();
+    } catch (NoSuchUserException nsue) {
+      // good
+    }
+    assertEquals(2, dataSource.connections.get());
+  }
+
+  @Test
+  public void testPrefetchUser() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    model.prefetchUser(3L);
+    dataSource.connections.set(0);
+    assertEquals(5, model.getNumUsersWithPreferenceFor(10L));
+    assertEquals(4, model.getNumUsersWithPreferenceFor(11L));
+    assertEquals(3, model.getNumUsersWithPreferenceFor(11L, 12L));
+    assertEquals(5, model.getPreferencesForItem(10L).length());
+    assertEquals(0, dataSource.connections.get());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 2, 2);
+    model.prefetchUsers(1L, 2L, 3L, 4L, 5L);
+    for (long user = 1L; user <= 5L; user++) {
+      assertEquals(user, model.getPreferencesFromUser(user).length());
+    }
+  }
+
+  @Test
+  public void testRemovePreferenceEvicts() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    assertEquals(3, model.getPreferencesFromUser(3L).length());
+    assertEquals(5, model.getNumUsersWithPreferenceFor(10L));
+    model.removePreference(3L, 10L);
+    assertEquals(2, model.getPreferencesFromUser(3L).length());
+    assertEquals(4, model.getNumUsersWithPreferenceFor(10L));
+  }
+
+  @Test
+  public void testListenersSeeChanges() throws Exception {
+    final CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    assertEquals(3, model.getPreferencesFromUser(3L).length());
+    final List<Integer> numPrefsSeen = Lists.newArrayList();
+    model.addPreferenceChangeListener(new PreferenceChangeListener() {
+      @Override
+      public void preferencesChanged(long userID) throws TasteException {
+        assertEquals(3L, userID);
+        numPrefsSeen.add(model.getPreferencesFromUser(userID).length());
+      }
+    });
+    model.removePreference(3L, 10L);
+    model.removePreference(3L, 11L);
+    assertEquals(Arrays.asList(2, 1), numPrefsSeen);
+  }
+
+  @Test
+  public void testRefreshEvictsModified() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100, "modified");
+    model.prefetchUsers(1L, 2L, 3L);
+    execute("UPDATE taste_preferences SET preference = 100, modified = 2 WHERE user_id = 2 AND item_id = 10");
+    execute("INSERT INTO taste_preferences VALUES (6, 10, 1, 2)");
+    model.refresh(null);
+
+    dataSource.connections.set(0);
+    assertEquals(1.0f, model.getPreferenceValue(1L, 10L), EPSILON);
+    assertEquals(0, dataSource.connections.get());
+    assertEquals(100.0f, model.getPreferenceValue(2L, 10L), EPSILON);
+    assertEquals(1, model.getPreferencesFromUser(6L).length());
+    assertEquals(2, dataSource.connections.get());
+  }
+
+  @Test
+  public void testChangeDuringLoadIsNotCached() throws Exception {
+    final CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    // Remove a preference after the rows of user 3 were read, but before they are cached
+    dataSource.afterClose.set(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          model.removePreference(3L, 10L);
+        } catch (TasteException te) {
+          throw new IllegalStateException(te);
+        }
+      }
+    });
+    assertEquals(3, model.getPreferencesFromUser(3L).length());
+    assertEquals(2, model.getPreferencesFromUser(3L).length());
+  }
+
+  @Test
+  public void testChangeDuringLoadCachesOthers() throws Exception {
+    final CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    // A change to user 5 while users 3 and 4 are loaded keeps only user 5 from being cached
+    dataSource.afterClose.set(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          model.removePreference(5L, 10L);
+        } catch (TasteException te) {
+          throw new IllegalStateException(te);
+        }
+      }
+    });
+    model.prefetchUsers(3L, 4L);
+    dataSource.connections.set(0);
+    assertEquals(3, model.getPreferencesFromUser(3L).length());
+    assertEquals(4, model.getPreferencesFromUser(4L).length());
+    assertEquals(0, dataSource.connections.get());
+  }
+
+  @Test
+  public void testPreferencesAreSorted() throws Exception {
+    execute("INSERT INTO taste_preferences VALUES (1, 9, 1.0, 1)");
+    execute("INSERT INTO taste_preferences VALUES (0, 10, 1.0, 1)");
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    model.prefetchUsers(1L, 5L);
+    model.prefetchItems(10L, 11L);
+    for (long userID : new long[] {1L, 5L}) {
+      PreferenceArray prefs = model.getPreferencesFromUser(userID);
+      for (int i = 1; i < prefs.length(); i++) {
+        assertTrue(prefs.getItemID(i - 1) < prefs.getItemID(i));
+      }
+    }
+    for (long itemID : new long[] {10L, 11L}) {
+      PreferenceArray prefs = model.getPreferencesForItem(itemID);
+      for (int i = 1; i < prefs.length(); i++) {
+        assertTrue(prefs.getUserID(i - 1) < prefs.getUserID(i));
+      }
+    }
+  }
+
+  @Test
+  public void testPrefetchItemsOfUsers() throws Exception {
+    CachingJDBCDataModel model = new CachingJDBCDataModel(delegate, 100, 100);
+    model.setPrefetchItemsOfUsers(true);
+    assertEquals(3, model.getItemIDsFromUser(3L).size());
+    dataSource.connections.set(0);
+    assertEquals(5, model.getNumUsersWithPreferenceFor(10L));
+    assertEquals(3, model.getPreferencesForItem(12L).length());
+    assertEquals(0, dataSource.connections.get());
+  }
+
+  private void execute(String sql) throws SQLException {
+    Connection conn = dataSource.getConnection();
+    try {
+      Statement stmt = conn.createStatement();
+      try {
+        stmt.execute(sql);
+      } finally {
+        stmt.close();
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  private static final class CountingDataSource extends JDBCDataSource {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicReference<Runnable> afterClose = new AtomicReference<Runnable>();
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      connections.incrementAndGet();
+      final Connection conn = super.getConnection();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+          new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+              Object result;
+              try {
+                result = method.invoke(conn, args);
+              } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+              }
+              if ("close".equals(method.getName())) {
+                Runnable hook = afterClose.getAndSet(null);
+                if (hook != null) {
+                  hook.run();
+                }
+              }
+              return result;
+            }
+          });
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.cf.taste.web;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.cf.taste.common.Refreshable;
+import org.apache.mahout.cf.taste.common.TasteException;
+import org.apache.mahout.cf.taste.impl.TasteTestCase;
+import org.apache.mahout.cf.taste.impl.recommender.AbstractRecommender;
+import org.apache.mahout.cf.taste.impl.recommender.GenericRecommendedItem;
+import org.apache.mahout.cf.taste.recommender.IDRescorer;
+import org.apache.mahout.cf.taste.recommender.RecommendedItem;
+import org.junit.Test;
+
+public final class RecommendationDispatcherTest extends TasteTestCase {
+
+  @Test
+  public void testCoalesce() throws Exception {
+    BlockingRecommender recommender = new BlockingRecommender();
+    RecommendationDispatcher dispatcher = new RecommendationDispatcher(recommender, 2, 10, 10);
+    try {
+      List<CollectingCallback> callbacks = Lists.newArrayList();
+      for (int i = 0; i < 5; i++) {
+        CollectingCallback callback = new CollectingCallback();
+        callbacks.add(callback);
+        dispatcher.recommend(1L, 3, 10000L, callback);
+      }
+      assertEquals(1, dispatcher.getInFlight());
+      recommender.release.countDown();
+      for (CollectingCallback callback : callbacks) {
+        callback.await();
+        assertTrue(callback.complete);
+        assertEquals(3, callback.items.size());
+      }
+      assertEquals(1, recommender.calls.get());
+      assertEquals(5, dispatcher.getNumRequests());
+      assertEquals(4, dispatcher.getNumCoalesced());
+      assertEquals(0, dispatcher.getInFlight());
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    BlockingRecommender recommender = new BlockingRecommender();
+    RecommendationDispatcher dispatcher = new RecommendationDispatcher(recommender, 1, 10, 10);
+    try {
+      CollectingCallback first = new CollectingCallback();
+      dispatcher.recommend(1L, 5, 50L, first);
+      first.await();
+      assertFalse(first.complete);
+      assertTrue(first.items.isEmpty());
+      assertEquals(1, dispatcher.getNumExpired());
+
+      // Once computed, the result answers later requests for fewer items which expire
+      recommender.release.countDown();
+      CollectingCallback second = new CollectingCallback();
+      dispatcher.recommend(1L, 5, 10000L, second);
+      second.await();
+      assertTrue(second.complete);
+
+      recommender.release = new CountDownLatch(1);
+      CollectingCallback third = new CollectingCallback();
+      dispatcher.recommend(1L, 2, 50L, third);
+      third.await();
+      assertFalse(third.complete);
+      assertEquals(2, third.items.size());
+      assertEquals(second.items.get(0), third.items.get(0));
+      recommender.release.countDown();
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testRejected() throws Exception {
+    BlockingRecommender recommender = new BlockingRecommender();
+    RecommendationDispatcher dispatcher = new RecommendationDispatcher(recommender, 1, 1, 10);
+    try {
+      List<CollectingCallback> callbacks = Lists.newArrayList();
+      // One running, one queued, and the third rejected
+      for (long userID = 1L; userID <= 3L; userID++) {
+        CollectingCallback callback = new CollectingCallback();
+        callbacks.add(callback);
+        dispatcher.recommend(userID, 1, 10000L, callback);
+        if (userID == 1L) {
+          recommender.started.await();
+        }
+      }
+      callbacks.get(2).await();
+      assertFalse(callbacks.get(2).complete);
+      assertEquals(1, dispatcher.getNumRejected());
+      assertEquals(1, dispatcher.getQueueDepth());
+      recommender.release.countDown();
+      callbacks.get(0).await();
+      callbacks.get(1).await();
+      assertTrue(callbacks.get(1).complete);
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    BlockingRecommender recommender = new BlockingRecommender();
+    recommender.release.countDown();
+    RecommendationDispatcher dispatcher = new RecommendationDispatcher(recommender, 1, 1, 10);
+    try {
+      CollectingCallback callback = new CollectingCallback();
+      dispatcher.recommend(-1L, 1, 10000L, callback);
+      callback.await();
+      assertTrue(callback.failure instanceof TasteException);
+      assertEquals(1, dispatcher.getNumFailed());
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  /**
+   * Recommends items 1, 2, ... with decreasing values, once released; fails for negative user IDs.
+   */
+  private static final class BlockingRecommender extends AbstractRecommender {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile CountDownLatch release = new CountDownLatch(1);
+
+    private BlockingRecommender() {
+      super(TasteTestCase.getDataModel());
+    }
+
+    @Override
+    public List<RecommendedItem> recommend(long userID, int howMany, IDRescorer rescorer) throws TasteException {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ie) {
+        throw new TasteException(ie);
+      }
+      if (userID < 0) {
+        throw new TasteException("No such user");
+      }
+      List<RecommendedItem> items = Lists.newArrayList();
+      for (int i = 1; i <= howMany; i++) {
+        items.add(new GenericRecommendedItem(i, 1.0f / i));
+      }
+      return items;
+    }
+
+    @Override
+    public float estimatePreference(long userID, long itemID) {
+      return 0.0f;
+    }
+
+    @Override
+    public void refresh(Collection<Refreshable> alreadyRefreshed) {
+    }
+  }
+
+  private static final class CollectingCallback implements RecommendationDispatcher.Callback {
+
+    private final CountDownLatch answered = new CountDownLatch(1);
+    private List<RecommendedItem> items = Collections.emptyList();
+    private boolean complete;
+    private Exception failure;
+
+    @Override
+    public void recommended(List<RecommendedItem> items, boolean complete) {
+      this.items = items;
+      this.complete = complete;
+      answered.countDown();
+    }
+
+    @Override
+    public void failed(Exception e) {
+      failure = e;
+      answered.countDown();
+    }
+
+    void await() throws InterruptedException {
+      assertTrue(answered.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+}
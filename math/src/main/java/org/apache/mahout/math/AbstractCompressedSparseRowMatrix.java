@@ -0,0 +1,474 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.function.IntComparator;
+
+/**
+ * The structure shared by {@link CompressedSparseRowMatrix} and {@link FloatCompressedSparseRowMatrix}: row
+ * pointers and column indices, the split of products into blocks of rows, the transpose and the copy of another
+ * matrix. Subclasses only store the values of the non-zero elements.
+ */
+abstract class AbstractCompressedSparseRowMatrix extends AbstractMatrix {
+
+  /** Products with fewer non-zero elements are computed in the calling thread only */
+  static final int PARALLEL_THRESHOLD = 1 << 20;
+  /** Blocks of rows per thread, so that threads which finish early can help others */
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  private final int[] rowPointers;
+  private final int[] columnIndices;
+  private int numThreads = ParallelBlocks.NUM_PROCESSORS;
+  private AbstractCompressedSparseRowMatrix transpose;
+
+  AbstractCompressedSparseRowMatrix(int rows, int columns, int[] rowPointers, int[] columnIndices, int numValues) {
+    super(rows, columns);
+    Preconditions.checkArgument(rowPointers.length == rows + 1, "Need %s row pointers", rows + 1);
+    Preconditions.checkArgument(rowPointers[0] == 0 && rowPointers[rows] <= columnIndices.length
+        && columnIndices.length == numValues, "Inconsistent row pointers, columns and values");
+    this.rowPointers = rowPointers;
+    this.columnIndices = columnIndices;
+  }
+
+  /**
+   * @return value of the {@code k}th non-zero element
+   */
+  abstract double value(int k);
+
+  /**
+   * @return a matrix of the same kind with the given structure, whose {@code k}th value is the
+   *  {@code source[k]}th value of this matrix
+   */
+  abstract AbstractCompressedSparseRowMatrix gather(int rows, int columns, int[] rowPointers, int[] columnIndices,
+                                                    int[] source);
+
+  /**
+   * @return an empty sequential access vector to copy a row into
+   */
+  abstract Vector newRowVector(int cardinality, int numNonZeroElements);
+
+  /**
+   * Copies the non-zero elements of the rows of a matrix or other {@link VectorIterable}, reading it once, into
+   * the values held by {@code values}.
+   */
+  static <M extends AbstractCompressedSparseRowMatrix> M copyOf(VectorIterable source, ValueBuffer<M> values) {
+    int rows = source.numRows();
+    int[] sliceRows = new int[16];
+    int[] sliceStarts = new int[17];
+    int numSlices = 0;
+    boolean inOrder = true;
+    int[] columnIndices = new int[16];
+    values.resize(columnIndices.length);
+    int size = 0;
+    for (MatrixSlice slice : source) {
+      Vector vector = slice.vector();
+      if (size + vector.getNumNondefaultElements() > columnIndices.length) {
+        long capacity = Math.max(2L * columnIndices.length, (long) size + vector.getNumNondefaultElements());
+        Preconditions.checkArgument(capacity <= Integer.MAX_VALUE, "Too many non-zero elements");
+        columnIndices = Arrays.copyOf(columnIndices, (int) capacity);
+        values.resize((int) capacity);
+      }
+      int start = size;
+      for (Vector.Element element : vector.nonZeroes()) {
+        if (values.set(size, element.get())) {
+          columnIndices[size] = element.index();
+          size++;
+        }
+      }
+      if (!vector.isSequentialAccess()) {
+        sortByColumn(columnIndices, values, start, size);
+      }
+
+      if (numSlices == sliceRows.length) {
+        sliceRows = Arrays.copyOf(sliceRows, 2 * numSlices);
+        sliceStarts = Arrays.copyOf(sliceStarts, 2 * numSlices + 1);
+      }
+      int row = slice.index();
+      if (row < 0 || row >= rows) {
+        throw new IndexException(row, rows);
+      }
+      inOrder &= numSlices == 0 || sliceRows[numSlices - 1] < row;
+      sliceRows[numSlices] = row;
+      sliceStarts[numSlices] = start;
+      numSlices++;
+    }
+    sliceStarts[numSlices] = size;
+
+    int[] rowPointers = new int[rows + 1];
+    for (int i = 0; i < numSlices; i++) {
+      Preconditions.checkArgument(rowPointers[sliceRows[i] + 1] == 0, "Row %s appears twice", sliceRows[i]);
+      rowPointers[sliceRows[i] + 1] = sliceStarts[i + 1] - sliceStarts[i];
+    }
+    for (int row = 0; row < rows; row++) {
+      rowPointers[row + 1] += rowPointers[row];
+    }
+    if (inOrder) {
+      if (size < columnIndices.length) {
+        columnIndices = Arrays.copyOf(columnIndices, size);
+        values.resize(size);
+      }
+    } else {
+      int[] sourceIndices = new int[size];
+      for (int i = 0; i < numSlices; i++) {
+        int to = rowPointers[sliceRows[i]];
+        for (int from = sliceStarts[i]; from < sliceStarts[i + 1]; from++) {
+          sourceIndices[to++] = from;
+        }
+      }
+      int[] sortedColumnIndices = new int[size];
+      for (int k = 0; k < size; k++) {
+        sortedColumnIndices[k] = columnIndices[sourceIndices[k]];
+      }
+      columnIndices = sortedColumnIndices;
+      values.gather(sourceIndices);
+    }
+    return values.build(rows, source.numCols(), rowPointers, columnIndices);
+  }
+
+  private static void sortByColumn(final int[] columnIndices, final ValueBuffer<?> values, int from, int to) {
+    Sorting.quickSort(from, to, new IntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        return columnIndices[a] < columnIndices[b] ? -1 : columnIndices[a] > columnIndices[b] ? 1 : 0;
+      }
+    }, new Swapper() {
+      @Override
+      public void swap(int a, int b) {
+        int column = columnIndices[a];
+        columnIndices[a] = columnIndices[b];
+        columnIndices[b] = column;
+        values.swap(a, b);
+      }
+    });
+  }
+
+  /**
+   * @param numThreads most threads to use for a product, including the calling thread
+   */
+  public void setNumThreads(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "numThreads must be positive");
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * @return number of non-zero elements
+   */
+  public int getNumNonZeroElements() {
+    return rowPointers[rowSize()];
+  }
+
+  @Override
+  public double getQuick(int row, int column) {
+    int index = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], column);
+    return index < 0 ? 0.0 : value(index);
+  }
+
+  /**
+   * @throws UnsupportedOperationException always, as this matrix can't be changed
+   */
+  @Override
+  public void setQuick(int row, int column, double value) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be changed");
+  }
+
+  /**
+   * @throws UnsupportedOperationException always, as this matrix can't be changed
+   */
+  @Override
+  public Matrix assignColumn(int column, Vector other) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be changed");
+  }
+
+  /**
+   * @throws UnsupportedOperationException always, as this matrix can't be changed
+   */
+  @Override
+  public Matrix assignRow(int row, Vector other) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be changed");
+  }
+
+  @Override
+  public Matrix like() {
+    return like(rowSize(), columnSize());
+  }
+
+  @Override
+  public Matrix like(int rows, int columns) {
+    return new SparseRowMatrix(rows, columns);
+  }
+
+  /**
+   * @return a copy of the row, as this matrix can't be changed
+   */
+  @Override
+  public Vector viewRow(int row) {
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    Vector result = newRowVector(columnSize(), rowPointers[row + 1] - rowPointers[row]);
+    for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+      result.setQuick(columnIndices[k], value(k));
+    }
+    return result;
+  }
+
+  @Override
+  public int[] getNumNondefaultElements() {
+    int maxRowSize = 0;
+    for (int row = 0; row < rowSize(); row++) {
+      maxRowSize = Math.max(maxRowSize, rowPointers[row + 1] - rowPointers[row]);
+    }
+    return new int[] {rowSize(), maxRowSize};
+  }
+
+  @Override
+  public double zSum() {
+    double result = 0.0;
+    for (int k = 0; k < getNumNonZeroElements(); k++) {
+      result += value(k);
+    }
+    return result;
+  }
+
+  /**
+   * @return the transpose, computed on the first call and then shared, whose transpose in turn is this matrix
+   */
+  @Override
+  public synchronized Matrix transpose() {
+    if (transpose == null) {
+      int rows = rowSize();
+      int columns = columnSize();
+      int numNonZeroElements = getNumNonZeroElements();
+      int[] columnPointers = new int[columns + 1];
+      for (int k = 0; k < numNonZeroElements; k++) {
+        columnPointers[columnIndices[k] + 1]++;
+      }
+      for (int column = 0; column < columns; column++) {
+        columnPointers[column + 1] += columnPointers[column];
+      }
+      int[] rowIndices = new int[numNonZeroElements];
+      int[] source = new int[numNonZeroElements];
+      int[] next = Arrays.copyOf(columnPointers, columns);
+      // Rows are visited in order, so each column comes out sorted by row
+      for (int row = 0; row < rows; row++) {
+        for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+          int index = next[columnIndices[k]]++;
+          rowIndices[index] = row;
+          source[index] = k;
+        }
+      }
+      transpose = gather(columns, rows, columnPointers, rowIndices, source);
+      transpose.numThreads = numThreads;
+      transpose.transpose = this;
+    }
+    return transpose;
+  }
+
+  @Override
+  public Vector times(Vector v) {
+    if (columnSize() != v.size()) {
+      throw new CardinalityException(columnSize(), v.size());
+    }
+    final double[] x = toArray(v);
+    final double[] y = new double[rowSize()];
+    final int[] blockStarts = blockStarts();
+    ParallelBlocks.run(blockStarts.length - 1, effectiveNumThreads(), new StatelessWorkerFactory() {
+      @Override
+      public void process(int block) {
+        for (int row = blockStarts[block]; row < blockStarts[block + 1]; row++) {
+          y[row] = dot(row, x);
+        }
+      }
+    });
+    return new DenseVector(y, true);
+  }
+
+  /**
+   * Computes {@code this.transpose().times(this.times(v))} in one pass, each thread adding the rows of its blocks,
+   * scaled, into its own vector.
+   */
+  @Override
+  public Vector timesSquared(Vector v) {
+    if (columnSize() != v.size()) {
+      throw new CardinalityException(columnSize(), v.size());
+    }
+    final double[] x = toArray(v);
+    final int[] blockStarts = blockStarts();
+    List<PartialSum> partialSums = ParallelBlocks.run(blockStarts.length - 1, effectiveNumThreads(),
+        new ParallelBlocks.WorkerFactory<PartialSum>() {
+          @Override
+          public PartialSum newWorker() {
+            return new PartialSum(x, blockStarts);
+          }
+        });
+    Iterator<PartialSum> it = partialSums.iterator();
+    double[] result = it.hasNext() ? it.next().sum : new double[columnSize()];
+    while (it.hasNext()) {
+      double[] sum = it.next().sum;
+      for (int column = 0; column < result.length; column++) {
+        result[column] += sum[column];
+      }
+    }
+    return new DenseVector(result, true);
+  }
+
+  /**
+   * Multiplies by a matrix which {@link DenseMatrixMultiplication#isDense(Matrix)} directly, and by others as
+   * {@link AbstractMatrix} does.
+   */
+  @Override
+  public Matrix times(Matrix other) {
+    if (columnSize() != other.rowSize()) {
+      throw new CardinalityException(columnSize(), other.rowSize());
+    }
+    if (!DenseMatrixMultiplication.isDense(other)) {
+      return super.times(other);
+    }
+    final double[][] b = DenseMatrixMultiplication.rowsOf(other);
+    final int resultColumns = other.columnSize();
+    DenseMatrix result = new DenseMatrix(rowSize(), resultColumns);
+    final double[][] c = result.rows();
+    final int[] blockStarts = blockStarts();
+    int threads = (long) getNumNonZeroElements() * resultColumns < PARALLEL_THRESHOLD ? 1 : numThreads;
+    ParallelBlocks.run(blockStarts.length - 1, threads, new StatelessWorkerFactory() {
+      @Override
+      public void process(int block) {
+        for (int row = blockStarts[block]; row < blockStarts[block + 1]; row++) {
+          double[] resultRow = c[row];
+          for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+            double value = value(k);
+            double[] otherRow = b[columnIndices[k]];
+            for (int column = 0; column < resultColumns; column++) {
+              resultRow[column] += value * otherRow[column];
+            }
+          }
+        }
+      }
+    });
+    return result;
+  }
+
+  private double dot(int row, double[] x) {
+    double sum = 0.0;
+    for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+      sum += value(k) * x[columnIndices[k]];
+    }
+    return sum;
+  }
+
+  private static double[] toArray(Vector v) {
+    double[] result = new double[v.size()];
+    if (v.isDense()) {
+      for (int i = 0; i < result.length; i++) {
+        result[i] = v.getQuick(i);
+      }
+    } else {
+      for (Vector.Element element : v.nonZeroes()) {
+        result[element.index()] = element.get();
+      }
+    }
+    return result;
+  }
+
+  private int effectiveNumThreads() {
+    return getNumNonZeroElements() < PARALLEL_THRESHOLD ? 1 : numThreads;
+  }
+
+  /**
+   * @return first row of each block, and then the number of rows; blocks have about as many non-zero elements each
+   */
+  private int[] blockStarts() {
+    int rows = rowSize();
+    int numBlocks = numThreads == 1 ? 1 : Math.max(1, Math.min(rows, BLOCKS_PER_THREAD * numThreads));
+    int[] blockStarts = new int[numBlocks + 1];
+    long numNonZeroElements = rowPointers[rows];
+    for (int block = 1; block < numBlocks; block++) {
+      int target = (int) (numNonZeroElements * block / numBlocks);
+      int index = Arrays.binarySearch(rowPointers, 0, rows + 1, target);
+      int start = index >= 0 ? index : -index - 1;
+      blockStarts[block] = Math.min(rows, Math.max(blockStarts[block - 1], start));
+    }
+    blockStarts[numBlocks] = rows;
+    return blockStarts;
+  }
+
+  /**
+   * The values of a matrix being copied by {@link #copyOf(VectorIterable, ValueBuffer)}.
+   */
+  abstract static class ValueBuffer<M extends AbstractCompressedSparseRowMatrix> {
+
+    /**
+     * Changes the capacity, keeping the values which fit.
+     */
+    abstract void resize(int capacity);
+
+    /**
+     * Stores a value, as it will be held by the matrix.
+     *
+     * @return false if the value is zero once stored, and should be skipped
+     */
+    abstract boolean set(int index, double value);
+
+    abstract void swap(int a, int b);
+
+    /**
+     * Replaces the values by a copy whose {@code k}th value is the {@code source[k]}th of the current ones.
+     */
+    abstract void gather(int[] source);
+
+    abstract M build(int rows, int columns, int[] rowPointers, int[] columnIndices);
+  }
+
+  private abstract static class StatelessWorkerFactory
+      implements ParallelBlocks.WorkerFactory<ParallelBlocks.Worker>, ParallelBlocks.Worker {
+    @Override
+    public ParallelBlocks.Worker newWorker() {
+      return this;
+    }
+  }
+
+  private final class PartialSum implements ParallelBlocks.Worker {
+
+    private final double[] x;
+    private final int[] blockStarts;
+    private final double[] sum = new double[columnSize()];
+
+    private PartialSum(double[] x, int[] blockStarts) {
+      this.x = x;
+      this.blockStarts = blockStarts;
+    }
+
+    @Override
+    public void process(int block) {
+      for (int row = blockStarts[block]; row < blockStarts[block + 1]; row++) {
+        double scale = dot(row, x);
+        if (scale != 0.0) {
+          for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+            sum[columnIndices[k]] += scale * value(k);
+          }
+        }
+      }
+    }
+  }
+
+}
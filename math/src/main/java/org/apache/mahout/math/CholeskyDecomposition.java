@@ -134,6 +134,82 @@ public class CholeskyDecomposition {
     }
   }
 
+  /**
+   * Solves {@code a x = b} without allocating anything, for callers which solve many small systems, such as
+   * alternating least squares. The packed upper triangle of {@code a} is overwritten with the upper triangular
+   * factor {@code R} of {@code a = R' R}, and {@code b} with {@code x}. Rows are eliminated in order, without
+   * pivoting; as in the decompositions above, a degenerate diagonal element zeroes its row of {@code R} and the
+   * corresponding component of {@code x}.
+   *
+   * @param a a symmetric positive semi-definite matrix, destroyed
+   * @param b the right hand side, replaced by the solution
+   * @return false if {@code a} was found not to be positive definite
+   */
+  public static boolean solveInPlace(DenseSymmetricMatrix a, double[] b) {
+    int n = a.numRows();
+    Preconditions.checkArgument(b.length == n, "Right hand side must have as many elements as the matrix has rows");
+    double[] r = a.getData();
+
+    double maxDiagonal = 0;
+    for (int k = 0, kk = 0; k < n; kk += n - k, k++) {
+      maxDiagonal = Math.max(maxDiagonal, Math.abs(r[kk]));
+    }
+    double epsilon = 1.0e-10 * maxDiagonal;
+
+    // row k of the packed upper triangle starts at kk and holds columns k to n - 1
+    boolean positiveDefinite = true;
+    for (int k = 0, kk = 0; k < n; kk += n - k, k++) {
+      double akk = r[kk];
+      if (akk <= epsilon) {
+        positiveDefinite = false;
+        for (int j = kk; j < kk + n - k; j++) {
+          r[j] = 0;
+        }
+        continue;
+      }
+      double rkk = Math.sqrt(akk);
+      r[kk] = rkk;
+      for (int j = kk + 1; j < kk + n - k; j++) {
+        r[j] /= rkk;
+      }
+      // subtract the outer product of the rest of row k from the trailing submatrix
+      for (int i = k + 1, ii = kk + n - k; i < n; ii += n - i, i++) {
+        double rki = r[kk + i - k];
+        if (rki != 0) {
+          for (int j = 0; j < n - i; j++) {
+            r[ii + j] -= rki * r[kk + i - k + j];
+          }
+        }
+      }
+    }
+
+    // forward substitution R' y = b
+    for (int k = 0, kk = 0; k < n; kk += n - k, k++) {
+      if (r[kk] == 0) {
+        b[k] = 0;
+        continue;
+      }
+      b[k] /= r[kk];
+      for (int j = 1; j < n - k; j++) {
+        b[k + j] -= r[kk + j] * b[k];
+      }
+    }
+
+    // back substitution R x = y
+    for (int k = n - 1, kk = n * (n + 1) / 2 - 1; k >= 0; k--, kk -= n - k) {
+      if (r[kk] == 0) {
+        b[k] = 0;
+        continue;
+      }
+      double sum = b[k];
+      for (int j = 1; j < n - k; j++) {
+        sum -= r[kk + j] * b[k + j];
+      }
+      b[k] = sum / r[kk];
+    }
+    return positiveDefinite;
+  }
+
   public boolean isPositiveDefinite() {
     return isPositiveDefinite;
   }
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * An immutable sparse matrix in compressed sparse row (CSR) form: the column indices and values of the non-zero
+ * elements of all rows, in order of row and then column, in two arrays, and the start of each row in a third. This
+ * takes 12 bytes per non-zero element and 4 per row, and products with vectors and dense matrices run straight
+ * through the arrays. Products with more than about a million non-zero elements are split among threads, one per
+ * processor by default, by blocks of rows with about as many non-zero elements each.
+ * </p>
+ *
+ * <p>
+ * {@link #transpose()} returns the same elements by column, that is in compressed sparse column (CSC) form, as
+ * another {@code CompressedSparseRowMatrix}; it is computed once, and then shared. {@link #timesSquared(Vector)}
+ * needs no transpose. So this can be given directly to {@link org.apache.mahout.math.solver.LSMR},
+ * {@link org.apache.mahout.math.solver.ConjugateGradientSolver} and
+ * {@link org.apache.mahout.math.decomposer.lanczos.LanczosSolver}.
+ * </p>
+ */
+public final class CompressedSparseRowMatrix extends AbstractCompressedSparseRowMatrix {
+
+  private final double[] values;
+
+  /**
+   * Constructs a matrix over the given arrays, without copying them.
+   *
+   * @param rowPointers {@code rows + 1} indices into {@code columnIndices} and {@code values}: where each row
+   *  starts, and then where the last row ends
+   * @param columnIndices column of each element, ascending within each row
+   * @param values value of each element
+   */
+  public CompressedSparseRowMatrix(int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values) {
+    super(rows, columns, rowPointers, columnIndices, values.length);
+    this.values = values;
+  }
+
+  /**
+   * Copies the non-zero elements of the rows of a matrix or other {@link VectorIterable}, reading it once.
+   */
+  public static CompressedSparseRowMatrix copyOf(VectorIterable source) {
+    return copyOf(source, new Values());
+  }
+
+  @Override
+  double value(int k) {
+    return values[k];
+  }
+
+  @Override
+  CompressedSparseRowMatrix gather(int rows, int columns, int[] rowPointers, int[] columnIndices, int[] source) {
+    double[] gathered = new double[source.length];
+    for (int k = 0; k < source.length; k++) {
+      gathered[k] = values[source[k]];
+    }
+    return new CompressedSparseRowMatrix(rows, columns, rowPointers, columnIndices, gathered);
+  }
+
+  @Override
+  Vector newRowVector(int cardinality, int numNonZeroElements) {
+    return new SequentialAccessSparseVector(cardinality, numNonZeroElements);
+  }
+
+  private static final class Values extends ValueBuffer<CompressedSparseRowMatrix> {
+
+    private double[] values = new double[0];
+
+    @Override
+    void resize(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    boolean set(int index, double value) {
+      values[index] = value;
+      return value != 0.0;
+    }
+
+    @Override
+    void swap(int a, int b) {
+      double value = values[a];
+      values[a] = values[b];
+      values[b] = value;
+    }
+
+    @Override
+    void gather(int[] source) {
+      double[] gathered = new double[source.length];
+      for (int k = 0; k < source.length; k++) {
+        gathered[k] = values[source[k]];
+      }
+      values = gathered;
+    }
+
+    @Override
+    CompressedSparseRowMatrix build(int rows, int columns, int[] rowPointers, int[] columnIndices) {
+      return new CompressedSparseRowMatrix(rows, columns, rowPointers, columnIndices, values);
+    }
+  }
+
+}
@@ -0,0 +1,407 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.DoubleFunction;
+import org.apache.mahout.math.function.Functions;
+
+/**
+ * <p>
+ * Matrix of doubles in a single {@code double[]}, or {@link DoubleBuffer} such as memory outside the heap or a
+ * mapped file, row by row or column by column. Unlike {@link DenseMatrix}, which keeps an array per row, the whole
+ * matrix can be processed in one loop, and columns are as easily viewed as rows.
+ * </p>
+ *
+ * <p>
+ * {@link #viewRow(int)}, {@link #viewColumn(int)} and {@link #viewDiagonal()} return {@link StridedVector}s, and
+ * {@link #viewPart(int, int, int, int)} another {@code ContiguousDenseMatrix}, which share the values of this
+ * matrix rather than copying them.
+ * </p>
+ */
+public class ContiguousDenseMatrix extends AbstractMatrix {
+
+  private double[] array;
+  private DoubleBuffer buffer;
+  private int offset;
+  private int rowStride;
+  private int columnStride;
+  private final boolean rowMajor;
+
+  /**
+   * Constructs an empty matrix of the given size, stored row by row.
+   */
+  public ContiguousDenseMatrix(int rows, int columns) {
+    this(rows, columns, true);
+  }
+
+  /**
+   * Constructs an empty matrix of the given size.
+   *
+   * @param rowMajor store the matrix row by row, rather than column by column
+   */
+  public ContiguousDenseMatrix(int rows, int columns, boolean rowMajor) {
+    this(new double[numElements(rows, columns)], rows, columns, rowMajor);
+  }
+
+  /**
+   * Constructs a matrix over the given values, without copying them.
+   *
+   * @param values at least {@code rows * columns} values
+   * @param rowMajor the values are stored row by row, rather than column by column
+   */
+  public ContiguousDenseMatrix(double[] values, int rows, int columns, boolean rowMajor) {
+    this(values, null, 0, rows, columns, rowMajor);
+    if (values.length < numElements(rows, columns)) {
+      throw new CardinalityException(numElements(rows, columns), values.length);
+    }
+  }
+
+  /**
+   * Constructs a matrix over the values of a buffer from its position on, without copying them. Changes to the
+   * matrix fail if the buffer is read-only.
+   *
+   * @param values at least {@code rows * columns} values remaining
+   * @param rowMajor the values are stored row by row, rather than column by column
+   */
+  public ContiguousDenseMatrix(DoubleBuffer values, int rows, int columns, boolean rowMajor) {
+    this(values.hasArray() ? values.array() : null,
+         values.hasArray() ? null : values,
+         values.hasArray() ? values.arrayOffset() + values.position() : values.position(),
+         rows, columns, rowMajor);
+    if (values.remaining() < numElements(rows, columns)) {
+      throw new CardinalityException(numElements(rows, columns), values.remaining());
+    }
+  }
+
+  private ContiguousDenseMatrix(double[] array, DoubleBuffer buffer, int offset, int rows, int columns,
+                                boolean rowMajor) {
+    this(array, buffer, offset, rows, columns, rowMajor ? columns : 1, rowMajor ? 1 : rows, rowMajor);
+  }
+
+  private ContiguousDenseMatrix(double[] array, DoubleBuffer buffer, int offset, int rows, int columns,
+                                int rowStride, int columnStride, boolean rowMajor) {
+    super(rows, columns);
+    this.array = array;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.columnStride = columnStride;
+    this.rowMajor = rowMajor;
+  }
+
+  /**
+   * Constructs an empty matrix of the given size in memory outside the heap, which can hold at most
+   * 2<sup>28</sup> values.
+   *
+   * @param rowMajor store the matrix row by row, rather than column by column
+   */
+  public static ContiguousDenseMatrix allocateDirect(int rows, int columns, boolean rowMajor) {
+    int numElements = numElements(rows, columns);
+    if (numElements > Integer.MAX_VALUE / 8) {
+      throw new IllegalArgumentException("Too large for a direct buffer: " + rows + " x " + columns);
+    }
+    DoubleBuffer buffer = ByteBuffer.allocateDirect(8 * numElements).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    return new ContiguousDenseMatrix(buffer, rows, columns, rowMajor);
+  }
+
+  private static int numElements(int rows, int columns) {
+    long numElements = (long) rows * columns;
+    if (rows < 0 || columns < 0 || numElements > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Can't store " + rows + " x " + columns + " in an array");
+    }
+    return (int) numElements;
+  }
+
+  /**
+   * @return true if the matrix is stored row by row, false if column by column
+   */
+  public boolean isRowMajor() {
+    return rowMajor;
+  }
+
+  private int index(int row, int column) {
+    return offset + row * rowStride + column * columnStride;
+  }
+
+  private double get(int index) {
+    return array != null ? array[index] : buffer.get(index);
+  }
+
+  private void set(int index, double value) {
+    if (array != null) {
+      array[index] = value;
+    } else {
+      buffer.put(index, value);
+    }
+  }
+
+  /**
+   * @return rows of a matrix stored row by row, or columns of one stored column by column
+   */
+  private int numLines() {
+    return rowMajor ? rowSize() : columnSize();
+  }
+
+  private int lineLength() {
+    return rowMajor ? columnSize() : rowSize();
+  }
+
+  private int lineStride() {
+    return rowMajor ? rowStride : columnStride;
+  }
+
+  /**
+   * @return true if {@code other} is stored in the same order as this, so that their lines correspond
+   */
+  private boolean isLaidOutLike(Matrix other) {
+    return other instanceof ContiguousDenseMatrix && ((ContiguousDenseMatrix) other).rowMajor == rowMajor;
+  }
+
+  @Override
+  public double getQuick(int row, int column) {
+    return get(index(row, column));
+  }
+
+  @Override
+  public void setQuick(int row, int column, double value) {
+    set(index(row, column), value);
+  }
+
+  @Override
+  public Matrix like() {
+    return like(rowSize(), columnSize());
+  }
+
+  @Override
+  public Matrix like(int rows, int columns) {
+    return new ContiguousDenseMatrix(rows, columns, rowMajor);
+  }
+
+  /**
+   * @return a copy in a new array, stored in the same order
+   */
+  @Override
+  public Matrix clone() {
+    ContiguousDenseMatrix clone = (ContiguousDenseMatrix) super.clone();
+    clone.array = new double[rowSize() * columnSize()];
+    copyTo(clone.array);
+    clone.buffer = null;
+    clone.offset = 0;
+    clone.rowStride = rowMajor ? columnSize() : 1;
+    clone.columnStride = rowMajor ? 1 : rowSize();
+    return clone;
+  }
+
+  /**
+   * Copies the values, line by line, to the start of the given array.
+   */
+  private void copyTo(double[] values) {
+    int length = lineLength();
+    for (int line = 0, start = offset, to = 0; line < numLines(); line++, start += lineStride(), to += length) {
+      if (array != null) {
+        System.arraycopy(array, start, values, to, length);
+      } else {
+        for (int i = 0; i < length; i++) {
+          values[to + i] = buffer.get(start + i);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the transpose in a new array, which is a copy of this matrix's values stored in the other order
+   */
+  @Override
+  public Matrix transpose() {
+    double[] values = new double[rowSize() * columnSize()];
+    copyTo(values);
+    return new ContiguousDenseMatrix(values, null, 0, columnSize(), rowSize(), !rowMajor);
+  }
+
+  @Override
+  public Matrix assign(double value) {
+    int length = lineLength();
+    for (int line = 0, start = offset; line < numLines(); line++, start += lineStride()) {
+      if (array != null) {
+        Arrays.fill(array, start, start + length, value);
+      } else {
+        for (int i = start; i < start + length; i++) {
+          buffer.put(i, value);
+        }
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public Matrix assign(DoubleFunction function) {
+    int length = lineLength();
+    for (int line = 0, start = offset; line < numLines(); line++, start += lineStride()) {
+      for (int i = start; i < start + length; i++) {
+        set(i, function.apply(get(i)));
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public Matrix assign(Matrix other) {
+    if (!isLaidOutLike(other)) {
+      return super.assign(other);
+    }
+    checkSameSize(other);
+    ContiguousDenseMatrix that = (ContiguousDenseMatrix) other;
+    int length = lineLength();
+    for (int line = 0, start = offset, thatStart = that.offset;
+         line < numLines();
+         line++, start += lineStride(), thatStart += that.lineStride()) {
+      if (array != null && that.array != null) {
+        System.arraycopy(that.array, thatStart, array, start, length);
+      } else {
+        for (int i = 0; i < length; i++) {
+          set(start + i, that.get(thatStart + i));
+        }
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public Matrix assign(Matrix other, DoubleDoubleFunction function) {
+    if (!isLaidOutLike(other)) {
+      return super.assign(other, function);
+    }
+    checkSameSize(other);
+    ContiguousDenseMatrix that = (ContiguousDenseMatrix) other;
+    int length = lineLength();
+    for (int line = 0, start = offset, thatStart = that.offset;
+         line < numLines();
+         line++, start += lineStride(), thatStart += that.lineStride()) {
+      for (int i = 0; i < length; i++) {
+        set(start + i, function.apply(get(start + i), that.get(thatStart + i)));
+      }
+    }
+    return this;
+  }
+
+  private void checkSameSize(Matrix other) {
+    if (rowSize() != other.rowSize()) {
+      throw new CardinalityException(rowSize(), other.rowSize());
+    }
+    if (columnSize() != other.columnSize()) {
+      throw new CardinalityException(columnSize(), other.columnSize());
+    }
+  }
+
+  @Override
+  public double aggregate(DoubleDoubleFunction combiner, DoubleFunction mapper) {
+    if (rowSize() == 0 || columnSize() == 0) {
+      return 0.0;
+    }
+    int length = lineLength();
+    double result = mapper.apply(get(offset));
+    for (int line = 0, start = offset; line < numLines(); line++, start += lineStride()) {
+      for (int i = line == 0 ? start + 1 : start; i < start + length; i++) {
+        result = combiner.apply(result, mapper.apply(get(i)));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public double zSum() {
+    return aggregate(Functions.PLUS, Functions.IDENTITY);
+  }
+
+  @Override
+  public Matrix times(Matrix other) {
+    if (DenseMatrixMultiplication.isDense(other)) {
+      return DenseMatrixMultiplication.times(this, other);
+    }
+    return super.times(other);
+  }
+
+  @Override
+  public Matrix assignRow(int row, Vector other) {
+    if (columnSize() != other.size()) {
+      throw new CardinalityException(columnSize(), other.size());
+    }
+    viewRow(row).assign(other);
+    return this;
+  }
+
+  @Override
+  public Matrix assignColumn(int column, Vector other) {
+    if (rowSize() != other.size()) {
+      throw new CardinalityException(rowSize(), other.size());
+    }
+    viewColumn(column).assign(other);
+    return this;
+  }
+
+  @Override
+  public Vector viewRow(int row) {
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    return new StridedVector(array, buffer, index(row, 0), columnStride, columnSize());
+  }
+
+  @Override
+  public Vector viewColumn(int column) {
+    if (column < 0 || column >= columnSize()) {
+      throw new IndexException(column, columnSize());
+    }
+    return new StridedVector(array, buffer, index(0, column), rowStride, rowSize());
+  }
+
+  @Override
+  public Vector viewDiagonal() {
+    return new StridedVector(array, buffer, offset, rowStride + columnStride, Math.min(rowSize(), columnSize()));
+  }
+
+  @Override
+  public Matrix viewPart(int[] offset, int[] size) {
+    return viewPart(offset[ROW], size[ROW], offset[COL], size[COL]);
+  }
+
+  @Override
+  public Matrix viewPart(int rowOffset, int rowsRequested, int columnOffset, int columnsRequested) {
+    if (rowOffset < 0) {
+      throw new IndexException(rowOffset, rowSize());
+    }
+    if (rowOffset + rowsRequested > rowSize()) {
+      throw new IndexException(rowOffset + rowsRequested, rowSize());
+    }
+    if (columnOffset < 0) {
+      throw new IndexException(columnOffset, columnSize());
+    }
+    if (columnOffset + columnsRequested > columnSize()) {
+      throw new IndexException(columnOffset + columnsRequested, columnSize());
+    }
+    return new ContiguousDenseMatrix(array, buffer, index(rowOffset, columnOffset), rowsRequested, columnsRequested,
+                                     rowStride, columnStride, rowMajor);
+  }
+
+}
@@ -20,7 +20,7 @@ package org.apache.mahout.math;
 import java.util.Arrays;
 
 /** Matrix of doubles implemented using a 2-d array */
-public class DenseMatrix extends AbstractMatrix {
+public class DenseMatrix extends AbstractMatrix implements MatrixTimesOps {
 
   private double[][] values;
 
@@ -63,6 +63,13 @@ public class DenseMatrix extends AbstractMatrix {
     this.values = new double[rows][columns];
   }
 
+  /**
+   * @return the rows themselves, for {@link DenseMatrixMultiplication}
+   */
+  double[][] rows() {
+    return values;
+  }
+
   @Override
   public Matrix clone() {
     DenseMatrix clone = (DenseMatrix) super.clone();
@@ -168,6 +175,30 @@ public class DenseMatrix extends AbstractMatrix {
     return this;
   }
   
+  @Override
+  public Matrix times(Matrix other) {
+    if (other instanceof MatrixTimesOps && !(other instanceof DenseMatrix)) {
+      return ((MatrixTimesOps) other).timesLeft(this);
+    }
+    if (DenseMatrixMultiplication.isDense(other)) {
+      return DenseMatrixMultiplication.times(this, other);
+    }
+    return super.times(other);
+  }
+
+  @Override
+  public Matrix timesRight(Matrix that) {
+    return times(that);
+  }
+
+  /**
+   * Copies {@code that} to a dense matrix first, unless {@link DenseMatrixMultiplication#isDense(Matrix)}.
+   */
+  @Override
+  public Matrix timesLeft(Matrix that) {
+    return DenseMatrixMultiplication.times(that, this);
+  }
+
   @Override
   public Vector viewRow(int row) {
     if (row < 0 || row >= rowSize()) {
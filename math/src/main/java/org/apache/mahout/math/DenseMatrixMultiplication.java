@@ -0,0 +1,360 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+/**
+ * <p>
+ * Multiplies matrices held in, or copied to, rows of {@code double[]}, as {@link DenseMatrix} keeps them. The
+ * product is computed in blocks of rows, each over tiles of the inner dimension and of the columns which fit in
+ * cache; within a tile, four rows and four columns of the product at a time are accumulated in registers, from the
+ * rows of the left operand and from a copy of the tile of the right operand arranged four columns at a time.
+ * </p>
+ *
+ * <p>
+ * The {@code float[]} rows of a {@link FloatDenseMatrix} are not copied whole but widened a tile at a time: those
+ * of the right operand as the tile is copied anyway, and those of the left operand for one block of rows and one
+ * tile of the inner dimension at a time.
+ * </p>
+ *
+ * <p>
+ * Products with more than a few million multiply-adds are split by blocks of rows among threads, one per processor,
+ * with {@link ParallelBlocks}.
+ * </p>
+ */
+public final class DenseMatrixMultiplication {
+
+  /** Rows of the product per block, and so per task; a multiple of 4 */
+  private static final int ROW_BLOCK = 64;
+  /** Length of the inner dimension per tile */
+  private static final int INNER_BLOCK = 256;
+  /** Columns of the product per tile; a multiple of 4, and a tile of the right operand takes 1 MB */
+  private static final int COLUMN_BLOCK = 512;
+  /** Products with fewer multiply-adds are computed in the calling thread only */
+  private static final long PARALLEL_THRESHOLD = 1L << 22;
+
+  private DenseMatrixMultiplication() {
+  }
+
+  /**
+   * @return true if the matrix stores, or computes, every element, so that copying it to rows costs no more memory
+   *  than the product will
+   */
+  public static boolean isDense(Matrix matrix) {
+    return matrix instanceof DenseMatrix
+        || matrix instanceof ContiguousDenseMatrix
+        || matrix instanceof FloatDenseMatrix
+        || matrix instanceof UpperTriangular
+        || matrix instanceof RandomTrinaryMatrix
+        || matrix instanceof FileBasedMatrix;
+  }
+
+  /**
+   * @return {@code a * b} as a new {@link DenseMatrix}, using all processors for a large product
+   */
+  public static DenseMatrix times(Matrix a, Matrix b) {
+    return times(a, b, ParallelBlocks.NUM_PROCESSORS);
+  }
+
+  /**
+   * @param numThreads most threads to use, including the calling thread
+   * @return {@code a * b} as a new {@link DenseMatrix}
+   */
+  public static DenseMatrix times(Matrix a, Matrix b, int numThreads) {
+    if (a.columnSize() != b.rowSize()) {
+      throw new CardinalityException(a.columnSize(), b.rowSize());
+    }
+    DenseMatrix result = new DenseMatrix(a.rowSize(), b.columnSize());
+    multiply(Rows.of(a), Rows.of(b), result.rows(), a.columnSize(), b.columnSize(), numThreads);
+    return result;
+  }
+
+  /**
+   * @return the rows of a {@link DenseMatrix} themselves, or of another matrix copied
+   */
+  static double[][] rowsOf(Matrix matrix) {
+    if (matrix instanceof DenseMatrix) {
+      return ((DenseMatrix) matrix).rows();
+    }
+    int columns = matrix.columnSize();
+    double[][] rows = new double[matrix.rowSize()][columns];
+    if (matrix instanceof FloatDenseMatrix) {
+      float[][] floatRows = ((FloatDenseMatrix) matrix).rows();
+      for (int row = 0; row < rows.length; row++) {
+        for (int column = 0; column < columns; column++) {
+          rows[row][column] = floatRows[row][column];
+        }
+      }
+      return rows;
+    }
+    for (int row = 0; row < rows.length; row++) {
+      for (int column = 0; column < columns; column++) {
+        rows[row][column] = matrix.getQuick(row, column);
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Adds {@code a * b} to {@code c}, which has as many rows as {@code a}.
+   */
+  private static void multiply(final Rows a,
+                               final Rows b,
+                               final double[][] c,
+                               final int inner,
+                               final int columns,
+                               int numThreads) {
+    final int rows = c.length;
+    int numBlocks = (rows + ROW_BLOCK - 1) / ROW_BLOCK;
+    if ((long) rows * inner * columns < PARALLEL_THRESHOLD) {
+      numThreads = 1;
+    }
+    ParallelBlocks.run(numBlocks, numThreads, new ParallelBlocks.WorkerFactory<ParallelBlocks.Worker>() {
+      @Override
+      public ParallelBlocks.Worker newWorker() {
+        final Workspace workspace = new Workspace(a, b, inner, columns);
+        return new ParallelBlocks.Worker() {
+          @Override
+          public void process(int block) {
+            int from = block * ROW_BLOCK;
+            multiplyRows(a, b, c, from, Math.min(from + ROW_BLOCK, rows), inner, columns, workspace);
+          }
+        };
+      }
+    });
+  }
+
+  /**
+   * Adds rows {@code from} to {@code to} of {@code a * b} to those of {@code c}.
+   */
+  private static void multiplyRows(Rows a,
+                                   Rows b,
+                                   double[][] c,
+                                   int from,
+                                   int to,
+                                   int inner,
+                                   int columns,
+                                   Workspace workspace) {
+    double[][] left = workspace.left;
+    double[] tile = workspace.tile;
+    for (int k0 = 0; k0 < inner; k0 += INNER_BLOCK) {
+      int depth = Math.min(INNER_BLOCK, inner - k0);
+      for (int i = from; i < to; i++) {
+        left[i - from] = a.row(i, k0, depth, workspace.leftBuffers[i - from]);
+      }
+      int ak0 = a.start(k0);
+      for (int j0 = 0; j0 < columns; j0 += COLUMN_BLOCK) {
+        int width = Math.min(COLUMN_BLOCK, columns - j0);
+        int numPanels = (width + 3) / 4;
+        pack(b, k0, depth, j0, width, tile, workspace.rightBuffer);
+        for (int panel = 0; panel < numPanels; panel++) {
+          int j = j0 + 4 * panel;
+          int panelWidth = Math.min(4, j0 + width - j);
+          int offset = panel * depth * 4;
+          int i = 0;
+          for (; i + 3 < to - from; i += 4) {
+            multiply4x4(left[i], left[i + 1], left[i + 2], left[i + 3], ak0, depth, tile, offset,
+                        c[from + i], c[from + i + 1], c[from + i + 2], c[from + i + 3], j, panelWidth);
+          }
+          for (; i < to - from; i++) {
+            multiply1x4(left[i], ak0, depth, tile, offset, c[from + i], j, panelWidth);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies rows {@code k0} to {@code k0 + depth} and columns {@code j0} to {@code j0 + width} of {@code b} into
+   * {@code tile} as panels of four columns, each stored row by row and padded with zeroes.
+   *
+   * @param buffer space for {@link Rows#row(int, int, int, double[])}
+   */
+  private static void pack(Rows b, int k0, int depth, int j0, int width, double[] tile, double[] buffer) {
+    int numPanels = (width + 3) / 4;
+    for (int k = 0; k < depth; k++) {
+      double[] row = b.row(k0 + k, j0, width, buffer);
+      int start = b.start(j0);
+      for (int panel = 0; panel < numPanels; panel++) {
+        int j = 4 * panel;
+        int index = (panel * depth + k) * 4;
+        int panelWidth = Math.min(4, width - j);
+        for (int jj = 0; jj < 4; jj++) {
+          tile[index + jj] = jj < panelWidth ? row[start + j + jj] : 0.0;
+        }
+      }
+    }
+  }
+
+  private static void multiply4x4(double[] a0, double[] a1, double[] a2, double[] a3, int k0, int depth,
+                                  double[] tile, int offset,
+                                  double[] c0, double[] c1, double[] c2, double[] c3, int j, int width) {
+    double c00 = 0.0;
+    double c01 = 0.0;
+    double c02 = 0.0;
+    double c03 = 0.0;
+    double c10 = 0.0;
+    double c11 = 0.0;
+    double c12 = 0.0;
+    double c13 = 0.0;
+    double c20 = 0.0;
+    double c21 = 0.0;
+    double c22 = 0.0;
+    double c23 = 0.0;
+    double c30 = 0.0;
+    double c31 = 0.0;
+    double c32 = 0.0;
+    double c33 = 0.0;
+    for (int k = k0, t = offset; k < k0 + depth; k++, t += 4) {
+      double b0 = tile[t];
+      double b1 = tile[t + 1];
+      double b2 = tile[t + 2];
+      double b3 = tile[t + 3];
+      double x = a0[k];
+      c00 += x * b0;
+      c01 += x * b1;
+      c02 += x * b2;
+      c03 += x * b3;
+      x = a1[k];
+      c10 += x * b0;
+      c11 += x * b1;
+      c12 += x * b2;
+      c13 += x * b3;
+      x = a2[k];
+      c20 += x * b0;
+      c21 += x * b1;
+      c22 += x * b2;
+      c23 += x * b3;
+      x = a3[k];
+      c30 += x * b0;
+      c31 += x * b1;
+      c32 += x * b2;
+      c33 += x * b3;
+    }
+    add(c0, j, width, c00, c01, c02, c03);
+    add(c1, j, width, c10, c11, c12, c13);
+    add(c2, j, width, c20, c21, c22, c23);
+    add(c3, j, width, c30, c31, c32, c33);
+  }
+
+  private static void multiply1x4(double[] a0, int k0, int depth, double[] tile, int offset,
+                                  double[] c0, int j, int width) {
+    double c00 = 0.0;
+    double c01 = 0.0;
+    double c02 = 0.0;
+    double c03 = 0.0;
+    for (int k = k0, t = offset; k < k0 + depth; k++, t += 4) {
+      double x = a0[k];
+      c00 += x * tile[t];
+      c01 += x * tile[t + 1];
+      c02 += x * tile[t + 2];
+      c03 += x * tile[t + 3];
+    }
+    add(c0, j, width, c00, c01, c02, c03);
+  }
+
+  private static void add(double[] row, int j, int width, double v0, double v1, double v2, double v3) {
+    row[j] += v0;
+    if (width > 1) {
+      row[j + 1] += v1;
+      if (width > 2) {
+        row[j + 2] += v2;
+        if (width > 3) {
+          row[j + 3] += v3;
+        }
+      }
+    }
+  }
+
+  /**
+   * The rows of an operand: those of a {@link DenseMatrix}, or of a copy of another matrix, as they are, or those of
+   * a {@link FloatDenseMatrix}, which are widened into a buffer a part at a time.
+   */
+  private static final class Rows {
+
+    private final double[][] doubles;
+    private final float[][] floats;
+
+    private Rows(double[][] doubles, float[][] floats) {
+      this.doubles = doubles;
+      this.floats = floats;
+    }
+
+    static Rows of(Matrix matrix) {
+      if (matrix instanceof FloatDenseMatrix) {
+        return new Rows(null, ((FloatDenseMatrix) matrix).rows());
+      }
+      return new Rows(rowsOf(matrix), null);
+    }
+
+    /**
+     * @return a buffer for {@link #row(int, int, int, double[])} of up to {@code length} elements, or null if none
+     *  is needed
+     */
+    double[] newBuffer(int length) {
+      return floats == null ? null : new double[length];
+    }
+
+    /**
+     * @return an array holding {@code length} elements of the row from column {@code from} on, starting at index
+     *  {@link #start(int)}: the row itself, or the buffer
+     */
+    double[] row(int row, int from, int length, double[] buffer) {
+      if (floats == null) {
+        return doubles[row];
+      }
+      float[] values = floats[row];
+      for (int j = 0; j < length; j++) {
+        buffer[j] = values[from + j];
+      }
+      return buffer;
+    }
+
+    /**
+     * @return the index of column {@code from} in the array returned by {@link #row(int, int, int, double[])}
+     */
+    int start(int from) {
+      return floats == null ? from : 0;
+    }
+  }
+
+  /**
+   * The arrays a thread needs to compute blocks of rows of a product.
+   */
+  private static final class Workspace {
+
+    /** A tile of the right operand */
+    private final double[] tile;
+    /** The rows of the left operand in the current block */
+    private final double[][] left;
+    private final double[][] leftBuffers;
+    private final double[] rightBuffer;
+
+    Workspace(Rows a, Rows b, int inner, int columns) {
+      int depth = Math.min(inner, INNER_BLOCK);
+      int width = Math.min(columns, COLUMN_BLOCK);
+      tile = new double[depth * 4 * ((width + 3) / 4)];
+      left = new double[ROW_BLOCK][];
+      leftBuffers = new double[ROW_BLOCK][];
+      for (int i = 0; i < ROW_BLOCK; i++) {
+        leftBuffers[i] = a.newBuffer(depth);
+      }
+      rightBuffer = b.newBuffer(width);
+    }
+  }
+
+}
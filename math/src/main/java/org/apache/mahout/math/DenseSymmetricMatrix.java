@@ -57,4 +57,12 @@ public class DenseSymmetricMatrix extends UpperTriangular {
     super.setQuick(row, column, value);
   }
 
+  @Override
+  public Matrix times(Matrix other) {
+    if (DenseMatrixMultiplication.isDense(other)) {
+      return DenseMatrixMultiplication.times(this, other);
+    }
+    return super.times(other);
+  }
+
 }
@@ -79,6 +79,10 @@ public class DenseVector extends AbstractVector {
       if (values.length != size) {
         throw new CardinalityException(values.length, size);
       }
+      if (x instanceof DenseVector) {
+        return VectorArrayOperations.dot(values, ((DenseVector) x).values, size,
+            VectorArrayOperations.numThreads(size));
+      }
 
       double sum = 0;
       for (int n = 0; n < size; n++) {
@@ -88,6 +92,13 @@ public class DenseVector extends AbstractVector {
     }
   }
 
+  /**
+   * @return the array holding the elements, not a copy
+   */
+  double[] values() {
+    return values;
+  }
+
   @Override
   protected Matrix matrixLike(int rows, int columns) {
     return new DenseMatrix(rows, columns);
@@ -117,12 +128,16 @@ public class DenseVector extends AbstractVector {
 
   @Override
   protected double dotSelf() {
-    double result = 0.0;
-    int max = size();
-    for (int i = 0; i < max; i++) {
-      result += values[i] * values[i];
+    return VectorArrayOperations.sumOfSquares(values, values.length, VectorArrayOperations.numThreads(values.length));
+  }
+
+  @Override
+  public double norm(double power) {
+    if (power == 1.0) {
+      return VectorArrayOperations.sumOfAbsolutes(values, values.length,
+          VectorArrayOperations.numThreads(values.length));
     }
-    return result;
+    return super.norm(power);
   }
 
   @Override
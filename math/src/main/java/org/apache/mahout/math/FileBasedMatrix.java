@@ -74,6 +74,17 @@ public final class FileBasedMatrix extends AbstractMatrix {
     }
   }
 
+  /**
+   * Views the mapped data as a {@link ContiguousDenseMatrix}, without copying it. The view is read-only, like this
+   * matrix.
+   *
+   * @throws IllegalStateException if no data is set, or it takes more than one mapping, which happens above 2GB
+   */
+  public ContiguousDenseMatrix viewAsContiguous() {
+    Preconditions.checkState(content.size() == 1, "Data must be set, and be in one mapping");
+    return new ContiguousDenseMatrix(content.get(0).duplicate(), rows, columns, true);
+  }
+
   public static void writeMatrix(File f, Matrix m) throws IOException {
     Preconditions.checkArgument(f.canWrite(), "Can't write to output file");
     FileOutputStream fos = new FileOutputStream(f);
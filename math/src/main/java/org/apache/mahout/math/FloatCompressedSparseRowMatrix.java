@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Arrays;
+
+/**
+ * Like {@link CompressedSparseRowMatrix}, with the values of the non-zero elements as floats, taking 8 bytes per
+ * non-zero element instead of 12. Products are still accumulated in double, and returned as {@link DenseVector}s and
+ * {@link DenseMatrix}es.
+ */
+public final class FloatCompressedSparseRowMatrix extends AbstractCompressedSparseRowMatrix {
+
+  private final float[] values;
+
+  /**
+   * Constructs a matrix over the given arrays, without copying them.
+   *
+   * @param rowPointers {@code rows + 1} indices into {@code columnIndices} and {@code values}: where each row
+   *  starts, and then where the last row ends
+   * @param columnIndices column of each element, ascending within each row
+   * @param values value of each element
+   */
+  public FloatCompressedSparseRowMatrix(int rows, int columns, int[] rowPointers, int[] columnIndices, float[] values) {
+    super(rows, columns, rowPointers, columnIndices, values.length);
+    this.values = values;
+  }
+
+  /**
+   * Copies the non-zero elements of the rows of a matrix or other {@link VectorIterable}, reading it once.
+   */
+  public static FloatCompressedSparseRowMatrix copyOf(VectorIterable source) {
+    return copyOf(source, new Values());
+  }
+
+  @Override
+  double value(int k) {
+    return values[k];
+  }
+
+  @Override
+  FloatCompressedSparseRowMatrix gather(int rows, int columns, int[] rowPointers, int[] columnIndices, int[] source) {
+    float[] gathered = new float[source.length];
+    for (int k = 0; k < source.length; k++) {
+      gathered[k] = values[source[k]];
+    }
+    return new FloatCompressedSparseRowMatrix(rows, columns, rowPointers, columnIndices, gathered);
+  }
+
+  @Override
+  Vector newRowVector(int cardinality, int numNonZeroElements) {
+    return new FloatSequentialAccessSparseVector(cardinality, numNonZeroElements);
+  }
+
+  private static final class Values extends ValueBuffer<FloatCompressedSparseRowMatrix> {
+
+    private float[] values = new float[0];
+
+    @Override
+    void resize(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    boolean set(int index, double value) {
+      float rounded = (float) value;
+      values[index] = rounded;
+      return rounded != 0.0f;
+    }
+
+    @Override
+    void swap(int a, int b) {
+      float value = values[a];
+      values[a] = values[b];
+      values[b] = value;
+    }
+
+    @Override
+    void gather(int[] source) {
+      float[] gathered = new float[source.length];
+      for (int k = 0; k < source.length; k++) {
+        gathered[k] = values[source[k]];
+      }
+      values = gathered;
+    }
+
+    @Override
+    FloatCompressedSparseRowMatrix build(int rows, int columns, int[] rowPointers, int[] columnIndices) {
+      return new FloatCompressedSparseRowMatrix(rows, columns, rowPointers, columnIndices, values);
+    }
+  }
+
+}
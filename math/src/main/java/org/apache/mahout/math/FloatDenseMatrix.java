@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Arrays;
+
+/**
+ * Matrix of floats implemented using a 2-d array, taking half the memory of a {@link DenseMatrix}. Values set are
+ * rounded to float. Rows are viewed as {@link FloatDenseVector}s over the same arrays.
+ */
+public class FloatDenseMatrix extends AbstractMatrix {
+
+  private float[][] values;
+
+  /**
+   * Construct a matrix from the given values
+   *
+   * @param values
+   *          a float[][]
+   * @param shallowCopy directly use the supplied array?
+   */
+  public FloatDenseMatrix(float[][] values, boolean shallowCopy) {
+    super(values.length, values[0].length);
+    if (shallowCopy) {
+      this.values = values;
+    } else {
+      this.values = new float[values.length][];
+      for (int i = 0; i < values.length; i++) {
+        this.values[i] = values[i].clone();
+      }
+    }
+  }
+
+  /**
+   * Constructs an empty matrix of the given size.
+   * @param rows  The number of rows in the result.
+   * @param columns The number of columns in the result.
+   */
+  public FloatDenseMatrix(int rows, int columns) {
+    super(rows, columns);
+    this.values = new float[rows][columns];
+  }
+
+  /**
+   * @return the rows themselves, for {@link DenseMatrixMultiplication}
+   */
+  float[][] rows() {
+    return values;
+  }
+
+  @Override
+  public Matrix clone() {
+    FloatDenseMatrix clone = (FloatDenseMatrix) super.clone();
+    clone.values = new float[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      clone.values[i] = values[i].clone();
+    }
+    return clone;
+  }
+
+  @Override
+  public double getQuick(int row, int column) {
+    return values[row][column];
+  }
+
+  @Override
+  public Matrix like() {
+    return like(rowSize(), columnSize());
+  }
+
+  @Override
+  public Matrix like(int rows, int columns) {
+    return new FloatDenseMatrix(rows, columns);
+  }
+
+  @Override
+  public void setQuick(int row, int column, double value) {
+    values[row][column] = (float) value;
+  }
+
+  @Override
+  public Matrix viewPart(int[] offset, int[] size) {
+    return viewPart(offset[ROW], size[ROW], offset[COL], size[COL]);
+  }
+
+  @Override
+  public Matrix viewPart(int rowOffset, int rowsRequested, int columnOffset, int columnsRequested) {
+    if (rowOffset < 0) {
+      throw new IndexException(rowOffset, rowSize());
+    }
+    if (rowOffset + rowsRequested > rowSize()) {
+      throw new IndexException(rowOffset + rowsRequested, rowSize());
+    }
+    if (columnOffset < 0) {
+      throw new IndexException(columnOffset, columnSize());
+    }
+    if (columnOffset + columnsRequested > columnSize()) {
+      throw new IndexException(columnOffset + columnsRequested, columnSize());
+    }
+    return new MatrixView(this, new int[]{rowOffset, columnOffset}, new int[]{rowsRequested, columnsRequested});
+  }
+
+  @Override
+  public Matrix assign(double value) {
+    for (int row = 0; row < rowSize(); row++) {
+      Arrays.fill(values[row], (float) value);
+    }
+    return this;
+  }
+
+  @Override
+  public Matrix assignColumn(int column, Vector other) {
+    if (rowSize() != other.size()) {
+      throw new CardinalityException(rowSize(), other.size());
+    }
+    if (column < 0 || column >= columnSize()) {
+      throw new IndexException(column, columnSize());
+    }
+    for (int row = 0; row < rowSize(); row++) {
+      values[row][column] = (float) other.getQuick(row);
+    }
+    return this;
+  }
+
+  @Override
+  public Matrix assignRow(int row, Vector other) {
+    if (columnSize() != other.size()) {
+      throw new CardinalityException(columnSize(), other.size());
+    }
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    for (int col = 0; col < columnSize(); col++) {
+      values[row][col] = (float) other.getQuick(col);
+    }
+    return this;
+  }
+
+  /**
+   * Multiplies by a matrix which {@link DenseMatrixMultiplication#isDense(Matrix)} as a {@link DenseMatrix}, and by
+   * others as {@link AbstractMatrix} does.
+   */
+  @Override
+  public Matrix times(Matrix other) {
+    if (DenseMatrixMultiplication.isDense(other)) {
+      return DenseMatrixMultiplication.times(this, other);
+    }
+    return super.times(other);
+  }
+
+  @Override
+  public Vector viewRow(int row) {
+    if (row < 0 || row >= rowSize()) {
+      throw new IndexException(row, rowSize());
+    }
+    return new FloatDenseVector(values[row], true);
+  }
+
+}
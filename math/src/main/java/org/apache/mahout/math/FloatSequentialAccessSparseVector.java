@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.IntComparator;
+
+/**
+ * Like {@link SequentialAccessSparseVector}, with the non-zero values as floats in an
+ * {@link OrderedIntFloatMapping}, taking 8 bytes per non-zero element instead of 12. Values set are rounded to
+ * float.
+ */
+public class FloatSequentialAccessSparseVector extends AbstractVector {
+
+  private OrderedIntFloatMapping values;
+
+  /** For serialization purposes only. */
+  public FloatSequentialAccessSparseVector() {
+    super(0);
+  }
+
+  public FloatSequentialAccessSparseVector(int cardinality) {
+    this(cardinality, Math.min(100, cardinality / 1000 < 10 ? 10 : cardinality / 1000));
+  }
+
+  public FloatSequentialAccessSparseVector(int cardinality, int size) {
+    super(cardinality);
+    values = new OrderedIntFloatMapping(size);
+  }
+
+  /**
+   * Copies the non-zero elements of another vector, sorting them first if it is not sequential access.
+   */
+  public FloatSequentialAccessSparseVector(Vector other) {
+    super(other.size());
+    int capacity = other.getNumNondefaultElements();
+    final int[] indices = new int[capacity];
+    final float[] floats = new float[capacity];
+    int numMappings = 0;
+    for (Element e : other.nonZeroes()) {
+      float value = (float) e.get();
+      if (value != OrderedIntFloatMapping.DEFAULT_VALUE) {
+        indices[numMappings] = e.index();
+        floats[numMappings] = value;
+        numMappings++;
+      }
+    }
+    if (!other.isSequentialAccess()) {
+      Sorting.quickSort(0, numMappings, new IntComparator() {
+        @Override
+        public int compare(int a, int b) {
+          return indices[a] < indices[b] ? -1 : indices[a] > indices[b] ? 1 : 0;
+        }
+      }, new Swapper() {
+        @Override
+        public void swap(int a, int b) {
+          int index = indices[a];
+          indices[a] = indices[b];
+          indices[b] = index;
+          float value = floats[a];
+          floats[a] = floats[b];
+          floats[b] = value;
+        }
+      });
+    }
+    values = new OrderedIntFloatMapping(indices, floats, numMappings);
+  }
+
+  public FloatSequentialAccessSparseVector(FloatSequentialAccessSparseVector other, boolean shallowCopy) {
+    super(other.size());
+    values = shallowCopy ? other.values : other.values.clone();
+  }
+
+  public FloatSequentialAccessSparseVector(FloatSequentialAccessSparseVector other) {
+    this(other, false);
+  }
+
+  private FloatSequentialAccessSparseVector(int cardinality, OrderedIntFloatMapping values) {
+    super(cardinality);
+    this.values = values;
+  }
+
+  @Override
+  protected Matrix matrixLike(int rows, int columns) {
+    return new SparseRowMatrix(rows, columns);
+  }
+
+  @SuppressWarnings("CloneDoesntCallSuperClone")
+  @Override
+  public FloatSequentialAccessSparseVector clone() {
+    return new FloatSequentialAccessSparseVector(size(), values.clone());
+  }
+
+  @Override
+  public void mergeUpdates(OrderedIntDoubleMapping updates) {
+    values.merge(updates);
+  }
+
+  @Override
+  public String toString() {
+    return sparseVectorToString();
+  }
+
+  /**
+   * @return false
+   */
+  @Override
+  public boolean isDense() {
+    return false;
+  }
+
+  /**
+   * @return true
+   */
+  @Override
+  public boolean isSequentialAccess() {
+    return true;
+  }
+
+  /**
+   * Warning! This takes O(log n) time as it does a binary search behind the scenes!
+   */
+  @Override
+  public double getQuick(int index) {
+    return values.get(index);
+  }
+
+  /**
+   * Warning! This takes O(log n) time as it does a binary search behind the scenes!
+   */
+  @Override
+  public void setQuick(int index, double value) {
+    invalidateCachedLength();
+    values.set(index, (float) value);
+  }
+
+  @Override
+  public void incrementQuick(int index, double increment) {
+    invalidateCachedLength();
+    values.increment(index, (float) increment);
+  }
+
+  @Override
+  public FloatSequentialAccessSparseVector like() {
+    return new FloatSequentialAccessSparseVector(size(), values.getNumMappings());
+  }
+
+  @Override
+  public int getNumNondefaultElements() {
+    return values.getNumMappings();
+  }
+
+  @Override
+  protected double dotSelf() {
+    double result = 0.0;
+    float[] floats = values.getValues();
+    for (int i = 0; i < values.getNumMappings(); i++) {
+      result += (double) floats[i] * floats[i];
+    }
+    return result;
+  }
+
+  @Override
+  public double getLookupCost() {
+    return Math.max(1, Math.round(Functions.LOG2.apply(getNumNondefaultElements())));
+  }
+
+  @Override
+  public double getIteratorAdvanceCost() {
+    return 1;
+  }
+
+  @Override
+  public boolean isAddConstantTime() {
+    return false;
+  }
+
+  @Override
+  public Iterator<Element> iterateNonZero() {
+    return new NonDefaultIterator();
+  }
+
+  @Override
+  public Iterator<Element> iterator() {
+    return new AllIterator();
+  }
+
+  private final class NonDefaultIterator implements Iterator<Element> {
+    private final NonDefaultElement element = new NonDefaultElement();
+
+    @Override
+    public boolean hasNext() {
+      return element.getNextOffset() < values.getNumMappings();
+    }
+
+    @Override
+    public Element next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      element.advanceOffset();
+      return element;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final class AllIterator implements Iterator<Element> {
+    private final AllElement element = new AllElement();
+
+    @Override
+    public boolean hasNext() {
+      return element.getNextIndex() < FloatSequentialAccessSparseVector.this.size();
+    }
+
+    @Override
+    public Element next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      element.advanceIndex();
+      return element;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final class NonDefaultElement implements Element {
+    private int offset = -1;
+
+    void advanceOffset() {
+      offset++;
+    }
+
+    int getNextOffset() {
+      return offset + 1;
+    }
+
+    @Override
+    public double get() {
+      return values.getValues()[offset];
+    }
+
+    @Override
+    public int index() {
+      return values.getIndices()[offset];
+    }
+
+    @Override
+    public void set(double value) {
+      invalidateCachedLength();
+      values.setValueAt(offset, (float) value);
+    }
+  }
+
+  private final class AllElement implements Element {
+    private int index = -1;
+    private int nextOffset;
+
+    void advanceIndex() {
+      index++;
+      if (nextOffset < values.getNumMappings() && index > values.getIndices()[nextOffset]) {
+        nextOffset++;
+      }
+    }
+
+    int getNextIndex() {
+      return index + 1;
+    }
+
+    @Override
+    public double get() {
+      if (nextOffset < values.getNumMappings() && index == values.getIndices()[nextOffset]) {
+        return values.getValues()[nextOffset];
+      } else {
+        return OrderedIntFloatMapping.DEFAULT_VALUE;
+      }
+    }
+
+    @Override
+    public int index() {
+      return index;
+    }
+
+    @Override
+    public void set(double value) {
+      invalidateCachedLength();
+      if (nextOffset < values.getNumMappings() && index == values.indexAt(nextOffset)) {
+        values.setValueAt(nextOffset, (float) value);
+      } else {
+        // the offset into indices of the new value's index will still be nextOffset
+        values.set(index, (float) value);
+      }
+    }
+  }
+}
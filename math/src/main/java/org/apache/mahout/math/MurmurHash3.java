@@ -81,4 +81,17 @@ public final class MurmurHash3 {
     return h1;
   }
 
+  /**
+   * Returns the 64 bit finalization mix of MurmurHash3 (fmix64), which makes every bit of the result depend on
+   * every bit of the input. It is a bijection, and cheap enough to hash longs like ids.
+   */
+  public static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
 }
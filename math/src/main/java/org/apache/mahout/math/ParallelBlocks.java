@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Processes numbered blocks of work with the calling thread and threads of a shared pool, each taking the next block
+ * until none are left. Handing work to the pool costs some microseconds per thread, so callers should only use this
+ * for work which takes a good deal longer. The pool is started on first use, holds at most one daemon thread per
+ * processor but one, and lets them die after a second idle. Since the calling thread takes blocks too, and threads
+ * of the pool only take blocks once running, calls never wait on a busy pool, and may nest.
+ */
+final class ParallelBlocks {
+
+  static final int NUM_PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  private static final long KEEP_ALIVE_SECONDS = 1L;
+
+  interface Worker {
+    void process(int block);
+  }
+
+  interface WorkerFactory<W extends Worker> {
+    /**
+     * Called by each thread before it processes its first block.
+     */
+    W newWorker();
+  }
+
+  private ParallelBlocks() {
+  }
+
+  /**
+   * Holds the pool, which is so created when first used.
+   */
+  private static final class Pool {
+
+    private static final ExecutorService EXECUTOR = newExecutor();
+
+    private Pool() {
+    }
+
+    private static ExecutorService newExecutor() {
+      int numThreads = Math.max(1, NUM_PROCESSORS - 1);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+          KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ParallelBlocks-%d").build());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+
+  /**
+   * @param numThreads most threads to use, including the calling thread
+   * @return the workers which processed blocks, at least one unless there were none
+   */
+  static <W extends Worker> List<W> run(final int numBlocks, int numThreads, final WorkerFactory<W> factory) {
+    final List<W> workers = Lists.newArrayList();
+    int numHelpers = Math.min(numThreads, numBlocks) - 1;
+    if (numHelpers <= 0) {
+      if (numBlocks > 0) {
+        W worker = factory.newWorker();
+        for (int block = 0; block < numBlocks; block++) {
+          worker.process(block);
+        }
+        workers.add(worker);
+      }
+      return workers;
+    }
+
+    final AtomicInteger nextBlock = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(numBlocks);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        W worker = null;
+        int block;
+        while ((block = nextBlock.getAndIncrement()) < numBlocks) {
+          try {
+            if (worker == null) {
+              worker = factory.newWorker();
+              synchronized (workers) {
+                workers.add(worker);
+              }
+            }
+            worker.process(block);
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            done.countDown();
+          }
+        }
+      }
+    };
+    for (int i = 0; i < numHelpers; i++) {
+      Pool.EXECUTOR.execute(runnable);
+    }
+    runnable.run();
+    try {
+      done.await();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(ie);
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    synchronized (workers) {
+      return workers;
+    }
+  }
+
+}
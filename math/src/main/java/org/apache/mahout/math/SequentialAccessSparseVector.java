@@ -108,6 +108,13 @@ public class SequentialAccessSparseVector extends AbstractVector {
     this.values = values;
   }
 
+  /**
+   * @return the indices and values of the non-default elements, not a copy
+   */
+  OrderedIntDoubleMapping mapping() {
+    return values;
+  }
+
   @Override
   protected Matrix matrixLike(int rows, int columns) {
     return new SparseRowMatrix(rows, columns);
@@ -183,6 +190,13 @@ public class SequentialAccessSparseVector extends AbstractVector {
     return values.getNumMappings();
   }
 
+  @Override
+  protected double dotSelf() {
+    int numMappings = values.getNumMappings();
+    return VectorArrayOperations.sumOfSquares(values.getValues(), numMappings,
+        VectorArrayOperations.numThreads(numMappings));
+  }
+
   @Override
   public double getLookupCost() {
     return Math.max(1, Math.round(Functions.LOG2.apply(getNumNondefaultElements())));
@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A dense vector over every {@code stride}-th element of a {@code double[]} or {@link DoubleBuffer}, used for the
+ * rows, columns and diagonals of a {@link ContiguousDenseMatrix}. Changes to the vector change the matrix.
+ */
+public final class StridedVector extends AbstractVector {
+
+  private final double[] array;
+  private final DoubleBuffer buffer;
+  private final int offset;
+  private final int stride;
+
+  /**
+   * @param array values, or null to use {@code buffer}
+   * @param buffer values, used if {@code array} is null
+   * @param offset index of the first element
+   * @param stride distance between elements
+   * @param size number of elements
+   */
+  StridedVector(double[] array, DoubleBuffer buffer, int offset, int stride, int size) {
+    super(size);
+    this.array = array;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.stride = stride;
+  }
+
+  /**
+   * Views the values of an array, without copying them.
+   */
+  public StridedVector(double[] values, int offset, int stride, int size) {
+    this(values, null, offset, stride, size);
+    if (size > 0 && (offset < 0 || offset + (long) stride * (size - 1) >= values.length)) {
+      throw new IndexException(offset + stride * (size - 1), values.length);
+    }
+  }
+
+  @Override
+  public double getQuick(int index) {
+    int i = offset + index * stride;
+    return array != null ? array[i] : buffer.get(i);
+  }
+
+  @Override
+  public void setQuick(int index, double value) {
+    invalidateCachedLength();
+    int i = offset + index * stride;
+    if (array != null) {
+      array[i] = value;
+    } else {
+      buffer.put(i, value);
+    }
+  }
+
+  @Override
+  public Vector assign(double value) {
+    invalidateCachedLength();
+    if (array != null && stride == 1) {
+      Arrays.fill(array, offset, offset + size(), value);
+    } else {
+      for (int index = 0; index < size(); index++) {
+        setQuick(index, value);
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public double dot(Vector x) {
+    if (!(x instanceof StridedVector)) {
+      return super.dot(x);
+    }
+    if (size() != x.size()) {
+      throw new CardinalityException(size(), x.size());
+    }
+    StridedVector other = (StridedVector) x;
+    double sum = 0.0;
+    if (array != null && other.array != null) {
+      for (int index = 0, i = offset, j = other.offset; index < size(); index++, i += stride, j += other.stride) {
+        sum += array[i] * other.array[j];
+      }
+    } else {
+      for (int index = 0; index < size(); index++) {
+        sum += getQuick(index) * other.getQuick(index);
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  protected double dotSelf() {
+    double result = 0.0;
+    for (int index = 0; index < size(); index++) {
+      double value = getQuick(index);
+      result += value * value;
+    }
+    return result;
+  }
+
+  /**
+   * @return a view of part of this vector, which shares its values
+   */
+  @Override
+  public Vector viewPart(int offset, int length) {
+    if (offset < 0) {
+      throw new IndexException(offset, size());
+    }
+    if (offset + length > size()) {
+      throw new IndexException(offset + length, size());
+    }
+    return new StridedVector(array, buffer, this.offset + offset * stride, stride, length);
+  }
+
+  /**
+   * @return a copy of the values, in a new array
+   */
+  @SuppressWarnings("CloneDoesntCallSuperClone")
+  @Override
+  public StridedVector clone() {
+    double[] values = new double[size()];
+    for (int index = 0; index < values.length; index++) {
+      values[index] = getQuick(index);
+    }
+    return new StridedVector(values, null, 0, 1, values.length);
+  }
+
+  @Override
+  public Vector like() {
+    return new DenseVector(size());
+  }
+
+  @Override
+  protected Matrix matrixLike(int rows, int columns) {
+    return new ContiguousDenseMatrix(rows, columns);
+  }
+
+  /**
+   * @return true
+   */
+  @Override
+  public boolean isDense() {
+    return true;
+  }
+
+  /**
+   * @return true
+   */
+  @Override
+  public boolean isSequentialAccess() {
+    return true;
+  }
+
+  @Override
+  public int getNumNondefaultElements() {
+    return size();
+  }
+
+  @Override
+  public double getLookupCost() {
+    return 1;
+  }
+
+  @Override
+  public double getIteratorAdvanceCost() {
+    return 1;
+  }
+
+  @Override
+  public boolean isAddConstantTime() {
+    return true;
+  }
+
+  @Override
+  public void mergeUpdates(OrderedIntDoubleMapping updates) {
+    int[] indices = updates.getIndices();
+    double[] values = updates.getValues();
+    for (int i = 0; i < updates.getNumMappings(); i++) {
+      setQuick(indices[i], values[i]);
+    }
+  }
+
+  @Override
+  protected Iterator<Element> iterator() {
+    return new StridedIterator(false);
+  }
+
+  @Override
+  protected Iterator<Element> iterateNonZero() {
+    return new StridedIterator(true);
+  }
+
+  private final class StridedIterator implements Iterator<Element> {
+
+    private final LocalElement element = new LocalElement(-1);
+    private final boolean skipZeroes;
+    private int next;
+
+    private StridedIterator(boolean skipZeroes) {
+      this.skipZeroes = skipZeroes;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (skipZeroes) {
+        while (next < size() && getQuick(next) == 0.0) {
+          next++;
+        }
+      }
+      return next < size();
+    }
+
+    @Override
+    public Element next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      element.index = next++;
+      return element;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Can't remove from a view");
+    }
+  }
+
+}
@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import com.google.common.base.Preconditions;
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.PlusMult;
+import org.apache.mahout.math.function.TimesFunction;
+
+/**
+ * <p>
+ * Element-wise operations and sums over the arrays behind {@link DenseVector} and
+ * {@link SequentialAccessSparseVector}. The common functions each get a loop of their own, with no call through
+ * {@link DoubleDoubleFunction} per element, so that the JIT can keep them tight whatever else the program uses.
+ * </p>
+ *
+ * <p>
+ * Arrays of a million elements or more are split in blocks among threads, one per processor, with
+ * {@link ParallelBlocks}. Sums over such arrays are always taken by blocks, added up in order of the blocks, so
+ * results depend neither on the threads nor on the number of processors, though they may differ in the last bits
+ * from a single loop over the whole array. Any other {@link DoubleDoubleFunction} is applied in the calling thread
+ * only, in order, as it need not be thread-safe.
+ * </p>
+ */
+final class VectorArrayOperations {
+
+  /** Arrays with fewer elements are processed in the calling thread only */
+  static final int PARALLEL_THRESHOLD = 1 << 20;
+  /** Elements per block, and so per task; 512 KB of each array */
+  private static final int BLOCK_SIZE = 1 << 16;
+
+  private VectorArrayOperations() {
+  }
+
+  /**
+   * @return how many threads to use on arrays of the given length
+   */
+  static int numThreads(int length) {
+    return length < PARALLEL_THRESHOLD ? 1 : ParallelBlocks.NUM_PROCESSORS;
+  }
+
+  /**
+   * Sets {@code x[i] = f(x[i], y[i])} for the first {@code length} elements.
+   */
+  static void assign(final double[] x, final double[] y, int length, DoubleDoubleFunction f, int numThreads) {
+    if (f instanceof PlusMult) {
+      final double multiplicator = ((PlusMult) f).getMultiplicator();
+      if (multiplicator == 1.0) {
+        run(new Loop(length) {
+          @Override
+          void apply(int from, int to) {
+            for (int i = from; i < to; i++) {
+              x[i] += y[i];
+            }
+          }
+        }, numThreads);
+      } else if (multiplicator == -1.0) {
+        run(new Loop(length) {
+          @Override
+          void apply(int from, int to) {
+            for (int i = from; i < to; i++) {
+              x[i] -= y[i];
+            }
+          }
+        }, numThreads);
+      } else {
+        run(new Loop(length) {
+          @Override
+          void apply(int from, int to) {
+            for (int i = from; i < to; i++) {
+              x[i] += y[i] * multiplicator;
+            }
+          }
+        }, numThreads);
+      }
+    } else if (f instanceof TimesFunction) {
+      run(new Loop(length) {
+        @Override
+        void apply(int from, int to) {
+          for (int i = from; i < to; i++) {
+            x[i] *= y[i];
+          }
+        }
+      }, numThreads);
+    } else if (f == Functions.SECOND) {
+      run(new Loop(length) {
+        @Override
+        void apply(int from, int to) {
+          System.arraycopy(y, from, x, from, to - from);
+        }
+      }, numThreads);
+    } else if (f == Functions.SECOND_LEFT_ZERO) {
+      run(new Loop(length) {
+        @Override
+        void apply(int from, int to) {
+          // The same check as the function's, though made for a whole block before copying it
+          for (int i = from; i < to; i++) {
+            Preconditions.checkArgument(x[i] == 0, "This special version of SECOND needs x == 0");
+          }
+          System.arraycopy(y, from, x, from, to - from);
+        }
+      }, numThreads);
+    } else {
+      for (int i = 0; i < length; i++) {
+        x[i] = f.apply(x[i], y[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets {@code values[k] = f(values[k], y[indices[k]])} for the first {@code length} elements of
+   * {@code values}, as for the non-zero elements of a sparse vector.
+   */
+  static void assignGathered(final double[] values, final int[] indices, int length, final double[] y,
+                             DoubleDoubleFunction f, int numThreads) {
+    if (f instanceof TimesFunction) {
+      run(new Loop(length) {
+        @Override
+        void apply(int from, int to) {
+          for (int k = from; k < to; k++) {
+            values[k] *= y[indices[k]];
+          }
+        }
+      }, numThreads);
+    } else {
+      for (int k = 0; k < length; k++) {
+        values[k] = f.apply(values[k], y[indices[k]]);
+      }
+    }
+  }
+
+  /**
+   * @return the sum of {@code x[i] * y[i]} over the first {@code length} elements
+   */
+  static double dot(final double[] x, final double[] y, int length, int numThreads) {
+    return run(new Sum(length) {
+      @Override
+      double sum(int from, int to) {
+        double result = 0.0;
+        for (int i = from; i < to; i++) {
+          result += x[i] * y[i];
+        }
+        return result;
+      }
+    }, numThreads);
+  }
+
+  /**
+   * @return the sum of {@code values[k] * y[indices[k]]} over the first {@code length} elements of {@code values}
+   */
+  static double dotGathered(final double[] values, final int[] indices, int length, final double[] y,
+                            int numThreads) {
+    return run(new Sum(length) {
+      @Override
+      double sum(int from, int to) {
+        double result = 0.0;
+        for (int k = from; k < to; k++) {
+          result += values[k] * y[indices[k]];
+        }
+        return result;
+      }
+    }, numThreads);
+  }
+
+  /**
+   * @return the sum of {@code x[i] * x[i]} over the first {@code length} elements
+   */
+  static double sumOfSquares(final double[] x, int length, int numThreads) {
+    return run(new Sum(length) {
+      @Override
+      double sum(int from, int to) {
+        double result = 0.0;
+        for (int i = from; i < to; i++) {
+          result += x[i] * x[i];
+        }
+        return result;
+      }
+    }, numThreads);
+  }
+
+  /**
+   * @return the sum of {@code |x[i]|} over the first {@code length} elements
+   */
+  static double sumOfAbsolutes(final double[] x, int length, int numThreads) {
+    return run(new Sum(length) {
+      @Override
+      double sum(int from, int to) {
+        double result = 0.0;
+        for (int i = from; i < to; i++) {
+          result += Math.abs(x[i]);
+        }
+        return result;
+      }
+    }, numThreads);
+  }
+
+  private static void run(final Loop loop, int numThreads) {
+    if (numThreads <= 1) {
+      loop.apply(0, loop.length);
+    } else {
+      ParallelBlocks.run(numBlocks(loop.length), numThreads, new ParallelBlocks.WorkerFactory<Loop>() {
+        @Override
+        public Loop newWorker() {
+          return loop;
+        }
+      });
+    }
+  }
+
+  /**
+   * Sums arrays of {@link #PARALLEL_THRESHOLD} elements or more by blocks, however many threads are used, so that
+   * the result does not depend on the number of processors.
+   */
+  private static double run(final Sum sum, int numThreads) {
+    if (sum.length < PARALLEL_THRESHOLD) {
+      return sum.sum(0, sum.length);
+    }
+    sum.partials = new double[numBlocks(sum.length)];
+    ParallelBlocks.run(sum.partials.length, numThreads, new ParallelBlocks.WorkerFactory<Sum>() {
+      @Override
+      public Sum newWorker() {
+        return sum;
+      }
+    });
+    double result = 0.0;
+    for (double partial : sum.partials) {
+      result += partial;
+    }
+    return result;
+  }
+
+  private static int numBlocks(int length) {
+    return (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+
+  /**
+   * Applies an operation to a range of elements; shared by all threads, which take different blocks.
+   */
+  private abstract static class Loop implements ParallelBlocks.Worker {
+    private final int length;
+
+    Loop(int length) {
+      this.length = length;
+    }
+
+    abstract void apply(int from, int to);
+
+    @Override
+    public void process(int block) {
+      int from = block * BLOCK_SIZE;
+      apply(from, Math.min(from + BLOCK_SIZE, length));
+    }
+  }
+
+  /**
+   * Sums over a range of elements; shared by all threads, which store the sums of different blocks.
+   */
+  private abstract static class Sum implements ParallelBlocks.Worker {
+    private final int length;
+    private double[] partials;
+
+    Sum(int length) {
+      this.length = length;
+    }
+
+    abstract double sum(int from, int to);
+
+    @Override
+    public void process(int block) {
+      int from = block * BLOCK_SIZE;
+      partials[block] = sum(from, Math.min(from + BLOCK_SIZE, length));
+    }
+  }
+}
@@ -18,6 +18,8 @@
 package org.apache.mahout.math;
 
 import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.PlusMult;
+import org.apache.mahout.math.function.TimesFunction;
 import org.apache.mahout.math.set.OpenIntHashSet;
 
 import java.util.Iterator;
@@ -49,6 +51,9 @@ import java.util.Iterator;
  * - iterating through all the elements in some way (either through both at the same time, both one after the other,
  *   looking up both, looking up just one).
  *
+ * Finally, for dot products of a DenseVector with a DenseVector or a SequentialAccessSparseVector, the *Arrays
+ * version sums over their arrays directly, split among threads for large vectors.
+ *
  * The internal details are not important and a particular algorithm should generally not be called explicitly.
  * The best one will be selected through assignBest(), which is itself called through Vector.assign().
  *
@@ -69,6 +74,8 @@ public abstract class VectorBinaryAggregate {
     new AggregateAllIterateThisLookupThat(),
     new AggregateAllIterateThatLookupThis(),
     new AggregateAllLoop(),
+
+    new AggregateDotArrays(),
   };
 
   /**
@@ -477,4 +484,48 @@ public abstract class VectorBinaryAggregate {
       return result;
     }
   }
+
+  /**
+   * The dot product, fa = PLUS and fc = MULT, of a DenseVector and either a DenseVector or a
+   * SequentialAccessSparseVector, in either order, summed over their arrays. Other aggregations, which it is not
+   * valid for, are computed as by AggregateAllLoop.
+   */
+  public static class AggregateDotArrays extends VectorBinaryAggregate {
+
+    @Override
+    public boolean isValid(Vector x, Vector y, DoubleDoubleFunction fa, DoubleDoubleFunction fc) {
+      return fa instanceof PlusMult && ((PlusMult) fa).getMultiplicator() == 1.0 && fc instanceof TimesFunction
+          && (x instanceof DenseVector && (y instanceof DenseVector || y instanceof SequentialAccessSparseVector)
+          || x instanceof SequentialAccessSparseVector && y instanceof DenseVector);
+    }
+
+    @Override
+    public double estimateCost(Vector x, Vector y, DoubleDoubleFunction fa, DoubleDoubleFunction fc) {
+      return Math.min(x.getNumNondefaultElements(), y.getNumNondefaultElements()) * 0.5;
+    }
+
+    @Override
+    public double aggregate(Vector x, Vector y, DoubleDoubleFunction fa, DoubleDoubleFunction fc) {
+      if (!isValid(x, y, fa, fc)) {
+        return new AggregateAllLoop().aggregate(x, y, fa, fc);
+      }
+      if (x instanceof DenseVector && y instanceof DenseVector) {
+        int size = x.size();
+        return VectorArrayOperations.dot(((DenseVector) x).values(), ((DenseVector) y).values(), size,
+            VectorArrayOperations.numThreads(size));
+      }
+      OrderedIntDoubleMapping mapping;
+      double[] dense;
+      if (x instanceof DenseVector) {
+        mapping = ((SequentialAccessSparseVector) y).mapping();
+        dense = ((DenseVector) x).values();
+      } else {
+        mapping = ((SequentialAccessSparseVector) x).mapping();
+        dense = ((DenseVector) y).values();
+      }
+      int numMappings = mapping.getNumMappings();
+      return VectorArrayOperations.dotGathered(mapping.getValues(), mapping.getIndices(), numMappings, dense,
+          VectorArrayOperations.numThreads(numMappings));
+    }
+  }
 }
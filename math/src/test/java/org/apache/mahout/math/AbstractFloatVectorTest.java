@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.jet.random.Normal;
+import org.junit.Test;
+
+/**
+ * Runs {@link AbstractVectorTest} on a float-backed vector, replacing the tests which expect values to be held
+ * exactly with ones which allow for rounding to float.
+ */
+public abstract class AbstractFloatVectorTest<T extends Vector> extends AbstractVectorTest<T> {
+
+  /** Relative precision of a float */
+  private static final double FLOAT_EPSILON = 1.0e-7;
+
+  @Override
+  @Test
+  public void testSimpleOps() {
+    Random gen = RandomUtils.getRandom();
+    Vector v1 = vectorToTest(20).assign(new Normal(0, 1, gen));
+    Vector v2 = vectorToTest(20).assign(new Normal(0, 1, gen));
+    // the same values, exactly, as doubles
+    Vector dv1 = new DenseVector(v1);
+    Vector dv2 = new DenseVector(v2);
+
+    assertEquals(0, dv1.plus(dv2).getDistanceSquared(v1.plus(v2)), FLOAT_EPSILON * FLOAT_EPSILON * 100);
+    assertEquals(0, dv1.minus(dv2).getDistanceSquared(v1.minus(v2)), FLOAT_EPSILON * FLOAT_EPSILON * 100);
+    assertEquals(0, dv1.times(dv2).getDistanceSquared(v1.times(v2)), FLOAT_EPSILON * FLOAT_EPSILON * 100);
+
+    // sums are accumulated in double
+    assertEquals(dv1.dot(dv2), v1.dot(v2), EPSILON);
+    assertEquals(dv1.dot(dv2), v1.dot(dv2), EPSILON);
+    assertEquals(dv1.getLengthSquared(), v1.getLengthSquared(), EPSILON);
+    assertEquals(dv1.getDistanceSquared(dv2), v1.getDistanceSquared(v2), EPSILON);
+    assertEquals(dv1.norm(1), v1.norm(1), EPSILON);
+    assertEquals(dv1.maxValue(), v1.maxValue(), 0.0);
+    assertEquals(dv1.minValueIndex(), v1.minValueIndex());
+
+    assertEquals(1, v1.normalize().norm(2), FLOAT_EPSILON * 10);
+    assertEquals(1, v1.normalize(1).norm(1), FLOAT_EPSILON * 10);
+  }
+
+  @Override
+  @Test
+  public void testIterator() {
+    Vector test = getTestVector();
+    double[] gold = {0.0, 1.1f, 0.0, 2.2f, 0.0, 3.3f, 0.0};
+    for (Vector.Element element : test.nonZeroes()) {
+      assertEquals(gold[element.index()], element.get(), 0.0);
+    }
+    for (Vector.Element element : test.all()) {
+      assertEquals(gold[element.index()], element.get(), 0.0);
+    }
+  }
+
+  @Override
+  @Test
+  public void testGetDistanceSquared() {
+    Vector test = getTestVector();
+    Vector other = new RandomAccessSparseVector(test.size());
+    other.set(1, -2);
+    other.set(2, -5);
+    other.set(3, -9);
+    other.set(4, 1);
+    double expected = new DenseVector(test).minus(other).getLengthSquared();
+    assertEquals(expected, test.getDistanceSquared(other), EPSILON);
+    assertEquals(expected, test.minus(other).getLengthSquared(), expected * FLOAT_EPSILON * 10);
+  }
+
+  @Test
+  public void testRounding() {
+    Vector test = vectorToTest(20);
+    test.set(7, 0.1);
+    assertEquals(0.1f, test.get(7), 0.0);
+    test.set(7, 1.0e-50);
+    assertEquals(0.0, test.get(7), 0.0);
+    assertEquals(0, test.clone().viewPart(7, 1).getNumNonZeroElements());
+  }
+}
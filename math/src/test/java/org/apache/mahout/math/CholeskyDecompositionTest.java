@@ -127,6 +127,67 @@ public class CholeskyDecompositionTest extends MahoutTestCase {
     Assert.assertEquals(0, error, 1.0e-10);
   }
 
+  @Test
+  public void solveInPlace() {
+    final Random rand = RandomUtils.getRandom();
+    Matrix z = new DenseMatrix(20, 30);
+    z.assign(new DoubleFunction() {
+      @Override
+      public double apply(double arg1) {
+        return rand.nextGaussian();
+      }
+    });
+    Matrix a = z.times(z.transpose());
+    Vector x = new DenseVector(20).assign(new DoubleFunction() {
+      @Override
+      public double apply(double arg1) {
+        return rand.nextGaussian();
+      }
+    });
+    Vector ax = a.times(x);
+    double[] b = new double[20];
+    for (int i = 0; i < 20; i++) {
+      b[i] = ax.get(i);
+    }
+
+    DenseSymmetricMatrix packed = new DenseSymmetricMatrix(20);
+    for (int row = 0; row < 20; row++) {
+      for (int column = row; column < 20; column++) {
+        packed.setQuick(row, column, a.getQuick(row, column));
+      }
+    }
+    Assert.assertTrue(CholeskyDecomposition.solveInPlace(packed, b));
+    Assert.assertEquals(0, new DenseVector(b).minus(x).norm(Double.POSITIVE_INFINITY), 1.0e-8);
+
+    // the upper triangle now holds R with R' R = a, which is L' for the unpivoted decomposition
+    Matrix l = new CholeskyDecomposition(a, false).getL();
+    for (int row = 0; row < 20; row++) {
+      for (int column = row; column < 20; column++) {
+        Assert.assertEquals(l.getQuick(column, row), packed.getData()[packedIndex(row, column, 20)], 1.0e-9);
+      }
+    }
+  }
+
+  @Test
+  public void solveInPlaceSemiDefinite() {
+    Matrix a = rank4Matrix();
+    DenseSymmetricMatrix packed = new DenseSymmetricMatrix(10);
+    for (int row = 0; row < 10; row++) {
+      for (int column = row; column < 10; column++) {
+        packed.setQuick(row, column, a.getQuick(row, column));
+      }
+    }
+    double[] b = new double[10];
+    Assert.assertFalse(CholeskyDecomposition.solveInPlace(packed, b));
+    for (double value : b) {
+      Assert.assertFalse(Double.isNaN(value));
+    }
+  }
+
+  private static int packedIndex(int row, int column, int n) {
+    return column + row * n - (row + 1) * row / 2;
+  }
+
   private static Matrix rank4Matrix() {
     final Random rand = RandomUtils.getRandom();
 
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class DenseMatrixMultiplicationTest extends MahoutTestCase {
+
+  @Test
+  public void testOddSizes() {
+    Random random = RandomUtils.getRandom();
+    int[] sizes = {1, 3, 4, 5, 63, 65, 257, 513};
+    for (int rows : sizes) {
+      for (int inner : new int[] {1, 7, 257}) {
+        for (int columns : sizes) {
+          Matrix a = randomMatrix(random, rows, inner);
+          Matrix b = randomMatrix(random, inner, columns);
+          assertProduct(a, b, DenseMatrixMultiplication.times(a, b, 1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testParallel() {
+    Random random = RandomUtils.getRandom();
+    Matrix a = randomMatrix(random, 700, 300);
+    Matrix b = randomMatrix(random, 300, 250);
+    assertProduct(a, b, DenseMatrixMultiplication.times(a, b, 4));
+    assertProduct(a, b, a.times(b));
+  }
+
+  @Test
+  public void testFloatOperands() {
+    Random random = RandomUtils.getRandom();
+    // Several blocks of rows and tiles of the inner dimension and of the columns, with partial ones
+    Matrix a = randomMatrix(random, 130, 600);
+    Matrix b = randomMatrix(random, 600, 530);
+    Matrix floatA = new FloatDenseMatrix(130, 600).assign(a);
+    Matrix floatB = new FloatDenseMatrix(600, 530).assign(b);
+    for (int numThreads : new int[] {1, 4}) {
+      assertProduct(floatA, floatB, DenseMatrixMultiplication.times(floatA, floatB, numThreads));
+      assertProduct(floatA, b, DenseMatrixMultiplication.times(floatA, b, numThreads));
+      assertProduct(a, floatB, DenseMatrixMultiplication.times(a, floatB, numThreads));
+    }
+    assertProduct(floatA, floatB, floatA.times(floatB));
+  }
+
+  @Test
+  public void testDispatch() {
+    Random random = RandomUtils.getRandom();
+    Matrix a = randomMatrix(random, 20, 30);
+    DenseSymmetricMatrix symmetric = new DenseSymmetricMatrix(30);
+    for (int row = 0; row < 30; row++) {
+      for (int column = row; column < 30; column++) {
+        symmetric.setQuick(row, column, random.nextGaussian());
+      }
+    }
+    assertProduct(a, symmetric, a.times(symmetric));
+    assertProduct(symmetric, a.transpose(), symmetric.times(a.transpose()));
+
+    Matrix sparse = new SparseRowMatrix(30, 10);
+    sparse.setQuick(3, 4, 2.0);
+    sparse.setQuick(29, 9, -1.0);
+    assertProduct(a, sparse, a.times(sparse));
+    assertProduct(sparse.transpose(), a.transpose(), ((DenseMatrix) a.transpose()).timesLeft(sparse.transpose()));
+
+    DiagonalMatrix diagonal = new DiagonalMatrix(new DenseVector(30).assign(2.0));
+    assertProduct(a, diagonal, a.times(diagonal));
+  }
+
+  private static Matrix randomMatrix(Random random, int rows, int columns) {
+    Matrix matrix = new DenseMatrix(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        matrix.setQuick(row, column, random.nextGaussian());
+      }
+    }
+    return matrix;
+  }
+
+  private static void assertProduct(Matrix a, Matrix b, Matrix product) {
+    assertEquals(a.rowSize(), product.rowSize());
+    assertEquals(b.columnSize(), product.columnSize());
+    Matrix expected = new DenseMatrix(a.rowSize(), b.columnSize());
+    for (int row = 0; row < a.rowSize(); row++) {
+      for (int column = 0; column < b.columnSize(); column++) {
+        double sum = 0.0;
+        for (int k = 0; k < a.columnSize(); k++) {
+          sum += a.getQuick(row, k) * b.getQuick(k, column);
+        }
+        expected.setQuick(row, column, sum);
+      }
+    }
+    assertEquals(0.0, expected.minus(product).aggregate(Functions.MAX, Functions.ABS), 1.0e-9);
+  }
+
+}
@@ -45,4 +45,12 @@ public final class MurmurHash3Test extends MahoutTestCase {
     }
   }
 
+  @Test
+  public void testFmix64() {
+    assertEquals(0L, MurmurHash3.fmix64(0L));
+    assertEquals(0xb456bcfc34c2cb2cL, MurmurHash3.fmix64(1L));
+    assertEquals(0x810879608e4259ccL, MurmurHash3.fmix64(42L));
+    assertEquals(0x64b5720b4b825f21L, MurmurHash3.fmix64(-1L));
+  }
+
 }
\ No newline at end of file
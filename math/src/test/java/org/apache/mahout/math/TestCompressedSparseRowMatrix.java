@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.solver.ConjugateGradientSolver;
+import org.apache.mahout.math.solver.LSMR;
+import org.junit.Test;
+
+public final class TestCompressedSparseRowMatrix extends MahoutTestCase {
+
+  @Test
+  public void testCopyOf() {
+    Matrix expected = randomSparse(RandomUtils.getRandom(), 50, 40, 0.1);
+    CompressedSparseRowMatrix csr = CompressedSparseRowMatrix.copyOf(expected);
+    assertSameElements(expected, csr);
+    int numNonZeroElements = 0;
+    for (int row = 0; row < 50; row++) {
+      numNonZeroElements += expected.viewRow(row).getNumNonZeroElements();
+    }
+    assertEquals(numNonZeroElements, csr.getNumNonZeroElements());
+    assertEquals(expected.zSum(), csr.zSum(), EPSILON);
+
+    // Rows out of order, random access and with empty rows
+    Matrix hashed = new SparseMatrix(50, 40);
+    hashed.assign(expected);
+    assertSameElements(expected, CompressedSparseRowMatrix.copyOf(hashed));
+    assertSameElements(expected, CompressedSparseRowMatrix.copyOf(new DenseMatrix(50, 40).assign(expected)));
+  }
+
+  @Test
+  public void testProducts() {
+    Random random = RandomUtils.getRandom();
+    Matrix expected = randomSparse(random, 60, 45, 0.2);
+    CompressedSparseRowMatrix csr = CompressedSparseRowMatrix.copyOf(expected);
+    Vector x = new DenseVector(45).assign(Functions.random());
+    assertEquals(0, expected.times(x).minus(csr.times(x)).norm(1), EPSILON);
+    assertEquals(0, expected.timesSquared(x).minus(csr.timesSquared(x)).norm(1), EPSILON);
+    Vector sparseX = new RandomAccessSparseVector(45);
+    sparseX.set(3, 2.0);
+    assertEquals(0, expected.times(sparseX).minus(csr.times(sparseX)).norm(1), EPSILON);
+
+    Matrix dense = new DenseMatrix(45, 7).assign(Functions.random());
+    assertEquals(0, expected.times(dense).minus(csr.times(dense)).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+
+    Matrix transpose = csr.transpose();
+    assertSameElements(expected.transpose(), transpose);
+    assertSame(transpose, csr.transpose());
+    assertSame(csr, transpose.transpose());
+    Vector y = new DenseVector(60).assign(Functions.random());
+    assertEquals(0, expected.transpose().times(y).minus(transpose.times(y)).norm(1), EPSILON);
+  }
+
+  @Test
+  public void testParallel() {
+    Random random = RandomUtils.getRandom();
+    int[] rowPointers = new int[2001];
+    int[] columnIndices = new int[2000 * 600];
+    double[] values = new double[columnIndices.length];
+    for (int row = 0; row < 2000; row++) {
+      rowPointers[row + 1] = rowPointers[row] + 600;
+      for (int i = 0; i < 600; i++) {
+        columnIndices[rowPointers[row] + i] = 2 * i + (row & 1);
+        values[rowPointers[row] + i] = random.nextGaussian();
+      }
+    }
+    CompressedSparseRowMatrix parallel =
+        new CompressedSparseRowMatrix(2000, 1200, rowPointers, columnIndices, values);
+    parallel.setNumThreads(4);
+    CompressedSparseRowMatrix serial = new CompressedSparseRowMatrix(2000, 1200, rowPointers, columnIndices, values);
+    serial.setNumThreads(1);
+    Vector x = new DenseVector(1200).assign(Functions.random());
+    assertEquals(0, serial.times(x).minus(parallel.times(x)).norm(1), 1.0e-9);
+    assertEquals(0, serial.timesSquared(x).minus(parallel.timesSquared(x)).norm(1), 1.0e-6);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutable() {
+    CompressedSparseRowMatrix.copyOf(new DenseMatrix(2, 2)).set(0, 0, 1.0);
+  }
+
+  @Test
+  public void testSolvers() {
+    Random random = RandomUtils.getRandom();
+    Matrix a = randomSparse(random, 80, 30, 0.3);
+    CompressedSparseRowMatrix csr = CompressedSparseRowMatrix.copyOf(a);
+    Vector b = new DenseVector(80).assign(1);
+
+    Vector x = new LSMR().solve(csr, b);
+    assertEquals(0, new LSMR().solve(a, b).minus(x).norm(2), 1.0e-9);
+
+    // a' a is symmetric positive definite
+    Matrix normal = CompressedSparseRowMatrix.copyOf(a.transpose().times(a));
+    Vector rhs = a.transpose().times(b);
+    Vector solution = new ConjugateGradientSolver().solve(normal, rhs);
+    assertEquals(0, normal.times(solution).minus(rhs).norm(2), 1.0e-6);
+  }
+
+  private static Matrix randomSparse(Random random, int rows, int columns, double density) {
+    Matrix matrix = new SparseRowMatrix(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      if (row % 7 == 3) {
+        continue;
+      }
+      for (int column = 0; column < columns; column++) {
+        if (random.nextDouble() < density) {
+          matrix.setQuick(row, column, random.nextGaussian());
+        }
+      }
+    }
+    return matrix;
+  }
+
+  private static void assertSameElements(Matrix expected, Matrix actual) {
+    assertEquals(expected.rowSize(), actual.rowSize());
+    assertEquals(expected.columnSize(), actual.columnSize());
+    for (int row = 0; row < expected.rowSize(); row++) {
+      assertEquals(0, expected.viewRow(row).minus(actual.viewRow(row)).norm(1), 0.0);
+      for (int column = 0; column < expected.columnSize(); column++) {
+        assertEquals(expected.getQuick(row, column), actual.getQuick(row, column), 0.0);
+      }
+    }
+  }
+
+}
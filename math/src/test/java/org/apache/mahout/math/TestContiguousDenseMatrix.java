@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.mahout.math;
+
+import java.io.File;
+import java.nio.DoubleBuffer;
+
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class TestContiguousDenseMatrix extends MatrixTest {
+
+  @Override
+  public Matrix matrixFactory(double[][] values) {
+    Matrix matrix = new ContiguousDenseMatrix(values.length, values[0].length);
+    matrix.assign(values);
+    return matrix;
+  }
+
+  @Test
+  public void testColumnMajor() {
+    double[] values = {1, 2, 3, 4, 5, 6};
+    Matrix matrix = new ContiguousDenseMatrix(values, 2, 3, false);
+    assertEquals(3, matrix.get(0, 1), 0.0);
+    assertEquals(2, matrix.get(1, 0), 0.0);
+    assertEquals(0, new DenseVector(new double[] {5, 6}).minus(matrix.viewColumn(2)).norm(1), 0.0);
+    assertEquals(0, new DenseVector(new double[] {2, 4, 6}).minus(matrix.viewRow(1)).norm(1), 0.0);
+
+    Matrix transpose = matrix.transpose();
+    assertTrue(((ContiguousDenseMatrix) transpose).isRowMajor());
+    for (int row = 0; row < 2; row++) {
+      for (int column = 0; column < 3; column++) {
+        assertEquals(matrix.get(row, column), transpose.get(column, row), 0.0);
+      }
+    }
+
+    Matrix rowMajor = new ContiguousDenseMatrix(2, 3, true).assign(matrix);
+    assertEquals(0, rowMajor.minus(matrix).aggregate(Functions.PLUS, Functions.ABS), 0.0);
+    assertEquals(21, matrix.zSum(), 0.0);
+  }
+
+  @Test
+  public void testViewsShareValues() {
+    double[] values = new double[20];
+    Matrix matrix = new ContiguousDenseMatrix(values, 4, 5, true);
+    matrix.viewRow(1).assign(1);
+    matrix.viewColumn(3).assign(2);
+    matrix.viewDiagonal().assign(3);
+    assertEquals(1, values[5], 0.0);
+    assertEquals(2, values[8], 0.0);
+    assertEquals(3, values[12], 0.0);
+
+    Matrix part = matrix.viewPart(1, 3, 2, 3);
+    assertTrue(part instanceof ContiguousDenseMatrix);
+    assertEquals(1, part.get(0, 0), 0.0);
+    assertEquals(2, part.get(0, 1), 0.0);
+    assertEquals(3, part.get(2, 1), 0.0);
+    Matrix partOfPart = part.viewPart(1, 2, 1, 2);
+    partOfPart.assign(7);
+    assertEquals(7, matrix.get(2, 3), 0.0);
+    assertEquals(7, matrix.get(3, 4), 0.0);
+    assertEquals(2, matrix.get(1, 3), 0.0);
+    assertEquals(4 * 7, partOfPart.zSum(), 0.0);
+
+    Vector row = matrix.viewRow(3).viewPart(2, 3);
+    row.set(0, 9);
+    assertEquals(9, values[17], 0.0);
+
+    Matrix copy = part.clone();
+    copy.assign(0);
+    assertEquals(7, part.get(1, 1), 0.0);
+    assertEquals(0, copy.zSum(), 0.0);
+  }
+
+  @Test
+  public void testBuffers() throws Exception {
+    Matrix direct = ContiguousDenseMatrix.allocateDirect(3, 2, false);
+    direct.assign(new double[][] {{1, 2}, {3, 4}, {5, 6}});
+    assertEquals(21, direct.zSum(), 0.0);
+    assertEquals(0, direct.viewColumn(1).minus(new DenseVector(new double[] {2, 4, 6})).norm(1), 0.0);
+
+    DoubleBuffer wrapped = DoubleBuffer.wrap(new double[] {0, 1, 2, 3, 4});
+    wrapped.position(1);
+    Matrix matrix = new ContiguousDenseMatrix(wrapped, 2, 2, true);
+    assertEquals(3, matrix.get(1, 0), 0.0);
+
+    File file = getTestTempFile("contiguous.m");
+    file.createNewFile();
+    FileBasedMatrix.writeMatrix(file, direct);
+    FileBasedMatrix mapped = new FileBasedMatrix(3, 2);
+    mapped.setData(file, true);
+    Matrix view = mapped.viewAsContiguous();
+    assertEquals(0, view.minus(direct).aggregate(Functions.PLUS, Functions.ABS), 0.0);
+  }
+
+}
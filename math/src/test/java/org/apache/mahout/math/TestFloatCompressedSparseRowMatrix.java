@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class TestFloatCompressedSparseRowMatrix extends MahoutTestCase {
+
+  @Test
+  public void testSameAsDouble() {
+    Random random = RandomUtils.getRandom();
+    Matrix expected = new SparseRowMatrix(60, 45);
+    for (int row = 0; row < 60; row++) {
+      for (int column = 0; column < 45; column++) {
+        if (row % 7 != 3 && random.nextDouble() < 0.2) {
+          expected.setQuick(row, column, (float) random.nextGaussian());
+        }
+      }
+    }
+    CompressedSparseRowMatrix csr = CompressedSparseRowMatrix.copyOf(expected);
+    FloatCompressedSparseRowMatrix floats = FloatCompressedSparseRowMatrix.copyOf(expected);
+    assertEquals(csr.getNumNonZeroElements(), floats.getNumNonZeroElements());
+    assertEquals(csr.zSum(), floats.zSum(), EPSILON);
+    for (int row = 0; row < 60; row++) {
+      Vector floatRow = floats.viewRow(row);
+      assertTrue(floatRow instanceof FloatSequentialAccessSparseVector);
+      assertEquals(0, csr.viewRow(row).minus(floatRow).norm(1), 0.0);
+    }
+
+    Vector x = new DenseVector(45).assign(Functions.random());
+    assertEquals(0, csr.times(x).minus(floats.times(x)).norm(1), EPSILON);
+    assertEquals(0, csr.timesSquared(x).minus(floats.timesSquared(x)).norm(1), EPSILON);
+    Matrix dense = new DenseMatrix(45, 7).assign(Functions.random());
+    assertEquals(0, csr.times(dense).minus(floats.times(dense)).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+
+    Matrix transpose = floats.transpose();
+    assertSame(transpose, floats.transpose());
+    assertSame(floats, transpose.transpose());
+    Vector y = new DenseVector(60).assign(Functions.random());
+    assertEquals(0, csr.transpose().times(y).minus(transpose.times(y)).norm(1), EPSILON);
+  }
+
+  @Test
+  public void testRounding() {
+    Matrix matrix = new DenseMatrix(2, 3);
+    matrix.set(0, 1, 0.1);
+    matrix.set(1, 2, 1.0e-50);
+    FloatCompressedSparseRowMatrix floats = FloatCompressedSparseRowMatrix.copyOf(matrix);
+    assertEquals(1, floats.getNumNonZeroElements());
+    assertEquals(0.1f, floats.get(0, 1), 0.0);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testImmutable() {
+    FloatCompressedSparseRowMatrix.copyOf(new DenseMatrix(2, 2)).set(0, 0, 1.0);
+  }
+}
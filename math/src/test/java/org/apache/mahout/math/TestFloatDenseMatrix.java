@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class TestFloatDenseMatrix extends MahoutTestCase {
+
+  @Test
+  public void testRounding() {
+    Matrix matrix = new FloatDenseMatrix(3, 4);
+    matrix.set(1, 2, 0.1);
+    assertEquals(0.1f, matrix.get(1, 2), 0.0);
+    matrix.assign(1.0e-50);
+    assertEquals(0.0, matrix.zSum(), 0.0);
+    matrix.assignRow(2, new DenseVector(new double[] {0.1, 0.2, 0.3, 0.4}));
+    assertEquals(0.3f, matrix.get(2, 2), 0.0);
+    matrix.assignColumn(0, new DenseVector(new double[] {0.5, 0.6, 0.7}));
+    assertEquals(0.6f, matrix.get(1, 0), 0.0);
+  }
+
+  @Test
+  public void testSameAsDense() {
+    Random random = RandomUtils.getRandom();
+    Matrix dense = randomMatrix(random, 7, 5);
+    Matrix matrix = new FloatDenseMatrix(7, 5).assign(dense);
+    Matrix other = randomMatrix(random, 5, 3);
+    Vector x = new DenseVector(5).assign(Functions.random());
+
+    assertEquals(0, dense.minus(matrix).aggregate(Functions.PLUS, Functions.ABS), 0.0);
+    assertEquals(0, dense.times(other).minus(matrix.times(other)).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+    assertEquals(0, dense.times(x).minus(matrix.times(x)).norm(1), EPSILON);
+    assertTrue(matrix.times(other) instanceof DenseMatrix);
+    Matrix left = randomMatrix(random, 4, 7);
+    assertEquals(0, left.times(dense).minus(left.times(matrix)).aggregate(Functions.PLUS, Functions.ABS), EPSILON);
+    assertEquals(0, dense.transpose().minus(matrix.transpose()).aggregate(Functions.PLUS, Functions.ABS), 0.0);
+    assertEquals(0, dense.viewPart(1, 3, 2, 2).minus(matrix.viewPart(1, 3, 2, 2))
+        .aggregate(Functions.PLUS, Functions.ABS), 0.0);
+
+    assertTrue(matrix.like() instanceof FloatDenseMatrix);
+    assertTrue(matrix.transpose() instanceof FloatDenseMatrix);
+    Matrix clone = matrix.clone();
+    clone.set(0, 0, 100.0);
+    assertEquals(dense.get(0, 0), matrix.get(0, 0), 0.0);
+  }
+
+  @Test
+  public void testRowView() {
+    Matrix matrix = randomMatrix(RandomUtils.getRandom(), 4, 6);
+    Matrix floats = new FloatDenseMatrix(4, 6).assign(matrix);
+    Vector row = floats.viewRow(2);
+    assertTrue(row instanceof FloatDenseVector);
+    assertEquals(0, matrix.viewRow(2).minus(row).norm(1), 0.0);
+    row.set(3, 2.5);
+    assertEquals(2.5, floats.get(2, 3), 0.0);
+  }
+
+  /**
+   * @return a matrix of values which are exact as floats
+   */
+  private static Matrix randomMatrix(Random random, int rows, int columns) {
+    Matrix matrix = new DenseMatrix(rows, columns);
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        matrix.setQuick(row, column, (float) random.nextGaussian());
+      }
+    }
+    return matrix;
+  }
+}
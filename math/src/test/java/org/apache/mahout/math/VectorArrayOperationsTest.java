@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.mahout.math;
+
+import java.util.Random;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.Functions;
+import org.junit.Test;
+
+public final class VectorArrayOperationsTest extends MahoutTestCase {
+
+  /** Several blocks and a partial one */
+  private static final int LENGTH = 3 * (1 << 16) + 123;
+
+  @Test
+  public void testAssign() {
+    Random random = RandomUtils.getRandom();
+    double[] y = randomArray(random, LENGTH);
+    DoubleDoubleFunction[] functions = {
+      Functions.PLUS, Functions.MINUS, Functions.plusMult(2.5), Functions.MULT, Functions.SECOND, Functions.DIV
+    };
+    for (DoubleDoubleFunction f : functions) {
+      double[] x = randomArray(random, LENGTH);
+      double[] expected = new double[LENGTH];
+      for (int i = 0; i < LENGTH; i++) {
+        expected[i] = f.apply(x[i], y[i]);
+      }
+      double[] serial = x.clone();
+      VectorArrayOperations.assign(serial, y, LENGTH, f, 1);
+      VectorArrayOperations.assign(x, y, LENGTH, f, 4);
+      for (int i = 0; i < LENGTH; i++) {
+        assertEquals(expected[i], serial[i], 0.0);
+        assertEquals(expected[i], x[i], 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testOtherFunctionsInCallingThread() {
+    Random random = RandomUtils.getRandom();
+    double[] x = randomArray(random, LENGTH);
+    double[] y = randomArray(random, LENGTH);
+    final Thread caller = Thread.currentThread();
+    final int[] calls = new int[1];
+    // Not thread-safe, as other functions need not be
+    DoubleDoubleFunction f = new DoubleDoubleFunction() {
+      @Override
+      public double apply(double a, double b) {
+        assertSame(caller, Thread.currentThread());
+        calls[0]++;
+        return a + 2 * b;
+      }
+    };
+    VectorArrayOperations.assign(x, y, LENGTH, f, 4);
+    int[] indices = new int[LENGTH];
+    for (int k = 0; k < LENGTH; k++) {
+      indices[k] = k;
+    }
+    VectorArrayOperations.assignGathered(x, indices, LENGTH, y, f, 4);
+    assertEquals(2 * LENGTH, calls[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSecondLeftZeroChecksLeft() {
+    Random random = RandomUtils.getRandom();
+    double[] x = new double[LENGTH];
+    x[LENGTH - 1] = 1.0;
+    VectorArrayOperations.assign(x, randomArray(random, LENGTH), LENGTH, Functions.SECOND_LEFT_ZERO, 4);
+  }
+
+  @Test
+  public void testSums() {
+    Random random = RandomUtils.getRandom();
+    double[] x = randomArray(random, LENGTH);
+    double[] y = randomArray(random, LENGTH);
+    double dot = 0.0;
+    double squares = 0.0;
+    double absolutes = 0.0;
+    for (int i = 0; i < LENGTH; i++) {
+      dot += x[i] * y[i];
+      squares += x[i] * x[i];
+      absolutes += Math.abs(x[i]);
+    }
+    assertEquals(dot, VectorArrayOperations.dot(x, y, LENGTH, 1), 0.0);
+    assertEquals(dot, VectorArrayOperations.dot(x, y, LENGTH, 4), EPSILON * LENGTH);
+    assertEquals(squares, VectorArrayOperations.sumOfSquares(x, LENGTH, 4), EPSILON * LENGTH);
+    assertEquals(absolutes, VectorArrayOperations.sumOfAbsolutes(x, LENGTH, 4), EPSILON * LENGTH);
+    assertEquals(VectorArrayOperations.dot(x, y, LENGTH, 3), VectorArrayOperations.dot(x, y, LENGTH, 4), 0.0);
+  }
+
+  @Test
+  public void testLargeSumsIndependentOfThreads() {
+    Random random = RandomUtils.getRandom();
+    int length = VectorArrayOperations.PARALLEL_THRESHOLD + 123;
+    double[] x = randomArray(random, length);
+    double[] y = randomArray(random, length);
+    double dot = VectorArrayOperations.dot(x, y, length, 1);
+    assertEquals(dot, VectorArrayOperations.dot(x, y, length, 2), 0.0);
+    assertEquals(dot, VectorArrayOperations.dot(x, y, length, 5), 0.0);
+    assertEquals(VectorArrayOperations.sumOfSquares(x, length, 1), VectorArrayOperations.sumOfSquares(x, length, 3),
+                 0.0);
+  }
+
+  @Test
+  public void testGathered() {
+    Random random = RandomUtils.getRandom();
+    int[] indices = new int[LENGTH];
+    for (int k = 0; k < LENGTH; k++) {
+      indices[k] = 2 * k + random.nextInt(2);
+    }
+    double[] values = randomArray(random, LENGTH);
+    double[] y = randomArray(random, 2 * LENGTH);
+    double dot = 0.0;
+    for (int k = 0; k < LENGTH; k++) {
+      dot += values[k] * y[indices[k]];
+    }
+    assertEquals(dot, VectorArrayOperations.dotGathered(values, indices, LENGTH, y, 4), EPSILON * LENGTH);
+
+    double[] expected = values.clone();
+    for (int k = 0; k < LENGTH; k++) {
+      expected[k] *= y[indices[k]];
+    }
+    VectorArrayOperations.assignGathered(values, indices, LENGTH, y, Functions.MULT, 4);
+    for (int k = 0; k < LENGTH; k++) {
+      assertEquals(expected[k], values[k], 0.0);
+    }
+  }
+
+  @Test
+  public void testLargeVectors() {
+    Random random = RandomUtils.getRandom();
+    int size = VectorArrayOperations.PARALLEL_THRESHOLD + 17;
+    Vector x = new DenseVector(randomArray(random, size));
+    Vector y = new DenseVector(randomArray(random, size));
+    Vector sparse = new SequentialAccessSparseVector(size);
+    for (int i = 0; i < size; i += 3) {
+      sparse.setQuick(i, random.nextGaussian());
+    }
+
+    double dot = 0.0;
+    double sparseDot = 0.0;
+    double norm1 = 0.0;
+    for (int i = 0; i < size; i++) {
+      dot += x.getQuick(i) * y.getQuick(i);
+      sparseDot += x.getQuick(i) * sparse.getQuick(i);
+      norm1 += Math.abs(x.getQuick(i));
+    }
+    assertEquals(dot, x.dot(y), EPSILON * size);
+    assertEquals(sparseDot, x.dot(sparse), EPSILON * size);
+    assertEquals(sparseDot, sparse.dot(x), EPSILON * size);
+    assertEquals(norm1, x.norm(1), EPSILON * size);
+    assertEquals(Math.sqrt(x.dot(x)), x.norm(2), EPSILON);
+
+    Vector sum = x.plus(y);
+    Vector difference = x.minus(y);
+    Vector product = sparse.times(x);
+    for (int i = 0; i < size; i++) {
+      assertEquals(x.getQuick(i) + y.getQuick(i), sum.getQuick(i), 0.0);
+      assertEquals(x.getQuick(i) - y.getQuick(i), difference.getQuick(i), 0.0);
+      assertEquals(sparse.getQuick(i) * x.getQuick(i), product.getQuick(i), 0.0);
+    }
+    assertEquals(sum.getLengthSquared(), sum.dot(sum), EPSILON * size);
+  }
+
+  private static double[] randomArray(Random random, int length) {
+    double[] values = new double[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = random.nextGaussian();
+    }
+    return values;
+  }
+}